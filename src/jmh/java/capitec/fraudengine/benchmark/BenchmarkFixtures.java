@@ -0,0 +1,123 @@
+package capitec.fraudengine.benchmark;
+
+import capitec.fraudengine.TestUtil;
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.rules.FraudRule;
+import capitec.fraudengine.service.rules.HighAmountRule;
+import capitec.fraudengine.service.rules.LocationRule;
+import capitec.fraudengine.service.rules.VelocityRule;
+import capitec.fraudengine.service.velocity.VelocityCounterStore;
+import org.jpos.iso.ISOMsg;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Shared inputs for the benchmarks: a representative 0200, rules wired with
+ * production defaults, and a repository stub that never touches a database.
+ */
+final class BenchmarkFixtures {
+    private BenchmarkFixtures() {
+    }
+
+    static final String PAN = "4111111111111111";
+
+    /** Purchase request with the fields our acquirers actually send. */
+    static ISOMsg authorizationRequest() throws Exception {
+        ISOMsg m = new ISOMsg();
+        m.setMTI("0200");
+        m.set(2, PAN);
+        m.set(3, "000000");
+        m.set(4, "000000012550");
+        m.set(7, "0118123045");
+        m.set(11, "123456");
+        m.set(12, "143045");
+        m.set(13, "0118");
+        m.set(14, "2812");
+        m.set(18, "5411");
+        m.set(22, "051");
+        m.set(25, "00");
+        m.set(32, "123456");
+        m.set(35, PAN + "=28121010000012300000");
+        m.set(37, "601812345678");
+        m.set(41, "TERM0001");
+        m.set(42, "MERCHANT0000001");
+        m.set(43, "CAPITEC TEST STORE     CAPE TOWN    WCZA");
+        m.set(49, "710");
+        return m;
+    }
+
+    static TransactionEntity transaction() {
+        return TransactionEntity.builder()
+                .mti("0200")
+                .pan(PAN)
+                .amount(new BigDecimal("125.50"))
+                .currency("ZAR")
+                .location("SOUTH-AFRICA")
+                .timestamp(OffsetDateTime.now())
+                .stan("123456")
+                .rrn("601812345678")
+                .terminalId("TERM0001")
+                .merchantId("MERCHANT0000001")
+                .build();
+    }
+
+    /**
+     * Repository stub: save/saveAll echo their input, counts return 0 and
+     * everything else returns null. Cheaper and more predictable than a mock.
+     */
+    static TransactionRepository stubRepository() {
+        return (TransactionRepository) Proxy.newProxyInstance(
+                TransactionRepository.class.getClassLoader(),
+                new Class<?>[] { TransactionRepository.class },
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.equals("save") || name.equals("saveAll"))
+                        return args[0];
+                    if (name.startsWith("count"))
+                        return 0L;
+                    if (name.equals("hashCode"))
+                        return System.identityHashCode(proxy);
+                    if (name.equals("equals"))
+                        return proxy == args[0];
+                    if (name.equals("toString"))
+                        return "StubTransactionRepository";
+                    return null;
+                });
+    }
+
+    static HighAmountRule highAmountRule() {
+        HighAmountRule rule = new HighAmountRule();
+        TestUtil.inject(rule, "enabled", true);
+        TestUtil.inject(rule, "threshold", new BigDecimal("1000"));
+        return rule;
+    }
+
+    static LocationRule locationRule() {
+        LocationRule rule = new LocationRule();
+        TestUtil.inject(rule, "enabled", true);
+        TestUtil.inject(rule, "risky", Set.of("UNKNOWN", "RISKY-COUNTRY", "NORTH-KOREA", "IRAN"));
+        TestUtil.inject(rule, "whitelist", Set.of("SOUTH-AFRICA", "NAMIBIA", "BOTSWANA"));
+        return rule;
+    }
+
+    /** Velocity backed by the in-memory store (production default). */
+    static VelocityRule velocityRule(TransactionRepository repo, VelocityCounterStore store) {
+        VelocityRule rule = new VelocityRule(repo, store);
+        TestUtil.inject(rule, "windowMinutes", 15);
+        TestUtil.inject(rule, "maxCount", 5);
+        return rule;
+    }
+
+    static VelocityCounterStore velocityStore() {
+        return new VelocityCounterStore(60, 60, 30);
+    }
+
+    static List<FraudRule> defaultRules(TransactionRepository repo, VelocityCounterStore store) {
+        return List.of(highAmountRule(), locationRule(), velocityRule(repo, store));
+    }
+}
@@ -0,0 +1,51 @@
+package capitec.fraudengine.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry point used by {@code mvn -Pjmh verify}. Runs the selected benchmarks
+ * twice: throughput in ops/s, then sampled latency in µs/op (p50..p99.99).
+ * Both passes attach the GC profiler (allocation rate, bytes/op) and write
+ * JSON results that can be diffed between versions.
+ * <p>
+ * Args: {@code [include-regex] [output-dir]}, defaults {@code .*} and
+ * {@code target/jmh}.
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String include = args.length > 0 && !args[0].isBlank() ? args[0] : ".*";
+        Path out = Path.of(args.length > 1 ? args[1] : "target/jmh");
+        Files.createDirectories(out);
+
+        new Runner(options(include)
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .result(out.resolve("throughput.json").toString())
+                .build()).run();
+
+        new Runner(options(include)
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .result(out.resolve("latency.json").toString())
+                .build()).run();
+    }
+
+    private static ChainedOptionsBuilder options(String include) {
+        return new OptionsBuilder()
+                .include(BenchmarkRunner.class.getPackageName() + "\\..*(" + include + ")")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON);
+    }
+}
@@ -0,0 +1,50 @@
+package capitec.fraudengine.benchmark;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.FraudDetectionService;
+import capitec.fraudengine.service.velocity.VelocityCounterStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+
+/** Full rule loop + DE39/DE44 stamping + observer fan-out, repository stubbed. */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FraudDetectionServiceBenchmark {
+
+    /** Distinct cardholders cycled through, so velocity sees realistic per-PAN counts. */
+    private static final int PANS = 10_000;
+
+    private FraudDetectionService service;
+    private String[] pans;
+    private int next;
+
+    @Setup
+    public void setup() {
+        TransactionRepository repo = BenchmarkFixtures.stubRepository();
+        VelocityCounterStore store = BenchmarkFixtures.velocityStore();
+        service = new FraudDetectionService(repo, BenchmarkFixtures.defaultRules(repo, store));
+        service.setObservers(List.of(store));
+        pans = new String[PANS];
+        for (int i = 0; i < PANS; i++)
+            pans[i] = String.format("411111%010d", i);
+    }
+
+    @Benchmark
+    public TransactionEntity process() {
+        // fresh entity per call: process() mutates flagged / DE39 / DE44
+        TransactionEntity tx = BenchmarkFixtures.transaction();
+        tx.setPan(pans[next]);
+        next = (next + 1) % PANS;
+        return service.process(tx);
+    }
+}
@@ -0,0 +1,66 @@
+package capitec.fraudengine.benchmark;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.rules.HighAmountRule;
+import capitec.fraudengine.service.rules.LocationRule;
+import capitec.fraudengine.service.rules.VelocityRule;
+import capitec.fraudengine.service.velocity.VelocityCounterStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Individual rules in isolation. {@code velocityRepository} measures the DB
+ * fallback path minus the database itself (stubbed count), i.e. the rule's own
+ * overhead.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FraudRuleBenchmark {
+
+    private TransactionEntity tx;
+    private HighAmountRule highAmount;
+    private LocationRule location;
+    private VelocityRule velocityStore;
+    private VelocityRule velocityRepository;
+
+    @Setup
+    public void setup() {
+        TransactionRepository repo = BenchmarkFixtures.stubRepository();
+        VelocityCounterStore store = BenchmarkFixtures.velocityStore();
+        tx = BenchmarkFixtures.transaction();
+        store.record(tx.getPan(), tx.getTimestamp().minusMinutes(1));
+
+        highAmount = BenchmarkFixtures.highAmountRule();
+        location = BenchmarkFixtures.locationRule();
+        velocityStore = BenchmarkFixtures.velocityRule(repo, store);
+        velocityRepository = BenchmarkFixtures.velocityRule(repo, null);
+    }
+
+    @Benchmark
+    public boolean highAmount() {
+        return highAmount.isFraudulent(tx);
+    }
+
+    @Benchmark
+    public boolean location() {
+        return location.isFraudulent(tx);
+    }
+
+    @Benchmark
+    public boolean velocityStore() {
+        return velocityStore.isFraudulent(tx);
+    }
+
+    @Benchmark
+    public boolean velocityRepository() {
+        return velocityRepository.isFraudulent(tx);
+    }
+}
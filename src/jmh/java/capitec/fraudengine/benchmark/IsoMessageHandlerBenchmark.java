@@ -0,0 +1,168 @@
+package capitec.fraudengine.benchmark;
+
+import capitec.fraudengine.iso.IsoFieldMapping;
+import capitec.fraudengine.iso.IsoMessageHandler;
+import capitec.fraudengine.iso.IsoUtils;
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.FraudDetectionService;
+import capitec.fraudengine.service.velocity.VelocityCounterStore;
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOMsg;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+
+/**
+ * {@link IsoMessageHandler#handle}: DE mapping into the entity, the rule
+ * pipeline and building the 0210. Repository stubbed, no socket or codec.
+ * <p>
+ * {@code mapFields} vs {@code mapFieldsPerFieldLookup} and
+ * {@code cloneRequest} compare the setter-table mapping and in-place response
+ * with the previous hasField/getString-per-DE mapping and deep-copied
+ * response; read {@code gc.alloc.rate.norm} (bytes/op) from the GC profiler.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IsoMessageHandlerBenchmark {
+
+    /** DEs handle() adds, replaces or removes when it turns the request into the 0210. */
+    private static final int[] RESPONSE_FIELDS = { 0, 7, 11, 39, 44, 56, 127 };
+
+    private IsoMessageHandler handler;
+    private ISOMsg request;
+    private ISOMsg original;
+
+    @Setup
+    public void setup() throws Exception {
+        TransactionRepository repo = BenchmarkFixtures.stubRepository();
+        VelocityCounterStore store = BenchmarkFixtures.velocityStore();
+        FraudDetectionService service = new FraudDetectionService(repo, BenchmarkFixtures.defaultRules(repo, store));
+        service.setObservers(List.of(store));
+        handler = new IsoMessageHandler(repo, service);
+        request = BenchmarkFixtures.authorizationRequest();
+        original = (ISOMsg) request.clone();
+    }
+
+    @Benchmark
+    public ISOMsg handle() throws Exception {
+        // handle() turns the request into the 0210; put back every field it
+        // touched (set() only swaps components, the originals are never mutated)
+        for (int f : RESPONSE_FIELDS) {
+            ISOComponent c = original.getComponent(f);
+            if (c != null)
+                request.set(c);
+            else
+                request.unset(f);
+        }
+        return handler.handle(request);
+    }
+
+    @Benchmark
+    public TransactionEntity mapFields() throws Exception {
+        return IsoFieldMapping.toEntity(request);
+    }
+
+    /** Baseline: the hasField/getString per DE the handler did before the setter table. */
+    @Benchmark
+    public TransactionEntity mapFieldsPerFieldLookup() {
+        return legacyToEntity(request);
+    }
+
+    /** Baseline: the deep copy the handler made to build the 0210. */
+    @Benchmark
+    public Object cloneRequest() {
+        return request.clone();
+    }
+
+    private static TransactionEntity legacyToEntity(ISOMsg req) {
+        String de7 = get(req, 7);
+        TransactionEntity tx = new TransactionEntity();
+        tx.setMti(get(req, 0));
+        tx.setTimestamp(IsoUtils.parseDe7OrNow(de7));
+        tx.setFlagged(false);
+        tx.setCategory(null);
+        String pan = get(req, 2);
+        if (pan == null)
+            pan = IsoUtils.extractPanFromTrack2(get(req, 35));
+        tx.setPan(pan);
+        tx.setDe3ProcessingCode(get(req, 3));
+        tx.setAmount(IsoUtils.parseAmount(get(req, 4)));
+        tx.setDe7TransmissionDateTime(de7);
+        tx.setStan(get(req, 11));
+        tx.setDe12LocalTransactionTime(get(req, 12));
+        tx.setDe13LocalTransactionDate(get(req, 13));
+        tx.setDe14ExpirationDate(get(req, 14));
+        tx.setDe15SettlementDate(get(req, 15));
+        tx.setDe18MerchantType(get(req, 18));
+        tx.setDe22PosEntryMode(get(req, 22));
+        tx.setDe23CardSequenceNumber(get(req, 23));
+        tx.setDe25PosConditionCode(get(req, 25));
+        tx.setDe32AcquiringInstIdCode(get(req, 32));
+        tx.setDe33ForwardingInstIdCode(get(req, 33));
+        tx.setDe35Track2Data(get(req, 35));
+        tx.setRrn(get(req, 37));
+        tx.setDe40ServiceRestrictionCode(get(req, 40));
+        tx.setTerminalId(get(req, 41));
+        tx.setMerchantId(get(req, 42));
+        tx.setLocation(get(req, 43));
+        tx.setCurrency(IsoUtils.currencyNumericToAlpha(get(req, 49)));
+        tx.setDe44AdditionalResponseData(get(req, 44));
+        tx.setDe45Track1Data(get(req, 45));
+        tx.setDe48AdditionalDataPrivate(get(req, 48));
+        tx.setDe52PinData(get(req, 52));
+        tx.setDe53SecurityControlInfo(get(req, 53));
+        tx.setDe54AdditionalAmounts(get(req, 54));
+        tx.setDe56OriginalDataElements(get(req, 56));
+        tx.setDe58AuthorizingAgentInstIdCode(get(req, 58));
+        tx.setDe59ReservedPrivate(get(req, 59));
+        tx.setDe66SettlementCode(get(req, 66));
+        tx.setDe70NetworkMgmtInfoCode(get(req, 70));
+        tx.setDe74CreditsNumber(get(req, 74));
+        tx.setDe75CreditsReversalNumber(get(req, 75));
+        tx.setDe76DebitsNumber(get(req, 76));
+        tx.setDe77DebitsReversalNumber(get(req, 77));
+        tx.setDe78TransferNumber(get(req, 78));
+        tx.setDe79TransferReversalNumber(get(req, 79));
+        tx.setDe80InquiriesNumber(get(req, 80));
+        tx.setDe81AuthorizationsNumber(get(req, 81));
+        tx.setDe82CreditsProcessingFeeAmount(get(req, 82));
+        tx.setDe83CreditsTransactionFeeAmount(get(req, 83));
+        tx.setDe84DebitsProcessingFeeAmount(get(req, 84));
+        tx.setDe85DebitsTransactionFeeAmount(get(req, 85));
+        tx.setDe86CreditsAmount(get(req, 86));
+        tx.setDe87CreditsReversalAmount(get(req, 87));
+        tx.setDe88DebitsAmount(get(req, 88));
+        tx.setDe89DebitsReversalAmount(get(req, 89));
+        tx.setDe90OriginalDataElements(get(req, 90));
+        tx.setDe91FileUpdateCode(get(req, 91));
+        tx.setDe95ReplacementAmounts(get(req, 95));
+        tx.setDe101FileName(get(req, 101));
+        tx.setDe102AccountId1(get(req, 102));
+        tx.setDe103AccountId2(get(req, 103));
+        tx.setDe110AdditionalDataIso(get(req, 110));
+        tx.setDe118InvoiceNumber(get(req, 118));
+        tx.setDe119TransactionDescription(get(req, 119));
+        tx.setDe123PosDataCode(get(req, 123));
+        tx.setDe127AdditionalDataPrivate(get(req, 127));
+        return tx;
+    }
+
+    private static String get(ISOMsg m, int f) {
+        if (!m.hasField(f))
+            return null;
+        try {
+            return m.getString(f);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package capitec.fraudengine.benchmark;
+
+import capitec.fraudengine.iso.FlatIsoCodec;
+import capitec.fraudengine.iso.FlatIsoMessage;
+import capitec.fraudengine.iso.Iso87AsciiBBitmapCustomPackager;
+import capitec.fraudengine.iso.IsoFieldMapping;
+import capitec.fraudengine.model.TransactionEntity;
+import org.jpos.iso.ISOMsg;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire codec: pack a 0200 and unpack the same bytes with the listener's
+ * packager, against the flat codec doing the same work.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IsoPackagerBenchmark {
+
+    private Iso87AsciiBBitmapCustomPackager packager;
+    private ISOMsg request;
+    private byte[] raw;
+    private FlatIsoCodec flat;
+
+    @Setup
+    public void setup() throws Exception {
+        packager = new Iso87AsciiBBitmapCustomPackager();
+        request = BenchmarkFixtures.authorizationRequest();
+        request.setPackager(packager);
+        raw = request.pack();
+        flat = FlatIsoCodec.forPackager(packager);
+    }
+
+    @Benchmark
+    public byte[] pack() throws Exception {
+        return packager.pack(request);
+    }
+
+    @Benchmark
+    public ISOMsg unpack() throws Exception {
+        ISOMsg m = new ISOMsg();
+        packager.unpack(m, raw);
+        return m;
+    }
+
+    @Benchmark
+    public FlatIsoMessage flatDecode() throws Exception {
+        return flat.decode(ByteBuffer.wrap(raw));
+    }
+
+    @Benchmark
+    public TransactionEntity flatDecodeAndMap() throws Exception {
+        return IsoFieldMapping.toEntity(flat.decode(ByteBuffer.wrap(raw)));
+    }
+
+    /** Request bytes in, 0210 bytes out, the way the netty listener does it with iso8583.codec=flat. */
+    @Benchmark
+    public byte[] flatRoundTrip() throws Exception {
+        FlatIsoMessage m = flat.decode(ByteBuffer.wrap(raw));
+        m.setResponseMTI();
+        m.set(39, "05");
+        m.set(44, "[\"HIGH_AMOUNT\"]");
+        return flat.encode(m);
+    }
+
+    /** Baseline for {@link #flatRoundTrip()}. */
+    @Benchmark
+    public byte[] jposRoundTrip() throws Exception {
+        ISOMsg m = new ISOMsg();
+        packager.unpack(m, raw);
+        m.setResponseMTI();
+        m.set(39, "05");
+        m.set(44, "[\"HIGH_AMOUNT\"]");
+        return packager.pack(m);
+    }
+}
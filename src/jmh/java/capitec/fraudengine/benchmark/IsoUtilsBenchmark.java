@@ -0,0 +1,51 @@
+package capitec.fraudengine.benchmark;
+
+import capitec.fraudengine.iso.IsoUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/** Per-field helpers called on every request by IsoMessageHandler. */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IsoUtilsBenchmark {
+
+    // non-final so the JIT cannot constant-fold the inputs
+    private String de4 = "000000012550";
+    private String de7 = "0118123045";
+    private String track2 = BenchmarkFixtures.PAN + "=28121010000012300000";
+    private String de49 = "710";
+
+    @Benchmark
+    public BigDecimal parseAmount() {
+        return IsoUtils.parseAmount(de4);
+    }
+
+    @Benchmark
+    public OffsetDateTime parseDe7OrNow() {
+        return IsoUtils.parseDe7OrNow(de7);
+    }
+
+    @Benchmark
+    public String utcDe7Now() {
+        return IsoUtils.utcDe7Now();
+    }
+
+    @Benchmark
+    public String extractPanFromTrack2() {
+        return IsoUtils.extractPanFromTrack2(track2);
+    }
+
+    @Benchmark
+    public String currencyNumericToAlpha() {
+        return IsoUtils.currencyNumericToAlpha(de49);
+    }
+}
@@ -0,0 +1,149 @@
+
+package capitec.fraudengine.loadgen;
+
+import capitec.fraudengine.iso.IsoPackagerConfig;
+import org.HdrHistogram.Histogram;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.channel.PostChannel;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One {@link PostChannel} connection, one request at a time.
+ * <p>
+ * Closed mode sends the next request as soon as the previous answer is in.
+ * Open mode sends on a fixed schedule and measures each response from the
+ * time the request was <em>due</em>, not from when it could actually be
+ * written: when the server stalls, the requests that should have gone out
+ * during the stall are charged the time they waited. That is the
+ * coordinated-omission correction; without it a stall shows up as one slow
+ * sample instead of hundreds. Service time (write to answer) is kept as well.
+ * <p>
+ * Only requests due inside the measured window are recorded; results are
+ * read after the thread has finished.
+ */
+final class ConnectionDriver implements Runnable {
+
+    private final int id;
+    private final LoadOptions options;
+    private final String host;
+    private final int port;
+    private final TrafficSource traffic;
+    private final AtomicLong sequence;
+    private final long firstDueNanos;
+    private final long measureFromNanos;
+    private final long endNanos;
+
+    /** Due time to answer, µs; open mode only. */
+    final Histogram responseTime = new Histogram(3);
+    /** Write to answer, µs. */
+    final Histogram serviceTime = new Histogram(3);
+    final Map<String, Long> responseCodes = new HashMap<>();
+    long timeouts;
+    long errors;
+    long lastAnswerNanos;
+
+    ConnectionDriver(int id, LoadOptions options, String host, int port, TrafficSource traffic, AtomicLong sequence,
+            long startNanos, long measureFromNanos, long endNanos) {
+        this.id = id;
+        this.options = options;
+        this.host = host;
+        this.port = port;
+        this.traffic = traffic;
+        this.sequence = sequence;
+        // spread the connections' schedules over one interval instead of firing together
+        this.firstDueNanos = startNanos + (options.mode == LoadOptions.Mode.OPEN
+                ? options.intervalNanos() * id / options.connections : 0);
+        this.measureFromNanos = measureFromNanos;
+        this.endNanos = endNanos;
+    }
+
+    @Override
+    public void run() {
+        boolean open = options.mode == LoadOptions.Mode.OPEN;
+        long interval = open ? options.intervalNanos() : 0;
+        long due = firstDueNanos;
+        PostChannel channel = null;
+        try {
+            while (true) {
+                if (open) {
+                    waitUntil(due);
+                } else {
+                    due = System.nanoTime();
+                }
+                if (due - endNanos >= 0)
+                    break;
+                if (channel == null)
+                    channel = connect();
+
+                boolean measured = due - measureFromNanos >= 0;
+                long sent = System.nanoTime();
+                try {
+                    channel.send(traffic.next(sequence.getAndIncrement()));
+                    ISOMsg response = channel.receive();
+                    long answered = System.nanoTime();
+                    if (measured) {
+                        serviceTime.recordValue((answered - sent) / 1000);
+                        if (open)
+                            responseTime.recordValue((answered - due) / 1000);
+                        responseCodes.merge(String.valueOf(response.getString(39)), 1L, Long::sum);
+                        lastAnswerNanos = answered;
+                    }
+                } catch (SocketTimeoutException e) {
+                    if (measured)
+                        timeouts++;
+                    channel = disconnect(channel);
+                } catch (IOException | ISOException e) {
+                    if (measured)
+                        errors++;
+                    channel = disconnect(channel);
+                }
+                due += interval;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("connection " + id + " could not connect to " + host + ":" + port, e);
+        } finally {
+            disconnect(channel);
+        }
+    }
+
+    /** Connect, retrying for a few seconds while an embedded listener comes up. */
+    private PostChannel connect() throws IOException {
+        long giveUp = System.nanoTime() + 10_000_000_000L;
+        while (true) {
+            PostChannel channel = new PostChannel(host, port, IsoPackagerConfig.defaultPackager());
+            channel.setTimeout(options.timeoutMillis);
+            try {
+                channel.connect();
+                return channel;
+            } catch (IOException e) {
+                if (System.nanoTime() - giveUp >= 0)
+                    throw e;
+                LockSupport.parkNanos(200_000_000L);
+            }
+        }
+    }
+
+    private static PostChannel disconnect(PostChannel channel) {
+        if (channel != null) {
+            try {
+                channel.disconnect();
+            } catch (IOException ignored) {
+                // the server side is gone already
+            }
+        }
+        return null;
+    }
+
+    private static void waitUntil(long due) {
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0)
+            LockSupport.parkNanos(wait);
+    }
+}
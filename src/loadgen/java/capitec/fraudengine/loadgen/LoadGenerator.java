@@ -0,0 +1,120 @@
+
+package capitec.fraudengine.loadgen;
+
+import capitec.fraudengine.FraudengineApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Entry point used by {@code mvn -Ploadgen verify}: sustained ISO-8583 load
+ * on the listener, with a latency / decline report at the end.
+ * <p>
+ * Without {@code host=} the application is started in this JVM on a free
+ * port against an in-memory H2 database (PostgreSQL mode, as in the tests),
+ * so nothing else needs to run; {@code db-url=} points it at a real database
+ * instead. Options are described on {@link LoadOptions}.
+ */
+public final class LoadGenerator {
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+        TrafficSource traffic = options.replay != null
+                ? new ReplayTraffic(options.replay, options.restamp)
+                : new SyntheticTraffic(options.cards, options.terminals, options.riskyShare, options.seed);
+
+        ConfigurableApplicationContext app = null;
+        String host = options.host;
+        int port = options.port;
+        if (options.embedded()) {
+            host = "localhost";
+            port = freePort();
+            app = startEmbedded(options, port);
+        }
+
+        boolean failed = false;
+        try {
+            LoadReport report = run(options, host, port, traffic);
+            report.print(System.out);
+            report.write(options.out);
+        } catch (ExecutionException e) {
+            System.err.println("Load run failed: " + e.getCause().getMessage());
+            failed = true;
+        } finally {
+            if (app != null)
+                app.close();
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static LoadReport run(LoadOptions options, String host, int port, TrafficSource traffic)
+            throws InterruptedException, ExecutionException {
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        AtomicLong sequence = new AtomicLong();
+
+        List<ConnectionDriver> drivers = new ArrayList<>(options.connections);
+        for (int i = 0; i < options.connections; i++)
+            drivers.add(new ConnectionDriver(i, options, host, port, traffic, sequence, start, measureFrom, end));
+
+        System.out.printf("Driving %s:%d for %ds (+%ds warm-up), %s%n", host, port, options.durationSeconds,
+                options.warmupSeconds, traffic.describe());
+        ExecutorService threads = Executors.newFixedThreadPool(options.connections);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (ConnectionDriver d : drivers)
+                running.add(threads.submit(d));
+            for (Future<?> f : running)
+                f.get();
+        } finally {
+            threads.shutdownNow();
+        }
+        return new LoadReport(options, traffic, drivers);
+    }
+
+    private static ConfigurableApplicationContext startEmbedded(LoadOptions options, int port) {
+        List<String> args = new ArrayList<>();
+        if (options.dbUrl.isBlank()) {
+            args.add("--spring.datasource.url=jdbc:h2:mem:loadgen;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                    + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1");
+            args.add("--spring.datasource.driver-class-name=org.h2.Driver");
+            args.add("--spring.datasource.username=sa");
+            args.add("--spring.datasource.password=");
+            // H2 has no jsonb for the transaction_details document
+            args.add("--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect");
+        } else {
+            args.add("--spring.datasource.url=" + options.dbUrl);
+            args.add("--spring.datasource.driver-class-name=");
+        }
+        args.add("--spring.jpa.show-sql=false");
+        args.add("--iso8583.listener.port=" + port);
+        if (!options.serverMode.isBlank())
+            args.add("--iso8583.listener.mode=" + options.serverMode);
+        args.add("--logging.level.capitec.fraudengine=WARN");
+        // devtools would restart by re-running LoadGenerator.main with the Spring args above
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        return new SpringApplicationBuilder(FraudengineApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(String[]::new));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+
+package capitec.fraudengine.loadgen;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command line of {@link LoadGenerator}: {@code key=value} pairs, any order.
+ *
+ * <pre>
+ *   host=            listener to drive; empty starts the app in-process on H2
+ *   port=8037        listener port (ignored when embedded)
+ *   connections=4    concurrent PostChannel connections
+ *   mode=closed      closed: each connection sends as soon as it has its answer
+ *                    open:   constant aggregate rate, independent of response times
+ *   rate=500         open mode: requests/s over all connections
+ *   duration=30      measured seconds
+ *   warmup=10        seconds of load before measuring
+ *   timeout-ms=5000  receive timeout; a timed-out connection reconnects
+ *   replay=          recorded traffic (hex frames or iso.trace JSON lines); empty synthesizes
+ *   restamp=true     replay: new DE7/DE11/DE37 per send so repeats look like new traffic
+ *   cards=100000     synthetic: distinct PANs
+ *   terminals=2000   synthetic: distinct terminals
+ *   risky-share=0.01 synthetic: share sent from a risky location
+ *   seed=42          synthetic: random seed
+ *   server-mode=     embedded: iso8583.listener.mode (classic|virtual|netty)
+ *   db-url=          embedded: JDBC URL instead of in-memory H2
+ *   out=target/loadgen
+ * </pre>
+ */
+final class LoadOptions {
+
+    enum Mode { OPEN, CLOSED }
+
+    private static final Set<String> KEYS = Set.of("host", "port", "connections", "mode", "rate", "duration",
+            "warmup", "timeout-ms", "replay", "restamp", "cards", "terminals", "risky-share", "seed",
+            "server-mode", "db-url", "out");
+
+    final String host;
+    final int port;
+    final int connections;
+    final Mode mode;
+    final double rate;
+    final int durationSeconds;
+    final int warmupSeconds;
+    final int timeoutMillis;
+    final Path replay;
+    final boolean restamp;
+    final int cards;
+    final int terminals;
+    final double riskyShare;
+    final long seed;
+    final String serverMode;
+    final String dbUrl;
+    final Path out;
+
+    private LoadOptions(Map<String, String> a) {
+        host = a.getOrDefault("host", "");
+        port = Integer.parseInt(a.getOrDefault("port", "8037"));
+        connections = Integer.parseInt(a.getOrDefault("connections", "4"));
+        mode = Mode.valueOf(a.getOrDefault("mode", "closed").toUpperCase());
+        rate = Double.parseDouble(a.getOrDefault("rate", "500"));
+        durationSeconds = Integer.parseInt(a.getOrDefault("duration", "30"));
+        warmupSeconds = Integer.parseInt(a.getOrDefault("warmup", "10"));
+        timeoutMillis = Integer.parseInt(a.getOrDefault("timeout-ms", "5000"));
+        String r = a.getOrDefault("replay", "");
+        replay = r.isBlank() ? null : Path.of(r);
+        restamp = Boolean.parseBoolean(a.getOrDefault("restamp", "true"));
+        cards = Integer.parseInt(a.getOrDefault("cards", "100000"));
+        terminals = Integer.parseInt(a.getOrDefault("terminals", "2000"));
+        riskyShare = Double.parseDouble(a.getOrDefault("risky-share", "0.01"));
+        seed = Long.parseLong(a.getOrDefault("seed", "42"));
+        serverMode = a.getOrDefault("server-mode", "");
+        dbUrl = a.getOrDefault("db-url", "");
+        out = Path.of(a.getOrDefault("out", "target/loadgen"));
+
+        if (connections < 1)
+            throw new IllegalArgumentException("connections must be >= 1");
+        if (mode == Mode.OPEN && rate <= 0)
+            throw new IllegalArgumentException("rate must be > 0 in open mode");
+        if (durationSeconds < 1 || warmupSeconds < 0)
+            throw new IllegalArgumentException("duration must be >= 1 and warmup >= 0");
+        if (cards < 1 || terminals < 1)
+            throw new IllegalArgumentException("cards and terminals must be >= 1");
+    }
+
+    static LoadOptions parse(String[] args) {
+        Map<String, String> a = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.isBlank())
+                continue;
+            int eq = arg.indexOf('=');
+            if (eq <= 0)
+                throw new IllegalArgumentException("expected key=value, got " + arg);
+            String key = arg.substring(0, eq).trim();
+            if (!KEYS.contains(key))
+                throw new IllegalArgumentException("unknown option " + key + ", expected one of " + KEYS);
+            a.put(key, arg.substring(eq + 1).trim());
+        }
+        return new LoadOptions(a);
+    }
+
+    boolean embedded() {
+        return host.isBlank();
+    }
+
+    /** Open mode: nanoseconds between sends on one connection. */
+    long intervalNanos() {
+        return (long) (1_000_000_000L * connections / rate);
+    }
+
+    Map<String, Object> describe() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("target", embedded() ? "embedded" + (serverMode.isBlank() ? "" : " (" + serverMode + ")")
+                : host + ":" + port);
+        m.put("connections", connections);
+        m.put("mode", mode.name().toLowerCase());
+        if (mode == Mode.OPEN)
+            m.put("rate", rate);
+        m.put("durationSeconds", durationSeconds);
+        m.put("warmupSeconds", warmupSeconds);
+        m.put("traffic", replay == null ? "synthetic (cards=" + cards + ", terminals=" + terminals + ")"
+                : "replay " + replay);
+        return m;
+    }
+}
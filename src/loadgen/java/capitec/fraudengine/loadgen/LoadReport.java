@@ -0,0 +1,92 @@
+
+package capitec.fraudengine.loadgen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Results of one run, merged over all connections: throughput, latency
+ * percentiles in ms, DE39 counts and the decline ratio (05 over all answers).
+ * In open mode {@code responseTime} is the corrected latency and the one to
+ * compare with a latency budget; {@code serviceTime} alone understates it
+ * whenever the server falls behind.
+ */
+final class LoadReport {
+
+    private static final Map<String, Double> PERCENTILES = new LinkedHashMap<>();
+
+    static {
+        PERCENTILES.put("p50", 50.0);
+        PERCENTILES.put("p90", 90.0);
+        PERCENTILES.put("p99", 99.0);
+        PERCENTILES.put("p999", 99.9);
+        PERCENTILES.put("max", 100.0);
+    }
+
+    private final Map<String, Object> body = new LinkedHashMap<>();
+
+    LoadReport(LoadOptions options, TrafficSource traffic, List<ConnectionDriver> drivers) {
+        Histogram response = new Histogram(3);
+        Histogram service = new Histogram(3);
+        Map<String, Long> codes = new TreeMap<>();
+        long timeouts = 0;
+        long errors = 0;
+        for (ConnectionDriver d : drivers) {
+            response.add(d.responseTime);
+            service.add(d.serviceTime);
+            d.responseCodes.forEach((code, n) -> codes.merge(code, n, Long::sum));
+            timeouts += d.timeouts;
+            errors += d.errors;
+        }
+        long answers = service.getTotalCount();
+        long declines = codes.getOrDefault("05", 0L);
+
+        body.put("options", options.describe());
+        body.put("traffic", traffic.describe());
+        body.put("requests", answers + timeouts + errors);
+        body.put("answers", answers);
+        body.put("timeouts", timeouts);
+        body.put("errors", errors);
+        body.put("throughputPerSecond", round((double) answers / options.durationSeconds));
+        if (options.mode == LoadOptions.Mode.OPEN) {
+            body.put("targetRatePerSecond", options.rate);
+            body.put("responseTimeMs", percentiles(response));
+        }
+        body.put("serviceTimeMs", percentiles(service));
+        body.put("responseCodes", codes);
+        body.put("declineRatio", answers == 0 ? 0.0 : round((double) declines / answers));
+    }
+
+    void print(PrintStream out) {
+        out.println();
+        out.println("=== load generator ===");
+        body.forEach((k, v) -> out.printf("  %-20s %s%n", k, v));
+    }
+
+    void write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(dir.resolve("report.json").toFile(), body);
+    }
+
+    private static Map<String, Double> percentiles(Histogram h) {
+        Map<String, Double> m = new LinkedHashMap<>();
+        PERCENTILES.forEach((name, p) ->
+                m.put(name, h.getTotalCount() == 0 ? 0.0 : round(h.getValueAtPercentile(p) / 1000.0)));
+        return m;
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,107 @@
+
+package capitec.fraudengine.loadgen;
+
+import capitec.fraudengine.iso.IsoPackagerConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.jpos.iso.ISOUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recorded requests, sent in file order and repeated from the top when the
+ * run outlasts the file. Two line formats are read, mixed if need be:
+ * <ul>
+ * <li>a hex-encoded frame without the length prefix, as packed by the
+ * listener's packager ({@code #} starts a comment);</li>
+ * <li>an {@code iso.trace} JSON line; only {@code "event":"request"} lines
+ * are used. Traces written with PAN masking on still replay: masked digits
+ * become {@code 0} and redacted fields are left out.</li>
+ * </ul>
+ */
+final class ReplayTraffic implements TrafficSource {
+
+    private final Path file;
+    private final List<ISOMsg> requests;
+    private final boolean restamp;
+
+    ReplayTraffic(Path file, boolean restamp) throws IOException {
+        this.file = file;
+        this.restamp = restamp;
+        this.requests = load(file, IsoPackagerConfig.defaultPackager());
+        if (requests.isEmpty())
+            throw new IllegalArgumentException("No requests in " + file);
+    }
+
+    @Override
+    public ISOMsg next(long seq) throws ISOException {
+        ISOMsg m = (ISOMsg) requests.get((int) (seq % requests.size())).clone();
+        if (restamp)
+            TrafficSource.stamp(m, seq);
+        return m;
+    }
+
+    @Override
+    public String describe() {
+        return "replay of " + requests.size() + " requests from " + file + (restamp ? " (restamped)" : "");
+    }
+
+    private static List<ISOMsg> load(Path file, ISOPackager packager) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<ISOMsg> out = new ArrayList<>();
+        int lineNo = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                try {
+                    ISOMsg m = line.startsWith("{") ? fromTrace(mapper.readTree(line)) : fromHex(line, packager);
+                    if (m != null)
+                        out.add(m);
+                } catch (ISOException | IOException | RuntimeException e) {
+                    throw new IllegalArgumentException(file + ":" + lineNo + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return out;
+    }
+
+    private static ISOMsg fromHex(String hex, ISOPackager packager) throws ISOException {
+        ISOMsg m = new ISOMsg();
+        m.setPackager(packager);
+        m.unpack(ISOUtil.hex2byte(hex.replace(" ", "")));
+        m.setPackager(null);
+        return m;
+    }
+
+    private static ISOMsg fromTrace(JsonNode line) throws ISOException {
+        if (!"request".equals(line.path("event").asText()))
+            return null;
+        ISOMsg m = new ISOMsg();
+        m.setMTI(line.path("mti").asText());
+        Iterator<Map.Entry<String, JsonNode>> fields = line.path("fields").fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> f = fields.next();
+            int no = Integer.parseInt(f.getKey());
+            String v = f.getValue().asText();
+            if (no <= 1 || v.contains("<redacted"))
+                continue;
+            m.set(no, no == 2 ? v.replace('*', '0') : v);
+        }
+        return m;
+    }
+}
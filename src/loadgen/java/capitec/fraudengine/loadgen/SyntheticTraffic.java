@@ -0,0 +1,130 @@
+
+package capitec.fraudengine.loadgen;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 0200 purchases with shapes close to card-present traffic:
+ * <ul>
+ * <li>cards are mildly skewed (Zipf, s=0.5): most cards appear a few times,
+ * a few appear often enough to reach the velocity limit;</li>
+ * <li>terminals are strongly skewed (Zipf, s=1.0): a handful of busy
+ * merchants carry much of the volume;</li>
+ * <li>amounts are log-normal around R180, so a few percent exceed the default
+ * high-amount threshold;</li>
+ * <li>{@code risky-share} of requests carry a risky DE43.</li>
+ * </ul>
+ * Request {@code seq} is derived from {@code seed} and {@code seq} alone, so a
+ * run is reproducible whatever the number of connections.
+ */
+final class SyntheticTraffic implements TrafficSource {
+
+    private static final String[] BINS = { "411111", "427655", "516321", "535110", "490220" };
+    private static final String[] STORES = { "CAPITEC TEST STORE", "CORNER SPAR", "FUEL STOP", "PHARMA PLUS",
+            "BOOK NOOK", "CAFE ROMA" };
+    private static final String[] CITIES = { "CAPE TOWN", "JOHANNESBURG", "DURBAN", "PRETORIA", "GQEBERHA",
+            "BLOEMFONTEIN" };
+    private static final String RISKY_LOCATION = "RISKY-COUNTRY";
+    private static final double AMOUNT_MEDIAN = 180.0;
+    private static final double AMOUNT_SIGMA = 0.9;
+    private static final long AMOUNT_CAP_CENTS = 5_000_000;
+
+    private final long seed;
+    private final double riskyShare;
+    private final double[] cardCdf;
+    private final double[] terminalCdf;
+
+    SyntheticTraffic(int cards, int terminals, double riskyShare, long seed) {
+        this.seed = seed;
+        this.riskyShare = riskyShare;
+        this.cardCdf = zipfCdf(cards, 0.5);
+        this.terminalCdf = zipfCdf(terminals, 1.0);
+    }
+
+    @Override
+    public ISOMsg next(long seq) throws ISOException {
+        SplittableRandom rnd = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + seq);
+        int card = sample(cardCdf, rnd.nextDouble());
+        int terminal = sample(terminalCdf, rnd.nextDouble());
+        long cents = Math.min(AMOUNT_CAP_CENTS,
+                Math.max(100, Math.round(100 * AMOUNT_MEDIAN * Math.exp(AMOUNT_SIGMA * gaussian(rnd)))));
+        String pan = pan(card);
+
+        ISOMsg m = new ISOMsg();
+        m.setMTI("0200");
+        m.set(2, pan);
+        m.set(3, "000000");
+        m.set(4, String.format("%012d", cents));
+        TrafficSource.stamp(m, seq);
+        m.set(14, "2812");
+        m.set(18, "5411");
+        m.set(22, "051");
+        m.set(25, "00");
+        m.set(32, "123456");
+        m.set(35, pan + "=28121010000012300000");
+        m.set(41, String.format("T%07d", terminal));
+        m.set(42, String.format("M%014d", terminal / 4));
+        m.set(43, rnd.nextDouble() < riskyShare ? RISKY_LOCATION : location(terminal));
+        m.set(49, "710");
+        return m;
+    }
+
+    @Override
+    public String describe() {
+        return "synthetic (" + cardCdf.length + " cards, " + terminalCdf.length + " terminals, risky share "
+                + riskyShare + ", seed " + seed + ")";
+    }
+
+    /** DE43: name (23), city (13), region (2), country (2). */
+    private static String location(int terminal) {
+        String name = STORES[terminal % STORES.length] + " " + terminal;
+        String city = CITIES[terminal % CITIES.length];
+        return pad(name, 23) + pad(city, 13) + "WC" + "ZA";
+    }
+
+    private static String pad(String s, int len) {
+        return s.length() >= len ? s.substring(0, len) : s + " ".repeat(len - s.length());
+    }
+
+    /** 16-digit PAN for card number {@code card}, with a valid Luhn check digit. */
+    static String pan(int card) {
+        String body = BINS[card % BINS.length] + String.format("%09d", card);
+        int sum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            int d = body.charAt(body.length() - 1 - i) - '0';
+            if (i % 2 == 0) {
+                d *= 2;
+                if (d > 9)
+                    d -= 9;
+            }
+            sum += d;
+        }
+        return body + (10 - sum % 10) % 10;
+    }
+
+    private static double[] zipfCdf(int n, double s) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int k = 0; k < n; k++) {
+            total += 1 / Math.pow(k + 1, s);
+            cdf[k] = total;
+        }
+        for (int k = 0; k < n; k++)
+            cdf[k] /= total;
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, double u) {
+        int i = Arrays.binarySearch(cdf, u);
+        return Math.min(cdf.length - 1, i >= 0 ? i : -i - 1);
+    }
+
+    /** Standard normal (Box-Muller). */
+    private static double gaussian(SplittableRandom rnd) {
+        return Math.sqrt(-2 * Math.log(1 - rnd.nextDouble())) * Math.cos(2 * Math.PI * rnd.nextDouble());
+    }
+}
@@ -0,0 +1,42 @@
+
+package capitec.fraudengine.loadgen;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Requests for the load generator. Implementations are shared by every
+ * connection, so {@link #next(long)} must be thread-safe.
+ */
+interface TrafficSource {
+
+    DateTimeFormatter DE7 = DateTimeFormatter.ofPattern("MMddHHmmss");
+    DateTimeFormatter DE12 = DateTimeFormatter.ofPattern("HHmmss");
+    DateTimeFormatter DE13 = DateTimeFormatter.ofPattern("MMdd");
+
+    /** RRN prefix, so runs against the same database do not reuse RRNs. */
+    String RUN = String.format("%05d", System.currentTimeMillis() / 1000 % 100_000);
+
+    /** Request number {@code seq} (0, 1, 2, ... across all connections). */
+    ISOMsg next(long seq) throws ISOException;
+
+    String describe();
+
+    /**
+     * Give the message a fresh DE7/DE12/DE13 and a STAN / RRN unique to
+     * {@code seq} within this run, so repeated sends are neither duplicates nor stale for the
+     * velocity window.
+     */
+    static void stamp(ISOMsg m, long seq) throws ISOException {
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        m.set(7, DE7.format(now));
+        m.set(11, String.format("%06d", seq % 999_999 + 1));
+        m.set(12, DE12.format(now));
+        m.set(13, DE13.format(now));
+        m.set(37, RUN + String.format("%07d", seq % 10_000_000));
+    }
+}
@@ -0,0 +1,109 @@
+
+package capitec.fraudengine.config;
+
+import capitec.fraudengine.service.persistence.RoutingDataSource;
+import capitec.fraudengine.service.persistence.RoutingDataSource.Route;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Separate Hikari pools for authorization writes, authorization reads and
+ * reporting, behind one {@link RoutingDataSource} (see there for how a
+ * connection picks its pool). Every pool starts from the
+ * {@code spring.datasource.*} settings; the reporting pool, and optionally
+ * the authorization-read pool, point at {@code fraud.datasource.replica.url}
+ * when it is set. The pools are beans, so Actuator publishes
+ * {@code hikaricp.connections.*} for each, tagged with its pool name.
+ * <p>
+ * Off by default: the single auto-configured pool is used.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "fraud.datasource.routing.enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    private final DataSourceProperties properties;
+    private final Environment env;
+
+    @Value("${fraud.datasource.replica.url:}")
+    private String replicaUrl;
+
+    @Value("${fraud.datasource.replica.username:}")
+    private String replicaUsername;
+
+    @Value("${fraud.datasource.replica.password:}")
+    private String replicaPassword;
+
+    public DataSourceRoutingConfig(DataSourceProperties properties, Environment env) {
+        this.properties = properties;
+        this.env = env;
+    }
+
+    @Bean
+    public HikariDataSource authWriteDataSource(
+            @Value("${fraud.datasource.pools.auth-write.max-size:10}") int maxSize) {
+        return pool("fraud-auth-write", maxSize, false, false);
+    }
+
+    @Bean
+    public HikariDataSource authReadDataSource(
+            @Value("${fraud.datasource.pools.auth-read.max-size:10}") int maxSize,
+            @Value("${fraud.datasource.pools.auth-read.replica:false}") boolean replica) {
+        return pool("fraud-auth-read", maxSize, replica, true);
+    }
+
+    @Bean
+    public HikariDataSource reportingDataSource(
+            @Value("${fraud.datasource.pools.reporting.max-size:4}") int maxSize,
+            @Value("${fraud.datasource.pools.reporting.replica:true}") boolean replica) {
+        return pool("fraud-reporting", maxSize, replica, true);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("authWriteDataSource") DataSource authWrite,
+            @Qualifier("authReadDataSource") DataSource authRead,
+            @Qualifier("reportingDataSource") DataSource reporting) {
+        RoutingDataSource routing = new RoutingDataSource();
+        routing.setTargetDataSources(Map.of(
+                Route.AUTH_WRITE, authWrite,
+                Route.AUTH_READ, authRead,
+                Route.REPORTING, reporting));
+        routing.setDefaultTargetDataSource(authWrite);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    private HikariDataSource pool(String name, int maxSize, boolean replica, boolean readOnly) {
+        HikariDataSource ds = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        // same spring.datasource.hikari.* settings as the auto-configured pool, then this pool's own
+        Binder.get(env).bind("spring.datasource.hikari", Bindable.ofInstance(ds));
+        boolean onReplica = replica && !replicaUrl.isBlank();
+        if (onReplica) {
+            ds.setJdbcUrl(replicaUrl);
+            if (!replicaUsername.isBlank()) {
+                ds.setUsername(replicaUsername);
+                ds.setPassword(replicaPassword);
+            }
+        }
+        ds.setPoolName(name);
+        ds.setMaximumPoolSize(maxSize);
+        ds.setReadOnly(readOnly);
+        log.info("Connection pool {}: {} connections on the {}", name, maxSize, onReplica ? "replica" : "primary");
+        return ds;
+    }
+}
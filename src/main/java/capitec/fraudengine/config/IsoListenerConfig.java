@@ -1,19 +1,67 @@
 
 package capitec.fraudengine.config;
 
+import capitec.fraudengine.iso.FlatIsoCodec;
+import capitec.fraudengine.iso.IsoListener;
 import capitec.fraudengine.iso.IsoMessageHandler;
+import capitec.fraudengine.iso.IsoMetrics;
 import capitec.fraudengine.iso.IsoPackagerConfig;
 import capitec.fraudengine.iso.IsoServer;
+import capitec.fraudengine.iso.IsoTracer;
+import capitec.fraudengine.iso.NettyIsoServer;
+import capitec.fraudengine.iso.RetransmissionIndex;
 import capitec.fraudengine.repository.TransactionRepository;
 import capitec.fraudengine.service.FraudDetectionService;
+import capitec.fraudengine.service.standin.StandInAuthorizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jpos.iso.ISOBasePackager;
 import org.jpos.iso.ISOPackager;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.Nullable;
+
+import java.util.Set;
 
 @Configuration
 public class IsoListenerConfig {
 
+    @Bean
+    public IsoMetrics isoMetrics(MeterRegistry registry) {
+        return new IsoMetrics(registry);
+    }
+
+    /**
+     * Sampled message trace (iso8583.trace.*), off by default. Terminal and PAN
+     * filters are comma-separated; when both are empty every message is eligible.
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public IsoTracer isoTracer(@Value("${iso8583.trace.enabled:false}") boolean enabled,
+            @Value("${iso8583.trace.sample-rate:1.0}") double sampleRate,
+            @Value("${iso8583.trace.terminals:}") Set<String> terminals,
+            @Value("${iso8583.trace.pans:}") Set<String> pans,
+            @Value("${iso8583.trace.mask-pan:true}") boolean maskPan,
+            @Value("${iso8583.trace.buffer-size:4096}") int bufferSize) {
+        return new IsoTracer(enabled, sampleRate, terminals, pans, maskPan, bufferSize);
+    }
+
+    /**
+     * Retransmission matching (iso8583.dedupe.*), on by default: a repeat of a
+     * request seen within ttl-seconds is answered with the first decision. A
+     * repeat of a request still running waits at most wait-ms (default: the
+     * stand-in budget) before it is answered 91.
+     */
+    @Bean
+    public RetransmissionIndex retransmissionIndex(@Value("${iso8583.dedupe.enabled:true}") boolean enabled,
+            @Value("${iso8583.dedupe.ttl-seconds:120}") long ttlSeconds,
+            @Value("${iso8583.dedupe.max-entries:500000}") long maxEntries,
+            @Value("${iso8583.dedupe.wait-ms:${fraud.standin.budget-ms:150}}") long waitMs,
+            MeterRegistry registry) {
+        if (!enabled)
+            return RetransmissionIndex.disabled();
+        return new RetransmissionIndex(ttlSeconds, maxEntries, waitMs, registry);
+    }
+
     @Bean
     public ISOPackager isoPackager() {
         return IsoPackagerConfig.defaultPackager();
@@ -22,21 +70,47 @@ public class IsoListenerConfig {
     /**
      * ISO message handler: maps ISOMsg → TransactionEntity,
      * runs fraud rules via FraudDetectionService, persists and builds response.
+     * With fraud.standin.enabled the decision is bounded by the stand-in budget.
      */
     @Bean
     public IsoMessageHandler isoMessageHandler(TransactionRepository repo,
-            FraudDetectionService fraudService) {
-        return new IsoMessageHandler(repo, fraudService);
+            FraudDetectionService fraudService, IsoMetrics metrics, @Nullable StandInAuthorizer standIn,
+            RetransmissionIndex retransmissions) {
+        return new IsoMessageHandler(repo, fraudService, metrics, standIn, retransmissions);
     }
 
     /**
      * ISO server: listens on iso8583.listener.port and delegates to handler.
      * Starts automatically on app startup and shuts down on context close.
+     * iso8583.listener.mode selects classic (thread per connection), virtual
+     * (pipelined, virtual thread per request, bounded by max-in-flight) or
+     * netty (event loop, handler on a bounded worker pool). In netty mode
+     * iso8583.codec=flat indexes frames in place and patches the request bytes
+     * into the response instead of building jPOS ISOMsg trees.
      */
     @Bean(initMethod = "start", destroyMethod = "shutdown")
-    public IsoServer isoServer(@Value("${iso8583.listener.port:8037}") int port,
+    public IsoListener isoServer(@Value("${iso8583.listener.port:8037}") int port,
+            @Value("${iso8583.listener.mode:classic}") String mode,
+            @Value("${iso8583.listener.max-in-flight:64}") int maxInFlight,
+            @Value("${iso8583.listener.netty.io-threads:0}") int ioThreads,
+            @Value("${iso8583.listener.netty.workers:64}") int workers,
+            @Value("${iso8583.listener.netty.queue-capacity:1024}") int queueCapacity,
+            @Value("${iso8583.codec:jpos}") String codec,
             ISOPackager packager,
-            IsoMessageHandler handler) {
-        return new IsoServer(port, packager, handler);
+            IsoMessageHandler handler,
+            IsoMetrics metrics,
+            IsoTracer tracer) {
+        if ("netty".equalsIgnoreCase(mode.trim())) {
+            FlatIsoCodec flat = null;
+            if ("flat".equalsIgnoreCase(codec.trim())) {
+                if (!(packager instanceof ISOBasePackager base))
+                    throw new IllegalStateException("iso8583.codec=flat needs an ISOBasePackager");
+                flat = FlatIsoCodec.forPackager(base);
+            }
+            return new NettyIsoServer(port, packager, handler, ioThreads, workers, queueCapacity, maxInFlight,
+                    metrics, tracer, flat);
+        }
+        return new IsoServer(port, packager, handler, IsoServer.Mode.valueOf(mode.trim().toUpperCase()), maxInFlight,
+                metrics, tracer);
     }
 }
@@ -0,0 +1,57 @@
+
+package capitec.fraudengine.config;
+
+import capitec.fraudengine.model.TransactionEntity;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+/**
+ * Databases created before ids moved from IDENTITY to a pooled sequence
+ * already hold rows, while the new sequence starts at 1. On PostgreSQL this
+ * moves the sequence past the highest existing id (plus one allocation block)
+ * so freshly allocated ids cannot collide. No-op on other databases and once
+ * the sequence is ahead.
+ */
+@Slf4j
+@Component
+public class TransactionIdSequenceAligner {
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbc;
+
+    // Depend on the EntityManagerFactory so schema update has created the sequence
+    public TransactionIdSequenceAligner(DataSource dataSource, EntityManagerFactory emf) {
+        this.dataSource = dataSource;
+        this.jdbc = new JdbcTemplate(dataSource);
+    }
+
+    @PostConstruct
+    void align() {
+        try {
+            if (!isPostgres())
+                return;
+            Long maxId = jdbc.queryForObject("select coalesce(max(id), 0) from transactions", Long.class);
+            Long last = jdbc.queryForObject("select last_value from " + TransactionEntity.ID_SEQUENCE, Long.class);
+            long max = maxId == null ? 0 : maxId;
+            if (last != null && last <= max) {
+                long floor = max + 2L * TransactionEntity.ID_ALLOCATION_SIZE;
+                jdbc.queryForObject("select setval('" + TransactionEntity.ID_SEQUENCE + "', ?)", Long.class, floor);
+                log.info("Moved {} from {} to {} (max existing id {})", TransactionEntity.ID_SEQUENCE, last, floor, maxId);
+            }
+        } catch (Exception e) {
+            log.warn("Could not align {} with existing ids: {}", TransactionEntity.ID_SEQUENCE, e.getMessage());
+        }
+    }
+
+    private boolean isPostgres() throws Exception {
+        try (Connection c = dataSource.getConnection()) {
+            return c.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres");
+        }
+    }
+}
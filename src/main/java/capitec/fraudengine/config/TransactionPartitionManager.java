@@ -0,0 +1,302 @@
+
+package capitec.fraudengine.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Managed schema mode for PostgreSQL: {@code transactions} becomes a table
+ * range-partitioned on {@code timestamp}.
+ * <p>
+ * Runs before Hibernate's schema update. A missing table is created as a bare
+ * partitioned parent (id, timestamp, primary key) and {@code ddl-auto=update}
+ * adds the remaining columns and indexes, which Postgres propagates to every
+ * partition. An existing plain table is converted in place: it is renamed to
+ * {@code transactions_legacy} and attached as the partition below the first
+ * managed period, so no rows are copied.
+ * <p>
+ * {@link #maintain()} keeps {@code premake} future partitions ahead of the
+ * clock and, when retention is set, detaches or drops partitions whose upper
+ * bound is older than the retention window. Each partition is handled in its
+ * own transaction, so one failure is logged and the rest still run. A default
+ * partition catches rows outside every managed range (e.g. a DE7 date far in
+ * the future); when a new partition covers some of them they are moved into
+ * it before it is attached, since Postgres refuses the attach otherwise.
+ * <p>
+ * Velocity and search queries always bound {@code timestamp}, so Postgres
+ * prunes them to the partitions covering the window.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "fraud.persistence.partitioning.enabled", havingValue = "true")
+public class TransactionPartitionManager {
+
+    public enum Granularity {
+        DAILY(DateTimeFormatter.ofPattern("yyyyMMdd")),
+        MONTHLY(DateTimeFormatter.ofPattern("yyyyMM"));
+
+        private final DateTimeFormatter suffix;
+
+        Granularity(DateTimeFormatter suffix) {
+            this.suffix = suffix;
+        }
+
+        LocalDate periodStart(LocalDate day) {
+            return this == DAILY ? day : day.withDayOfMonth(1);
+        }
+
+        LocalDate next(LocalDate periodStart) {
+            return this == DAILY ? periodStart.plusDays(1) : periodStart.plusMonths(1);
+        }
+    }
+
+    public enum RetentionAction {
+        DETACH,
+        DROP
+    }
+
+    static final String TABLE = "transactions";
+    static final String LEGACY = "transactions_legacy";
+    static final String DEFAULT_PARTITION = "transactions_default";
+
+    /** Upper bound inside pg_get_expr(relpartbound), e.g. TO ('2026-10-19 00:00:00+00'). */
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final Granularity granularity;
+    private final int premake;
+    private final int retentionDays;
+    private final RetentionAction retentionAction;
+
+    private boolean active;
+
+    public TransactionPartitionManager(DataSource dataSource,
+            @Value("${fraud.persistence.partitioning.granularity:daily}") String granularity,
+            @Value("${fraud.persistence.partitioning.premake:7}") int premake,
+            @Value("${fraud.persistence.partitioning.retention-days:0}") int retentionDays,
+            @Value("${fraud.persistence.partitioning.retention-action:detach}") String retentionAction) {
+        this.dataSource = dataSource;
+        this.jdbc = new JdbcTemplate(dataSource);
+        this.tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.granularity = Granularity.valueOf(granularity.trim().toUpperCase());
+        this.premake = premake;
+        this.retentionDays = retentionDays;
+        this.retentionAction = RetentionAction.valueOf(retentionAction.trim().toUpperCase());
+    }
+
+    /** Make Hibernate's schema update wait until the partitioned parent exists. */
+    @Bean
+    static EntityManagerFactoryDependsOnPostProcessor transactionPartitionsBeforeJpa() {
+        return new EntityManagerFactoryDependsOnPostProcessor("transactionPartitionManager");
+    }
+
+    @PostConstruct
+    void init() throws Exception {
+        if (!isPostgres()) {
+            log.warn("fraud.persistence.partitioning.enabled is set but the database is not PostgreSQL; ignoring");
+            return;
+        }
+        active = true;
+        tx.executeWithoutResult(status -> ensurePartitionedParent());
+        maintain();
+    }
+
+    @Scheduled(cron = "${fraud.persistence.partitioning.maintenance-cron:0 15 0 * * *}", zone = "UTC")
+    public void maintain() {
+        if (!active)
+            return;
+        createFuturePartitions(LocalDate.now(ZoneOffset.UTC));
+        if (retentionDays > 0)
+            applyRetention(OffsetDateTime.now(ZoneOffset.UTC).minusDays(retentionDays));
+        try {
+            Long stray = jdbc.queryForObject("select count(*) from " + DEFAULT_PARTITION, Long.class);
+            if (stray != null && stray > 0)
+                log.warn("{} row(s) in {} fall outside the managed partitions", stray, DEFAULT_PARTITION);
+        } catch (DataAccessException e) {
+            log.error("Counting rows in {} failed: {}", DEFAULT_PARTITION, e.getMessage());
+        }
+    }
+
+    private void ensurePartitionedParent() {
+        String kind = relkind(TABLE);
+        if ("p".equals(kind))
+            return;
+
+        LocalDate firstPeriod = granularity.periodStart(LocalDate.now(ZoneOffset.UTC));
+        if (kind == null) {
+            jdbc.execute("create table " + TABLE + " (id bigint not null,"
+                    + " \"timestamp\" timestamp(6) with time zone not null,"
+                    + " primary key (id, \"timestamp\")) partition by range (\"timestamp\")");
+            log.info("Created partitioned table {} ({})", TABLE, granularity);
+        } else {
+            convertLegacyTable(firstPeriod);
+        }
+        jdbc.execute("create table if not exists " + DEFAULT_PARTITION + " partition of " + TABLE + " default");
+    }
+
+    /**
+     * Rename the plain table, create the partitioned parent with the same
+     * columns and attach the old table as one partition covering everything up
+     * to the end of its newest period.
+     */
+    private void convertLegacyTable(LocalDate firstPeriod) {
+        OffsetDateTime newest = jdbc.queryForObject("select max(\"timestamp\") from " + TABLE, OffsetDateTime.class);
+        LocalDate legacyEnd = newest == null ? firstPeriod
+                : granularity.next(granularity.periodStart(newest.withOffsetSameInstant(ZoneOffset.UTC).toLocalDate()));
+        if (legacyEnd.isBefore(firstPeriod))
+            legacyEnd = firstPeriod;
+
+        jdbc.execute("alter table " + TABLE + " rename to " + LEGACY);
+        jdbc.execute("alter index if exists transactions_pkey rename to transactions_legacy_pkey");
+        // Recreated on the parent by the schema update and propagated to every partition
+        for (String index : List.of("idx_tx_account_ts", "idx_tx_flagged", "idx_tx_flagged_id", "idx_tx_rrn"))
+            jdbc.execute("drop index if exists " + index);
+
+        jdbc.execute("create table " + TABLE + " (like " + LEGACY + " including defaults)"
+                + " partition by range (\"timestamp\")");
+        jdbc.execute("alter table " + TABLE + " add primary key (id, \"timestamp\")");
+        jdbc.execute("alter table " + TABLE + " attach partition " + LEGACY
+                + " for values from (minvalue) to (" + literal(legacyEnd) + ")");
+        log.warn("Converted {} to a partitioned table; existing rows are partition {} (up to {})",
+                TABLE, LEGACY, legacyEnd);
+    }
+
+    void createFuturePartitions(LocalDate today) {
+        LocalDate start = granularity.periodStart(today);
+        for (int i = 0; i <= premake; i++) {
+            LocalDate end = granularity.next(start);
+            String name = TABLE + "_p" + granularity.suffix.format(start);
+            try {
+                if (relkind(name) == null && !coveredByExisting(start))
+                    createPartition(name, start, end);
+            } catch (DataAccessException e) {
+                log.error("Creating partition {} [{}, {}) failed: {}", name, start, end, e.getMessage());
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Create one period's partition. Rows for the period that landed in the
+     * default partition are moved into the new table first, in the same
+     * transaction as the attach.
+     */
+    private void createPartition(String name, LocalDate start, LocalDate end) {
+        String range = "\"timestamp\" >= " + literal(start) + " and \"timestamp\" < " + literal(end);
+        tx.executeWithoutResult(status -> {
+            Long stray = jdbc.queryForObject("select count(*) from " + DEFAULT_PARTITION + " where " + range,
+                    Long.class);
+            if (stray == null || stray == 0) {
+                jdbc.execute("create table " + name + " partition of " + TABLE
+                        + " for values from (" + literal(start) + ") to (" + literal(end) + ")");
+                log.info("Created partition {} [{}, {})", name, start, end);
+                return;
+            }
+            String columns = String.join(", ", jdbc.queryForList("select quote_ident(column_name::text)"
+                    + " from information_schema.columns where table_schema = current_schema() and table_name = ?"
+                    + " order by ordinal_position", String.class, TABLE));
+            jdbc.execute("create table " + name + " (like " + TABLE + " including defaults including constraints)");
+            jdbc.execute("with moved as (delete from " + DEFAULT_PARTITION + " where " + range + " returning *)"
+                    + " insert into " + name + " (" + columns + ") select " + columns + " from moved");
+            jdbc.execute("alter table " + TABLE + " attach partition " + name
+                    + " for values from (" + literal(start) + ") to (" + literal(end) + ")");
+            log.warn("Created partition {} [{}, {}) with {} row(s) moved from {}", name, start, end, stray,
+                    DEFAULT_PARTITION);
+        });
+    }
+
+    void applyRetention(OffsetDateTime cutoff) {
+        for (Map<String, Object> p : partitions()) {
+            String name = (String) p.get("name");
+            OffsetDateTime upper = upperBound((String) p.get("bound"));
+            if (upper == null || upper.isAfter(cutoff))
+                continue;
+            try {
+                tx.executeWithoutResult(status -> {
+                    jdbc.execute("alter table " + TABLE + " detach partition " + name);
+                    if (retentionAction == RetentionAction.DROP)
+                        jdbc.execute("drop table " + name);
+                });
+                if (retentionAction == RetentionAction.DROP)
+                    log.info("Dropped partition {} (ended {})", name, upper);
+                else
+                    log.info("Detached partition {} (ended {}); archive or drop it when done", name, upper);
+            } catch (DataAccessException e) {
+                log.error("Retention of partition {} failed: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    /** Partitions with a bounded upper end (default and detached tables excluded). */
+    private List<Map<String, Object>> partitions() {
+        return jdbc.queryForList("select c.relname as name, pg_get_expr(c.relpartbound, c.oid) as bound"
+                + " from pg_inherits i join pg_class c on c.oid = i.inhrelid"
+                + " where i.inhparent = ?::regclass", TABLE);
+    }
+
+    /** True when the legacy partition already covers {@code periodStart}. */
+    private boolean coveredByExisting(LocalDate periodStart) {
+        OffsetDateTime start = periodStart.atStartOfDay().atOffset(ZoneOffset.UTC);
+        for (Map<String, Object> p : partitions()) {
+            String bound = (String) p.get("bound");
+            if (bound == null || !bound.contains("MINVALUE"))
+                continue;
+            OffsetDateTime upper = upperBound(bound);
+            if (upper != null && upper.isAfter(start))
+                return true;
+        }
+        return false;
+    }
+
+    static OffsetDateTime upperBound(String bound) {
+        if (bound == null)
+            return null;
+        Matcher m = UPPER_BOUND.matcher(bound);
+        if (!m.find())
+            return null;
+        // Postgres prints e.g. 2026-10-19 00:00:00+00 (offset hours only when whole)
+        String ts = m.group(1).replace(' ', 'T');
+        if (ts.matches(".*[+-]\\d{2}$"))
+            ts = ts + ":00";
+        return OffsetDateTime.parse(ts);
+    }
+
+    private static String literal(LocalDate day) {
+        return "'" + day + " 00:00:00+00'";
+    }
+
+    private String relkind(String table) {
+        List<String> kinds = jdbc.queryForList(
+                "select relkind::text from pg_class where oid = to_regclass(?)", String.class, table);
+        return kinds.isEmpty() ? null : kinds.get(0);
+    }
+
+    private boolean isPostgres() throws Exception {
+        try (Connection c = dataSource.getConnection()) {
+            return c.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres");
+        }
+    }
+}
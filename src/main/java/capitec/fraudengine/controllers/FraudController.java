@@ -5,16 +5,33 @@ import capitec.fraudengine.model.TransactionEntity;
 import capitec.fraudengine.model.dto.TransactionRequest;
 import capitec.fraudengine.model.dto.TransactionSearchRequest;
 import capitec.fraudengine.service.FraudDetectionService;
+import capitec.fraudengine.service.batch.BatchScoringService;
 import capitec.fraudengine.iso.IsoUtils;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -26,6 +43,9 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 public class FraudController {
 
         private final FraudDetectionService fraudService;
+        private final ObjectMapper objectMapper;
+        private final BatchScoringService batchScoringService;
+        private final Validator validator;
 
         @Operation(summary = "Submit a transaction for fraud evaluation", description = "Processes a transaction and returns whether it is flagged.",
 
@@ -227,7 +247,153 @@ public class FraudController {
         public ResponseEntity<TransactionEntity> create(
                         // Keep Spring's RequestBody for binding
                         @Valid @org.springframework.web.bind.annotation.RequestBody TransactionRequest req) {
+                return ResponseEntity.ok(fraudService.process(toEntity(req)));
+        }
+
+        @Operation(summary = "Score a batch of transactions", description = "Accepts a JSON array or NDJSON (one TransactionRequest per line). Items are evaluated in parallel (a card's items in input order), saved in chunks, and one NDJSON decision line per item is streamed back in input order. Invalid items are reported in place with an error; malformed input ends the batch after the items read so far.")
+        @PostMapping(path = "/transactions/batch", consumes = { MediaType.APPLICATION_JSON_VALUE,
+                        MediaType.APPLICATION_NDJSON_VALUE }, produces = MediaType.APPLICATION_NDJSON_VALUE)
+        public ResponseEntity<StreamingResponseBody> batch(HttpServletRequest request) throws IOException {
+                InputStream in = request.getInputStream();
+                StreamingResponseBody body = out -> {
+                        try (MappingIterator<TransactionRequest> requests = objectMapper
+                                        .readerFor(TransactionRequest.class).readValues(in)) {
+                                batchScoringService.score(batchItems(requests), decision -> {
+                                        try {
+                                                out.write(objectMapper.writeValueAsBytes(decision));
+                                                out.write('\n');
+                                        } catch (IOException e) {
+                                                throw new UncheckedIOException(e);
+                                        }
+                                });
+                        }
+                };
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+        }
+
+        /** Validated, mapped items; a parse error becomes one last invalid item. */
+        private Iterator<BatchScoringService.Item> batchItems(MappingIterator<TransactionRequest> requests) {
+                return new Iterator<>() {
+                        private boolean broken;
+
+                        @Override
+                        public boolean hasNext() {
+                                if (broken)
+                                        return false;
+                                try {
+                                        return requests.hasNextValue();
+                                } catch (IOException e) {
+                                        return true; // next() reports it
+                                }
+                        }
+
+                        @Override
+                        public BatchScoringService.Item next() {
+                                TransactionRequest req;
+                                try {
+                                        req = requests.nextValue();
+                                } catch (IOException | RuntimeException e) {
+                                        broken = true;
+                                        return BatchScoringService.Item.invalid("malformed input: " + e.getMessage());
+                                }
+                                Set<ConstraintViolation<TransactionRequest>> violations = validator.validate(req);
+                                if (!violations.isEmpty()) {
+                                        return BatchScoringService.Item.invalid(violations.stream()
+                                                        .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                                                        .sorted()
+                                                        .collect(Collectors.joining(", ")));
+                                }
+                                return BatchScoringService.Item.of(toEntity(req));
+                        }
+                };
+        }
 
+        @Operation(summary = "Get one transaction with all ISO data elements", description = "List and search endpoints return the decision row only; this also loads the stored cold DEs.", responses = {
+                        @ApiResponse(responseCode = "200", description = "Transaction with full ISO detail", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = TransactionEntity.class))),
+                        @ApiResponse(responseCode = "404", description = "No transaction with this id")
+        })
+        @GetMapping("/transactions/{id}")
+        public ResponseEntity<TransactionEntity> transactionDetail(@PathVariable Long id) {
+                return ResponseEntity.of(fraudService.getTransactionDetail(id));
+        }
+
+        @Operation(summary = "List flagged transactions", description = "Returns at most fraud.api.flags.max-results rows (default 1000). When more exist the response carries X-Total-Truncated: true and a Link rel=\"next\" to /fraud-flags/page; /fraud-flags/stream returns every row.", responses = {
+                        @ApiResponse(responseCode = "200", description = "Array of flagged transactions", headers = {
+                                        @Header(name = "X-Total-Truncated", description = "true when rows were left out", schema = @Schema(type = "boolean")),
+                                        @Header(name = "Link", description = "<next page URL>; rel=\"next\" when rows were left out")
+                        }, content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = TransactionEntity.class), examples = @ExampleObject(name = "Flagged list example", value = """
+                                        [
+                                          {
+                                            "id": 56,
+                                            "flagged": true,
+                                            "responseCode": "05",
+                                            "pan": "5284971100010063",
+                                            "amount": 100000.00,
+                                            "currency": "ZAR",
+                                            "timestamp": "2026-01-06T10:15:38Z",
+                                            "category": "POS",
+                                            "location": "UNKNOWN"
+                                          }
+                                        ]
+                                        """)))
+        })
+        @GetMapping("/fraud-flags")
+        public ResponseEntity<List<TransactionEntity>> flags() {
+                FraudDetectionService.FlaggedPage page = fraudService.getFlagged();
+                if (page.nextCursor() == null)
+                        return ResponseEntity.ok(page.items());
+                String next = "/api/fraud-flags/page?cursor=" + page.nextCursor() + "&limit=" + page.items().size();
+                return ResponseEntity.ok()
+                                .header("X-Total-Truncated", "true")
+                                .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+                                .body(page.items());
+        }
+
+        @Operation(summary = "Page through flagged transactions", description = "Keyset pagination in id order. Pass the returned nextCursor as cursor to get the next page; nextCursor is null on the last page. Optional filters: from/to (ISO-8601, to exclusive) and rule (e.g. HIGH_AMOUNT).")
+        @GetMapping("/fraud-flags/page")
+        public ResponseEntity<FraudDetectionService.FlaggedPage> flagsPage(
+                        @RequestParam(required = false) Long cursor,
+                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+                        @RequestParam(required = false) String rule,
+                        @RequestParam(defaultValue = "100") int limit) {
+                return ResponseEntity.ok(fraudService.getFlaggedPage(cursor, from, to, rule, limit));
+        }
+
+        @Operation(summary = "Stream flagged transactions as NDJSON", description = "One JSON object per line in id order, read from a database cursor. Same filters as /fraud-flags/page, no size limit.")
+        @GetMapping(path = "/fraud-flags/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+        public ResponseEntity<StreamingResponseBody> flagsStream(
+                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+                        @RequestParam(required = false) String rule) {
+                StreamingResponseBody body = out -> fraudService.streamFlagged(from, to, rule, tx -> {
+                        try {
+                                out.write(objectMapper.writeValueAsBytes(tx));
+                                out.write('\n');
+                        } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                        }
+                });
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+        }
+
+        @Operation(summary = "Search transactions by PAN and time window", requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(required = true, content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = TransactionSearchRequest.class), examples = @ExampleObject(name = "Search window example", value = """
+                        {
+                          "pan": "5284971100131851",
+                          "from": "2026-01-05T14:15:00+00:00",
+                          "to":   "2026-01-09T14:15:00+00:00"
+                        }
+                        """))), responses = {
+                        @ApiResponse(responseCode = "200", description = "List of matching transactions", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = TransactionEntity.class)))
+        })
+        @PostMapping(path = "/transactions/search", consumes = MediaType.APPLICATION_JSON_VALUE)
+        public ResponseEntity<List<TransactionEntity>> transactionsByPanAndRangeBody(
+                        @Valid @org.springframework.web.bind.annotation.RequestBody TransactionSearchRequest req) {
+                return ResponseEntity.ok(
+                                fraudService.getTransactionsByPanAndRange(req.pan(), req.from(), req.to()));
+        }
+
+        private static TransactionEntity toEntity(TransactionRequest req) {
                 // Defensive: numeric ISO-4217 -> alpha-3 ("710" -> "ZAR")
                 String currency = req.getCurrency();
                 if (currency != null && currency.matches("^\\d{3}$")) {
@@ -235,7 +401,7 @@ public class FraudController {
                 }
 
                 // Ignore client-supplied id on create to avoid accidental updates
-                TransactionEntity tx = TransactionEntity.builder()
+                return TransactionEntity.builder()
                                 .mti(req.getMti())
                                 .timestamp(req.getTimestamp())
                                 .flagged(Boolean.TRUE.equals(req.getFlagged()))
@@ -308,45 +474,5 @@ public class FraudController {
                                 .de123PosDataCode(req.getDe123PosDataCode())
                                 .de127AdditionalDataPrivate(req.getDe127AdditionalDataPrivate())
                                 .build();
-
-                return ResponseEntity.ok(fraudService.process(tx));
-        }
-
-        @Operation(summary = "List flagged transactions", responses = {
-                        @ApiResponse(responseCode = "200", description = "Array of flagged transactions", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = TransactionEntity.class), examples = @ExampleObject(name = "Flagged list example", value = """
-                                        [
-                                          {
-                                            "id": 56,
-                                            "flagged": true,
-                                            "responseCode": "05",
-                                            "pan": "5284971100010063",
-                                            "amount": 100000.00,
-                                            "currency": "ZAR",
-                                            "timestamp": "2026-01-06T10:15:38Z",
-                                            "category": "POS",
-                                            "location": "UNKNOWN"
-                                          }
-                                        ]
-                                        """)))
-        })
-        @GetMapping("/fraud-flags")
-        public ResponseEntity<List<TransactionEntity>> flags() {
-                return ResponseEntity.ok(fraudService.getFlagged());
-        }
-
-        @Operation(summary = "Search transactions by PAN and time window", requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(required = true, content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = TransactionSearchRequest.class), examples = @ExampleObject(name = "Search window example", value = """
-                        {
-                          "pan": "5284971100131851",
-                          "from": "2026-01-05T14:15:00+00:00",
-                          "to":   "2026-01-09T14:15:00+00:00"
-                        }
-                        """))), responses = {
-                        @ApiResponse(responseCode = "200", description = "List of matching transactions", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = TransactionEntity.class)))
-        })
-        @PostMapping(path = "/transactions/search", consumes = MediaType.APPLICATION_JSON_VALUE)
-        public ResponseEntity<List<TransactionEntity>> transactionsByPanAndRangeBody(
-                        @Valid @org.springframework.web.bind.annotation.RequestBody TransactionSearchRequest req) {
-                return ResponseEntity.ok(
-                                fraudService.getTransactionsByPanAndRange(req.pan(), req.from(), req.to()));
         }
 }
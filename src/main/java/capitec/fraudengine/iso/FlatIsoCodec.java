@@ -0,0 +1,292 @@
+
+package capitec.fraudengine.iso;
+
+import org.jpos.iso.IFA_AMOUNT;
+import org.jpos.iso.IFA_BINARY;
+import org.jpos.iso.IFA_LLCHAR;
+import org.jpos.iso.IFA_LLLCHAR;
+import org.jpos.iso.IFA_LLLNUM;
+import org.jpos.iso.IFA_LLNUM;
+import org.jpos.iso.IFA_NUMERIC;
+import org.jpos.iso.IFB_BINARY;
+import org.jpos.iso.IFB_BITMAP;
+import org.jpos.iso.IF_CHAR;
+import org.jpos.iso.ISOBasePackager;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOFieldPackager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Single-pass codec for ASCII-field / binary-bitmap ISO8583 frames (the
+ * layout of {@link Iso87AsciiBBitmapCustomPackager} and jPOS's
+ * {@code ISO87APackagerBBitmap}).
+ * <p>
+ * {@link #decode(ByteBuffer)} walks the bitmap once and records where each
+ * field's value sits in the frame; no {@code ISOMsg}, {@code ISOField} or
+ * String is built. {@link #encode(FlatIsoMessage)} writes the response by
+ * copying the untouched byte runs of the request and packing only the fields
+ * that were set or removed.
+ * <p>
+ * The field layout is taken from the packager's field packagers. Fields whose
+ * packager is not one of the plain ASCII / binary types below are
+ * {@link Kind#UNSUPPORTED}; a frame carrying one fails to decode and the
+ * caller falls back to jPOS.
+ */
+public final class FlatIsoCodec {
+
+    enum Kind {
+        /** No packager for this DE. */
+        ABSENT,
+        /** Fixed ASCII digits, left zero-padded (IFA_NUMERIC). */
+        NUMERIC,
+        /** Fixed ASCII text, right space-padded and truncated (IF_CHAR). */
+        CHAR,
+        /** Fixed ASCII read as-is, not writable here (IFA_AMOUNT). */
+        FIXED_ASCII,
+        /** Fixed bytes sent as ASCII hex, read as upper-case hex (IFA_BINARY). */
+        HEX,
+        /** Fixed raw bytes, read as hex (IFB_BINARY). */
+        FIXED_BINARY,
+        /** 2 ASCII length digits, then ASCII (IFA_LLNUM, IFA_LLCHAR). */
+        LL,
+        /** 3 ASCII length digits, then ASCII (IFA_LLLNUM, IFA_LLLCHAR). */
+        LLL,
+        UNSUPPORTED
+    }
+
+    private static final Map<Class<?>, Kind> KINDS = Map.of(
+            IFA_NUMERIC.class, Kind.NUMERIC,
+            IF_CHAR.class, Kind.CHAR,
+            IFA_AMOUNT.class, Kind.FIXED_ASCII,
+            IFA_BINARY.class, Kind.HEX,
+            IFB_BINARY.class, Kind.FIXED_BINARY,
+            IFA_LLNUM.class, Kind.LL,
+            IFA_LLCHAR.class, Kind.LL,
+            IFA_LLLNUM.class, Kind.LLL,
+            IFA_LLLCHAR.class, Kind.LLL);
+
+    static final int MTI_LENGTH = 4;
+    static final int BITMAP_LENGTH = 8;
+
+    final Kind[] kinds = new Kind[129];
+    /** Packed length for fixed kinds, maximum data length for LL / LLL. */
+    final int[] sizes = new int[129];
+
+    private FlatIsoCodec() {
+    }
+
+    /**
+     * Layout of {@code packager}.
+     *
+     * @throws IllegalArgumentException when the MTI is not 4 ASCII characters
+     *                                  or the bitmap is not binary
+     */
+    public static FlatIsoCodec forPackager(ISOBasePackager packager) {
+        ISOFieldPackager mti = packager.getFieldPackager(0);
+        ISOFieldPackager bitmap = packager.getFieldPackager(1);
+        if (mti == null || KINDS.get(mti.getClass()) == null || mti.getMaxPackedLength() != MTI_LENGTH
+                || !(bitmap instanceof IFB_BITMAP)) {
+            throw new IllegalArgumentException(packager.getClass().getSimpleName()
+                    + " is not an ASCII MTI / binary bitmap layout");
+        }
+        FlatIsoCodec codec = new FlatIsoCodec();
+        codec.kinds[0] = codec.kinds[1] = Kind.ABSENT;
+        for (int f = 2; f <= 128; f++) {
+            ISOFieldPackager fp = packager.getFieldPackager(f);
+            Kind kind = fp == null ? Kind.ABSENT : KINDS.getOrDefault(fp.getClass(), Kind.UNSUPPORTED);
+            codec.kinds[f] = kind;
+            if (kind == Kind.LL || kind == Kind.LLL)
+                codec.sizes[f] = fp.getLength();
+            else if (fp != null)
+                codec.sizes[f] = fp.getMaxPackedLength();
+        }
+        return codec;
+    }
+
+    /**
+     * Index the frame between {@code frame.position()} and
+     * {@code frame.limit()}. The buffer is read in place and must not change
+     * while the message is in use.
+     */
+    public FlatIsoMessage decode(ByteBuffer frame) throws ISOException {
+        int base = frame.position();
+        int limit = frame.limit();
+        int pos = base + MTI_LENGTH;
+        if (limit - pos < BITMAP_LENGTH)
+            throw new ISOException("Frame too short for MTI and bitmap: " + (limit - base) + " bytes");
+        long primary = frame.getLong(pos);
+        pos += BITMAP_LENGTH;
+        long secondary = 0;
+        if (primary < 0) {
+            if (limit - pos < BITMAP_LENGTH)
+                throw new ISOException("Frame too short for secondary bitmap");
+            secondary = frame.getLong(pos);
+            pos += BITMAP_LENGTH;
+        }
+
+        FlatIsoMessage m = new FlatIsoMessage(this, frame, base, primary & Long.MAX_VALUE, secondary);
+        pos = index(m, frame, primary & Long.MAX_VALUE, 1, pos, limit);
+        if (secondary != 0)
+            index(m, frame, secondary, 65, pos, limit);
+        return m;
+    }
+
+    /** Record value offsets for every bit set in {@code bits}; field {@code first} is the word's top bit. */
+    private int index(FlatIsoMessage m, ByteBuffer frame, long bits, int first, int pos, int limit)
+            throws ISOException {
+        while (bits != 0) {
+            int lz = Long.numberOfLeadingZeros(bits);
+            bits &= ~(Long.MIN_VALUE >>> lz);
+            int f = first + lz;
+            int len;
+            switch (kinds[f]) {
+                case NUMERIC, CHAR, FIXED_ASCII, HEX, FIXED_BINARY -> len = sizes[f];
+                case LL, LLL -> {
+                    int digits = kinds[f] == Kind.LL ? 2 : 3;
+                    if (limit - pos < digits)
+                        throw new ISOException("Frame ends inside the length of DE" + f);
+                    len = digits(frame, pos, digits, f);
+                    if (len > sizes[f])
+                        throw new ISOException("DE" + f + " length " + len + " exceeds " + sizes[f]);
+                    pos += digits;
+                }
+                default -> throw new ISOException("DE" + f + " (" + kinds[f] + ") is not handled by the flat codec");
+            }
+            if (limit - pos < len)
+                throw new ISOException("Frame ends inside DE" + f + " (offset " + (pos - m.base) + ")");
+            m.start[f] = pos;
+            m.length[f] = len;
+            pos += len;
+        }
+        return pos;
+    }
+
+    private static int digits(ByteBuffer frame, int pos, int count, int field) throws ISOException {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int d = frame.get(pos + i) - '0';
+            if (d < 0 || d > 9)
+                throw new ISOException("Bad length prefix for DE" + field);
+            n = n * 10 + d;
+        }
+        return n;
+    }
+
+    /**
+     * Pack {@code m} with its edits applied. Unedited fields are copied from
+     * the original frame in contiguous runs.
+     *
+     * @throws ISOException when an edited value cannot be packed by this codec
+     *                      (too long for an LL field, or a binary / amount
+     *                      field); pack {@link FlatIsoMessage#toISOMsg} instead
+     */
+    public byte[] encode(FlatIsoMessage m) throws ISOException {
+        byte[][] packed = new byte[129][];
+        long primary = m.primary;
+        long secondary = m.secondary;
+        int size = MTI_LENGTH + BITMAP_LENGTH;
+        for (int f = 2; f <= 128; f++) {
+            boolean present;
+            if (m.isEdited(f)) {
+                String v = m.override(f);
+                if (v != null)
+                    packed[f] = pack(f, v);
+                present = v != null;
+            } else {
+                present = m.start[f] >= 0;
+            }
+            if (f <= 64) {
+                primary = present ? primary | (Long.MIN_VALUE >>> (f - 1)) : primary & ~(Long.MIN_VALUE >>> (f - 1));
+            } else {
+                secondary = present ? secondary | (Long.MIN_VALUE >>> (f - 65)) : secondary & ~(Long.MIN_VALUE >>> (f - 65));
+            }
+            if (packed[f] != null)
+                size += packed[f].length;
+            else if (present)
+                size += prefixLength(f) + m.length[f];
+        }
+        if (secondary != 0) {
+            primary |= Long.MIN_VALUE;
+            size += BITMAP_LENGTH;
+        }
+
+        byte[] out = new byte[size];
+        String mti = m.override(0);
+        if (mti != null) {
+            if (mti.length() != MTI_LENGTH)
+                throw new ISOException("MTI must be " + MTI_LENGTH + " characters: " + mti);
+            System.arraycopy(mti.getBytes(StandardCharsets.ISO_8859_1), 0, out, 0, MTI_LENGTH);
+        } else {
+            m.frame.get(m.base, out, 0, MTI_LENGTH);
+        }
+        int pos = putLong(out, MTI_LENGTH, primary);
+        if (secondary != 0)
+            pos = putLong(out, pos, secondary);
+
+        // copy runs of untouched fields in one go
+        int runStart = -1;
+        int runEnd = -1;
+        for (int f = 2; f <= 128; f++) {
+            boolean copy = !m.isEdited(f) && m.start[f] >= 0;
+            if (copy) {
+                int from = m.start[f] - prefixLength(f);
+                if (from != runEnd) {
+                    pos = flush(m, out, pos, runStart, runEnd);
+                    runStart = from;
+                }
+                runEnd = m.start[f] + m.length[f];
+            } else if (packed[f] != null) {
+                pos = flush(m, out, pos, runStart, runEnd);
+                runStart = runEnd = -1;
+                System.arraycopy(packed[f], 0, out, pos, packed[f].length);
+                pos += packed[f].length;
+            }
+        }
+        flush(m, out, pos, runStart, runEnd);
+        return out;
+    }
+
+    private static int flush(FlatIsoMessage m, byte[] out, int pos, int runStart, int runEnd) {
+        if (runStart < 0)
+            return pos;
+        int len = runEnd - runStart;
+        m.frame.get(runStart, out, pos, len);
+        return pos + len;
+    }
+
+    private static int putLong(byte[] out, int pos, long v) {
+        for (int i = 0; i < 8; i++)
+            out[pos + i] = (byte) (v >>> (56 - 8 * i));
+        return pos + 8;
+    }
+
+    int prefixLength(int f) {
+        return switch (kinds[f]) {
+            case LL -> 2;
+            case LLL -> 3;
+            default -> 0;
+        };
+    }
+
+    private byte[] pack(int f, String v) throws ISOException {
+        int size = sizes[f];
+        String s = switch (kinds[f]) {
+            case NUMERIC -> {
+                if (v.length() > size)
+                    throw new ISOException("DE" + f + " value longer than " + size);
+                yield "0".repeat(size - v.length()) + v;
+            }
+            case CHAR -> v.length() > size ? v.substring(0, size) : v + " ".repeat(size - v.length());
+            case LL, LLL -> {
+                if (v.length() > size)
+                    throw new ISOException("DE" + f + " value longer than " + size);
+                yield String.format(kinds[f] == Kind.LL ? "%02d" : "%03d", v.length()) + v;
+            }
+            default -> throw new ISOException("DE" + f + " (" + kinds[f] + ") cannot be written by the flat codec");
+        };
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,152 @@
+
+package capitec.fraudengine.iso;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.jpos.iso.ISOUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A decoded frame as an offset / length index into the original bytes (see
+ * {@link FlatIsoCodec}). Strings are only built when a field is read.
+ * {@link #set(int, String)} and {@link #unset(int)} record edits on top of
+ * the frame; {@link FlatIsoCodec#encode(FlatIsoMessage)} applies them.
+ * <p>
+ * Not thread-safe. The backing buffer must stay valid until the message has
+ * been encoded.
+ */
+public final class FlatIsoMessage {
+
+    final FlatIsoCodec codec;
+    final ByteBuffer frame;
+    final int base;
+    /** Presence bits as received; bit 1 (secondary bitmap) cleared. */
+    final long primary;
+    final long secondary;
+    /** Absolute offset of each value in {@link #frame}, -1 when absent. */
+    final int[] start = new int[129];
+    final int[] length = new int[129];
+
+    /** Index 0 is the MTI; null until something is edited. */
+    private String[] overrides;
+    private boolean[] edited;
+
+    FlatIsoMessage(FlatIsoCodec codec, ByteBuffer frame, int base, long primary, long secondary) {
+        this.codec = codec;
+        this.frame = frame;
+        this.base = base;
+        this.primary = primary;
+        this.secondary = secondary;
+        Arrays.fill(start, -1);
+    }
+
+    public String getMTI() {
+        if (isEdited(0))
+            return overrides[0];
+        return ascii(base, FlatIsoCodec.MTI_LENGTH);
+    }
+
+    public void setMTI(String mti) {
+        edit(0, mti);
+    }
+
+    /** 0200 → 0210, 0400 → 0410, as {@link ISOMsg#setResponseMTI()}. */
+    public void setResponseMTI() throws ISOException {
+        String mti = getMTI();
+        char c = mti.charAt(2);
+        if ((c - '0') % 2 != 0)
+            throw new ISOException("not a request - can't set response MTI: " + mti);
+        setMTI(mti.substring(0, 2) + (char) (c + 1) + mti.substring(3));
+    }
+
+    public boolean hasField(int f) {
+        if (isEdited(f))
+            return overrides[f] != null;
+        return f > 1 && f <= 128 && start[f] >= 0;
+    }
+
+    /** Highest field present in the received frame (edits not counted). */
+    public int getMaxField() {
+        if (secondary != 0)
+            return 128 - Long.numberOfTrailingZeros(secondary);
+        return primary == 0 ? 0 : 64 - Long.numberOfTrailingZeros(primary);
+    }
+
+    /** Same value {@link ISOMsg#getString(int)} returns after a jPOS unpack: ASCII as sent, binary as hex. */
+    public String getString(int f) {
+        if (isEdited(f))
+            return overrides[f];
+        if (f < 2 || f > 128 || start[f] < 0)
+            return null;
+        return switch (codec.kinds[f]) {
+            case FIXED_BINARY -> {
+                byte[] b = new byte[length[f]];
+                frame.get(start[f], b);
+                yield ISOUtil.hexString(b);
+            }
+            case HEX -> ascii(start[f], length[f]).toUpperCase();
+            default -> ascii(start[f], length[f]);
+        };
+    }
+
+    public void set(int f, String value) {
+        if (f < 2 || f > 128)
+            throw new IllegalArgumentException("field must be between 2 and 128: " + f);
+        edit(f, value);
+    }
+
+    public void unset(int f) {
+        if (hasField(f))
+            edit(f, null);
+    }
+
+    /**
+     * Same message as a jPOS {@link ISOMsg} with edits applied, for callers
+     * that need one (or when {@link FlatIsoCodec#encode} cannot pack an edit).
+     */
+    public ISOMsg toISOMsg(ISOPackager packager) throws ISOException {
+        ISOMsg m = new ISOMsg();
+        m.setPackager(packager);
+        m.setMTI(getMTI());
+        for (int f = 2; f <= 128; f++) {
+            String v = getString(f);
+            if (v == null)
+                continue;
+            FlatIsoCodec.Kind kind = codec.kinds[f];
+            if (kind == FlatIsoCodec.Kind.FIXED_BINARY || kind == FlatIsoCodec.Kind.HEX)
+                m.set(f, ISOUtil.hex2byte(v)); // binary fields hold byte[] in jPOS
+            else
+                m.set(f, v);
+        }
+        return m;
+    }
+
+    boolean isEdited(int f) {
+        return edited != null && edited[f];
+    }
+
+    String override(int f) {
+        return isEdited(f) ? overrides[f] : null;
+    }
+
+    private void edit(int f, String value) {
+        if (edited == null) {
+            edited = new boolean[129];
+            overrides = new String[129];
+        }
+        edited[f] = true;
+        overrides[f] = value;
+    }
+
+    private String ascii(int offset, int len) {
+        if (frame.hasArray())
+            return new String(frame.array(), frame.arrayOffset() + offset, len, StandardCharsets.ISO_8859_1);
+        byte[] b = new byte[len];
+        frame.get(offset, b);
+        return new String(b, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -1,6 +1,7 @@
 
 package capitec.fraudengine.iso;
 
+import org.jpos.iso.ISOComponent;
 import org.jpos.iso.ISOMsg;
 import org.jpos.iso.ISOException;
 import org.jpos.iso.packager.ISO87APackagerBBitmap;
@@ -13,6 +14,7 @@ import org.jpos.iso.ISOUtil;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiFunction;
 
 /**
  * ISO-8583:1987 ASCII packager with BINARY bitmap.
@@ -47,19 +49,19 @@ public class Iso87AsciiBBitmapCustomPackager extends ISO87APackagerBBitmap {
     }
 
     /**
-     * unpack with per-DE trace.
-     * Prints MTI, bitmap presence, each DE value/consumed bytes; stops on first
-     * failure.
+     * Unpack with per-DE trace: MTI, bitmap presence, then each DE with its
+     * value and consumed bytes, stopping at the first failure. Returns the
+     * trace lines; {@code display} formats each value (e.g. masking the PAN).
      */
-    public void traceUnpack(byte[] raw) {
+    public List<String> traceUnpack(byte[] raw, BiFunction<Integer, String, String> display) {
+        List<String> lines = new ArrayList<>();
         try {
             int offset = 0;
             // MTI (ASCII 4)
             if (raw.length < 4)
                 throw new ISOException("Raw too short for MTI");
             String mti = new String(raw, offset, 4, StandardCharsets.US_ASCII);
-            System.out.println("---- TRACE UNPACK ----");
-            System.out.println("MTI: " + mti);
+            lines.add("MTI: " + mti);
             offset += 4;
 
             // Primary bitmap (8 bytes binary)
@@ -79,7 +81,7 @@ public class Iso87AsciiBBitmapCustomPackager extends ISO87APackagerBBitmap {
                 System.arraycopy(raw, offset, s, 0, 8);
                 offset += 8;
             }
-            System.out.println("Bitmap: primary=" + ISOUtil.hexString(p) +
+            lines.add("Bitmap: primary=" + ISOUtil.hexString(p) +
                     ", secondary=" + (hasSecondary ? ISOUtil.hexString(s) : "none"));
 
             // Build presence list from bitmap(s)
@@ -87,36 +89,37 @@ public class Iso87AsciiBBitmapCustomPackager extends ISO87APackagerBBitmap {
             fillBits(present, p, 1); // bits 1..64
             if (hasSecondary)
                 fillBits(present, s, 65); // bits 65..128
-
-            // Show presence
-            System.out.println("Set bits: " + present);
+            lines.add("Set bits: " + present);
 
             // Unpack each present field in order; skip bit 1 (bitmap)
             ISOMsg m = new ISOMsg();
             m.setMTI(mti);
 
-            for (int f = 2; f <= 128; f++) {
-                if (!present.contains(f))
+            for (int f : present) {
+                if (f == 1)
                     continue;
                 if (fld[f] == null) {
-                    System.out.printf("DE%-3d: <no field packager>%n", f);
+                    lines.add("DE" + f + ": <no field packager>");
                     continue;
                 }
                 try {
-                    int consumed = fld[f].unpack(m, raw, offset);
+                    // unpack into the field's own component; the field packagers do not take an ISOMsg
+                    ISOComponent c = fld[f].createComponent(f);
+                    int consumed = fld[f].unpack(c, raw, offset);
+                    m.set(c);
                     String val = m.hasField(f) ? m.getString(f) : null;
-                    System.out.printf("DE%-3d: %s (consumed=%d, offset=%d->%d)%n",
-                            f, safePrintable(val), consumed, offset, offset + consumed);
+                    lines.add("DE" + f + ": " + display.apply(f, val) + " (consumed=" + consumed
+                            + ", offset=" + offset + "->" + (offset + consumed) + ")");
                     offset += consumed;
                 } catch (ISOException ex) {
-                    System.err.printf("FAILED at DE%-3d: %s (offset=%d)%n", f, ex.getMessage(), offset);
+                    lines.add("FAILED at DE" + f + ": " + ex.getMessage() + " (offset=" + offset + ")");
                     break;
                 }
             }
-            System.out.println("---- END TRACE UNPACK ----");
         } catch (Exception ex) {
-            System.err.println("TRACE UNPACK error: " + ex.getMessage());
+            lines.add("TRACE UNPACK error: " + ex.getMessage());
         }
+        return lines;
     }
 
     private static void fillBits(List<Integer> out, byte[] bitmap, int base) {
@@ -128,17 +131,4 @@ public class Iso87AsciiBBitmapCustomPackager extends ISO87APackagerBBitmap {
                 out.add(base + i);
         }
     }
-
-    private static String safePrintable(String v) {
-        if (v == null)
-            return "<null>";
-        StringBuilder sb = new StringBuilder();
-        for (char c : v.toCharArray()) {
-            if (c >= 32 && c <= 126)
-                sb.append(c);
-            else
-                sb.append(String.format("\\x%02X", (int) c));
-        }
-        return sb.toString();
-    }
 }
\ No newline at end of file
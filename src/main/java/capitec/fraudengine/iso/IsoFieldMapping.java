@@ -0,0 +1,164 @@
+package capitec.fraudengine.iso;
+
+import capitec.fraudengine.model.TransactionEntity;
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOUtil;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * DE number → TransactionEntity setter table.
+ * <p>
+ * {@link #toEntity(ISOMsg)} walks the mapped DEs in ascending order up to the
+ * message's highest field and does one lookup per DE, instead of a
+ * hasField/getString pair for every DE we know about. Field values are the
+ * Strings jPOS already holds after unpack; nothing is copied.
+ */
+public final class IsoFieldMapping {
+  private IsoFieldMapping() {
+  }
+
+  @SuppressWarnings("unchecked")
+  private static final BiConsumer<TransactionEntity, String>[] SETTERS = new BiConsumer[129];
+
+  /** Mapped DE numbers, ascending. */
+  private static final int[] FIELDS;
+
+  static {
+    SETTERS[2] = TransactionEntity::setPan;
+    SETTERS[3] = TransactionEntity::setDe3ProcessingCode;
+    SETTERS[4] = (tx, v) -> tx.setAmount(IsoUtils.parseAmount(v)); // cents → BigDecimal
+    SETTERS[7] = TransactionEntity::setDe7TransmissionDateTime;
+    SETTERS[11] = TransactionEntity::setStan;
+    SETTERS[12] = TransactionEntity::setDe12LocalTransactionTime;
+    SETTERS[13] = TransactionEntity::setDe13LocalTransactionDate;
+    SETTERS[14] = TransactionEntity::setDe14ExpirationDate;
+    SETTERS[15] = TransactionEntity::setDe15SettlementDate;
+    SETTERS[18] = TransactionEntity::setDe18MerchantType;
+    SETTERS[22] = TransactionEntity::setDe22PosEntryMode;
+    SETTERS[23] = TransactionEntity::setDe23CardSequenceNumber;
+    SETTERS[25] = TransactionEntity::setDe25PosConditionCode;
+    SETTERS[32] = TransactionEntity::setDe32AcquiringInstIdCode;
+    SETTERS[33] = TransactionEntity::setDe33ForwardingInstIdCode;
+    SETTERS[35] = TransactionEntity::setDe35Track2Data;
+    SETTERS[37] = TransactionEntity::setRrn;
+    SETTERS[40] = TransactionEntity::setDe40ServiceRestrictionCode;
+    SETTERS[41] = TransactionEntity::setTerminalId;
+    SETTERS[42] = TransactionEntity::setMerchantId;
+    SETTERS[43] = TransactionEntity::setLocation;
+    SETTERS[44] = TransactionEntity::setDe44AdditionalResponseData;
+    SETTERS[45] = TransactionEntity::setDe45Track1Data;
+    SETTERS[48] = TransactionEntity::setDe48AdditionalDataPrivate;
+    // numeric ISO-4217 (e.g., 710) → alpha-3 (ZAR)
+    SETTERS[49] = (tx, v) -> tx.setCurrency(IsoUtils.currencyNumericToAlpha(v));
+    SETTERS[52] = TransactionEntity::setDe52PinData;
+    SETTERS[53] = TransactionEntity::setDe53SecurityControlInfo;
+    SETTERS[54] = TransactionEntity::setDe54AdditionalAmounts;
+    SETTERS[56] = TransactionEntity::setDe56OriginalDataElements;
+    SETTERS[58] = TransactionEntity::setDe58AuthorizingAgentInstIdCode;
+    SETTERS[59] = TransactionEntity::setDe59ReservedPrivate;
+    SETTERS[66] = TransactionEntity::setDe66SettlementCode;
+    SETTERS[70] = TransactionEntity::setDe70NetworkMgmtInfoCode;
+    SETTERS[74] = TransactionEntity::setDe74CreditsNumber;
+    SETTERS[75] = TransactionEntity::setDe75CreditsReversalNumber;
+    SETTERS[76] = TransactionEntity::setDe76DebitsNumber;
+    SETTERS[77] = TransactionEntity::setDe77DebitsReversalNumber;
+    SETTERS[78] = TransactionEntity::setDe78TransferNumber;
+    SETTERS[79] = TransactionEntity::setDe79TransferReversalNumber;
+    SETTERS[80] = TransactionEntity::setDe80InquiriesNumber;
+    SETTERS[81] = TransactionEntity::setDe81AuthorizationsNumber;
+    SETTERS[82] = TransactionEntity::setDe82CreditsProcessingFeeAmount;
+    SETTERS[83] = TransactionEntity::setDe83CreditsTransactionFeeAmount;
+    SETTERS[84] = TransactionEntity::setDe84DebitsProcessingFeeAmount;
+    SETTERS[85] = TransactionEntity::setDe85DebitsTransactionFeeAmount;
+    SETTERS[86] = TransactionEntity::setDe86CreditsAmount;
+    SETTERS[87] = TransactionEntity::setDe87CreditsReversalAmount;
+    SETTERS[88] = TransactionEntity::setDe88DebitsAmount;
+    SETTERS[89] = TransactionEntity::setDe89DebitsReversalAmount;
+    SETTERS[90] = TransactionEntity::setDe90OriginalDataElements;
+    SETTERS[91] = TransactionEntity::setDe91FileUpdateCode;
+    SETTERS[95] = TransactionEntity::setDe95ReplacementAmounts;
+    SETTERS[101] = TransactionEntity::setDe101FileName;
+    SETTERS[102] = TransactionEntity::setDe102AccountId1;
+    SETTERS[103] = TransactionEntity::setDe103AccountId2;
+    SETTERS[110] = TransactionEntity::setDe110AdditionalDataIso;
+    SETTERS[118] = TransactionEntity::setDe118InvoiceNumber;
+    SETTERS[119] = TransactionEntity::setDe119TransactionDescription;
+    SETTERS[123] = TransactionEntity::setDe123PosDataCode;
+    SETTERS[127] = TransactionEntity::setDe127AdditionalDataPrivate;
+
+    int[] fields = new int[SETTERS.length];
+    int n = 0;
+    for (int f = 0; f < SETTERS.length; f++) {
+      if (SETTERS[f] != null)
+        fields[n++] = f;
+    }
+    FIELDS = Arrays.copyOf(fields, n);
+  }
+
+  /** Build the entity for a request; derived fields (timestamp, PAN from DE35, amount) are filled in too. */
+  public static TransactionEntity toEntity(ISOMsg req) throws ISOException {
+    TransactionEntity tx = newEntity(req.getMTI());
+    int max = req.getMaxField();
+    for (int f : FIELDS) {
+      if (f > max)
+        break;
+      String v = value(req.getComponent(f));
+      if (v != null)
+        SETTERS[f].accept(tx, v);
+    }
+    return withDerivedFields(tx);
+  }
+
+  /** Same mapping over a {@link FlatIsoCodec} index; only the mapped DEs become Strings. */
+  public static TransactionEntity toEntity(FlatIsoMessage req) {
+    TransactionEntity tx = newEntity(req.getMTI());
+    int max = req.getMaxField();
+    for (int f : FIELDS) {
+      if (f > max)
+        break;
+      String v = req.getString(f);
+      if (v != null)
+        SETTERS[f].accept(tx, v);
+    }
+    return withDerivedFields(tx);
+  }
+
+  private static TransactionEntity newEntity(String mti) {
+    TransactionEntity tx = new TransactionEntity();
+    tx.setMti(mti);
+    tx.setFlagged(false);
+    tx.setCategory(null);
+    return tx;
+  }
+
+  private static TransactionEntity withDerivedFields(TransactionEntity tx) {
+    // MMddHHmmss → OffsetDateTime (UTC, current year); now when DE7 is absent
+    tx.setTimestamp(IsoUtils.parseDe7OrNow(tx.getDe7TransmissionDateTime()));
+    // accountId: DE2 if present; otherwise PAN from DE35 Track2 (before 'D' or '=')
+    if (tx.getPan() == null)
+      tx.setPan(IsoUtils.extractPanFromTrack2(tx.getDe35Track2Data()));
+    if (tx.getAmount() == null)
+      tx.setAmount(IsoUtils.parseAmount(null));
+    return tx;
+  }
+
+  /** Same conversion as ISOMsg.getString: String as-is, binary as hex. */
+  private static String value(ISOComponent c) {
+    if (c == null)
+      return null;
+    try {
+      Object v = c.getValue();
+      if (v instanceof String s)
+        return s;
+      if (v instanceof byte[] b)
+        return ISOUtil.hexString(b);
+    } catch (ISOException e) {
+      // treat an unreadable field as absent, as get() did
+    }
+    return null;
+  }
+}
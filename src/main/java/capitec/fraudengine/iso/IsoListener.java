@@ -0,0 +1,14 @@
+
+package capitec.fraudengine.iso;
+
+/**
+ * An ISO8583 TCP listener. {@code IsoListenerConfig} picks the implementation
+ * from {@code iso8583.listener.mode} and calls {@link #start()} and
+ * {@link #shutdown()} with the application context.
+ */
+public interface IsoListener {
+
+    void start();
+
+    void shutdown();
+}
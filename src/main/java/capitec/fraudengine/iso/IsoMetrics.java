@@ -0,0 +1,60 @@
+package capitec.fraudengine.iso;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters for the ISO listener. Stage timers share the name
+ * {@value #STAGE_TIMER} with a {@code stage} tag (read, unpack, map, pack,
+ * send; rules and persist are recorded by the service layer) so one query
+ * shows where a slow authorization spent its time. Timers are registered once
+ * up front; the hot path only calls {@link Timer#record(long, TimeUnit)}.
+ */
+public final class IsoMetrics {
+  public static final String STAGE_TIMER = "fraud.stage";
+
+  final Timer read;
+  final Timer unpack;
+  final Timer map;
+  final Timer pack;
+  final Timer send;
+
+  final AtomicInteger connections = new AtomicInteger();
+  final AtomicInteger inFlight = new AtomicInteger();
+
+  public IsoMetrics(MeterRegistry registry) {
+    this.read = stage(registry, "read");
+    this.unpack = stage(registry, "unpack");
+    this.map = stage(registry, "map");
+    this.pack = stage(registry, "pack");
+    this.send = stage(registry, "send");
+    Gauge.builder("fraud.iso.connections", connections, AtomicInteger::get)
+        .description("Open ISO8583 client connections")
+        .register(registry);
+    Gauge.builder("fraud.iso.in.flight", inFlight, AtomicInteger::get)
+        .description("ISO8583 requests received and not yet answered")
+        .register(registry);
+  }
+
+  /** Meters that go nowhere, for tests, benchmarks and callers without a registry. */
+  public static IsoMetrics noop() {
+    return new IsoMetrics(new CompositeMeterRegistry());
+  }
+
+  /** Stage timer; percentiles and histogram buckets are configured under management.metrics.distribution. */
+  public static Timer stage(MeterRegistry registry, String stage) {
+    return Timer.builder(STAGE_TIMER)
+        .description("Time spent in one stage of an authorization")
+        .tag("stage", stage)
+        .register(registry);
+  }
+
+  static void record(Timer timer, long startNanos) {
+    timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+}
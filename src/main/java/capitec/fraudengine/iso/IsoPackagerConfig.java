@@ -4,21 +4,16 @@ package capitec.fraudengine.iso;
 
 import org.jpos.iso.ISOBasePackager;
 import org.jpos.iso.packager.ISO87APackagerBBitmap; // ASCII fields + BINARY bitmap
-import org.jpos.util.Logger;
-import org.jpos.util.SimpleLogListener;
 
 public final class IsoPackagerConfig {
     private IsoPackagerConfig() {
     }
 
+    /**
+     * No jPOS logger is attached: field-by-field logging serializes every
+     * unpack on stdout. Use {@link IsoTracer} diagnostics instead.
+     */
     public static ISOBasePackager defaultPackager() {
-        ISO87APackagerBBitmap packager = new ISO87APackagerBBitmap();
-
-        // Attach a packager logger so jPOS prints field-by-field activity
-        Logger plogger = new Logger();
-        plogger.addListener(new SimpleLogListener(System.out));
-        packager.setLogger(plogger, "packager");
-
-        return packager;
+        return new ISO87APackagerBBitmap();
     }
 }
\ No newline at end of file
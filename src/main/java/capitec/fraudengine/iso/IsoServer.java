@@ -1,36 +1,78 @@
 
 package capitec.fraudengine.iso;
 
+import lombok.extern.slf4j.Slf4j;
 import org.jpos.iso.ISOMsg;
 import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOPackager;
-import org.jpos.iso.ISOBasePackager;
 import org.jpos.iso.channel.PostChannel;
-import org.jpos.util.Logger;
-import org.jpos.util.SimpleLogListener;
 
 import java.io.IOException;
 import java.net.ServerSocket;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+public class IsoServer implements IsoListener, Runnable {
+
+    /** How accepted connections are served. */
+    public enum Mode {
+        /** One platform thread per connection, one message at a time. */
+        CLASSIC,
+        /**
+         * One virtual thread reads frames per connection; each message is handled
+         * on its own virtual thread and responses are written as they complete.
+         */
+        VIRTUAL
+    }
 
-public class IsoServer implements Runnable {
+    private static final long DRAIN_TIMEOUT_MS = 5000;
 
     private final int port;
     private final ISOPackager packager;
     private final IsoMessageHandler handler;
+    private final Mode mode;
+    private final int maxInFlight;
+    private final IsoMetrics metrics;
+    private final IsoTracer tracer;
     private volatile boolean running = false;
 
     private ServerSocket serverSocket;
     private Thread serverThread;
 
     public IsoServer(int port, ISOPackager packager, IsoMessageHandler handler) {
+        this(port, packager, handler, Mode.CLASSIC, 1);
+    }
+
+    /**
+     * @param maxInFlight per-connection limit of requests being handled
+     *                    concurrently in {@link Mode#VIRTUAL}; the reader stops
+     *                    pulling frames off the socket while the limit is reached
+     */
+    public IsoServer(int port, ISOPackager packager, IsoMessageHandler handler, Mode mode, int maxInFlight) {
+        this(port, packager, handler, mode, maxInFlight, IsoMetrics.noop());
+    }
+
+    public IsoServer(int port, ISOPackager packager, IsoMessageHandler handler, Mode mode, int maxInFlight,
+            IsoMetrics metrics) {
+        this(port, packager, handler, mode, maxInFlight, metrics, IsoTracer.disabled());
+    }
+
+    public IsoServer(int port, ISOPackager packager, IsoMessageHandler handler, Mode mode, int maxInFlight,
+            IsoMetrics metrics, IsoTracer tracer) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("maxInFlight must be >= 1");
         this.port = port;
         this.packager = packager;
         this.handler = handler;
+        this.mode = mode;
+        this.maxInFlight = maxInFlight;
+        this.metrics = metrics;
+        this.tracer = tracer;
     }
 
     /** Spring will call this as initMethod */
+    @Override
     public void start() {
         if (serverThread != null && serverThread.isAlive())
             return;
@@ -41,6 +83,7 @@ public class IsoServer implements Runnable {
     }
 
     /** Spring will call this as destroyMethod */
+    @Override
     public void shutdown() {
         running = false;
         try {
@@ -48,247 +91,169 @@ public class IsoServer implements Runnable {
                 serverSocket.close();
         } catch (IOException ignored) {
         }
-        System.out.println("ISO Server shutdown requested");
+        log.info("ISO Server shutdown requested");
     }
 
     @Override
     public void run() {
-
-        Logger channelLogger = new Logger();
-        channelLogger.addListener(new SimpleLogListener(System.out));
-
-        // Packager logger (field-by-field activity)
-        if (packager instanceof ISOBasePackager) {
-            ISOBasePackager p = (ISOBasePackager) packager;
-            Logger packagerLogger = new Logger();
-            packagerLogger.addListener(new SimpleLogListener(System.out));
-            p.setLogger(packagerLogger, "packager");
-        }
-
+        // No jPOS loggers on the channel or packager: per-message tracing goes
+        // through IsoTracer, off the connection threads.
         try {
             serverSocket = new ServerSocket(port);
-            System.out.println("ISO Server listening on port " + port + " (BINARY framing via PostChannel)");
+            log.info("ISO Server listening on port {} (BINARY framing via PostChannel, mode={}, trace={})",
+                    port, mode, tracer.isEnabled() ? "on" : "off");
 
             while (running) {
-                PostChannel channel = new PostChannel(packager); // server-side constructor
-                channel.setLogger(channelLogger, "iso-channel");
+                PostChannel channel = new MeteredPostChannel(packager, metrics, tracer); // server-side constructor
                 channel.setTimeout(0); // keep connection alive (no read timeout)
                 channel.accept(serverSocket); // blocks until a client connects
 
-                System.out.println("Client connected: " + channel.getSocket().getRemoteSocketAddress());
-                new Thread(() -> handleClient(channel), "iso-client").start();
+                log.info("Client connected: {}", channel.getSocket().getRemoteSocketAddress());
+                metrics.connections.incrementAndGet();
+                if (mode == Mode.VIRTUAL) {
+                    Thread.ofVirtual().name("iso-client-vt").start(() -> handleClientPipelined(channel));
+                } else {
+                    new Thread(() -> handleClient(channel), "iso-client").start();
+                }
             }
         } catch (IOException e) {
             if (running) {
-                System.err.println("ISO Server failed: " + e.getMessage());
+                log.error("ISO Server failed: {}", e.getMessage());
             } else {
-                System.out.println("ISO Server shutting down.");
+                log.info("ISO Server shutting down.");
             }
         }
     }
 
     private void handleClient(PostChannel channel) {
-        // Run the raw tracer once for THIS connection
-        boolean traceOnceForThisConnection = true;
-
+        Object remote = channel.getSocket().getRemoteSocketAddress();
         try {
             while (running && channel.isConnected()) {
                 try {
-                    // >>> One-shot diagnostic run: read raw frame, trace, then ALSO process &
-                    // respond
-                    if (traceOnceForThisConnection && packager != null) {
-                        ISOMsg traced = receiveOneAndTraceRawAndReturnMsg(channel, packager); // << NEW
-                        traceOnceForThisConnection = false; // disable after first use
-
-                        // Process traced first message and send a response
-                        printIsoDebug(traced);
-                        ISOMsg resp = handler.handle(traced);
-                        channel.send(resp);
-                        continue;
-                    }
-
-                    // >>> Normal flow for subsequent messages
                     ISOMsg req = channel.receive(); // framed receive (2-byte MSB/LSB)
-                    printIsoDebug(req);
-                    ISOMsg resp = handler.handle(req);
-                    channel.send(resp);
+                    boolean traced = tracer.traceRequest(req, remote);
+                    metrics.inFlight.incrementAndGet();
+                    try {
+                        respond(channel, handler.handle(req), traced ? remote : null);
+                    } finally {
+                        metrics.inFlight.decrementAndGet();
+                    }
 
+                } catch (MeteredPostChannel.PeerClosedException e) {
+                    break;
                 } catch (ISOException e) {
                     String msg = e.getMessage() == null ? "" : e.getMessage().toLowerCase();
                     if (msg.contains("timeout")) {
-                        System.out.println("ISO receive timeout on " +
-                                channel.getSocket().getRemoteSocketAddress() +
-                                " — keeping connection alive.");
+                        log.debug("ISO receive timeout on {}, keeping connection alive", remote);
                         continue;
                     }
-                    System.err.println("ISO parse/send error: " + e.getMessage() +
-                            " from " + channel.getSocket().getRemoteSocketAddress());
-
-                    int failingField = parseFailingField(e.getMessage());
-                    if (failingField > 0) {
-                        System.err.println(">> jPOS reports failure while unpacking field " + failingField +
-                                " . This typically means a field *before* " + failingField +
-                                " is mis-typed or has the wrong length, so the parser slid.");
-                    }
+                    logParseError(e, remote);
                     break;
                 }
             }
         } catch (IOException e) {
-            System.err.println("Client IO closed: " + e.getMessage());
+            log.info("Client IO closed: {}", e.getMessage());
         } finally {
             try {
                 channel.disconnect();
             } catch (IOException ignored) {
             }
-            System.out.println("Client handler finished");
+            metrics.connections.decrementAndGet();
+            log.info("Client handler finished: {}", remote);
         }
     }
 
-    // ---------------------------
-    // Debug & diagnostic helpers
-    // ---------------------------
-
     /**
-     * Print MTI, set bits, and all parsed fields with values and lengths (for
-     * LLVARs).
+     * Pipelined connection loop: keeps reading frames while earlier requests are
+     * still being handled. Every request runs on its own virtual thread; the
+     * responses go back in completion order (the channel serializes writes),
+     * and the acquirer matches them by STAN/RRN. A repeated STAN/RRN is not
+     * special here: the handler's retransmission index answers it.
      */
-    private static void printIsoDebug(ISOMsg m) throws ISOException {
-        System.out.println("---- ISO DEBUG DUMP ----");
-        System.out.println("MTI: " + m.getMTI());
+    private void handleClientPipelined(PostChannel channel) {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        Object remote = channel.getSocket().getRemoteSocketAddress();
 
-        // Presence list (which fields jPOS says are set)
-        List<Integer> setBits = new ArrayList<>();
-        for (int f = 1; f <= m.getMaxField(); f++) {
-            if (m.hasField(f))
-                setBits.add(f);
-        }
-        System.out.println("Set bits: " + setBits);
+        try {
+            while (running && channel.isConnected()) {
+                ISOMsg req;
+                try {
+                    req = channel.receive(); // framed receive (2-byte MSB/LSB)
+                } catch (MeteredPostChannel.PeerClosedException e) {
+                    break; // the socket stays open until in-flight responses are written
+                } catch (ISOException e) {
+                    String msg = e.getMessage() == null ? "" : e.getMessage().toLowerCase();
+                    if (msg.contains("timeout"))
+                        continue;
+                    logParseError(e, remote);
+                    break;
+                }
 
-        // Values + lengths (helps spot LLVAR length mismatches)
-        for (int f = 1; f <= m.getMaxField(); f++) {
-            if (!m.hasField(f))
-                continue;
-            String v;
+                boolean traced = tracer.traceRequest(req, remote);
+                inFlight.acquire(); // backpressure: stop reading until a slot frees up
+                metrics.inFlight.incrementAndGet();
+                String key = correlationKey(req);
+
+                Thread.ofVirtual().name("iso-req-vt").start(() -> {
+                    try {
+                        respond(channel, handler.handle(req), traced ? remote : null);
+                    } catch (Exception e) {
+                        log.error("ISO handle/send error for {} from {}: {}", key, remote, e.getMessage());
+                    } finally {
+                        metrics.inFlight.decrementAndGet();
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            log.info("Client IO closed: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Let requests already being handled write their responses before closing
             try {
-                v = m.getString(f);
-            } catch (Exception e) {
-                v = "<binary>";
+                if (!inFlight.tryAcquire(maxInFlight, DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    log.warn("Closing {} with {} unanswered request(s)", remote,
+                            maxInFlight - inFlight.availablePermits());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            int len = (v == null) ? 0 : v.length();
-            System.out.printf("F%-3d: %s (len=%d)%n", f, safePrintable(v), len);
-        }
-
-        // Highlight key fields we care about
-        highlight(m, 18, "Merchant Category Code");
-        highlight(m, 22, "POS Entry Mode");
-        highlight(m, 25, "POS Condition Code");
-        highlight(m, 32, "Acquiring Institution ID");
-        highlight(m, 33, "Forwarding Institution ID");
-        highlight(m, 35, "Track 2");
-        highlight(m, 41, "Terminal ID");
-        highlight(m, 42, "Merchant ID");
-        highlight(m, 43, "Merchant Name/Location");
-        highlight(m, 49, "Currency Code");
-        System.out.println("---- END ISO DEBUG DUMP ----");
-    }
-
-    private static void highlight(ISOMsg m, int f, String name) {
-        if (m.hasField(f)) {
-            String v;
             try {
-                v = m.getString(f);
-            } catch (Exception e) {
-                v = "<binary>";
+                channel.disconnect();
+            } catch (IOException ignored) {
             }
-            System.out.printf(">> F%-3d (%s): %s%n", f, name, safePrintable(v));
-        } else {
-            System.out.printf(">> F%-3d (%s): <not present>%n", f, name);
+            metrics.connections.decrementAndGet();
+            log.info("Client handler finished: {}", remote);
         }
     }
 
-    private static String safePrintable(String v) {
-        if (v == null)
-            return "<null>";
-        StringBuilder sb = new StringBuilder();
-        for (char c : v.toCharArray()) {
-            if (c >= 32 && c <= 126)
-                sb.append(c); // printable ASCII
-            else
-                sb.append(String.format("\\x%02X", (int) c));
-        }
-        return sb.toString();
+    /**
+     * Write one response as a length-prefixed frame. {@link MeteredPostChannel}
+     * times packing and the socket write as separate stages and packs outside
+     * the channel's output lock, so concurrent requests only serialize on the
+     * write itself. {@code tracedRemote} is set when the request was traced.
+     */
+    private void respond(PostChannel channel, ISOMsg resp, Object tracedRemote) throws IOException, ISOException {
+        if (tracedRemote != null)
+            tracer.traceResponse(resp, tracedRemote);
+        channel.send(resp); // framed send (2-byte MSB/LSB), like receive()
     }
 
-    /** Parse "unpacking field=X" out of ISOException#getMessage() if present. */
-    private static int parseFailingField(String msg) {
-        if (msg == null)
-            return -1;
-        // Message format example: "... unpacking field=32, consumed=57"
-        try {
-            String needle = "unpacking field=";
-            int p = msg.indexOf(needle);
-            if (p >= 0) {
-                int start = p + needle.length();
-                int end = start;
-                while (end < msg.length() && Character.isDigit(msg.charAt(end)))
-                    end++;
-                return Integer.parseInt(msg.substring(start, end));
-            }
-        } catch (Exception ignored) {
-        }
-        return -1;
+    /** STAN/RRN of a request, for log lines on a pipelined link. */
+    static String correlationKey(ISOMsg m) {
+        String stan = m.hasField(11) ? m.getString(11) : "";
+        String rrn = m.hasField(37) ? m.getString(37) : "";
+        return stan + "/" + rrn;
     }
 
-    // --- One-shot raw trace helper that ALSO returns the unpacked ISOMsg ---
-    private ISOMsg receiveOneAndTraceRawAndReturnMsg(PostChannel channel, ISOPackager p) throws IOException {
-        // Read 2-byte MSB/LSB length from the socket (PostChannel framing)
-        var in = channel.getSocket().getInputStream();
-        int b1 = in.read();
-        int b2 = in.read();
-        if (b1 < 0 || b2 < 0)
-            throw new IOException("EOF reading frame length");
-        int len = ((b1 & 0xFF) << 8) | (b2 & 0xFF);
-
-        byte[] raw = in.readNBytes(len);
-        System.out.println("Raw frame length=" + len);
-
-        // Hex preview of the first 64 bytes
-        int preview = Math.min(64, raw.length);
-        StringBuilder sb = new StringBuilder("Raw[0.." + (preview - 1) + "]: ");
-        for (int i = 0; i < preview; i++)
-            sb.append(String.format("%02X", raw[i]));
-        System.out.println(sb);
-
-        // Packager-driven trace: create ISOMsg and let the packager unpack it
-        System.out.println("---- TRACE UNPACK (packager-driven) ----");
-        try {
-            ISOMsg m = new ISOMsg();
-            m.setPackager(p); // use whichever packager you're testing
-            m.unpack(raw); // jPOS unpacks the whole message
-
-            System.out.println("MTI: " + m.getMTI());
-            List<Integer> fields = new ArrayList<>();
-            for (int f = 1; f <= m.getMaxField(); f++)
-                if (m.hasField(f))
-                    fields.add(f);
-            System.out.println("Set bits: " + fields);
-
-            for (int f : fields) {
-                String v;
-                try {
-                    v = m.getString(f);
-                } catch (Exception e) {
-                    v = "<binary>";
-                }
-                int lenF = (v == null) ? 0 : v.length();
-                System.out.printf("DE%-3d: %s (len=%d)%n", f, v, lenF);
-            }
-
-            System.out.println("---- END TRACE UNPACK ----");
-            return m;
-        } catch (ISOException e) {
-            System.err.println("FAILED: " + e.getMessage());
-            throw new IOException("Packager failed: " + e.getMessage(), e);
+    private static void logParseError(ISOException e, Object remote) {
+        int failingField = IsoTracer.failingField(e.getMessage());
+        if (failingField > 0) {
+            // A field *before* this one is usually mis-typed or has the wrong length, so the parser slid
+            log.error("ISO parse error from {} while unpacking DE{}: {}", remote, failingField, e.getMessage());
+        } else {
+            log.error("ISO parse/send error from {}: {}", remote, e.getMessage());
         }
     }
 }
@@ -0,0 +1,53 @@
+
+package capitec.fraudengine.iso;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * {@code /actuator/isotrace}: trace settings and counters. A POST switches
+ * tracing, changes the sample rate or filters (comma-separated, empty string
+ * clears) and with {@code diagnoseNext} arms raw-frame diagnostics for the
+ * next N frames.
+ */
+@Component
+@Endpoint(id = "isotrace")
+public class IsoTraceEndpoint {
+
+    private final IsoTracer tracer;
+
+    public IsoTraceEndpoint(IsoTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> trace() {
+        return tracer.status();
+    }
+
+    @WriteOperation
+    public Map<String, Object> configure(@Nullable Boolean enabled, @Nullable Double sampleRate,
+            @Nullable String terminals, @Nullable String pans, @Nullable Integer diagnoseNext) {
+        tracer.configure(enabled, sampleRate, split(terminals), split(pans));
+        if (diagnoseNext != null)
+            tracer.diagnoseNext(diagnoseNext);
+        return tracer.status();
+    }
+
+    private static Set<String> split(String csv) {
+        if (csv == null)
+            return null;
+        return Arrays.stream(csv.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,406 @@
+
+package capitec.fraudengine.iso;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.jpos.iso.ISOUtil;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Sampled message trace for the ISO listener, off by default.
+ * <p>
+ * The connection threads only decide whether a message is traced (enabled,
+ * terminal / PAN filter, sample rate) and copy its field values into a
+ * bounded buffer; a background thread formats each record as one JSON line on
+ * the {@code iso.trace} logger. When the buffer is full records are dropped
+ * and counted rather than slowing the listener down. PANs are masked and
+ * track / PIN data redacted unless masking is switched off.
+ * <p>
+ * Raw-frame diagnostics (hex header and a field-by-field unpack walk) run for
+ * frames that fail to unpack while tracing is enabled, and for the next N
+ * frames after {@link #diagnoseNext(int)} is called, e.g. from
+ * {@code /actuator/isotrace}.
+ */
+public class IsoTracer {
+
+    static final String LOGGER_NAME = "iso.trace";
+
+    /** Header bytes shown for a diagnosed frame when masking (MTI + both bitmaps). */
+    private static final int MASKED_PREVIEW = 20;
+    private static final int CLEAR_PREVIEW = 64;
+
+    private final ArrayBlockingQueue<Object> buffer;
+    private final Consumer<String> sink;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger diagnosticsArmed = new AtomicInteger();
+
+    private volatile boolean enabled;
+    private volatile double sampleRate;
+    private volatile Set<String> terminals;
+    private volatile Set<String> pans;
+    private volatile boolean maskPan;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public IsoTracer(boolean enabled, double sampleRate, Set<String> terminals, Set<String> pans,
+            boolean maskPan, int bufferSize) {
+        this(enabled, sampleRate, terminals, pans, maskPan, bufferSize,
+                LoggerFactory.getLogger(LOGGER_NAME)::info);
+    }
+
+    IsoTracer(boolean enabled, double sampleRate, Set<String> terminals, Set<String> pans,
+            boolean maskPan, int bufferSize, Consumer<String> sink) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be >= 1");
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.sink = sink;
+        this.maskPan = maskPan;
+        configure(enabled, sampleRate, terminals, pans);
+    }
+
+    /** Tracer that never records anything, for callers without trace configuration. */
+    public static IsoTracer disabled() {
+        return new IsoTracer(false, 0, Set.of(), Set.of(), true, 1);
+    }
+
+    /** Replace the trace settings at runtime; null leaves a setting unchanged. */
+    public synchronized void configure(Boolean enabled, Double sampleRate, Set<String> terminals, Set<String> pans) {
+        if (sampleRate != null) {
+            if (sampleRate < 0 || sampleRate > 1)
+                throw new IllegalArgumentException("sampleRate must be between 0 and 1");
+            this.sampleRate = sampleRate;
+        }
+        if (terminals != null)
+            this.terminals = Set.copyOf(terminals);
+        if (pans != null)
+            this.pans = Set.copyOf(pans);
+        if (enabled != null)
+            this.enabled = enabled;
+    }
+
+    /** Diagnose the raw bytes of the next {@code frames} frames received, whether or not tracing is enabled. */
+    public void diagnoseNext(int frames) {
+        diagnosticsArmed.set(Math.max(0, frames));
+    }
+
+    public void start() {
+        if (writer != null)
+            return;
+        running = true;
+        writer = new Thread(this::runWriter, "iso-trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void close() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Record a received request if it passes the filters and the sample.
+     *
+     * @return whether it was traced, so the caller traces the matching response
+     */
+    public boolean traceRequest(ISOMsg m, Object remote) {
+        if (!enabled || !sampled(f -> value(m, f)))
+            return false;
+        enqueue(snapshot("request", mti(m), m.getMaxField(), f -> value(m, f), remote));
+        return true;
+    }
+
+    /** Record the response to a request {@link #traceRequest} accepted. */
+    public void traceResponse(ISOMsg m, Object remote) {
+        if (enabled)
+            enqueue(snapshot("response", mti(m), m.getMaxField(), f -> value(m, f), remote));
+    }
+
+    /** {@link #traceRequest(ISOMsg, Object)} for a frame decoded by {@link FlatIsoCodec}. */
+    public boolean traceRequest(FlatIsoMessage m, Object remote) {
+        if (!enabled || !sampled(m::getString))
+            return false;
+        enqueue(snapshot("request", m.getMTI(), m.getMaxField(), m::getString, remote));
+        return true;
+    }
+
+    public void traceResponse(FlatIsoMessage m, Object remote) {
+        if (enabled) // edits may add fields above the received maximum
+            enqueue(snapshot("response", m.getMTI(), 128, m::getString, remote));
+    }
+
+    /** True when a diagnostic was requested for this frame; consumes one armed diagnostic. */
+    boolean takeDiagnostic() {
+        return diagnosticsArmed.get() > 0 && diagnosticsArmed.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0;
+    }
+
+    /** Queue a raw-frame diagnostic; formatting happens on the writer thread. */
+    void diagnose(byte[] raw, ISOPackager packager, Object remote, String reason) {
+        enqueue(new Frame(System.currentTimeMillis(), String.valueOf(remote), raw.clone(), packager, reason));
+    }
+
+    void diagnoseFailure(byte[] raw, ISOPackager packager, Object remote, ISOException e) {
+        if (enabled)
+            diagnose(raw, packager, remote, "unpack failed: " + e.getMessage());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("enabled", enabled);
+        s.put("sampleRate", sampleRate);
+        s.put("terminals", terminals);
+        s.put("pans", maskPan ? pans.stream().map(IsoTracer::maskPan).toList() : pans);
+        s.put("maskPan", maskPan);
+        s.put("diagnosticsArmed", diagnosticsArmed.get());
+        s.put("buffered", buffer.size());
+        s.put("written", written.sum());
+        s.put("dropped", dropped.sum());
+        return s;
+    }
+
+    private boolean sampled(IntFunction<String> value) {
+        if (!matches(value))
+            return false;
+        double rate = sampleRate;
+        return rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private boolean matches(IntFunction<String> value) {
+        Set<String> t = terminals;
+        Set<String> p = pans;
+        if (t.isEmpty() && p.isEmpty())
+            return true;
+        String tid = value.apply(41);
+        if (tid != null && t.contains(tid.trim()))
+            return true;
+        return !p.isEmpty() && p.contains(panOf(value));
+    }
+
+    private Snapshot snapshot(String event, String mti, int max, IntFunction<String> value, Object remote) {
+        int[] fields = new int[max + 1];
+        String[] values = new String[max + 1];
+        int n = 0;
+        for (int f = 2; f <= max; f++) {
+            String v = value.apply(f);
+            if (v == null)
+                continue;
+            fields[n] = f;
+            values[n++] = display(f, v);
+        }
+        return new Snapshot(System.currentTimeMillis(), event, String.valueOf(remote), mti, fields, values, n);
+    }
+
+    private static String value(ISOMsg m, int f) {
+        if (!m.hasField(f))
+            return null;
+        try {
+            return m.getString(f);
+        } catch (Exception e) {
+            return "<binary>";
+        }
+    }
+
+    private static String mti(ISOMsg m) {
+        try {
+            return m.getMTI();
+        } catch (ISOException e) {
+            return null;
+        }
+    }
+
+    private void enqueue(Object record) {
+        if (!buffer.offer(record))
+            dropped.increment();
+    }
+
+    private void runWriter() {
+        while (running) {
+            try {
+                write(buffer.take());
+            } catch (InterruptedException e) {
+                if (!running)
+                    break;
+            }
+        }
+    }
+
+    /** Write everything still buffered on the calling thread. */
+    void drain() {
+        Object record;
+        while ((record = buffer.poll()) != null)
+            write(record);
+    }
+
+    private void write(Object record) {
+        Map<String, Object> line = record instanceof Snapshot s ? format(s) : format((Frame) record);
+        try {
+            sink.accept(mapper.writeValueAsString(line));
+            written.increment();
+        } catch (JsonProcessingException | RuntimeException e) {
+            dropped.increment();
+        }
+    }
+
+    private Map<String, Object> format(Snapshot s) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("ts", Instant.ofEpochMilli(s.epochMillis()).toString());
+        line.put("event", s.event());
+        line.put("remote", s.remote());
+        line.put("mti", s.mti());
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (int i = 0; i < s.count(); i++)
+            fields.put(Integer.toString(s.fields()[i]), s.values()[i]);
+        line.put("fields", fields);
+        return line;
+    }
+
+    private Map<String, Object> format(Frame f) {
+        byte[] raw = f.raw();
+        int preview = Math.min(maskPan ? MASKED_PREVIEW : CLEAR_PREVIEW, raw.length);
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("ts", Instant.ofEpochMilli(f.epochMillis()).toString());
+        line.put("event", "diagnostic");
+        line.put("remote", f.remote());
+        line.put("reason", f.reason());
+        line.put("length", raw.length);
+        line.put("head", ISOUtil.hexString(raw, 0, preview));
+        line.put("trace", unpackTrace(raw, f.packager()));
+        return line;
+    }
+
+    /** Field-by-field walk of a raw frame; shows offsets when the packager supports it. */
+    private List<String> unpackTrace(byte[] raw, ISOPackager packager) {
+        if (packager instanceof Iso87AsciiBBitmapCustomPackager custom)
+            return custom.traceUnpack(raw, this::display);
+
+        List<String> lines = new ArrayList<>();
+        ISOMsg m = new ISOMsg();
+        m.setPackager(packager);
+        try {
+            m.unpack(raw);
+            lines.add("MTI " + m.getMTI());
+            for (int f = 2; f <= m.getMaxField(); f++) {
+                if (!m.hasField(f))
+                    continue;
+                String v;
+                try {
+                    v = m.getString(f);
+                } catch (Exception e) {
+                    v = "<binary>";
+                }
+                lines.add("DE" + f + " len=" + (v == null ? 0 : v.length()) + " " + display(f, v));
+            }
+        } catch (ISOException e) {
+            lines.add("FAILED: " + e.getMessage());
+            int failingField = failingField(e.getMessage());
+            if (failingField > 0)
+                lines.add("a field before DE" + failingField + " probably has the wrong type or length");
+        }
+        return lines;
+    }
+
+    /** Value as written to the trace: PAN masked, track and PIN data redacted, non-printables escaped. */
+    String display(int field, String v) {
+        if (v == null)
+            return null;
+        switch (field) {
+            case 2:
+                return maskPan ? maskPan(v) : printable(v);
+            case 35:
+                if (!maskPan)
+                    return printable(v);
+                int sep = v.indexOf('=') >= 0 ? v.indexOf('=') : v.indexOf('D');
+                return sep > 0 ? maskPan(v.substring(0, sep)) + "=<redacted>" : "<redacted>";
+            case 45:
+            case 52:
+            case 55:
+                return "<redacted len=" + v.length() + ">";
+            default:
+                return printable(v);
+        }
+    }
+
+    static String maskPan(String pan) {
+        if (pan.length() < 11)
+            return "*".repeat(pan.length());
+        return pan.substring(0, 6) + "*".repeat(pan.length() - 10) + pan.substring(pan.length() - 4);
+    }
+
+    private static String panOf(IntFunction<String> value) {
+        String pan = value.apply(2);
+        if (pan != null)
+            return pan;
+        String track2 = value.apply(35);
+        return track2 != null ? IsoUtils.extractPanFromTrack2(track2) : null;
+    }
+
+    private static String printable(String v) {
+        StringBuilder sb = null;
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            if (c >= 32 && c <= 126) {
+                if (sb != null)
+                    sb.append(c);
+                continue;
+            }
+            if (sb == null)
+                sb = new StringBuilder(v.length() + 8).append(v, 0, i);
+            sb.append(String.format("\\x%02X", (int) c));
+        }
+        return sb == null ? v : sb.toString();
+    }
+
+    /** Parse "unpacking field=X" out of an ISOException message, or -1. */
+    static int failingField(String msg) {
+        if (msg == null)
+            return -1;
+        // Message format example: "... unpacking field=32, consumed=57"
+        String needle = "unpacking field=";
+        int p = msg.indexOf(needle);
+        if (p < 0)
+            return -1;
+        int start = p + needle.length();
+        int end = start;
+        while (end < msg.length() && Character.isDigit(msg.charAt(end)))
+            end++;
+        return end > start ? Integer.parseInt(msg.substring(start, end)) : -1;
+    }
+
+    private record Snapshot(long epochMillis, String event, String remote, String mti, int[] fields,
+            String[] values, int count) {
+    }
+
+    private record Frame(long epochMillis, String remote, byte[] raw, ISOPackager packager, String reason) {
+    }
+}
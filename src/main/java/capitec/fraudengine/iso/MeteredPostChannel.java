@@ -0,0 +1,100 @@
+package capitec.fraudengine.iso;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.jpos.iso.channel.PostChannel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PostChannel that times reading a frame body (after its length prefix has
+ * arrived, so idle time between messages is not counted) and unpacking it,
+ * and hands raw frames to {@link IsoTracer} for diagnostics when asked to or
+ * when they fail to unpack. On the way out it times packing and the framed
+ * write separately.
+ */
+public class MeteredPostChannel extends PostChannel {
+  /** Pack time of the current thread's last {@link #send(ISOMsg)}, subtracted from the send stage. */
+  private static final ThreadLocal<long[]> PACK_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+  private final IsoMetrics metrics;
+  private final IsoTracer tracer;
+
+  /**
+   * The peer closed its side between frames. jPOS closes the whole socket on
+   * an {@link EOFException}; reporting it as this instead keeps the socket
+   * open so responses to requests still in flight can be written.
+   */
+  public static final class PeerClosedException extends ISOException {
+    PeerClosedException() {
+      super("peer closed the connection");
+    }
+  }
+
+  public MeteredPostChannel(ISOPackager packager, IsoMetrics metrics) throws IOException {
+    this(packager, metrics, IsoTracer.disabled());
+  }
+
+  public MeteredPostChannel(ISOPackager packager, IsoMetrics metrics, IsoTracer tracer) throws IOException {
+    super(packager);
+    this.metrics = metrics;
+    this.tracer = tracer;
+  }
+
+  @Override
+  protected int getMessageLength() throws IOException, ISOException {
+    try {
+      return super.getMessageLength();
+    } catch (EOFException e) {
+      throw new PeerClosedException();
+    }
+  }
+
+  @Override
+  protected void getMessage(byte[] b, int offset, int len) throws IOException, ISOException {
+    long start = System.nanoTime();
+    super.getMessage(b, offset, len);
+    IsoMetrics.record(metrics.read, start);
+  }
+
+  @Override
+  protected void unpack(ISOMsg m, byte[] b) throws ISOException {
+    if (tracer.takeDiagnostic())
+      tracer.diagnose(b, getPackager(), remote(), "requested");
+    long start = System.nanoTime();
+    try {
+      super.unpack(m, b);
+    } catch (ISOException e) {
+      tracer.diagnoseFailure(b, getPackager(), remote(), e);
+      throw e;
+    }
+    IsoMetrics.record(metrics.unpack, start);
+  }
+
+  /** Frames with the 2-byte length prefix; the send stage covers waiting for the output lock and the write. */
+  @Override
+  public void send(ISOMsg m) throws IOException, ISOException {
+    long[] packNanos = PACK_NANOS.get();
+    packNanos[0] = 0;
+    long start = System.nanoTime();
+    super.send(m);
+    metrics.send.record(System.nanoTime() - start - packNanos[0], TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  protected byte[] pack(ISOMsg m) throws ISOException {
+    long start = System.nanoTime();
+    byte[] b = super.pack(m);
+    long took = System.nanoTime() - start;
+    PACK_NANOS.get()[0] = took;
+    metrics.pack.record(took, TimeUnit.NANOSECONDS);
+    return b;
+  }
+
+  private Object remote() {
+    return getSocket() != null ? getSocket().getRemoteSocketAddress() : null;
+  }
+}
@@ -0,0 +1,336 @@
+
+package capitec.fraudengine.iso;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event-loop ISO8583 listener ({@code iso8583.listener.mode=netty}).
+ * <p>
+ * A few NIO event-loop threads serve every connection. The 2-byte MSB/LSB
+ * length prefix is decoded straight off pooled direct buffers, each frame is
+ * unpacked with the configured jPOS packager on the event loop, and
+ * {@link IsoMessageHandler#handle} (rules and persistence, which may block)
+ * runs on a bounded worker pool. Responses are written as they complete; the
+ * acquirer matches them by STAN/RRN, as on the pipelined {@link IsoServer}.
+ * <p>
+ * With a {@link FlatIsoCodec} the frame is indexed in place instead: the
+ * pooled buffer is retained until the 0210 has been encoded by patching it,
+ * and frames the codec cannot handle go through the jPOS packager.
+ * <p>
+ * Backpressure: a connection stops being read while {@code maxInFlight} of
+ * its requests are being handled. When the worker queue is full the request
+ * is answered at once with DE39 {@value #POOL_FULL_RESPONSE_CODE}.
+ */
+@Slf4j
+public class NettyIsoServer implements IsoListener {
+
+    /** Largest body a 2-byte length prefix can announce. */
+    static final int MAX_FRAME = 0xFFFF;
+
+    /** Issuer or switch inoperative. */
+    static final String POOL_FULL_RESPONSE_CODE = "91";
+
+    private static final long DRAIN_TIMEOUT_MS = 5000;
+
+    private final int port;
+    private final ISOPackager packager;
+    private final IsoMessageHandler handler;
+    private final int ioThreads;
+    private final int workers;
+    private final int queueCapacity;
+    private final int maxInFlight;
+    private final IsoMetrics metrics;
+    private final IsoTracer tracer;
+    private final FlatIsoCodec codec;
+
+    private EventLoopGroup acceptGroup;
+    private EventLoopGroup ioGroup;
+    private ThreadPoolExecutor workerPool;
+    private Channel serverChannel;
+
+    /**
+     * @param ioThreads     event-loop threads; 0 uses Netty's default (2 x cores)
+     * @param workers       threads running {@link IsoMessageHandler#handle}
+     * @param queueCapacity requests waiting for a worker before new ones are
+     *                      answered with DE39 {@value #POOL_FULL_RESPONSE_CODE}
+     * @param maxInFlight   per-connection limit of requests being handled
+     */
+    public NettyIsoServer(int port, ISOPackager packager, IsoMessageHandler handler, int ioThreads, int workers,
+            int queueCapacity, int maxInFlight, IsoMetrics metrics, IsoTracer tracer) {
+        this(port, packager, handler, ioThreads, workers, queueCapacity, maxInFlight, metrics, tracer, null);
+    }
+
+    /** @param codec flat codec for {@code packager}'s layout, or null to unpack every frame with jPOS */
+    public NettyIsoServer(int port, ISOPackager packager, IsoMessageHandler handler, int ioThreads, int workers,
+            int queueCapacity, int maxInFlight, IsoMetrics metrics, IsoTracer tracer, FlatIsoCodec codec) {
+        if (workers < 1 || queueCapacity < 1 || maxInFlight < 1)
+            throw new IllegalArgumentException("workers, queueCapacity and maxInFlight must be >= 1");
+        this.port = port;
+        this.packager = packager;
+        this.handler = handler;
+        this.ioThreads = ioThreads;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.maxInFlight = maxInFlight;
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.codec = codec;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (serverChannel != null)
+            return;
+        acceptGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("iso-netty-accept", true));
+        ioGroup = new NioEventLoopGroup(ioThreads, new DefaultThreadFactory("iso-netty-io", true));
+        workerPool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new DefaultThreadFactory("iso-worker", true));
+
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(acceptGroup, ioGroup)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        configure(ch.pipeline());
+                    }
+                });
+        serverChannel = bootstrap.bind(port).syncUninterruptibly().channel();
+        log.info("ISO Server (netty) listening on port {} (io-threads={}, workers={}, queue={}, codec={}, trace={})",
+                getPort(), ioThreads == 0 ? "default" : ioThreads, workers, queueCapacity,
+                codec != null ? "flat" : "jpos", tracer.isEnabled() ? "on" : "off");
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        if (serverChannel == null)
+            return;
+        serverChannel.close().syncUninterruptibly();
+        // Let requests already being handled write their responses before the loops stop
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Closing with {} request(s) still queued or running",
+                        workerPool.getQueue().size() + workerPool.getActiveCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ioGroup.shutdownGracefully(0, DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        acceptGroup.shutdownGracefully(0, DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        serverChannel = null;
+        log.info("ISO Server (netty) shut down");
+    }
+
+    /** Bound port; differs from the configured one when that was 0. */
+    public int getPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    void configure(ChannelPipeline p) {
+        // length field at 0, 2 bytes, no adjustment, strip the prefix
+        p.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(MAX_FRAME, 0, 2, 0, 2));
+        p.addLast("framePrepender", new LengthFieldPrepender(2));
+        p.addLast("iso", new IsoFrameHandler());
+    }
+
+    /** One per connection; event-loop methods run on that connection's loop thread. */
+    private final class IsoFrameHandler extends SimpleChannelInboundHandler<ByteBuf> {
+        private int pending; // only touched on the event loop
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            metrics.connections.incrementAndGet();
+            log.info("Client connected: {}", ctx.channel().remoteAddress());
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            metrics.connections.decrementAndGet();
+            log.info("Client handler finished: {}", ctx.channel().remoteAddress());
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+            Object remote = ctx.channel().remoteAddress();
+            boolean diagnose = tracer.takeDiagnostic(); // diagnosed frames take the jPOS path
+            if (codec != null && !diagnose) {
+                long start = System.nanoTime();
+                FlatIsoMessage req = null;
+                try {
+                    req = codec.decode(frame.nioBuffer());
+                } catch (ISOException e) {
+                    log.debug("Flat codec declined frame from {} ({}), using jPOS", remote, e.getMessage());
+                }
+                if (req != null) {
+                    IsoMetrics.record(metrics.unpack, start);
+                    dispatchFlat(ctx, frame, req);
+                    return;
+                }
+            }
+
+            byte[] raw = ByteBufUtil.getBytes(frame); // jPOS unpacks from a byte[]
+            if (diagnose)
+                tracer.diagnose(raw, packager, remote, "requested");
+
+            ISOMsg req = new ISOMsg();
+            req.setPackager(packager);
+            long start = System.nanoTime();
+            try {
+                req.unpack(raw);
+            } catch (ISOException e) {
+                tracer.diagnoseFailure(raw, packager, remote, e);
+                log.error("ISO parse error from {}: {}", remote, e.getMessage());
+                ctx.close();
+                return;
+            }
+            IsoMetrics.record(metrics.unpack, start);
+            boolean traced = tracer.traceRequest(req, remote);
+
+            metrics.inFlight.incrementAndGet();
+            if (++pending >= maxInFlight)
+                ctx.channel().config().setAutoRead(false);
+            try {
+                workerPool.execute(() -> process(ctx, req, traced));
+            } catch (RejectedExecutionException e) {
+                log.warn("Worker pool full, answering {} from {} with DE39={}",
+                        IsoServer.correlationKey(req), remote, POOL_FULL_RESPONSE_CODE);
+                try {
+                    req.setResponseMTI();
+                    req.set(39, POOL_FULL_RESPONSE_CODE);
+                    reply(ctx, req, traced);
+                } catch (ISOException ex) {
+                    log.error("Could not answer {} from {}: {}", IsoServer.correlationKey(req), remote,
+                            ex.getMessage());
+                }
+                completed(ctx);
+            }
+        }
+
+        /** Event loop: hand a flat-decoded request to a worker, keeping its buffer until the reply is encoded. */
+        private void dispatchFlat(ChannelHandlerContext ctx, ByteBuf frame, FlatIsoMessage req) {
+            boolean traced = tracer.traceRequest(req, ctx.channel().remoteAddress());
+            frame.retain();
+            metrics.inFlight.incrementAndGet();
+            if (++pending >= maxInFlight)
+                ctx.channel().config().setAutoRead(false);
+            try {
+                workerPool.execute(() -> {
+                    try {
+                        replyFlat(ctx, handler.handle(req), traced);
+                    } catch (Exception e) {
+                        log.error("ISO handle/send error for {} from {}: {}", req.getString(11),
+                                ctx.channel().remoteAddress(), e.getMessage());
+                    } finally {
+                        frame.release();
+                        ctx.executor().execute(() -> completed(ctx));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("Worker pool full, answering STAN {} from {} with DE39={}", req.getString(11),
+                        ctx.channel().remoteAddress(), POOL_FULL_RESPONSE_CODE);
+                try {
+                    req.setResponseMTI();
+                    req.set(39, POOL_FULL_RESPONSE_CODE);
+                    replyFlat(ctx, req, traced);
+                } catch (ISOException ex) {
+                    log.error("Could not answer STAN {} from {}: {}", req.getString(11),
+                            ctx.channel().remoteAddress(), ex.getMessage());
+                } finally {
+                    frame.release();
+                }
+                completed(ctx);
+            }
+        }
+
+        /** Encode by patching the request bytes; fall back to jPOS for edits the codec cannot pack. */
+        private void replyFlat(ChannelHandlerContext ctx, FlatIsoMessage resp, boolean traced) throws ISOException {
+            if (traced)
+                tracer.traceResponse(resp, ctx.channel().remoteAddress());
+            long start = System.nanoTime();
+            byte[] body;
+            try {
+                body = codec.encode(resp);
+            } catch (ISOException e) {
+                body = resp.toISOMsg(packager).pack();
+            }
+            IsoMetrics.record(metrics.pack, start);
+            write(ctx, body);
+        }
+
+        /** Worker thread: run the handler and write the response. */
+        private void process(ChannelHandlerContext ctx, ISOMsg req, boolean traced) {
+            String key = IsoServer.correlationKey(req);
+            try {
+                reply(ctx, handler.handle(req), traced);
+            } catch (Exception e) {
+                log.error("ISO handle/send error for {} from {}: {}", key, ctx.channel().remoteAddress(),
+                        e.getMessage());
+            } finally {
+                ctx.executor().execute(() -> completed(ctx));
+            }
+        }
+
+        /** Pack on the calling thread; the write itself is queued onto the event loop. */
+        private void reply(ChannelHandlerContext ctx, ISOMsg resp, boolean traced) throws ISOException {
+            if (traced)
+                tracer.traceResponse(resp, ctx.channel().remoteAddress());
+            long start = System.nanoTime();
+            byte[] body = resp.pack();
+            IsoMetrics.record(metrics.pack, start);
+            write(ctx, body);
+        }
+
+        private void write(ChannelHandlerContext ctx, byte[] body) {
+            long sendStart = System.nanoTime();
+            ctx.writeAndFlush(Unpooled.wrappedBuffer(body)).addListener(f -> {
+                IsoMetrics.record(metrics.send, sendStart);
+                if (!f.isSuccess())
+                    log.warn("ISO send to {} failed: {}", ctx.channel().remoteAddress(), f.cause().getMessage());
+            });
+        }
+
+        private void completed(ChannelHandlerContext ctx) {
+            metrics.inFlight.decrementAndGet();
+            if (pending-- == maxInFlight)
+                ctx.channel().config().setAutoRead(true);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.info("Client IO closed: {}", cause.getMessage());
+            ctx.close();
+        }
+    }
+}
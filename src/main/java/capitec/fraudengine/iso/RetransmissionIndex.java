@@ -0,0 +1,141 @@
+
+package capitec.fraudengine.iso;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.service.standin.StandInAuthorizer.Decision;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Answers acquirer retransmissions from the first request's decision.
+ * <p>
+ * Requests are keyed on (MTI with the repeat flag cleared, RRN, STAN,
+ * terminal, DE7), so a 0201 or a resent 0200 finds the 0200 it repeats. The
+ * first request registers a future before it is evaluated; a repeat arriving
+ * while it is still running waits for that future (up to {@code wait-ms}) and
+ * a later one gets the completed decision straight away. Either way the
+ * repeat is neither evaluated nor saved, so it does not add a row or a
+ * velocity count. Entries expire {@code ttl-seconds} after the first request;
+ * a request that fails is forgotten so its retransmission is processed.
+ */
+public final class RetransmissionIndex {
+
+    /** Answer when the first request is still running after {@code wait-ms}: issuer unavailable, retry. */
+    static final Decision UNAVAILABLE = new Decision("91", null, false);
+
+    record Key(String mti, String rrn, String stan, String terminal, String de7) {
+    }
+
+    private final Cache<Key, CompletableFuture<Decision>> decisions;
+    private final long waitMillis;
+    private final Counter replayed;
+    private final Counter unanswered;
+
+    public RetransmissionIndex(long ttlSeconds, long maxEntries, long waitMillis, MeterRegistry registry) {
+        this.decisions = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxEntries)
+                .build();
+        this.waitMillis = waitMillis;
+        this.replayed = Counter.builder("fraud.iso.retransmissions")
+                .description("Repeated requests answered with the first request's decision")
+                .tag("outcome", "replayed")
+                .register(registry);
+        this.unanswered = Counter.builder("fraud.iso.retransmissions")
+                .description("Repeated requests answered with the first request's decision")
+                .tag("outcome", "unavailable")
+                .register(registry);
+        Gauge.builder("fraud.iso.retransmissions.index.size", decisions, Cache::estimatedSize)
+                .description("Requests remembered for retransmission matching")
+                .register(registry);
+    }
+
+    private RetransmissionIndex() {
+        this.decisions = null;
+        this.waitMillis = 0;
+        this.replayed = null;
+        this.unanswered = null;
+    }
+
+    /** Index that never matches: every request is decided. */
+    public static RetransmissionIndex disabled() {
+        return new RetransmissionIndex();
+    }
+
+    /** Index for tests and benchmarks without a registry. */
+    public static RetransmissionIndex of(long ttlSeconds, long maxEntries, long waitMillis) {
+        return new RetransmissionIndex(ttlSeconds, maxEntries, waitMillis, new CompositeMeterRegistry());
+    }
+
+    /**
+     * The decision already made for a request with the same key, or the one
+     * {@code decider} makes when this is the first.
+     */
+    public Decision decide(TransactionEntity tx, Supplier<Decision> decider) {
+        Key key = decisions == null ? null : keyOf(tx);
+        if (key == null)
+            return decider.get();
+
+        CompletableFuture<Decision> mine = new CompletableFuture<>();
+        CompletableFuture<Decision> first = decisions.asMap().putIfAbsent(key, mine);
+        if (first != null)
+            return replay(first, tx, decider);
+        try {
+            Decision d = decider.get();
+            mine.complete(d);
+            return d;
+        } catch (RuntimeException | Error e) {
+            decisions.asMap().remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Decision replay(CompletableFuture<Decision> first, TransactionEntity tx, Supplier<Decision> decider) {
+        try {
+            Decision d = first.get(waitMillis, TimeUnit.MILLISECONDS);
+            replayed.increment();
+            return d;
+        } catch (TimeoutException e) {
+            unanswered.increment();
+            return UNAVAILABLE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unanswered.increment();
+            return UNAVAILABLE;
+        } catch (ExecutionException e) {
+            // the first request failed and has been forgotten; this one is processed on its own
+            return decide(tx, decider);
+        }
+    }
+
+    /** Null when the request carries neither RRN nor STAN. */
+    static Key keyOf(TransactionEntity tx) {
+        if (tx.getRrn() == null && tx.getStan() == null)
+            return null;
+        return new Key(original(tx.getMti()), tx.getRrn(), tx.getStan(), tx.getTerminalId(),
+                tx.getDe7TransmissionDateTime());
+    }
+
+    /** 0201 → 0200, 0401 → 0400: a repeat is matched with what it repeats. */
+    private static String original(String mti) {
+        if (mti == null || mti.length() != 4 || mti.charAt(3) != '1')
+            return mti;
+        return mti.substring(0, 3) + '0';
+    }
+
+    long size() {
+        return decisions == null ? 0 : decisions.estimatedSize();
+    }
+}
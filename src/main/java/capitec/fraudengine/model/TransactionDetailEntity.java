@@ -0,0 +1,124 @@
+
+package capitec.fraudengine.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Cold ISO8583 data elements of one transaction, stored as a single JSON
+ * document (jsonb on PostgreSQL) keyed by the TransactionEntity property name.
+ * Only DEs that were present are stored. Referenced lazily from
+ * {@link TransactionEntity#getDetail()}.
+ */
+@Entity
+@Table(name = "transaction_details")
+@Getter
+@Setter
+@NoArgsConstructor
+public class TransactionDetailEntity {
+
+    public static final String ID_SEQUENCE = "transaction_details_id_seq";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_details_id_gen")
+    @SequenceGenerator(name = "transaction_details_id_gen", sequenceName = ID_SEQUENCE, allocationSize = TransactionEntity.ID_ALLOCATION_SIZE)
+    private Long id;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "fields", nullable = false)
+    private Map<String, String> fields = new LinkedHashMap<>();
+
+    /** @return the cold DEs of {@code tx}, or null if it has none */
+    static TransactionDetailEntity capture(TransactionEntity tx) {
+        Map<String, String> present = new LinkedHashMap<>();
+        for (ColdField f : COLD_FIELDS) {
+            String v = f.get.apply(tx);
+            if (v != null)
+                present.put(f.name, v);
+        }
+        if (present.isEmpty())
+            return null;
+        TransactionDetailEntity d = new TransactionDetailEntity();
+        d.fields = present;
+        return d;
+    }
+
+    void restore(TransactionEntity tx) {
+        for (ColdField f : COLD_FIELDS) {
+            String v = fields.get(f.name);
+            if (v != null)
+                f.set.accept(tx, v);
+        }
+    }
+
+    private record ColdField(String name, Function<TransactionEntity, String> get,
+            BiConsumer<TransactionEntity, String> set) {
+    }
+
+    private static ColdField field(String name, Function<TransactionEntity, String> get,
+            BiConsumer<TransactionEntity, String> set) {
+        return new ColdField(name, get, set);
+    }
+
+    /** The @Transient DEs of TransactionEntity. */
+    private static final List<ColdField> COLD_FIELDS = List.of(
+            field("de5AmountReconciliation", TransactionEntity::getDe5AmountReconciliation, TransactionEntity::setDe5AmountReconciliation),
+            field("de9ConversionRateSettlement", TransactionEntity::getDe9ConversionRateSettlement, TransactionEntity::setDe9ConversionRateSettlement),
+            field("de14ExpirationDate", TransactionEntity::getDe14ExpirationDate, TransactionEntity::setDe14ExpirationDate),
+            field("de15SettlementDate", TransactionEntity::getDe15SettlementDate, TransactionEntity::setDe15SettlementDate),
+            field("de23CardSequenceNumber", TransactionEntity::getDe23CardSequenceNumber, TransactionEntity::setDe23CardSequenceNumber),
+            field("de26PosPinCaptureCode", TransactionEntity::getDe26PosPinCaptureCode, TransactionEntity::setDe26PosPinCaptureCode),
+            field("de27AuthIdResponseLength", TransactionEntity::getDe27AuthIdResponseLength, TransactionEntity::setDe27AuthIdResponseLength),
+            field("de28TransactionFeeAmount", TransactionEntity::getDe28TransactionFeeAmount, TransactionEntity::setDe28TransactionFeeAmount),
+            field("de30TransactionProcessingFeeAmount", TransactionEntity::getDe30TransactionProcessingFeeAmount, TransactionEntity::setDe30TransactionProcessingFeeAmount),
+            field("de33ForwardingInstIdCode", TransactionEntity::getDe33ForwardingInstIdCode, TransactionEntity::setDe33ForwardingInstIdCode),
+            field("de35Track2Data", TransactionEntity::getDe35Track2Data, TransactionEntity::setDe35Track2Data),
+            field("de40ServiceRestrictionCode", TransactionEntity::getDe40ServiceRestrictionCode, TransactionEntity::setDe40ServiceRestrictionCode),
+            field("de45Track1Data", TransactionEntity::getDe45Track1Data, TransactionEntity::setDe45Track1Data),
+            field("de48AdditionalDataPrivate", TransactionEntity::getDe48AdditionalDataPrivate, TransactionEntity::setDe48AdditionalDataPrivate),
+            field("de52PinData", TransactionEntity::getDe52PinData, TransactionEntity::setDe52PinData),
+            field("de53SecurityControlInfo", TransactionEntity::getDe53SecurityControlInfo, TransactionEntity::setDe53SecurityControlInfo),
+            field("de54AdditionalAmounts", TransactionEntity::getDe54AdditionalAmounts, TransactionEntity::setDe54AdditionalAmounts),
+            field("de56OriginalDataElements", TransactionEntity::getDe56OriginalDataElements, TransactionEntity::setDe56OriginalDataElements),
+            field("de58AuthorizingAgentInstIdCode", TransactionEntity::getDe58AuthorizingAgentInstIdCode, TransactionEntity::setDe58AuthorizingAgentInstIdCode),
+            field("de59ReservedPrivate", TransactionEntity::getDe59ReservedPrivate, TransactionEntity::setDe59ReservedPrivate),
+            field("de66SettlementCode", TransactionEntity::getDe66SettlementCode, TransactionEntity::setDe66SettlementCode),
+            field("de70NetworkMgmtInfoCode", TransactionEntity::getDe70NetworkMgmtInfoCode, TransactionEntity::setDe70NetworkMgmtInfoCode),
+            field("de74CreditsNumber", TransactionEntity::getDe74CreditsNumber, TransactionEntity::setDe74CreditsNumber),
+            field("de75CreditsReversalNumber", TransactionEntity::getDe75CreditsReversalNumber, TransactionEntity::setDe75CreditsReversalNumber),
+            field("de76DebitsNumber", TransactionEntity::getDe76DebitsNumber, TransactionEntity::setDe76DebitsNumber),
+            field("de77DebitsReversalNumber", TransactionEntity::getDe77DebitsReversalNumber, TransactionEntity::setDe77DebitsReversalNumber),
+            field("de78TransferNumber", TransactionEntity::getDe78TransferNumber, TransactionEntity::setDe78TransferNumber),
+            field("de79TransferReversalNumber", TransactionEntity::getDe79TransferReversalNumber, TransactionEntity::setDe79TransferReversalNumber),
+            field("de80InquiriesNumber", TransactionEntity::getDe80InquiriesNumber, TransactionEntity::setDe80InquiriesNumber),
+            field("de81AuthorizationsNumber", TransactionEntity::getDe81AuthorizationsNumber, TransactionEntity::setDe81AuthorizationsNumber),
+            field("de82CreditsProcessingFeeAmount", TransactionEntity::getDe82CreditsProcessingFeeAmount, TransactionEntity::setDe82CreditsProcessingFeeAmount),
+            field("de83CreditsTransactionFeeAmount", TransactionEntity::getDe83CreditsTransactionFeeAmount, TransactionEntity::setDe83CreditsTransactionFeeAmount),
+            field("de84DebitsProcessingFeeAmount", TransactionEntity::getDe84DebitsProcessingFeeAmount, TransactionEntity::setDe84DebitsProcessingFeeAmount),
+            field("de85DebitsTransactionFeeAmount", TransactionEntity::getDe85DebitsTransactionFeeAmount, TransactionEntity::setDe85DebitsTransactionFeeAmount),
+            field("de86CreditsAmount", TransactionEntity::getDe86CreditsAmount, TransactionEntity::setDe86CreditsAmount),
+            field("de87CreditsReversalAmount", TransactionEntity::getDe87CreditsReversalAmount, TransactionEntity::setDe87CreditsReversalAmount),
+            field("de88DebitsAmount", TransactionEntity::getDe88DebitsAmount, TransactionEntity::setDe88DebitsAmount),
+            field("de89DebitsReversalAmount", TransactionEntity::getDe89DebitsReversalAmount, TransactionEntity::setDe89DebitsReversalAmount),
+            field("de90OriginalDataElements", TransactionEntity::getDe90OriginalDataElements, TransactionEntity::setDe90OriginalDataElements),
+            field("de91FileUpdateCode", TransactionEntity::getDe91FileUpdateCode, TransactionEntity::setDe91FileUpdateCode),
+            field("de95ReplacementAmounts", TransactionEntity::getDe95ReplacementAmounts, TransactionEntity::setDe95ReplacementAmounts),
+            field("de101FileName", TransactionEntity::getDe101FileName, TransactionEntity::setDe101FileName),
+            field("de102AccountId1", TransactionEntity::getDe102AccountId1, TransactionEntity::setDe102AccountId1),
+            field("de103AccountId2", TransactionEntity::getDe103AccountId2, TransactionEntity::setDe103AccountId2),
+            field("de110AdditionalDataIso", TransactionEntity::getDe110AdditionalDataIso, TransactionEntity::setDe110AdditionalDataIso),
+            field("de118InvoiceNumber", TransactionEntity::getDe118InvoiceNumber, TransactionEntity::setDe118InvoiceNumber),
+            field("de119TransactionDescription", TransactionEntity::getDe119TransactionDescription, TransactionEntity::setDe119TransactionDescription),
+            field("de123PosDataCode", TransactionEntity::getDe123PosDataCode, TransactionEntity::setDe123PosDataCode),
+            field("de127AdditionalDataPrivate", TransactionEntity::getDe127AdditionalDataPrivate, TransactionEntity::setDe127AdditionalDataPrivate));
+}
@@ -1,6 +1,7 @@
 
 package capitec.fraudengine.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
 import lombok.*;
@@ -11,7 +12,7 @@ import java.time.OffsetDateTime;
 @Entity
 @Table(name = "transactions", indexes = {
         @Index(name = "idx_tx_account_ts", columnList = "pan,timestamp"),
-        @Index(name = "idx_tx_flagged", columnList = "flagged"),
+        @Index(name = "idx_tx_flagged_id", columnList = "flagged,id"), // keyset paging of flags
         @Index(name = "idx_tx_rrn", columnList = "rrn")
 })
 @Data
@@ -20,6 +21,9 @@ import java.time.OffsetDateTime;
 @AllArgsConstructor
 public class TransactionEntity {
 
+    public static final String ID_SEQUENCE = "transactions_id_pool_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     // ---------------- MTI (before DEs) ----------------
     @Column(name = "mti", length = 4)
     private String mti; // ISO8583 MTI
@@ -39,11 +43,19 @@ public class TransactionEntity {
     private String category;
 
     // ---------------- Primary key ----------------
+    // Pooled sequence (not IDENTITY) so Hibernate can batch inserts; one
+    // nextval round-trip covers ALLOCATION_SIZE rows.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_id_gen")
+    @SequenceGenerator(name = "transactions_id_gen", sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     // ---------------- ISO8583 fields (ordered by DE number) ----------------
+    // Columns here are the hot row: the decision fields plus the DEs nearly every
+    // authorization carries (DE3/7/12/13/18/22/25/32). @Transient DEs are the
+    // sparse ones: when a transaction has any, they are written as one JSON
+    // document to transaction_details and only read back for full-detail
+    // requests (see TransactionDetailEntity).
     /** DE2: Primary Account Number (PAN) */
     @Column(name = "pan", nullable = false, length = 32) // your chosen column name
     @NotBlank
@@ -60,7 +72,7 @@ public class TransactionEntity {
     private BigDecimal amount;
 
     /** DE5: Amount, Reconciliation */
-    @Column(name = "de5_amount_reconciliation", length = 12)
+    @Transient
     private String de5AmountReconciliation;
 
     /** DE7: Transmission Date & Time (MMDDhhmmss source) */
@@ -68,7 +80,7 @@ public class TransactionEntity {
     private String de7TransmissionDateTime;
 
     /** DE9: Conversion Rate, Settlement */
-    @Column(name = "de9_conversion_rate_settlement", length = 8)
+    @Transient
     private String de9ConversionRateSettlement;
 
     /** DE11: STAN */
@@ -84,11 +96,11 @@ public class TransactionEntity {
     private String de13LocalTransactionDate;
 
     /** DE14: Expiration Date (YYMM) */
-    @Column(name = "de14_expiration_date", length = 4)
+    @Transient
     private String de14ExpirationDate;
 
     /** DE15: Settlement Date (MMDD) */
-    @Column(name = "de15_settlement_date", length = 4)
+    @Transient
     private String de15SettlementDate;
 
     /** DE18: Merchant Type */
@@ -100,7 +112,7 @@ public class TransactionEntity {
     private String de22PosEntryMode;
 
     /** DE23: Card Sequence Number */
-    @Column(name = "de23_card_sequence_number", length = 3)
+    @Transient
     private String de23CardSequenceNumber;
 
     /** DE25: POS Condition Code */
@@ -108,19 +120,19 @@ public class TransactionEntity {
     private String de25PosConditionCode;
 
     /** DE26: POS PIN Capture Code */
-    @Column(name = "de26_pos_pin_capture_code", length = 2)
+    @Transient
     private String de26PosPinCaptureCode;
 
     /** DE27: Authorization ID Response Length */
-    @Column(name = "de27_auth_id_response_length", length = 1)
+    @Transient
     private String de27AuthIdResponseLength;
 
     /** DE28: Transaction Fee Amount */
-    @Column(name = "de28_transaction_fee_amount", length = 9)
+    @Transient
     private String de28TransactionFeeAmount;
 
     /** DE30: Transaction Processing Fee Amount */
-    @Column(name = "de30_transaction_processing_fee_amount", length = 9)
+    @Transient
     private String de30TransactionProcessingFeeAmount;
 
     /** DE32: Acquiring Institution ID Code */
@@ -128,11 +140,11 @@ public class TransactionEntity {
     private String de32AcquiringInstIdCode;
 
     /** DE33: Forwarding Institution ID Code */
-    @Column(name = "de33_forwarding_inst_id_code")
+    @Transient
     private String de33ForwardingInstIdCode;
 
     /** DE35: Track 2 Data */
-    @Column(name = "de35_track_2_data")
+    @Transient
     private String de35Track2Data;
 
     /** DE37: Retrieval Reference Number */
@@ -144,7 +156,7 @@ public class TransactionEntity {
     private String responseCode;
 
     /** DE40: Service Restriction Code */
-    @Column(name = "de40_service_restriction_code", length = 3)
+    @Transient
     private String de40ServiceRestrictionCode;
 
     /** DE41: Card Acceptor Terminal ID */
@@ -164,11 +176,11 @@ public class TransactionEntity {
     private String de44AdditionalResponseData;
 
     /** DE45: Track 1 Data */
-    @Column(name = "de45_track_1_data")
+    @Transient
     private String de45Track1Data;
 
     /** DE48: Additional Data - Private */
-    @Column(name = "de48_additional_data_private")
+    @Transient
     private String de48AdditionalDataPrivate;
 
     /** DE49: Currency Code, Transaction */
@@ -178,130 +190,161 @@ public class TransactionEntity {
     private String currency;
 
     /** DE52: PIN Data (encrypted) */
-    @Column(name = "de52_pin_data", length = 8)
+    @Transient
     private String de52PinData;
 
     /** DE53: Security Related Control Information */
-    @Column(name = "de53_security_control_info", length = 48)
+    @Transient
     private String de53SecurityControlInfo;
 
     /** DE54: Additional Amounts */
-    @Column(name = "de54_additional_amounts")
+    @Transient
     private String de54AdditionalAmounts;
 
     /** DE56: Original Data Elements (LLLVAR) */
-    @Column(name = "de56_original_data_elements")
+    @Transient
     private String de56OriginalDataElements;
 
     /** DE58: Authorizing Agent Institution ID Code */
-    @Column(name = "de58_authorizing_agent_inst_id_code")
+    @Transient
     private String de58AuthorizingAgentInstIdCode;
 
     /** DE59: Reserved (Private) */
-    @Column(name = "de59_reserved_private")
+    @Transient
     private String de59ReservedPrivate;
 
     /** DE66: Settlement Code */
-    @Column(name = "de66_settlement_code", length = 1)
+    @Transient
     private String de66SettlementCode;
 
     /** DE70: Network Management Information Code */
-    @Column(name = "de70_network_mgmt_info_code", length = 3)
+    @Transient
     private String de70NetworkMgmtInfoCode;
 
     /** DE74–DE81 counts/metrics */
-    @Column(name = "de74_credits_number", length = 10)
+    @Transient
     private String de74CreditsNumber;
 
-    @Column(name = "de75_credits_reversal_number", length = 10)
+    @Transient
     private String de75CreditsReversalNumber;
 
-    @Column(name = "de76_debits_number", length = 10)
+    @Transient
     private String de76DebitsNumber;
 
-    @Column(name = "de77_debits_reversal_number", length = 10)
+    @Transient
     private String de77DebitsReversalNumber;
 
-    @Column(name = "de78_transfer_number", length = 10)
+    @Transient
     private String de78TransferNumber;
 
-    @Column(name = "de79_transfer_reversal_number", length = 10)
+    @Transient
     private String de79TransferReversalNumber;
 
-    @Column(name = "de80_inquiries_number", length = 10)
+    @Transient
     private String de80InquiriesNumber;
 
-    @Column(name = "de81_authorizations_number", length = 10)
+    @Transient
     private String de81AuthorizationsNumber;
 
     /** DE82–DE85 fee amounts */
-    @Column(name = "de82_credits_processing_fee_amount", length = 12)
+    @Transient
     private String de82CreditsProcessingFeeAmount;
 
-    @Column(name = "de83_credits_transaction_fee_amount", length = 12)
+    @Transient
     private String de83CreditsTransactionFeeAmount;
 
-    @Column(name = "de84_debits_processing_fee_amount", length = 12)
+    @Transient
     private String de84DebitsProcessingFeeAmount;
 
-    @Column(name = "de85_debits_transaction_fee_amount", length = 12)
+    @Transient
     private String de85DebitsTransactionFeeAmount;
 
     /** DE86–DE89 amounts */
-    @Column(name = "de86_credits_amount", length = 16)
+    @Transient
     private String de86CreditsAmount;
 
-    @Column(name = "de87_credits_reversal_amount", length = 16)
+    @Transient
     private String de87CreditsReversalAmount;
 
-    @Column(name = "de88_debits_amount", length = 16)
+    @Transient
     private String de88DebitsAmount;
 
-    @Column(name = "de89_debits_reversal_amount", length = 16)
+    @Transient
     private String de89DebitsReversalAmount;
 
     /** DE90: Original Data Elements (fixed 42) */
-    @Column(name = "de90_original_data_elements", length = 42)
+    @Transient
     private String de90OriginalDataElements;
 
     /** DE91: File Update Code */
-    @Column(name = "de91_file_update_code", length = 1)
+    @Transient
     private String de91FileUpdateCode;
 
     /** DE95: Replacement Amounts (fixed 42) */
-    @Column(name = "de95_replacement_amounts", length = 42)
+    @Transient
     private String de95ReplacementAmounts;
 
     /** DE101: File Name */
-    @Column(name = "de101_file_name")
+    @Transient
     private String de101FileName;
 
     /** DE102–DE103: Account IDs */
-    @Column(name = "de102_account_id_1")
+    @Transient
     private String de102AccountId1;
 
-    @Column(name = "de103_account_id_2")
+    @Transient
     private String de103AccountId2;
 
     /** DE110: Additional Data ISO */
-    @Column(name = "de110_additional_data_iso")
+    @Transient
     private String de110AdditionalDataIso;
 
     /** DE118: Invoice Number */
-    @Column(name = "de118_invoice_number")
+    @Transient
     private String de118InvoiceNumber;
 
     /** DE119: Transaction Description */
-    @Column(name = "de119_transaction_description")
+    @Transient
     private String de119TransactionDescription;
 
     /** DE123: POS Data Code (LLLVAR) */
-    @Column(name = "de123_pos_data_code")
+    @Transient
     private String de123PosDataCode;
 
     /**
      * DE127: Additional Data - Private (LLLVAR with 6-digit length in your parser)
      */
-    @Column(name = "de127_additional_data_private")
+    @Transient
     private String de127AdditionalDataPrivate;
+
+    // ---------------- Cold ISO detail ----------------
+    /**
+     * Cold DEs as stored; null when the transaction carried none. Mapped as
+     * many-to-one although each detail row has one transaction: a one-to-one
+     * puts a unique constraint on detail_id, which PostgreSQL rejects on the
+     * partitioned table (unique keys there must include {@code timestamp}).
+     */
+    @ManyToOne(fetch = FetchType.LAZY, cascade = CascadeType.PERSIST)
+    @JoinColumn(name = "detail_id")
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private TransactionDetailEntity detail;
+
+    /** Capture the cold DEs into a detail record, if there are any; cascaded with the insert. */
+    @PrePersist
+    void captureDetail() {
+        if (detail == null)
+            detail = TransactionDetailEntity.capture(this);
+    }
+
+    /**
+     * Fill the cold DEs from the detail record. Loads the detail row, so call
+     * inside a transaction and only when full detail is wanted.
+     */
+    public TransactionEntity withDetail() {
+        if (detail != null)
+            detail.restore(this);
+        return this;
+    }
 }
@@ -0,0 +1,31 @@
+package capitec.fraudengine.model.dto;
+
+import capitec.fraudengine.model.TransactionEntity;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One line of a {@code POST /api/transactions/batch} response. {@code index}
+ * is the item's position in the request; either the decision fields or
+ * {@code error} are set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchDecision(
+        long index,
+        Long id,
+        String rrn,
+        String stan,
+        Boolean flagged,
+        String responseCode,
+        String de44AdditionalResponseData,
+        String error) {
+
+    public static BatchDecision of(long index, TransactionEntity tx) {
+        return new BatchDecision(index, tx.getId(), tx.getRrn(), tx.getStan(), tx.isFlagged(),
+                tx.getResponseCode(), tx.getDe44AdditionalResponseData(), null);
+    }
+
+    public static BatchDecision error(long index, TransactionEntity tx, String error) {
+        return new BatchDecision(index, null, tx != null ? tx.getRrn() : null, tx != null ? tx.getStan() : null,
+                null, null, null, error);
+    }
+}
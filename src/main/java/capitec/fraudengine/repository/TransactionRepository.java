@@ -2,18 +2,61 @@
 package capitec.fraudengine.repository;
 
 import capitec.fraudengine.model.TransactionEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<TransactionEntity, Long> {
 
     List<TransactionEntity> findByFlaggedTrue();
 
+    /**
+     * Keyset page of flagged rows: ids strictly after {@code afterId}, in id
+     * order. {@code de44Pattern} is a LIKE pattern over the rule list ("%" for
+     * any rule).
+     */
+    @Query("select t from TransactionEntity t where t.flagged = true and t.id > :afterId"
+            + " and t.timestamp >= :from and t.timestamp < :to"
+            + " and t.de44AdditionalResponseData like :de44Pattern escape '\\' order by t.id")
+    List<TransactionEntity> findFlaggedAfter(@Param("afterId") long afterId,
+            @Param("from") OffsetDateTime from,
+            @Param("to") OffsetDateTime to,
+            @Param("de44Pattern") String de44Pattern,
+            Limit limit);
+
+    /**
+     * Same filter as {@link #findFlaggedAfter} as a cursor-backed stream; must be
+     * consumed inside a transaction and closed.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select t from TransactionEntity t where t.flagged = true"
+            + " and t.timestamp >= :from and t.timestamp < :to"
+            + " and t.de44AdditionalResponseData like :de44Pattern escape '\\' order by t.id")
+    Stream<TransactionEntity> streamFlagged(@Param("from") OffsetDateTime from,
+            @Param("to") OffsetDateTime to,
+            @Param("de44Pattern") String de44Pattern);
+
+    // The two PAN window queries below bound timestamp on both sides, so with
+    // partitioning enabled Postgres only touches the partitions in the window.
+    // Authorization-path reads are read-only transactions so that, with
+    // fraud.datasource.routing.enabled, they use the authorization-read pool.
+    @Transactional(readOnly = true)
     long countByPanAndTimestampBetween(
             String pan,
             OffsetDateTime from,
@@ -24,5 +67,36 @@ public interface TransactionRepository extends JpaRepository<TransactionEntity,
             OffsetDateTime from,
             OffsetDateTime to);
 
+    @Transactional(readOnly = true)
     Optional<TransactionEntity> findTop1ByPanOrderByTimestampDesc(String pan);
+
+    /** Narrow (pan, timestamp) rows used to warm in-memory velocity counters. */
+    @Transactional(readOnly = true)
+    @Query("select t.pan as pan, t.timestamp as timestamp from TransactionEntity t where t.timestamp >= :since")
+    List<PanActivity> findPanActivitySince(@Param("since") OffsetDateTime since);
+
+    interface PanActivity {
+        String getPan();
+
+        OffsetDateTime getTimestamp();
+    }
+
+    /** Narrow rows of one PAN since {@code since}, newest first; seeds a cached PAN profile. */
+    @Transactional(readOnly = true)
+    @Query("select t.id as id, t.timestamp as timestamp, t.amount as amount, t.location as location,"
+            + " t.terminalId as terminalId from TransactionEntity t"
+            + " where t.pan = :pan and t.timestamp >= :since order by t.timestamp desc")
+    List<PanHistory> findPanHistorySince(@Param("pan") String pan, @Param("since") OffsetDateTime since);
+
+    interface PanHistory {
+        Long getId();
+
+        OffsetDateTime getTimestamp();
+
+        BigDecimal getAmount();
+
+        String getLocation();
+
+        String getTerminalId();
+    }
 }
@@ -1,42 +1,166 @@
 
 package capitec.fraudengine.service;
 
+import capitec.fraudengine.iso.IsoMetrics;
 import capitec.fraudengine.model.TransactionEntity;
 import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.persistence.RoutingDataSource;
+import capitec.fraudengine.service.persistence.WriteBehindQueue;
 import capitec.fraudengine.service.rules.FraudRule;
-import lombok.RequiredArgsConstructor;
+import capitec.fraudengine.service.rules.RuleEngine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.OffsetDateTime;
-import java.util.ArrayList;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class FraudDetectionService {
 
     private final TransactionRepository repo;
-    private final List<FraudRule> rules;
+    private final RuleEngine ruleEngine;
+    private static final OffsetDateTime SEARCH_MIN = OffsetDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime SEARCH_MAX = OffsetDateTime.of(9999, 12, 31, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final Pattern RULE_NAME = Pattern.compile("[A-Za-z0-9_]+");
+
+    private List<TransactionObserver> observers = List.of();
+    private WriteBehindQueue writeBehind;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private Timer persistTimer = IsoMetrics.stage(new CompositeMeterRegistry(), "persist");
+
+    @Value("${fraud.api.flags.max-results:1000}")
+    private int maxFlagResults = 1000;
+
+    public FraudDetectionService(TransactionRepository repo, List<FraudRule> rules) {
+        this(repo, new RuleEngine(rules));
+    }
+
+    @Autowired
+    public FraudDetectionService(TransactionRepository repo, RuleEngine ruleEngine) {
+        this.repo = repo;
+        this.ruleEngine = ruleEngine;
+    }
+
+    @Autowired(required = false)
+    public void setObservers(List<TransactionObserver> observers) {
+        this.observers = observers;
+    }
+
+    /** Present only when fraud.persistence.write-behind.enabled=true. */
+    @Autowired(required = false)
+    public void setWriteBehind(WriteBehindQueue writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry registry) {
+        this.persistTimer = IsoMetrics.stage(registry, "persist");
+    }
 
     public TransactionEntity process(TransactionEntity tx) {
-        boolean flagged = false;
-        List<String> hitRules = new ArrayList<>();
+        return process(tx, 0, null);
+    }
 
-        for (FraudRule rule : rules) {
-            boolean hit = false;
-            try {
-                hit = rule.isFraudulent(tx);
-            } catch (Exception e) {
-                log.error("Rule {} failed on tx: {}", rule.getName(), tx, e);
-            }
-            if (hit) {
-                flagged = true;
-                hitRules.add(rule.getName());
-                log.info("Rule {} flagged transaction (pan={}, amount={}, location={})",
-                        rule.getName(), tx.getPan(), tx.getAmount(), tx.getLocation());
+    /**
+     * {@link #process(TransactionEntity)} with a rule budget ({@code <= 0} for
+     * the engine default) and a hook that runs once the decision is stamped on
+     * the entity, just before it is saved (see StandInAuthorizer).
+     */
+    public TransactionEntity process(TransactionEntity tx, long budgetNanos,
+            @Nullable Consumer<TransactionEntity> beforeSave) {
+        evaluate(tx, budgetNanos);
+        if (beforeSave != null)
+            beforeSave.accept(tx);
+        return record(tx);
+    }
+
+    /** Persist and notify observers without evaluating, for rows decided elsewhere (stand-in). */
+    public TransactionEntity record(TransactionEntity tx) {
+        // Write-behind returns the decision without waiting for the insert; the id
+        // is assigned when the background writer flushes the row.
+        long start = System.nanoTime();
+        TransactionEntity saved = (writeBehind != null && writeBehind.offer(tx)) ? tx : repo.save(tx);
+        persistTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        notifyObservers(saved != null ? saved : tx);
+        return saved;
+    }
+
+    /**
+     * Evaluate and persist a batch in one transaction (bulk replays, batch
+     * channels). Rows are evaluated in list order; observers see them once the
+     * transaction commits, so velocity counts do not include earlier rows of
+     * the same batch (BatchScoringService commits in steps to keep that).
+     * Inserts go out as JDBC batches (hibernate.jdbc.batch_size).
+     */
+    @Transactional
+    public List<TransactionEntity> processBatch(List<TransactionEntity> txs) {
+        for (TransactionEntity tx : txs) {
+            score(tx);
+        }
+        List<TransactionEntity> saved = repo.saveAll(txs);
+        afterCommit(() -> txs.forEach(this::notifyObservers));
+        return saved;
+    }
+
+    /**
+     * Evaluate without persisting; the caller saves the row and, once that has
+     * committed, passes it to {@link #committed} (bulk scoring, see
+     * BatchScoringService). Safe to call from several threads for different
+     * PANs.
+     */
+    public void score(TransactionEntity tx) {
+        evaluate(tx, 0);
+    }
+
+    /** Notify observers of a row scored with {@link #score} and since committed. */
+    public void committed(TransactionEntity tx) {
+        notifyObservers(tx);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
             }
+        });
+    }
+
+    /** Run the rules and stamp flagged / DE39 / DE44 on the entity. */
+    private void evaluate(TransactionEntity tx, long budgetNanos) {
+        RuleEngine.Result result = budgetNanos > 0 ? ruleEngine.evaluate(tx, budgetNanos) : ruleEngine.evaluate(tx);
+        List<String> hitRules = result.hits();
+        boolean flagged = result.flagged();
+
+        for (String rule : hitRules) {
+            log.info("Rule {} flagged transaction (pan={}, amount={}, location={})",
+                    rule, tx.getPan(), tx.getAmount(), tx.getLocation());
         }
 
         tx.setFlagged(flagged);
@@ -56,8 +180,16 @@ public class FraudDetectionService {
 
             tx.setDe44AdditionalResponseData("APPROVED");
         }
+    }
 
-        return repo.save(tx);
+    private void notifyObservers(TransactionEntity tx) {
+        for (TransactionObserver observer : observers) {
+            try {
+                observer.onProcessed(tx);
+            } catch (Exception e) {
+                log.warn("Observer {} failed on tx {}: {}", observer.getClass().getSimpleName(), tx.getId(), e.getMessage());
+            }
+        }
     }
 
     private static String toJsonArray(List<String> items) {
@@ -73,8 +205,87 @@ public class FraudDetectionService {
         return sb.toString();
     }
 
-    public List<TransactionEntity> getFlagged() {
-        return repo.findByFlaggedTrue();
+    /** One transaction with its cold ISO detail loaded. */
+    @Transactional(readOnly = true)
+    public Optional<TransactionEntity> getTransactionDetail(Long id) {
+        return RoutingDataSource.reporting(() -> repo.findById(id).map(TransactionEntity::withDetail));
+    }
+
+    /**
+     * First {@code fraud.api.flags.max-results} flagged rows; {@code nextCursor}
+     * is set only when more rows exist (read them with the paged or streamed
+     * variants).
+     */
+    @Transactional(readOnly = true)
+    public FlaggedPage getFlagged() {
+        List<TransactionEntity> rows = RoutingDataSource.reporting(() -> repo.findFlaggedAfter(
+                0L, SEARCH_MIN, SEARCH_MAX, "%", Limit.of(maxFlagResults + 1)));
+        if (rows.size() <= maxFlagResults)
+            return new FlaggedPage(rows, null);
+        List<TransactionEntity> items = rows.subList(0, maxFlagResults);
+        return new FlaggedPage(items, items.get(items.size() - 1).getId());
+    }
+
+    /** One keyset page; {@code nextCursor} is null on the last page. */
+    public record FlaggedPage(List<TransactionEntity> items, Long nextCursor) {
+    }
+
+    /**
+     * Flagged transactions after {@code cursor} (an id from a previous page), in
+     * id order. Optional filters: [from, to) on the transaction timestamp and the
+     * name of a rule that must appear in DE44.
+     */
+    @Transactional(readOnly = true)
+    public FlaggedPage getFlaggedPage(Long cursor, OffsetDateTime from, OffsetDateTime to, String rule, int limit) {
+        if (limit < 1 || limit > maxFlagResults) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxFlagResults);
+        }
+        List<TransactionEntity> items = RoutingDataSource.reporting(() -> repo.findFlaggedAfter(
+                cursor == null ? 0L : cursor, fromOrMin(from), toOrMax(to, from), rulePattern(rule), Limit.of(limit)));
+        Long next = items.size() == limit ? items.get(items.size() - 1).getId() : null;
+        return new FlaggedPage(items, next);
+    }
+
+    /**
+     * Hand every matching flagged transaction to {@code sink} in id order,
+     * reading through a database cursor. Each row is detached once handed over,
+     * so memory stays flat however many rows match.
+     */
+    @Transactional(readOnly = true)
+    public void streamFlagged(OffsetDateTime from, OffsetDateTime to, String rule, Consumer<TransactionEntity> sink) {
+        RoutingDataSource.reporting(() -> {
+            try (Stream<TransactionEntity> rows = repo.streamFlagged(fromOrMin(from), toOrMax(to, from),
+                    rulePattern(rule))) {
+                rows.forEach(tx -> {
+                    sink.accept(tx);
+                    if (entityManager != null)
+                        entityManager.detach(tx);
+                });
+            }
+        });
+    }
+
+    private static OffsetDateTime fromOrMin(OffsetDateTime from) {
+        return from != null ? from : SEARCH_MIN;
+    }
+
+    private static OffsetDateTime toOrMax(OffsetDateTime to, OffsetDateTime from) {
+        if (to == null)
+            return SEARCH_MAX;
+        if (from != null && to.isBefore(from)) {
+            throw new IllegalArgumentException("'to' must be equal to or after 'from'");
+        }
+        return to;
+    }
+
+    /** DE44 holds the hit rules as a JSON array, e.g. ["HIGH_AMOUNT","VELOCITY_ACCOUNT"]. */
+    private static String rulePattern(String rule) {
+        if (rule == null || rule.isBlank())
+            return "%";
+        if (!RULE_NAME.matcher(rule).matches()) {
+            throw new IllegalArgumentException("rule must be a rule name such as HIGH_AMOUNT");
+        }
+        return "%\"" + rule.replace("_", "\\_") + "\"%"; // '_' is a LIKE wildcard
     }
 
     public List<TransactionEntity> getTransactionsByPanAndRange(String pan, OffsetDateTime from, OffsetDateTime to) {
@@ -84,7 +295,7 @@ public class FraudDetectionService {
         if (to.isBefore(from)) {
             throw new IllegalArgumentException("'to' must be equal to or after 'from'");
         }
-        return repo.findByPanAndTimestampBetweenOrderByTimestampDesc(pan, from, to);
+        return RoutingDataSource.reporting(() -> repo.findByPanAndTimestampBetweenOrderByTimestampDesc(pan, from, to));
     }
 
 }
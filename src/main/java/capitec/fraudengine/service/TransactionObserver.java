@@ -0,0 +1,13 @@
+
+package capitec.fraudengine.service;
+
+import capitec.fraudengine.model.TransactionEntity;
+
+/**
+ * Callback for components that keep derived state (counters, caches) in step
+ * with processed transactions. Invoked by {@link FraudDetectionService} after
+ * a transaction has been evaluated and handed to persistence.
+ */
+public interface TransactionObserver {
+    void onProcessed(TransactionEntity tx);
+}
@@ -0,0 +1,164 @@
+
+package capitec.fraudengine.service.aggregate;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.service.TransactionObserver;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.OffsetDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory rolling aggregates per terminal (DE41), merchant (DE42) and
+ * acquirer (DE32): transaction count, amount sum and distinct PANs over any
+ * window up to {@code horizon-minutes}.
+ * <p>
+ * Every processed transaction is added to one {@link AggregateWindow} per
+ * dimension it carries a key for. Windows are bucket-granular like
+ * {@code VelocityCounterStore}; the distinct-PAN figure is a HyperLogLog
+ * estimate with {@code 2^precision} registers per bucket (about 13% standard
+ * error at the default of 6, which is plenty to tell one card from forty).
+ * <p>
+ * Unlike the per-PAN store this one is not warmed up: it starts empty and a
+ * rule built on it only sees traffic since startup. Keys not recorded for
+ * {@code idle-minutes} are evicted periodically.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "fraud.aggregates.enabled", havingValue = "true")
+public class AggregateStore implements TransactionObserver {
+
+    /** Aggregates of one key over a window. */
+    public record Stats(long count, BigDecimal amount, long distinctPans) {
+        public static final Stats EMPTY = new Stats(0, BigDecimal.ZERO.setScale(2), 0);
+    }
+
+    private final Map<Dimension, ConcurrentHashMap<String, AggregateWindow>> windows = new EnumMap<>(Dimension.class);
+
+    @Value("${fraud.aggregates.bucket-seconds:60}")
+    private int bucketSeconds;
+
+    @Value("${fraud.aggregates.horizon-minutes:30}")
+    private int horizonMinutes;
+
+    @Value("${fraud.aggregates.idle-minutes:${fraud.aggregates.horizon-minutes:30}}")
+    private int idleMinutes;
+
+    @Value("${fraud.aggregates.precision:6}")
+    private int precision;
+
+    private int bucketCount;
+
+    public AggregateStore() {
+        for (Dimension d : Dimension.values())
+            windows.put(d, new ConcurrentHashMap<>());
+    }
+
+    /** Standalone store, mainly for tests. */
+    public AggregateStore(int bucketSeconds, int horizonMinutes, int idleMinutes, int precision) {
+        this();
+        this.bucketSeconds = bucketSeconds;
+        this.horizonMinutes = horizonMinutes;
+        this.idleMinutes = idleMinutes;
+        this.precision = precision;
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        if (bucketSeconds <= 0 || horizonMinutes <= 0) {
+            throw new IllegalStateException("aggregates bucket-seconds and horizon-minutes must be > 0");
+        }
+        if (precision < 4 || precision > 12) {
+            throw new IllegalStateException("aggregates precision must be between 4 and 12");
+        }
+        // +1 so a window that does not start on a bucket boundary is still covered
+        bucketCount = (int) Math.ceil(horizonMinutes * 60.0 / bucketSeconds) + 1;
+    }
+
+    @Override
+    public void onProcessed(TransactionEntity tx) {
+        OffsetDateTime ts = tx.getTimestamp();
+        if (ts == null)
+            return;
+        long bucket = bucketOf(ts);
+        long panHash = panHash(tx.getPan());
+        long amount = toMinor(tx.getAmount());
+        long now = System.currentTimeMillis();
+        for (Dimension d : Dimension.values()) {
+            String key = d.keyOf(tx);
+            if (key != null)
+                windows.get(d).computeIfAbsent(key, k -> new AggregateWindow(bucketCount, precision))
+                        .add(bucket, panHash, amount, now);
+        }
+    }
+
+    /**
+     * Aggregates for {@code key} over the {@code windowMinutes} ending at
+     * {@code to} (bucket-granular). Windows beyond the horizon are answered
+     * for the horizon only.
+     */
+    public Stats stats(Dimension dimension, String key, OffsetDateTime to, int windowMinutes) {
+        if (key == null || to == null)
+            return Stats.EMPTY;
+        AggregateWindow w = windows.get(dimension).get(key);
+        if (w == null)
+            return Stats.EMPTY;
+        AggregateWindow.Totals t = w.totals(bucketOf(to.minusMinutes(windowMinutes)), bucketOf(to));
+        if (t.count() == 0)
+            return Stats.EMPTY;
+        return new Stats(t.count(), BigDecimal.valueOf(t.sumMinor(), 2), t.distinctPans());
+    }
+
+    /** Largest window (in minutes) this store can answer exactly. */
+    public int getHorizonMinutes() {
+        return horizonMinutes;
+    }
+
+    public int size(Dimension dimension) {
+        return windows.get(dimension).size();
+    }
+
+    /** Drop keys that have not been recorded for {@code idle-minutes}. */
+    @Scheduled(fixedDelayString = "${fraud.aggregates.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleMinutes);
+        int evicted = 0;
+        for (ConcurrentHashMap<String, AggregateWindow> byKey : windows.values()) {
+            int before = byKey.size();
+            byKey.values().removeIf(w -> w.lastTouchedMillis <= cutoff);
+            evicted += before - byKey.size();
+        }
+        if (evicted > 0) {
+            log.debug("Aggregate store evicted {} idle keys", evicted);
+        }
+    }
+
+    private long bucketOf(OffsetDateTime ts) {
+        return Math.floorDiv(ts.toEpochSecond(), bucketSeconds);
+    }
+
+    /** 0 is reserved for "no PAN", so a PAN that happens to hash to 0 is moved to 1. */
+    private static long panHash(String pan) {
+        if (pan == null || pan.isEmpty())
+            return 0;
+        long h = AggregateWindow.hash(pan);
+        return h == 0 ? 1 : h;
+    }
+
+    private static long toMinor(BigDecimal amount) {
+        if (amount == null)
+            return 0;
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+}
@@ -0,0 +1,119 @@
+
+package capitec.fraudengine.service.aggregate;
+
+import java.util.Arrays;
+
+/**
+ * Ring of time buckets for one terminal, merchant or acquirer: per bucket a
+ * transaction count, an amount sum in cents and a small HyperLogLog sketch of
+ * the PANs seen. A slot is reset when a newer bucket claims it, like
+ * {@code VelocityCounterStore.PanWindow}.
+ * <p>
+ * Recording touches one slot and one sketch register; a query walks the ring
+ * once and merges the sketches of the buckets in range (register-wise max), so
+ * both cost the same however busy the key is.
+ */
+final class AggregateWindow {
+
+    /** Distinct count, sum and count for a range of buckets. */
+    record Totals(long count, long sumMinor, long distinctPans) {
+        static final Totals EMPTY = new Totals(0, 0, 0);
+    }
+
+    private final int precision;
+    private final int registersPerBucket;
+    private final long[] bucketIds;
+    private final int[] counts;
+    private final long[] sums;
+    private final byte[] registers;
+    volatile long lastTouchedMillis;
+
+    AggregateWindow(int buckets, int precision) {
+        this.precision = precision;
+        this.registersPerBucket = 1 << precision;
+        this.bucketIds = new long[buckets];
+        this.counts = new int[buckets];
+        this.sums = new long[buckets];
+        this.registers = new byte[buckets * registersPerBucket];
+        Arrays.fill(bucketIds, Long.MIN_VALUE);
+    }
+
+    /**
+     * @param panHash 64-bit hash of the PAN, see {@link #hash(String)}; 0 when
+     *                the transaction has no PAN (counted, not in the sketch)
+     */
+    synchronized void add(long bucket, long panHash, long amountMinor, long nowMillis) {
+        int slot = (int) Math.floorMod(bucket, (long) bucketIds.length);
+        long held = bucketIds[slot];
+        if (held < bucket) {
+            bucketIds[slot] = bucket;
+            counts[slot] = 0;
+            sums[slot] = 0;
+            Arrays.fill(registers, slot * registersPerBucket, (slot + 1) * registersPerBucket, (byte) 0);
+        } else if (held > bucket) {
+            return; // older than the ring can represent
+        }
+        counts[slot]++;
+        sums[slot] += amountMinor;
+        if (panHash != 0) {
+            int register = slot * registersPerBucket + (int) (panHash >>> (64 - precision));
+            byte rank = (byte) Math.min(Long.numberOfLeadingZeros(panHash << precision) + 1, 64 - precision + 1);
+            if (rank > registers[register])
+                registers[register] = rank;
+        }
+        lastTouchedMillis = nowMillis;
+    }
+
+    synchronized Totals totals(long fromBucket, long toBucket) {
+        long count = 0;
+        long sum = 0;
+        byte[] merged = null;
+        for (int slot = 0; slot < bucketIds.length; slot++) {
+            long b = bucketIds[slot];
+            if (b < fromBucket || b > toBucket)
+                continue;
+            count += counts[slot];
+            sum += sums[slot];
+            if (merged == null)
+                merged = new byte[registersPerBucket];
+            int base = slot * registersPerBucket;
+            for (int r = 0; r < registersPerBucket; r++) {
+                if (registers[base + r] > merged[r])
+                    merged[r] = registers[base + r];
+            }
+        }
+        return merged == null ? Totals.EMPTY : new Totals(count, sum, estimate(merged));
+    }
+
+    /** HyperLogLog estimate, with linear counting while registers are still empty. */
+    static long estimate(byte[] registers) {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0)
+                zeros++;
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double e = alpha * m * m / sum;
+        if (e <= 2.5 * m && zeros > 0)
+            e = m * Math.log((double) m / zeros);
+        return Math.round(e);
+    }
+
+    /** 64-bit FNV-1a with a murmur finalizer, so the top bits are usable as a register index. */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
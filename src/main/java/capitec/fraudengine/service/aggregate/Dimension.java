@@ -0,0 +1,28 @@
+
+package capitec.fraudengine.service.aggregate;
+
+import capitec.fraudengine.model.TransactionEntity;
+
+import java.util.function.Function;
+
+/** What an aggregate is kept per: the terminal (DE41), merchant (DE42) or acquirer (DE32). */
+public enum Dimension {
+    TERMINAL(TransactionEntity::getTerminalId),
+    MERCHANT(TransactionEntity::getMerchantId),
+    ACQUIRER(TransactionEntity::getDe32AcquiringInstIdCode);
+
+    private final Function<TransactionEntity, String> key;
+
+    Dimension(Function<TransactionEntity, String> key) {
+        this.key = key;
+    }
+
+    /** The transaction's key in this dimension, trimmed; null when absent. */
+    public String keyOf(TransactionEntity tx) {
+        String k = key.apply(tx);
+        if (k == null)
+            return null;
+        k = k.trim();
+        return k.isEmpty() ? null : k;
+    }
+}
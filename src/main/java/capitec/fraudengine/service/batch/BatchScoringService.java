@@ -0,0 +1,198 @@
+
+package capitec.fraudengine.service.batch;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.model.dto.BatchDecision;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.FraudDetectionService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Scores large batches (settlement files, switch log replays) with bounded
+ * parallelism.
+ * <p>
+ * Items are taken from the input in chunks of {@code chunk-size}. A chunk is
+ * scored in steps: step k holds the k-th transaction of each card in the
+ * chunk, so usually there is one step per chunk. A step is split into lanes by
+ * PAN, evaluated on a shared pool of {@code parallelism} threads and saved in
+ * one DB transaction (JDBC batches); observers (velocity counters, profiles)
+ * see its rows only after that commit, and before the next step is scored, so
+ * velocity counts include earlier rows of the same batch but never rows that
+ * were rolled back. The chunk's decisions are then handed to the sink in input
+ * order before the next chunk is read, so memory stays at one chunk however
+ * long the input is.
+ * <p>
+ * Items that failed to parse or validate are passed through as errors in
+ * their position. When a step cannot be saved, its items are reported as
+ * errors; earlier steps and chunks stay committed.
+ */
+@Slf4j
+@Service
+public class BatchScoringService {
+
+    /** One input item: a transaction to score, or the reason it could not be read. */
+    public record Item(TransactionEntity tx, String error) {
+        public static Item of(TransactionEntity tx) {
+            return new Item(tx, null);
+        }
+
+        public static Item invalid(String error) {
+            return new Item(null, error);
+        }
+    }
+
+    private final FraudDetectionService fraudService;
+    private final TransactionRepository repo;
+    private final TransactionTemplate txTemplate;
+    private final ExecutorService pool;
+    private final int parallelism;
+    private final int chunkSize;
+
+    @Autowired
+    public BatchScoringService(FraudDetectionService fraudService,
+            TransactionRepository repo,
+            PlatformTransactionManager transactionManager,
+            @Value("${fraud.batch.parallelism:0}") int parallelism,
+            @Value("${fraud.batch.chunk-size:1000}") int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("fraud.batch.chunk-size must be >= 1");
+        }
+        this.fraudService = fraudService;
+        this.repo = repo;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.chunkSize = chunkSize;
+        AtomicInteger n = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.parallelism, r -> {
+            Thread t = new Thread(r, "batch-score-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Score every item and hand one decision per item to {@code sink}, in
+     * input order. Returns the number of items read.
+     */
+    public long score(Iterator<Item> items, Consumer<BatchDecision> sink) {
+        long index = 0;
+        List<Item> chunk = new ArrayList<>(chunkSize);
+        while (items.hasNext()) {
+            chunk.add(items.next());
+            if (chunk.size() == chunkSize) {
+                emit(chunk, index, sink);
+                index += chunk.size();
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            emit(chunk, index, sink);
+            index += chunk.size();
+        }
+        return index;
+    }
+
+    private void emit(List<Item> chunk, long firstIndex, Consumer<BatchDecision> sink) {
+        Map<TransactionEntity, String> failures = new IdentityHashMap<>();
+        for (List<TransactionEntity> step : steps(chunk)) {
+            try {
+                evaluate(step);
+                txTemplate.executeWithoutResult(status -> repo.saveAll(step));
+            } catch (RuntimeException e) {
+                log.error("Batch chunk at item {} ({} transactions) failed: {}", firstIndex, step.size(),
+                        e.getMessage());
+                step.forEach(tx -> failures.put(tx, "not saved: " + e.getMessage()));
+                continue;
+            }
+            step.forEach(fraudService::committed);
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            Item item = chunk.get(i);
+            long index = firstIndex + i;
+            if (item.tx() == null)
+                sink.accept(BatchDecision.error(index, null, item.error()));
+            else if (failures.containsKey(item.tx()))
+                sink.accept(BatchDecision.error(index, item.tx(), failures.get(item.tx())));
+            else
+                sink.accept(BatchDecision.of(index, item.tx()));
+        }
+    }
+
+    /** The chunk's transactions grouped so that step k holds the k-th one of each PAN, in input order. */
+    private static List<List<TransactionEntity>> steps(List<Item> chunk) {
+        List<List<TransactionEntity>> steps = new ArrayList<>();
+        Map<String, Integer> seen = new HashMap<>();
+        for (Item item : chunk) {
+            TransactionEntity tx = item.tx();
+            if (tx == null)
+                continue;
+            // rows without a PAN have no per-card history to wait for
+            int k = tx.getPan() == null ? 0 : seen.merge(tx.getPan(), 1, Integer::sum) - 1;
+            if (k == steps.size())
+                steps.add(new ArrayList<>());
+            steps.get(k).add(tx);
+        }
+        return steps;
+    }
+
+    /** Evaluate a step's transactions, one lane per PAN hash, lanes in parallel. */
+    private void evaluate(List<TransactionEntity> txs) {
+        int laneCount = Math.min(parallelism, txs.size());
+        if (laneCount <= 1) {
+            txs.forEach(fraudService::score);
+            return;
+        }
+        List<List<TransactionEntity>> lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++)
+            lanes.add(new ArrayList<>(txs.size() / laneCount + 1));
+        for (TransactionEntity tx : txs) {
+            String pan = tx.getPan();
+            lanes.get(pan == null ? 0 : Math.floorMod(pan.hashCode(), laneCount)).add(tx);
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(laneCount);
+        for (List<TransactionEntity> lane : lanes) {
+            if (!lane.isEmpty()) {
+                tasks.add(() -> {
+                    lane.forEach(fraudService::score);
+                    return null;
+                });
+            }
+        }
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks))
+                f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch scoring interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch scoring failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+
+package capitec.fraudengine.service.location;
+
+import java.util.Locale;
+
+/**
+ * DE43 split into its parts: name (positions 1-23), city (24-36), region
+ * (37-38) and country (39-40), each trimmed and upper-cased, null when blank.
+ * Values shorter than the fixed layout (free text such as
+ * {@code RISKY-COUNTRY}) are kept whole as the name.
+ */
+public record CardAcceptorLocation(String name, String city, String region, String country) {
+
+    private static final int NAME_END = 23;
+    private static final int CITY_END = 36;
+    private static final int REGION_END = 38;
+    private static final int LENGTH = 40;
+
+    public static CardAcceptorLocation parse(String de43) {
+        if (de43 == null)
+            return new CardAcceptorLocation(null, null, null, null);
+        if (de43.length() < REGION_END)
+            return new CardAcceptorLocation(part(de43, 0, de43.length()), null, null, null);
+        return new CardAcceptorLocation(part(de43, 0, NAME_END), part(de43, NAME_END, CITY_END),
+                part(de43, CITY_END, REGION_END), part(de43, REGION_END, Math.min(de43.length(), LENGTH)));
+    }
+
+    private static String part(String s, int from, int to) {
+        String p = s.substring(from, to).trim();
+        return p.isEmpty() ? null : p.toUpperCase(Locale.ROOT);
+    }
+}
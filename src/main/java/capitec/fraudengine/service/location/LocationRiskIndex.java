@@ -0,0 +1,160 @@
+
+package capitec.fraudengine.service.location;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Risk tiers for card-acceptor locations by country, city and merchant name
+ * prefix. A location's tier is the highest of the three matches.
+ * <p>
+ * Loaded from a CSV file, one entry per line ({@code #} starts a comment):
+ *
+ * <pre>
+ *   country,KP,HIGH
+ *   city,NG/LAGOS,MEDIUM      country/city; * / city for any country
+ *   merchant,LUCKY CASINO,LOW longest matching name prefix wins
+ * </pre>
+ *
+ * Countries are a 26x26 table indexed by the two letters; cities and merchant
+ * prefixes are {@link PackedKeyTable}s, so 100k+ entries take a few MB and a
+ * lookup is a handful of binary searches. Immutable once built.
+ */
+public final class LocationRiskIndex {
+
+    private static final LocationRiskIndex EMPTY = new LocationRiskIndex(new byte[26 * 26], PackedKeyTable.EMPTY,
+            PackedKeyTable.EMPTY);
+
+    private final byte[] countries;
+    private final PackedKeyTable cities;
+    private final PackedKeyTable merchants;
+
+    private LocationRiskIndex(byte[] countries, PackedKeyTable cities, PackedKeyTable merchants) {
+        this.countries = countries;
+        this.cities = cities;
+        this.merchants = merchants;
+    }
+
+    public static LocationRiskIndex empty() {
+        return EMPTY;
+    }
+
+    public static LocationRiskIndex load(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null)
+                lines.add(line);
+        }
+        try {
+            return of(lines);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Index from CSV lines. Repeated keys keep their highest tier.
+     *
+     * @throws IllegalArgumentException naming the first malformed line
+     */
+    public static LocationRiskIndex of(List<String> lines) {
+        byte[] countries = new byte[26 * 26];
+        SortedMap<String, RiskTier> cities = new TreeMap<>();
+        SortedMap<String, RiskTier> merchants = new TreeMap<>();
+        int lineNo = 0;
+        for (String raw : lines) {
+            lineNo++;
+            String line = raw.strip();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] parts = raw.split(",", -1);
+            if (parts.length != 3)
+                throw new IllegalArgumentException("line " + lineNo + ": expected kind,value,tier");
+            String kind = parts[0].trim().toLowerCase(Locale.ROOT);
+            RiskTier tier;
+            try {
+                tier = RiskTier.valueOf(parts[2].trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + lineNo + ": unknown tier " + parts[2].trim());
+            }
+            String value = parts[1].trim().toUpperCase(Locale.ROOT);
+            if (value.isEmpty() || !ascii(value))
+                throw new IllegalArgumentException("line " + lineNo + ": value must be non-empty ASCII");
+            switch (kind) {
+                case "country" -> {
+                    int slot = countrySlot(value);
+                    if (slot < 0)
+                        throw new IllegalArgumentException("line " + lineNo + ": country must be two letters");
+                    countries[slot] = (byte) Math.max(countries[slot], tier.ordinal());
+                }
+                case "city" -> {
+                    int slash = value.indexOf('/');
+                    if (slash < 1 || slash == value.length() - 1)
+                        throw new IllegalArgumentException("line " + lineNo + ": city must be COUNTRY/CITY");
+                    String key = value.substring(0, slash).trim() + "/" + value.substring(slash + 1).trim();
+                    cities.merge(key, tier, RiskTier::max);
+                }
+                case "merchant" -> merchants.merge(value, tier, RiskTier::max);
+                default -> throw new IllegalArgumentException("line " + lineNo + ": unknown kind " + kind);
+            }
+        }
+        return new LocationRiskIndex(countries, PackedKeyTable.of(cities), PackedKeyTable.of(merchants));
+    }
+
+    /** Highest tier among the location's country, city and merchant name. */
+    public RiskTier tier(CardAcceptorLocation location) {
+        RiskTier tier = RiskTier.NONE;
+        String country = location.country();
+        if (country != null) {
+            int slot = countrySlot(country);
+            if (slot >= 0)
+                tier = RiskTier.ofOrdinal(countries[slot]);
+        }
+        String city = location.city();
+        if (city != null && cities.size() > 0) {
+            if (country != null)
+                tier = RiskTier.max(tier, cities.get(country + "/" + city));
+            tier = RiskTier.max(tier, cities.get("*/" + city));
+        }
+        String name = location.name();
+        if (name != null && merchants.size() > 0)
+            tier = RiskTier.max(tier, merchants.longestPrefix(name));
+        return tier;
+    }
+
+    public int size() {
+        int n = 0;
+        for (byte b : countries) {
+            if (b != 0)
+                n++;
+        }
+        return n + cities.size() + merchants.size();
+    }
+
+    private static int countrySlot(String cc) {
+        if (cc.length() != 2)
+            return -1;
+        int a = cc.charAt(0) - 'A';
+        int b = cc.charAt(1) - 'A';
+        if (a < 0 || a >= 26 || b < 0 || b >= 26)
+            return -1;
+        return a * 26 + b;
+    }
+
+    private static boolean ascii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 127)
+                return false;
+        }
+        return true;
+    }
+}
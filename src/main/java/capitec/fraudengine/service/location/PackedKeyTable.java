@@ -0,0 +1,131 @@
+
+package capitec.fraudengine.service.location;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Sorted ASCII keys packed back to back in one byte array, each with a
+ * {@link RiskTier}. About one byte per character plus five per key, against
+ * roughly 60 per entry for a {@code HashSet<String>}; lookups are a binary
+ * search over the bytes and allocate nothing.
+ */
+final class PackedKeyTable {
+
+    static final PackedKeyTable EMPTY = new PackedKeyTable(new byte[0], new int[] { 0 }, new byte[0]);
+
+    private final byte[] bytes;
+    /** Start of key i; {@code offsets[size]} is the end of the last key. */
+    private final int[] offsets;
+    private final byte[] tiers;
+
+    private PackedKeyTable(byte[] bytes, int[] offsets, byte[] tiers) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.tiers = tiers;
+    }
+
+    /** Keys must be ASCII; a {@link SortedMap} with natural order matches the byte order. */
+    static PackedKeyTable of(SortedMap<String, RiskTier> entries) {
+        if (entries.isEmpty())
+            return EMPTY;
+        int total = 0;
+        for (String k : entries.keySet())
+            total += k.length();
+        byte[] bytes = new byte[total];
+        int[] offsets = new int[entries.size() + 1];
+        byte[] tiers = new byte[entries.size()];
+        int i = 0;
+        int pos = 0;
+        for (Map.Entry<String, RiskTier> e : entries.entrySet()) {
+            byte[] k = e.getKey().getBytes(StandardCharsets.US_ASCII);
+            offsets[i] = pos;
+            System.arraycopy(k, 0, bytes, pos, k.length);
+            pos += k.length;
+            tiers[i++] = (byte) e.getValue().ordinal();
+        }
+        offsets[i] = pos;
+        return new PackedKeyTable(bytes, offsets, tiers);
+    }
+
+    int size() {
+        return tiers.length;
+    }
+
+    /** Tier of {@code key}, {@link RiskTier#NONE} when absent. */
+    RiskTier get(String key) {
+        int lo = 0;
+        int hi = size() - 1;
+        int len = key.length();
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(mid, key, len);
+            if (c < 0)
+                lo = mid + 1;
+            else if (c > 0)
+                hi = mid - 1;
+            else
+                return RiskTier.ofOrdinal(tiers[mid]);
+        }
+        return RiskTier.NONE;
+    }
+
+    /**
+     * Tier of the longest key that is a prefix of {@code s}. Every such key
+     * sorts between itself and {@code s}, so it is found by taking the
+     * greatest key not above the candidate and, when that is not a prefix,
+     * narrowing the candidate to what the two have in common.
+     */
+    RiskTier longestPrefix(String s) {
+        int len = s.length();
+        while (len > 0) {
+            int i = floor(s, len);
+            if (i < 0)
+                return RiskTier.NONE;
+            int common = commonPrefix(i, s, len);
+            if (common == offsets[i + 1] - offsets[i])
+                return RiskTier.ofOrdinal(tiers[i]);
+            len = common;
+        }
+        return RiskTier.NONE;
+    }
+
+    /** Index of the greatest key {@code <= s[0, len)}, or -1. */
+    private int floor(String s, int len) {
+        int lo = 0;
+        int hi = size() - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, s, len) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private int compare(int i, String s, int len) {
+        int from = offsets[i];
+        int keyLen = offsets[i + 1] - from;
+        int n = Math.min(keyLen, len);
+        for (int j = 0; j < n; j++) {
+            int c = (bytes[from + j] & 0xFF) - s.charAt(j);
+            if (c != 0)
+                return c;
+        }
+        return keyLen - len;
+    }
+
+    private int commonPrefix(int i, String s, int len) {
+        int from = offsets[i];
+        int n = Math.min(offsets[i + 1] - from, len);
+        int j = 0;
+        while (j < n && (bytes[from + j] & 0xFF) == s.charAt(j))
+            j++;
+        return j;
+    }
+}
@@ -0,0 +1,24 @@
+
+package capitec.fraudengine.service.location;
+
+/** How risky a card-acceptor location is, in increasing order. */
+public enum RiskTier {
+    NONE,
+    LOW,
+    MEDIUM,
+    HIGH;
+
+    private static final RiskTier[] VALUES = values();
+
+    public boolean atLeast(RiskTier other) {
+        return compareTo(other) >= 0;
+    }
+
+    public static RiskTier max(RiskTier a, RiskTier b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    static RiskTier ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
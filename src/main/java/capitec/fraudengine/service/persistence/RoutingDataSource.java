@@ -0,0 +1,64 @@
+
+package capitec.fraudengine.service.persistence;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * Sends each connection request to one of three pools, so reporting queries
+ * cannot take the connections authorizations need:
+ * <ul>
+ * <li>{@link Route#REPORTING} inside {@link #reporting} (searches, flag lists
+ * and exports), whatever the transaction;</li>
+ * <li>{@link Route#AUTH_READ} in a {@code @Transactional(readOnly = true)}
+ * transaction (velocity counts, profile history);</li>
+ * <li>{@link Route#AUTH_WRITE} otherwise.</li>
+ * </ul>
+ * The choice is made when the physical connection is fetched, so this must
+ * sit behind a {@code LazyConnectionDataSourceProxy}: a transaction begun
+ * before the route is known (or before the read-only flag is set) only
+ * borrows a connection at its first statement. A transaction keeps the pool
+ * it started on. Without the routing config, {@link #reporting} does nothing.
+ */
+public class RoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        AUTH_WRITE,
+        AUTH_READ,
+        REPORTING
+    }
+
+    private static final ThreadLocal<Boolean> REPORTING = new ThreadLocal<>();
+
+    /** Run {@code query} with its connections taken from the reporting pool. */
+    public static <T> T reporting(Supplier<T> query) {
+        boolean outer = REPORTING.get() != null;
+        REPORTING.set(Boolean.TRUE);
+        try {
+            return query.get();
+        } finally {
+            if (!outer)
+                REPORTING.remove();
+        }
+    }
+
+    public static void reporting(Runnable query) {
+        reporting(() -> {
+            query.run();
+            return null;
+        });
+    }
+
+    static Route currentRoute() {
+        if (REPORTING.get() != null)
+            return Route.REPORTING;
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? Route.AUTH_READ : Route.AUTH_WRITE;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return currentRoute();
+    }
+}
@@ -0,0 +1,482 @@
+
+package capitec.fraudengine.service.persistence;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Opt-in write-behind persistence for processed transactions.
+ * <p>
+ * {@link #offer(TransactionEntity)} serializes the row, appends it to a spill
+ * journal and queues that snapshot in a bounded in-memory buffer, so the
+ * caller may keep using its entity. A single background writer drains the
+ * buffer and saves rows in batches, one DB transaction per batch. When the
+ * buffer stays full for longer than {@code offer-timeout-ms} the offer is
+ * refused and the caller persists synchronously (backpressure).
+ * <p>
+ * The journal is written in numbered segments of {@code segment-rows} rows.
+ * After each committed batch the writer records a checkpoint (segment and line
+ * of the last committed row) and deletes the segments before it, so the
+ * journal only holds the unflushed backlog plus one segment. At startup rows
+ * after the checkpoint are replayed before new traffic is accepted; a crash
+ * between a commit and its checkpoint replays at most that one batch.
+ * <p>
+ * A batch that fails while the database is reachable is split until the
+ * failing rows are isolated; those are appended to {@code <spill-file>.dead}
+ * and counted, so one bad row cannot wedge the writer. While the database is
+ * unreachable the batch is retried with backoff.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "fraud.persistence.write-behind.enabled", havingValue = "true")
+public class WriteBehindQueue {
+
+    /** A journaled row: its JSON snapshot and where it sits in the journal. */
+    private record Pending(String json, long segment, long line) {
+    }
+
+    private final TransactionRepository repo;
+    private final TransactionTemplate txTemplate;
+    private final ObjectMapper mapper;
+
+    private final ArrayBlockingQueue<Pending> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final Path spillFile;
+    private final boolean spillFsync;
+    private final int segmentRows;
+    private final Path checkpointFile;
+    private final Path deadLetterFile;
+
+    /** Guards the journal and is the monitor producers wait on while the buffer is full. */
+    private final Object journalLock = new Object();
+    private BufferedWriter journal;
+    private FileChannel journalChannel;
+    private long segment;
+    private long segmentLines;
+    /** Oldest segment still on disk; touched by the writer thread only. */
+    private long oldestSegment;
+
+    private final Timer flushTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter fallbacks;
+    private final Counter flushFailures;
+    private final Counter deadLettered;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public WriteBehindQueue(TransactionRepository repo,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper mapper,
+            MeterRegistry registry,
+            @Value("${fraud.persistence.write-behind.capacity:10000}") int capacity,
+            @Value("${fraud.persistence.write-behind.batch-size:500}") int batchSize,
+            @Value("${fraud.persistence.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+            @Value("${fraud.persistence.write-behind.offer-timeout-ms:20}") long offerTimeoutMs,
+            @Value("${fraud.persistence.write-behind.spill-file:data/write-behind.ndjson}") String spillFile,
+            @Value("${fraud.persistence.write-behind.spill-fsync:false}") boolean spillFsync,
+            @Value("${fraud.persistence.write-behind.segment-rows:10000}") int segmentRows) {
+        this.repo = repo;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.mapper = mapper;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.spillFile = Path.of(spillFile);
+        this.spillFsync = spillFsync;
+        this.segmentRows = segmentRows;
+        this.checkpointFile = Path.of(spillFile + ".checkpoint");
+        this.deadLetterFile = Path.of(spillFile + ".dead");
+
+        registry.gauge("fraud.writebehind.queue.depth", queue, ArrayBlockingQueue::size);
+        this.flushTimer = Timer.builder("fraud.writebehind.flush")
+                .description("Time to persist one write-behind batch")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchSizes = DistributionSummary.builder("fraud.writebehind.batch.size").register(registry);
+        this.fallbacks = Counter.builder("fraud.writebehind.fallback")
+                .description("Rows persisted synchronously because the buffer was full")
+                .register(registry);
+        this.flushFailures = Counter.builder("fraud.writebehind.flush.failures").register(registry);
+        this.deadLettered = Counter.builder("fraud.writebehind.dead.lettered")
+                .description("Rows the database rejected on their own, moved to the dead-letter file")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        Path parent = spillFile.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        segment = recoverSpill() + 1;
+        oldestSegment = segment;
+        openSegment();
+
+        running = true;
+        writer = new Thread(this::runWriter, "tx-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Write-behind persistence enabled (capacity={}, batch={}, spill={})",
+                queue.remainingCapacity(), batchSize, spillFile.toAbsolutePath());
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (journalLock) {
+            try {
+                if (journal != null)
+                    journal.close();
+            } catch (IOException e) {
+                log.warn("Closing write-behind journal failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Queue a snapshot of a processed transaction for persistence. Later
+     * changes to {@code tx} are not persisted, and {@code tx} does not get an
+     * id.
+     *
+     * @return false if the buffer stayed full for {@code offer-timeout-ms}; the
+     *         caller must then persist the row itself
+     */
+    public boolean offer(TransactionEntity tx) {
+        if (!running)
+            return false;
+        String json;
+        try {
+            json = mapper.writeValueAsString(tx);
+        } catch (IOException e) {
+            log.warn("Cannot journal tx for write-behind, persisting synchronously: {}", e.getMessage());
+            fallbacks.increment();
+            return false;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+        synchronized (journalLock) {
+            try {
+                while (queue.remainingCapacity() == 0) {
+                    long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (!running || remainingMs <= 0) {
+                        fallbacks.increment();
+                        return false;
+                    }
+                    journalLock.wait(remainingMs);
+                }
+                // only producers add, and they hold journalLock, so the slot is still free
+                queue.add(new Pending(json, segment, segmentLines));
+                appendToJournal(json);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fallbacks.increment();
+                return false;
+            }
+        }
+    }
+
+    public int depth() {
+        return queue.size();
+    }
+
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                synchronized (journalLock) {
+                    journalLock.notifyAll(); // space freed for blocked producers
+                }
+                flushWithRetry(batch);
+                checkpoint(batch.get(batch.size() - 1));
+                batch.clear();
+            } catch (InterruptedException e) {
+                // shutdown: loop condition drains what is left
+                if (!batch.isEmpty()) {
+                    if (!flush(batch)) {
+                        log.error("Write-behind shutdown with {} unflushed row(s); they remain in the journal",
+                                batch.size() + queue.size());
+                        return;
+                    }
+                    checkpoint(batch.get(batch.size() - 1));
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Persist {@code batch}. While the database is unreachable the batch is
+     * retried with backoff; when it is reachable, the rows that still fail are
+     * isolated and dead-lettered.
+     */
+    private void flushWithRetry(List<Pending> batch) throws InterruptedException {
+        long backoffMs = 100;
+        while (!flush(batch)) {
+            if (databaseReachable()) {
+                isolate(batch);
+                return;
+            }
+            if (!running)
+                throw new InterruptedException("shutdown during retry");
+            Thread.sleep(backoffMs);
+            backoffMs = Math.min(backoffMs * 2, 5000);
+        }
+    }
+
+    /**
+     * Bisect a failing batch: halves that commit are done, single rows that
+     * fail are dead-lettered.
+     *
+     * @return the number of rows dead-lettered
+     */
+    private int isolate(List<Pending> rows) {
+        if (rows.size() == 1) {
+            deadLetter(rows.get(0));
+            return 1;
+        }
+        int mid = rows.size() / 2;
+        int rejected = 0;
+        for (List<Pending> half : List.of(rows.subList(0, mid), rows.subList(mid, rows.size()))) {
+            if (!flush(half))
+                rejected += isolate(half);
+        }
+        return rejected;
+    }
+
+    /** Fresh entities from the snapshots on every attempt, so a failed attempt leaves nothing behind. */
+    private boolean flush(List<Pending> batch) {
+        long start = System.nanoTime();
+        try {
+            List<TransactionEntity> rows = new ArrayList<>(batch.size());
+            for (Pending p : batch) {
+                TransactionEntity tx = mapper.readValue(p.json(), TransactionEntity.class);
+                tx.setId(null);
+                rows.add(tx);
+            }
+            txTemplate.executeWithoutResult(status -> repo.saveAll(rows));
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.record(batch.size());
+            return true;
+        } catch (Exception e) {
+            flushFailures.increment();
+            log.error("Write-behind flush of {} row(s) failed: {}", batch.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean databaseReachable() {
+        try {
+            txTemplate.executeWithoutResult(status -> repo.existsById(-1L));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void deadLetter(Pending row) {
+        deadLettered.increment();
+        log.error("Write-behind row rejected by the database, moved to {}", deadLetterFile);
+        try {
+            Files.writeString(deadLetterFile, row.json() + System.lineSeparator(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.error("Write-behind dead-letter append failed, row lost: {}", e.getMessage());
+        }
+    }
+
+    private void appendToJournal(String line) {
+        try {
+            journal.write(line);
+            journal.newLine();
+            journal.flush();
+            if (spillFsync)
+                journalChannel.force(false);
+        } catch (IOException e) {
+            // The row is still queued; only crash safety is degraded
+            log.warn("Write-behind journal append failed: {}", e.getMessage());
+        }
+        if (++segmentLines >= segmentRows) {
+            try {
+                journal.close();
+                segment++;
+                openSegment();
+            } catch (IOException e) {
+                log.warn("Write-behind journal rotation failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segmentLines = 0;
+        journalChannel = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        journal = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(journalChannel),
+                StandardCharsets.UTF_8));
+    }
+
+    /** Record {@code last} as committed and delete the segments before its own. */
+    private void checkpoint(Pending last) {
+        try {
+            writeCheckpoint(last);
+        } catch (IOException e) {
+            log.warn("Write-behind checkpoint failed: {}", e.getMessage());
+            return;
+        }
+        for (; oldestSegment < last.segment(); oldestSegment++) {
+            try {
+                Files.deleteIfExists(segmentFile(oldestSegment));
+            } catch (IOException e) {
+                log.warn("Deleting write-behind segment {} failed: {}", oldestSegment, e.getMessage());
+            }
+        }
+    }
+
+    private void writeCheckpoint(Pending last) throws IOException {
+        Path tmp = Path.of(checkpointFile + ".tmp");
+        Files.writeString(tmp, last.segment() + " " + last.line());
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path segmentFile(long n) {
+        return Path.of(spillFile + "." + n);
+    }
+
+    /**
+     * Replay rows after the checkpoint from the segments left by the previous
+     * run (and from a single-file journal of older versions), then remove them.
+     *
+     * @return the highest segment number found, 0 when none
+     */
+    private long recoverSpill() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        Path dir = spillFile.toAbsolutePath().getParent();
+        String prefix = spillFile.getFileName() + ".";
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(f -> {
+                String name = f.getFileName().toString();
+                if (name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d+"))
+                    segments.put(Long.parseLong(name.substring(prefix.length())), f);
+            });
+        }
+        long cpSegment = -1;
+        long cpLine = -1;
+        if (Files.exists(checkpointFile)) {
+            String[] cp = Files.readString(checkpointFile).trim().split(" ");
+            cpSegment = Long.parseLong(cp[0]);
+            cpLine = Long.parseLong(cp[1]);
+        }
+
+        int recovered = replay(spillFile, -1, -1); // single-file journal, no checkpoint
+        for (var e : segments.entrySet()) {
+            long n = e.getKey();
+            if (n < cpSegment)
+                continue;
+            recovered += replay(e.getValue(), n, n == cpSegment ? cpLine : -1);
+        }
+        if (recovered > 0)
+            log.warn("Recovered {} transaction(s) from write-behind journal {}", recovered, spillFile);
+
+        Files.deleteIfExists(spillFile);
+        for (Path f : segments.values())
+            Files.deleteIfExists(f);
+        Files.deleteIfExists(checkpointFile);
+        return segments.isEmpty() ? 0 : segments.lastKey();
+    }
+
+    /** Save the lines of {@code file} after {@code skipThrough}, checkpointing each batch. */
+    private int replay(Path file, long n, long skipThrough) throws IOException {
+        if (!Files.exists(file))
+            return 0;
+        int recovered = 0;
+        List<Pending> batch = new ArrayList<>(batchSize);
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNo = -1;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (lineNo <= skipThrough || line.isBlank())
+                    continue;
+                try {
+                    mapper.readTree(line);
+                } catch (IOException e) {
+                    // torn last line from a crash mid-write
+                    log.warn("Skipping unreadable write-behind journal line: {}", e.getMessage());
+                    continue;
+                }
+                batch.add(new Pending(line, n, lineNo));
+                if (batch.size() == batchSize) {
+                    recovered += replayBatch(batch, n);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty())
+            recovered += replayBatch(batch, n);
+        return recovered;
+    }
+
+    /**
+     * Save one batch of journal rows. Rows the database rejects are
+     * dead-lettered as in the live writer; only an unreachable database fails
+     * the replay (and startup), leaving the journal in place.
+     */
+    private int replayBatch(List<Pending> batch, long n) throws IOException {
+        int saved = batch.size();
+        if (!flush(batch)) {
+            if (!databaseReachable())
+                throw new IOException("write-behind journal replay failed; rows remain in " + spillFile);
+            saved -= isolate(batch);
+        }
+        if (n >= 0)
+            writeCheckpoint(batch.get(batch.size() - 1)); // a crash during recovery resumes after this batch
+        return saved;
+    }
+}
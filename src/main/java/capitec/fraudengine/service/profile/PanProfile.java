@@ -0,0 +1,149 @@
+
+package capitec.fraudengine.service.profile;
+
+import capitec.fraudengine.service.velocity.VelocityCounterStore.PanWindow;
+import capitec.fraudengine.service.velocity.VelocityCounters;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * What the engine remembers about one card: when and where it was last used,
+ * running amount statistics and bucketed recent counts. The counts are read
+ * from the shared {@link VelocityCounters} when the profile was built over
+ * them, so a card is not counted twice.
+ * <p>
+ * A profile reflects the transactions processed <em>before</em> the one being
+ * evaluated; {@link PanProfileCache} folds a transaction in only after the
+ * rules have run. Reads and updates are synchronized on the profile, so a
+ * rule sees a consistent view even while another thread records.
+ */
+public final class PanProfile {
+
+    private final int bucketSeconds;
+    private final PanWindow recent;
+    private final String pan;
+    private final VelocityCounters counters;
+
+    // ids of the rows the profile was seeded from; see PanProfileCache#onProcessed
+    private Set<Long> seeded;
+
+    private OffsetDateTime lastSeen;
+    private String lastLocation;
+    private String lastTerminalId;
+
+    // Welford running mean / variance over every amount folded in
+    private long amountCount;
+    private double amountMean;
+    private double amountM2;
+    private BigDecimal amountMax;
+
+    /** Profile keeping its own bucketed counts. */
+    PanProfile(int bucketSeconds, int bucketCount) {
+        this.bucketSeconds = bucketSeconds;
+        this.recent = new PanWindow(bucketCount);
+        this.pan = null;
+        this.counters = null;
+    }
+
+    /** Profile whose counts are the counters' counts for {@code pan}. */
+    PanProfile(String pan, VelocityCounters counters) {
+        this.bucketSeconds = 0;
+        this.recent = null;
+        this.pan = pan;
+        this.counters = counters;
+    }
+
+    /** Fold one transaction into the profile. Older timestamps count but do not move "last seen". */
+    public synchronized void record(OffsetDateTime timestamp, BigDecimal amount, String location, String terminalId) {
+        if (timestamp != null) {
+            if (recent != null)
+                recent.add(bucketOf(timestamp), System.currentTimeMillis());
+            if (lastSeen == null || !timestamp.isBefore(lastSeen)) {
+                lastSeen = timestamp;
+                lastLocation = location;
+                lastTerminalId = terminalId;
+            }
+        }
+        if (amount != null) {
+            amountCount++;
+            double x = amount.doubleValue();
+            double delta = x - amountMean;
+            amountMean += delta / amountCount;
+            amountM2 += delta * (x - amountMean);
+            if (amountMax == null || amount.compareTo(amountMax) > 0)
+                amountMax = amount;
+        }
+    }
+
+    /** Last-seen details from a row older than the count horizon; counts and amounts are left alone. */
+    synchronized void seenBefore(OffsetDateTime timestamp, String location, String terminalId) {
+        if (timestamp != null && (lastSeen == null || timestamp.isAfter(lastSeen))) {
+            lastSeen = timestamp;
+            lastLocation = location;
+            lastTerminalId = terminalId;
+        }
+    }
+
+    /** Remember that the row with this id is already folded in. */
+    synchronized void seeded(Long id) {
+        if (id == null)
+            return;
+        if (seeded == null)
+            seeded = new HashSet<>();
+        seeded.add(id);
+    }
+
+    synchronized boolean wasSeeded(Long id) {
+        return id != null && seeded != null && seeded.contains(id);
+    }
+
+    /**
+     * Transactions with event time in [from, to]. Bucket-granular like
+     * {@link capitec.fraudengine.service.velocity.VelocityCounterStore#count};
+     * only exact for windows inside the cache horizon.
+     */
+    public long count(OffsetDateTime from, OffsetDateTime to) {
+        if (from == null || to == null)
+            return 0;
+        if (counters != null)
+            return counters.count(pan, from, to);
+        return recent.sum(bucketOf(from), bucketOf(to)); // PanWindow synchronizes itself
+    }
+
+    /** Event time of the newest transaction seen for the card, null for a new card. */
+    public synchronized OffsetDateTime getLastSeen() {
+        return lastSeen;
+    }
+
+    public synchronized String getLastLocation() {
+        return lastLocation;
+    }
+
+    public synchronized String getLastTerminalId() {
+        return lastTerminalId;
+    }
+
+    public synchronized long getAmountCount() {
+        return amountCount;
+    }
+
+    public synchronized double getAmountMean() {
+        return amountMean;
+    }
+
+    /** Sample standard deviation; 0 with fewer than two amounts. */
+    public synchronized double getAmountStdDev() {
+        return amountCount < 2 ? 0 : Math.sqrt(amountM2 / (amountCount - 1));
+    }
+
+    public synchronized BigDecimal getAmountMax() {
+        return amountMax;
+    }
+
+    private long bucketOf(OffsetDateTime ts) {
+        return Math.floorDiv(ts.toEpochSecond(), bucketSeconds);
+    }
+}
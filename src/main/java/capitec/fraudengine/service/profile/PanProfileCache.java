@@ -0,0 +1,230 @@
+
+package capitec.fraudengine.service.profile;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.TransactionObserver;
+import capitec.fraudengine.service.velocity.VelocityCounters;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of {@link PanProfile}s.
+ * <p>
+ * A profile is loaded the first time a rule asks for it: the PAN's rows inside
+ * {@code horizon-minutes} seed the counts and amount statistics, and when
+ * there are none the newest row supplies last-seen details. After that the
+ * profile is kept current from {@link #onProcessed}, so a card that stays
+ * active is never read from the database again. Profiles are evicted by size
+ * and after {@code ttl-minutes} without access.
+ * <p>
+ * When this instance keeps the velocity counters itself (the in-JVM
+ * {@link VelocityCounters}), profiles answer counts from them instead of
+ * keeping a second, cold-started window per card; with shared cluster
+ * counters each profile keeps its own.
+ * <p>
+ * A transaction processed while its PAN is loading is held back and folded in
+ * when the load finishes, unless the load already read it.
+ * <p>
+ * With write-behind persistence a profile loaded while rows are still queued
+ * misses those rows until it is evicted and reloaded.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "fraud.profile.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class PanProfileCache implements TransactionObserver {
+
+    private final TransactionRepository repo;
+    private final MeterRegistry registry;
+    private final VelocityCounters counters;
+    private final ConcurrentHashMap<String, Loading> loading = new ConcurrentHashMap<>();
+
+    @Value("${fraud.profile.cache.max-size:500000}")
+    private long maxSize;
+
+    @Value("${fraud.profile.cache.ttl-minutes:60}")
+    private int ttlMinutes;
+
+    @Value("${fraud.profile.cache.bucket-seconds:60}")
+    private int bucketSeconds;
+
+    @Value("${fraud.profile.cache.horizon-minutes:${fraud.rules.velocity.windowMinutes:15}}")
+    private int horizonMinutes;
+
+    private int bucketCount;
+    private LoadingCache<String, PanProfile> cache;
+
+    @Autowired
+    public PanProfileCache(TransactionRepository repo, @Nullable MeterRegistry registry,
+            @Nullable VelocityCounters counters) {
+        this.repo = repo;
+        this.registry = registry;
+        this.counters = local(counters);
+    }
+
+    /** Cache with explicit settings, mainly for tests. */
+    public PanProfileCache(TransactionRepository repo, long maxSize, int ttlMinutes, int bucketSeconds,
+            int horizonMinutes) {
+        this(repo, null, maxSize, ttlMinutes, bucketSeconds, horizonMinutes);
+    }
+
+    /** As above, with counts read from {@code counters} when they are in-JVM. */
+    public PanProfileCache(TransactionRepository repo, @Nullable VelocityCounters counters, long maxSize,
+            int ttlMinutes, int bucketSeconds, int horizonMinutes) {
+        this.repo = repo;
+        this.registry = null;
+        this.counters = local(counters);
+        this.maxSize = maxSize;
+        this.ttlMinutes = ttlMinutes;
+        this.bucketSeconds = bucketSeconds;
+        this.horizonMinutes = horizonMinutes;
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        if (bucketSeconds <= 0 || horizonMinutes <= 0 || maxSize <= 0) {
+            throw new IllegalStateException("profile cache max-size, bucket-seconds and horizon-minutes must be > 0");
+        }
+        // +1 so a window that does not start on a bucket boundary is still covered
+        bucketCount = (int) Math.ceil(horizonMinutes * 60.0 / bucketSeconds) + 1;
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build(this::load);
+        if (registry != null)
+            CaffeineCacheMetrics.monitor(registry, cache, "pan.profile");
+    }
+
+    /**
+     * Profile for the PAN, loading it on a miss. Returns null when the PAN is
+     * missing or the load fails, so callers fall back to their own lookups.
+     */
+    @Nullable
+    public PanProfile get(String pan) {
+        if (pan == null || pan.isBlank())
+            return null;
+        try {
+            PanProfile profile = cache.get(pan);
+            // installed now, so later transactions find it in the cache
+            loading.computeIfPresent(pan, (k, l) -> l.profile == profile ? null : l);
+            return profile;
+        } catch (RuntimeException e) {
+            log.warn("PAN profile load failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /** Profile for the PAN if it is cached; never loads. */
+    @Nullable
+    public PanProfile getIfPresent(String pan) {
+        return pan == null ? null : cache.getIfPresent(pan);
+    }
+
+    /**
+     * Folds the transaction into an already cached profile, or into the one
+     * being loaded. An uncached PAN is left alone: its next load reads the row
+     * from the database.
+     */
+    @Override
+    public void onProcessed(TransactionEntity tx) {
+        String pan = tx.getPan();
+        if (pan == null)
+            return;
+        PanProfile profile = cache.getIfPresent(pan);
+        if (profile == null) {
+            Loading l = loading.get(pan);
+            if (l != null) {
+                synchronized (l) {
+                    if (l.profile == null) {
+                        l.pending.add(tx);
+                        return;
+                    }
+                    profile = l.profile;
+                }
+            } else {
+                // the entry is dropped only after the profile is installed
+                profile = cache.getIfPresent(pan);
+            }
+        }
+        if (profile != null)
+            fold(profile, tx);
+    }
+
+    /** Largest window (in minutes) {@link PanProfile#count} can answer exactly. */
+    public int getHorizonMinutes() {
+        return counters != null ? counters.getHorizonMinutes() : horizonMinutes;
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private static VelocityCounters local(VelocityCounters counters) {
+        return counters != null && !counters.remote() ? counters : null;
+    }
+
+    private static void fold(PanProfile profile, TransactionEntity tx) {
+        if (!profile.wasSeeded(tx.getId()))
+            profile.record(tx.getTimestamp(), tx.getAmount(), tx.getLocation(), tx.getTerminalId());
+    }
+
+    private PanProfile load(String pan) {
+        Loading l = new Loading();
+        loading.put(pan, l);
+        try {
+            PanProfile profile = read(pan);
+            synchronized (l) {
+                l.pending.forEach(tx -> fold(profile, tx));
+                l.profile = profile;
+            }
+            return profile;
+        } catch (RuntimeException e) {
+            loading.remove(pan, l);
+            throw e;
+        }
+    }
+
+    private PanProfile read(String pan) {
+        PanProfile profile = counters != null
+                ? new PanProfile(pan, counters)
+                : new PanProfile(bucketSeconds, bucketCount);
+        OffsetDateTime since = OffsetDateTime.now(ZoneOffset.UTC).minusMinutes(horizonMinutes);
+        List<TransactionRepository.PanHistory> rows = repo.findPanHistorySince(pan, since);
+        if (rows.isEmpty()) {
+            repo.findTop1ByPanOrderByTimestampDesc(pan)
+                    .ifPresent(t -> profile.seenBefore(t.getTimestamp(), t.getLocation(), t.getTerminalId()));
+        } else {
+            // oldest first so the newest row ends up as "last seen"
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                TransactionRepository.PanHistory r = rows.get(i);
+                profile.record(r.getTimestamp(), r.getAmount(), r.getLocation(), r.getTerminalId());
+                profile.seeded(r.getId());
+            }
+        }
+        return profile;
+    }
+
+    /** A load in flight: transactions that arrive before it finishes, then the loaded profile. */
+    private static final class Loading {
+        final List<TransactionEntity> pending = new ArrayList<>();
+        PanProfile profile;
+    }
+}
@@ -0,0 +1,29 @@
+
+package capitec.fraudengine.service.rules;
+
+import capitec.fraudengine.service.aggregate.AggregateStore;
+import capitec.fraudengine.service.aggregate.Dimension;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/** A surge from one acquiring institution (DE32); off unless limits are configured. */
+@Component
+public class AcquirerVelocityRule extends AggregateVelocityRule {
+
+    public AcquirerVelocityRule(@Nullable AggregateStore store,
+            @Value("${fraud.rules.aggregate.acquirer.enabled:false}") boolean enabled,
+            @Value("${fraud.rules.aggregate.acquirer.window-minutes:5}") int windowMinutes,
+            @Value("${fraud.rules.aggregate.acquirer.max-count:0}") long maxCount,
+            @Value("${fraud.rules.aggregate.acquirer.max-distinct-pans:0}") long maxDistinctPans,
+            @Value("${fraud.rules.aggregate.acquirer.max-amount:0}") BigDecimal maxAmount) {
+        super(store, Dimension.ACQUIRER, enabled, windowMinutes, maxCount, maxDistinctPans, maxAmount);
+    }
+
+    @Override
+    public String getName() {
+        return "ACQUIRER_VELOCITY";
+    }
+}
@@ -0,0 +1,66 @@
+
+package capitec.fraudengine.service.rules;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.service.aggregate.AggregateStore;
+import capitec.fraudengine.service.aggregate.Dimension;
+
+import java.math.BigDecimal;
+
+/**
+ * Velocity over everything a terminal, merchant or acquirer has processed
+ * recently rather than over one card: flags when, within the window, the key
+ * has already seen {@code max-count} transactions, {@code max-distinct-pans}
+ * different cards, or when this amount would take the total over
+ * {@code max-amount}. A limit of 0 is not checked.
+ * <p>
+ * Reads the in-memory {@link AggregateStore} only; without it (or when
+ * disabled) the rule never hits.
+ */
+public abstract class AggregateVelocityRule implements FraudRule {
+
+    private final AggregateStore store;
+    private final Dimension dimension;
+    private final boolean enabled;
+    private final int windowMinutes;
+    private final long maxCount;
+    private final long maxDistinctPans;
+    private final BigDecimal maxAmount;
+
+    protected AggregateVelocityRule(AggregateStore store, Dimension dimension, boolean enabled, int windowMinutes,
+            long maxCount, long maxDistinctPans, BigDecimal maxAmount) {
+        this.store = store;
+        this.dimension = dimension;
+        this.enabled = enabled;
+        this.windowMinutes = windowMinutes;
+        this.maxCount = maxCount;
+        this.maxDistinctPans = maxDistinctPans;
+        this.maxAmount = maxAmount;
+    }
+
+    @Override
+    public boolean isFraudulent(TransactionEntity tx) {
+        return evaluate(EvaluationContext.of(tx));
+    }
+
+    @Override
+    public boolean evaluate(EvaluationContext ctx) {
+        if (!enabled || store == null)
+            return false;
+        TransactionEntity tx = ctx.transaction();
+        String key = dimension.keyOf(tx);
+        if (key == null || tx.getTimestamp() == null)
+            return false; // insufficient data
+
+        AggregateStore.Stats stats = store.stats(dimension, key, tx.getTimestamp(), windowMinutes);
+        if (maxCount > 0 && stats.count() >= maxCount)
+            return true;
+        if (maxDistinctPans > 0 && stats.distinctPans() >= maxDistinctPans)
+            return true;
+        if (maxAmount != null && maxAmount.signum() > 0) {
+            BigDecimal amount = tx.getAmount() != null ? tx.getAmount() : BigDecimal.ZERO;
+            return stats.amount().add(amount).compareTo(maxAmount) > 0;
+        }
+        return false;
+    }
+}
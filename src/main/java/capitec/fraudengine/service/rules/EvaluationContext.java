@@ -0,0 +1,214 @@
+
+package capitec.fraudengine.service.rules;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.service.location.CardAcceptorLocation;
+import capitec.fraudengine.service.profile.PanProfile;
+import capitec.fraudengine.service.profile.PanProfileCache;
+import org.springframework.lang.Nullable;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * What a rule may look at for one evaluation: the transaction, derived
+ * {@link Feature}s and history aggregates, the rule settings in force when the
+ * evaluation started, and the evaluation's deadline.
+ * <p>
+ * Everything derived is computed on first use and shared by every rule of the
+ * evaluation, so adding a rule that needs the normalized location or the
+ * card's recent count costs a map lookup, not another parse or query. History
+ * comes from the card's {@link PanProfile} when the profile cache is enabled.
+ * <p>
+ * One context per evaluation, used on one thread.
+ */
+public final class EvaluationContext {
+
+    /**
+     * A value derived from the context, computed at most once per evaluation.
+     * Features are matched by identity, so declare them as constants.
+     */
+    public static final class Feature<T> {
+        private final String name;
+        private final Function<EvaluationContext, T> compute;
+
+        private Feature(String name, Function<EvaluationContext, T> compute) {
+            this.name = name;
+            this.compute = compute;
+        }
+
+        public static <T> Feature<T> of(String name, Function<EvaluationContext, T> compute) {
+            return new Feature<>(name, compute);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /** DE43 trimmed and upper-cased; null when blank. */
+    public static final Feature<String> NORMALIZED_LOCATION =
+            Feature.of("normalizedLocation", c -> normalizeLocation(c.tx.getLocation()));
+
+    /** DE43 split into name, city, region and country. */
+    public static final Feature<CardAcceptorLocation> CARD_ACCEPTOR =
+            Feature.of("cardAcceptor", c -> CardAcceptorLocation.parse(c.tx.getLocation()));
+
+    /** DE4 in cents; null when absent, not a whole number of cents or beyond a long. */
+    public static final Feature<Long> AMOUNT_MINOR =
+            Feature.of("amountMinor", c -> toMinor(c.tx.getAmount()));
+
+    private static final Object NULL = new Object();
+
+    private final TransactionEntity tx;
+    private final PanProfileCache profiles;
+    private final RuleConfig config;
+    private final boolean bounded;
+    private final long deadlineNanos;
+
+    private Map<Feature<?>, Object> features;
+    private Map<Integer, Long> recentCounts;
+    private PanProfile profile;
+    private boolean profileLoaded;
+
+    public EvaluationContext(TransactionEntity tx, @Nullable PanProfileCache profiles) {
+        this(tx, profiles, 0);
+    }
+
+    /**
+     * @param budgetNanos time the evaluation may take from now; {@code <= 0}
+     *                    for no deadline
+     */
+    public EvaluationContext(TransactionEntity tx, @Nullable PanProfileCache profiles, long budgetNanos) {
+        this(tx, profiles, null, budgetNanos);
+    }
+
+    /**
+     * @param config      rule settings for this evaluation; null to let rules
+     *                    use their startup values
+     * @param budgetNanos time the evaluation may take from now; {@code <= 0}
+     *                    for no deadline
+     */
+    public EvaluationContext(TransactionEntity tx, @Nullable PanProfileCache profiles, @Nullable RuleConfig config,
+            long budgetNanos) {
+        this.tx = tx;
+        this.profiles = profiles;
+        this.config = config;
+        this.bounded = budgetNanos > 0;
+        this.deadlineNanos = bounded ? System.nanoTime() + budgetNanos : 0;
+    }
+
+    /** Context without a profile cache or deadline; rules fall back to their own lookups. */
+    public static EvaluationContext of(TransactionEntity tx) {
+        return new EvaluationContext(tx, null);
+    }
+
+    public TransactionEntity transaction() {
+        return tx;
+    }
+
+    /** Rule settings captured when the evaluation started; null without a {@link RuleConfigStore}. */
+    @Nullable
+    public RuleConfig config() {
+        return config;
+    }
+
+    /** The feature's value for this transaction, computed on the first call. */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Feature<T> feature) {
+        if (features == null)
+            features = new IdentityHashMap<>(8);
+        Object v = features.get(feature);
+        if (v == null) {
+            v = feature.compute.apply(this);
+            features.put(feature, v == null ? NULL : v);
+        }
+        return v == NULL ? null : (T) v;
+    }
+
+    @Nullable
+    public String normalizedLocation() {
+        return get(NORMALIZED_LOCATION);
+    }
+
+    public CardAcceptorLocation cardAcceptor() {
+        return get(CARD_ACCEPTOR);
+    }
+
+    @Nullable
+    public Long amountMinor() {
+        return get(AMOUNT_MINOR);
+    }
+
+    /**
+     * The card's profile as of before this transaction; null without a cache
+     * or PAN. Once the deadline has passed only an already cached profile is
+     * returned, so a late rule does not trigger a load.
+     */
+    @Nullable
+    public PanProfile profile() {
+        if (!profileLoaded) {
+            if (profiles == null)
+                profile = null;
+            else
+                profile = expired() ? profiles.getIfPresent(tx.getPan()) : profiles.get(tx.getPan());
+            profileLoaded = true;
+        }
+        return profile;
+    }
+
+    /**
+     * Transactions for the card in the {@code windowMinutes} up to this
+     * transaction's timestamp, from the profile; -1 when the profile cannot
+     * answer (no cache or timestamp, or a window beyond the cache horizon).
+     */
+    public long recentCount(int windowMinutes) {
+        if (profiles == null || tx.getTimestamp() == null || windowMinutes > profiles.getHorizonMinutes())
+            return -1;
+        if (recentCounts == null)
+            recentCounts = new HashMap<>(4);
+        Long cached = recentCounts.get(windowMinutes);
+        if (cached != null)
+            return cached;
+        PanProfile p = profile();
+        OffsetDateTime to = tx.getTimestamp();
+        long n = p == null ? -1 : p.count(to.minusMinutes(windowMinutes), to);
+        recentCounts.put(windowMinutes, n);
+        return n;
+    }
+
+    /** True once the deadline has passed; never true without one. */
+    public boolean expired() {
+        return bounded && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /** Nanoseconds left before the deadline (negative once passed), {@link Long#MAX_VALUE} without one. */
+    public long remainingNanos() {
+        return bounded ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    static String normalizeLocation(String location) {
+        if (location == null)
+            return null;
+        String s = location.trim();
+        return s.isEmpty() ? null : s.toUpperCase(Locale.ROOT);
+    }
+
+    static Long toMinor(BigDecimal amount) {
+        if (amount == null)
+            return null;
+        try {
+            // no rounding: 1000.004 must not compare as 1000.00
+            return amount.setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+}
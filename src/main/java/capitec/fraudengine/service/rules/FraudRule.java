@@ -6,5 +6,18 @@ import capitec.fraudengine.model.TransactionEntity;
 public interface FraudRule {
     boolean isFraudulent(TransactionEntity tx);
 
+    /**
+     * Entry point used by {@link RuleEngine}. Rules that can use the cached
+     * card profile override this; the default only looks at the transaction.
+     */
+    default boolean evaluate(EvaluationContext ctx) {
+        return isFraudulent(ctx.transaction());
+    }
+
     String getName();
+
+    /** Cost class used by {@link RuleEngine} to run cheap rules first. */
+    default RuleCost cost() {
+        return RuleCost.IN_MEMORY;
+    }
 }
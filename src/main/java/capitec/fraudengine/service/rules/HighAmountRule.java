@@ -6,21 +6,58 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
 
 @Component
 public class HighAmountRule implements FraudRule {
 
+    // Startup values; the RuleConfig snapshot on the context takes precedence
     @Value("${fraud.rule.high-amount.enabled:true}")
     private boolean enabled;
 
     @Value("${fraud.rule.high-amount.threshold:1000}")
     private BigDecimal threshold;
 
+    /** Threshold in cents, recomputed when the threshold in force is replaced. */
+    private volatile MinorThreshold minor;
+
+    private record MinorThreshold(BigDecimal source, long cents) {
+    }
+
     @Override
     public boolean isFraudulent(TransactionEntity tx) {
-        if (!enabled)
+        return evaluate(EvaluationContext.of(tx));
+    }
+
+    /**
+     * Compares the shared cents value of DE4 against the threshold in cents;
+     * an amount with no exact cents value is compared as a decimal.
+     */
+    @Override
+    public boolean evaluate(EvaluationContext ctx) {
+        RuleConfig config = ctx.config();
+        if (!(config != null ? config.highAmountEnabled() : enabled))
             return false;
-        return tx.getAmount() != null && tx.getAmount().compareTo(threshold) > 0;
+        BigDecimal t = config != null ? config.highAmountThreshold() : threshold;
+        Long amount = ctx.amountMinor();
+        if (amount != null)
+            return amount > thresholdMinor(t);
+        BigDecimal exact = ctx.transaction().getAmount();
+        return exact != null && exact.compareTo(t) > 0;
+    }
+
+    private long thresholdMinor(BigDecimal t) {
+        MinorThreshold m = minor;
+        if (m == null || m.source() != t) {
+            // the cents amounts are whole cents, so "> 1000.005" is "> 1000.00"
+            BigInteger cents = t.setScale(2, RoundingMode.FLOOR).unscaledValue();
+            long c = cents.bitLength() < 64 ? cents.longValue()
+                    : cents.signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+            m = new MinorThreshold(t, c);
+            minor = m;
+        }
+        return m.cents();
     }
 
     @Override
@@ -2,14 +2,32 @@
 package capitec.fraudengine.service.rules;
 
 import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.service.location.LocationRiskIndex;
+import capitec.fraudengine.service.location.RiskTier;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * Flags transactions whose location is on the risky list, or whose DE43
+ * country, city or merchant name has at least {@code min-tier} in the
+ * {@link LocationRiskIndex} loaded from {@code index-file}, unless the
+ * location is on the whitelist. Locations are compared in their normalized
+ * form (trimmed, upper case); the startup lists are normalized once when the
+ * rule is created, values applied through {@link RuleConfigStore} the same way.
+ */
+@Slf4j
 @Component
 public class LocationRule implements FraudRule {
 
+    // Startup values; the RuleConfig snapshot on the context takes precedence
     @Value("${fraud.rules.location.risky-values:UNKNOWN,RISKY-COUNTRY}")
     private Set<String> risky;
 
@@ -19,18 +37,63 @@ public class LocationRule implements FraudRule {
     @Value("${fraud.rules.location.enabled:true}")
     private boolean enabled;
 
+    @Value("${fraud.rules.location.index-file:}")
+    private String indexFile;
+
+    @Value("${fraud.rules.location.min-tier:HIGH}")
+    private RiskTier minTier = RiskTier.HIGH;
+
+    private LocationRiskIndex index = LocationRiskIndex.empty();
+
+    @PostConstruct
+    void loadIndex() throws IOException {
+        risky = normalize(risky);
+        whitelist = normalize(whitelist);
+        if (minTier == RiskTier.NONE)
+            throw new IllegalStateException("fraud.rules.location.min-tier must be LOW, MEDIUM or HIGH");
+        if (indexFile == null || indexFile.isBlank())
+            return;
+        long start = System.nanoTime();
+        index = LocationRiskIndex.load(Path.of(indexFile));
+        log.info("Location risk index: {} entries from {} in {} ms", index.size(), indexFile,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static Set<String> normalize(Set<String> values) {
+        if (values == null)
+            return Set.of();
+        return values.stream()
+                .map(EvaluationContext::normalizeLocation)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /** Risk tier of the transaction's DE43 in the index; {@link RiskTier#NONE} without one. */
+    public RiskTier riskTier(EvaluationContext ctx) {
+        return index.tier(ctx.cardAcceptor());
+    }
+
     @Override
     public boolean isFraudulent(TransactionEntity tx) {
-        if (!enabled)
+        return evaluate(EvaluationContext.of(tx));
+    }
+
+    @Override
+    public boolean evaluate(EvaluationContext ctx) {
+        RuleConfig config = ctx.config();
+        if (!(config != null ? config.locationEnabled() : enabled))
             return false;
-        String loc = tx.getLocation();
-        if (loc == null || loc.isBlank())
+        String loc = ctx.normalizedLocation();
+        if (loc == null)
             return false;
 
-        if (!whitelist.isEmpty() && whitelist.contains(loc))
+        Set<String> allowed = config != null ? config.whitelistLocations() : whitelist;
+        if (!allowed.isEmpty() && allowed.contains(loc))
             return false;
 
-        return risky.contains(loc);
+        if ((config != null ? config.riskyLocations() : risky).contains(loc))
+            return true;
+        return riskTier(ctx).atLeast(minTier);
     }
 
     @Override
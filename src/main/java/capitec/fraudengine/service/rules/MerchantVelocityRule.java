@@ -0,0 +1,29 @@
+
+package capitec.fraudengine.service.rules;
+
+import capitec.fraudengine.service.aggregate.AggregateStore;
+import capitec.fraudengine.service.aggregate.Dimension;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/** Unusual volume or card spread at one merchant (DE42) across all its terminals. */
+@Component
+public class MerchantVelocityRule extends AggregateVelocityRule {
+
+    public MerchantVelocityRule(@Nullable AggregateStore store,
+            @Value("${fraud.rules.aggregate.merchant.enabled:false}") boolean enabled,
+            @Value("${fraud.rules.aggregate.merchant.window-minutes:30}") int windowMinutes,
+            @Value("${fraud.rules.aggregate.merchant.max-count:0}") long maxCount,
+            @Value("${fraud.rules.aggregate.merchant.max-distinct-pans:100}") long maxDistinctPans,
+            @Value("${fraud.rules.aggregate.merchant.max-amount:0}") BigDecimal maxAmount) {
+        super(store, Dimension.MERCHANT, enabled, windowMinutes, maxCount, maxDistinctPans, maxAmount);
+    }
+
+    @Override
+    public String getName() {
+        return "MERCHANT_VELOCITY";
+    }
+}
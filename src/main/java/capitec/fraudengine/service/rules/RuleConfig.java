@@ -0,0 +1,151 @@
+
+package capitec.fraudengine.service.rules;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * One immutable version of the tunable rule settings. Changes are expressed
+ * with the same property names the rules read at startup, so a config file,
+ * the admin endpoint and {@code application.properties} all speak one
+ * vocabulary. Location values are normalized (trimmed, upper case) to match
+ * {@link EvaluationContext#normalizedLocation()}.
+ */
+public record RuleConfig(long version,
+        boolean highAmountEnabled,
+        BigDecimal highAmountThreshold,
+        boolean locationEnabled,
+        Set<String> riskyLocations,
+        Set<String> whitelistLocations,
+        int velocityWindowMinutes,
+        int velocityMaxCount,
+        String source,
+        Instant appliedAt) {
+
+    public static final String HIGH_AMOUNT_ENABLED = "fraud.rule.high-amount.enabled";
+    public static final String HIGH_AMOUNT_THRESHOLD = "fraud.rule.high-amount.threshold";
+    public static final String LOCATION_ENABLED = "fraud.rules.location.enabled";
+    public static final String LOCATION_RISKY = "fraud.rules.location.risky-values";
+    public static final String LOCATION_WHITELIST = "fraud.rules.location.whitelist-values";
+    public static final String VELOCITY_WINDOW = "fraud.rules.velocity.windowMinutes";
+    public static final String VELOCITY_MAX_COUNT = "fraud.rules.velocity.maxCount";
+
+    public static final Set<String> KEYS = Set.of(HIGH_AMOUNT_ENABLED, HIGH_AMOUNT_THRESHOLD, LOCATION_ENABLED,
+            LOCATION_RISKY, LOCATION_WHITELIST, VELOCITY_WINDOW, VELOCITY_MAX_COUNT);
+
+    public RuleConfig {
+        riskyLocations = normalize(riskyLocations);
+        whitelistLocations = normalize(whitelistLocations);
+    }
+
+    /**
+     * A new version with {@code changes} applied; keys not mentioned keep
+     * their current value.
+     *
+     * @throws IllegalArgumentException listing every unknown key, unparsable
+     *                                  or out-of-range value
+     */
+    public RuleConfig with(Map<String, String> changes, long newVersion, String newSource) {
+        List<String> problems = new ArrayList<>();
+        for (String key : changes.keySet()) {
+            if (!KEYS.contains(key))
+                problems.add("unknown key " + key);
+        }
+        boolean haEnabled = bool(changes, HIGH_AMOUNT_ENABLED, highAmountEnabled, problems);
+        BigDecimal threshold = highAmountThreshold;
+        String t = changes.get(HIGH_AMOUNT_THRESHOLD);
+        if (t != null) {
+            try {
+                threshold = new BigDecimal(t.trim());
+            } catch (NumberFormatException e) {
+                problems.add(HIGH_AMOUNT_THRESHOLD + " is not a number: " + t);
+            }
+        }
+        boolean locEnabled = bool(changes, LOCATION_ENABLED, locationEnabled, problems);
+        Set<String> risky = changes.containsKey(LOCATION_RISKY) ? split(changes.get(LOCATION_RISKY)) : riskyLocations;
+        Set<String> whitelist = changes.containsKey(LOCATION_WHITELIST)
+                ? split(changes.get(LOCATION_WHITELIST)) : whitelistLocations;
+        int window = integer(changes, VELOCITY_WINDOW, velocityWindowMinutes, problems);
+        int maxCount = integer(changes, VELOCITY_MAX_COUNT, velocityMaxCount, problems);
+
+        RuleConfig next = new RuleConfig(newVersion, haEnabled, threshold, locEnabled, risky, whitelist,
+                window, maxCount, newSource, Instant.now());
+        problems.addAll(next.problems());
+        if (!problems.isEmpty())
+            throw new IllegalArgumentException(String.join("; ", problems));
+        return next;
+    }
+
+    /** Range problems with this version; empty when valid. */
+    public List<String> problems() {
+        List<String> problems = new ArrayList<>();
+        if (highAmountThreshold == null || highAmountThreshold.signum() < 0)
+            problems.add(HIGH_AMOUNT_THRESHOLD + " must be >= 0");
+        else if (highAmountThreshold.scale() > 2)
+            problems.add(HIGH_AMOUNT_THRESHOLD + " must have at most 2 decimals");
+        if (velocityWindowMinutes < 1)
+            problems.add(VELOCITY_WINDOW + " must be >= 1");
+        if (velocityMaxCount < 1)
+            problems.add(VELOCITY_MAX_COUNT + " must be >= 1");
+        return problems;
+    }
+
+    /** Settings as property key / value, for display and diffing. */
+    public Map<String, Object> settings() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put(HIGH_AMOUNT_ENABLED, highAmountEnabled);
+        m.put(HIGH_AMOUNT_THRESHOLD, highAmountThreshold);
+        m.put(LOCATION_ENABLED, locationEnabled);
+        m.put(LOCATION_RISKY, riskyLocations);
+        m.put(LOCATION_WHITELIST, whitelistLocations);
+        m.put(VELOCITY_WINDOW, velocityWindowMinutes);
+        m.put(VELOCITY_MAX_COUNT, velocityMaxCount);
+        return m;
+    }
+
+    private static boolean bool(Map<String, String> changes, String key, boolean current, List<String> problems) {
+        String v = changes.get(key);
+        if (v == null)
+            return current;
+        v = v.trim();
+        if (v.equalsIgnoreCase("true") || v.equalsIgnoreCase("false"))
+            return Boolean.parseBoolean(v);
+        problems.add(key + " must be true or false: " + v);
+        return current;
+    }
+
+    private static int integer(Map<String, String> changes, String key, int current, List<String> problems) {
+        String v = changes.get(key);
+        if (v == null)
+            return current;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            problems.add(key + " is not an integer: " + v);
+            return current;
+        }
+    }
+
+    static Set<String> split(String csv) {
+        if (csv == null)
+            return Set.of();
+        return Arrays.stream(csv.split(",")).collect(Collectors.toSet());
+    }
+
+    private static Set<String> normalize(Set<String> values) {
+        if (values == null)
+            return Set.of();
+        return values.stream()
+                .map(EvaluationContext::normalizeLocation)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
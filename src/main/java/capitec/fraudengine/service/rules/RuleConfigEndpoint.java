@@ -0,0 +1,74 @@
+
+package capitec.fraudengine.service.rules;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/ruleconfig}: the rule settings in force and the versions
+ * they replaced. A POST applies the given settings (lists comma-separated,
+ * empty string clears) as one validated change; a DELETE rolls back to the
+ * previous version. Rejected changes answer 400 and leave the current
+ * version in force.
+ */
+@Component
+@Endpoint(id = "ruleconfig")
+public class RuleConfigEndpoint {
+
+    private final RuleConfigStore store;
+
+    public RuleConfigEndpoint(RuleConfigStore store) {
+        this.store = store;
+    }
+
+    @ReadOperation
+    public Map<String, Object> config() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("current", store.current());
+        body.put("history", store.history());
+        return body;
+    }
+
+    @WriteOperation
+    public RuleConfig apply(@Nullable Boolean highAmountEnabled, @Nullable String highAmountThreshold,
+            @Nullable Boolean locationEnabled, @Nullable String riskyValues, @Nullable String whitelistValues,
+            @Nullable Integer velocityWindowMinutes, @Nullable Integer velocityMaxCount) {
+        Map<String, String> changes = new LinkedHashMap<>();
+        put(changes, RuleConfig.HIGH_AMOUNT_ENABLED, highAmountEnabled);
+        put(changes, RuleConfig.HIGH_AMOUNT_THRESHOLD, highAmountThreshold);
+        put(changes, RuleConfig.LOCATION_ENABLED, locationEnabled);
+        put(changes, RuleConfig.LOCATION_RISKY, riskyValues);
+        put(changes, RuleConfig.LOCATION_WHITELIST, whitelistValues);
+        put(changes, RuleConfig.VELOCITY_WINDOW, velocityWindowMinutes);
+        put(changes, RuleConfig.VELOCITY_MAX_COUNT, velocityMaxCount);
+        if (changes.isEmpty())
+            throw new InvalidEndpointRequestException("No rule settings given", "no settings");
+        try {
+            return store.apply(changes, "endpoint");
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+    }
+
+    @DeleteOperation
+    public RuleConfig rollback() {
+        try {
+            return store.rollback();
+        } catch (IllegalStateException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+    }
+
+    private static void put(Map<String, String> changes, String key, Object value) {
+        if (value != null)
+            changes.put(key, value.toString());
+    }
+}
@@ -0,0 +1,191 @@
+
+package capitec.fraudengine.service.rules;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Current {@link RuleConfig} behind an {@link AtomicReference}.
+ * <p>
+ * Version 1 is built from the usual {@code fraud.rule*} properties. Changes
+ * come from the admin endpoint or from {@code fraud.rules.config.file}, a
+ * properties file polled every {@code poll-ms}: each is validated as a whole
+ * and published as a new snapshot in one reference swap. {@link RuleEngine}
+ * reads the reference once per evaluation, so every rule of a transaction
+ * sees the same version and the hot path takes no lock. Writers serialize on
+ * this store.
+ * <p>
+ * Replaced versions are kept (up to {@code history}) so {@link #rollback()}
+ * can restore them.
+ */
+@Slf4j
+@Component
+public class RuleConfigStore {
+
+    private final AtomicReference<RuleConfig> current = new AtomicReference<>();
+    private final Deque<RuleConfig> history = new ArrayDeque<>();
+
+    @Value("${fraud.rule.high-amount.enabled:true}")
+    private boolean highAmountEnabled;
+
+    @Value("${fraud.rule.high-amount.threshold:1000}")
+    private BigDecimal highAmountThreshold;
+
+    @Value("${fraud.rules.location.enabled:true}")
+    private boolean locationEnabled;
+
+    @Value("${fraud.rules.location.risky-values:UNKNOWN,RISKY-COUNTRY}")
+    private Set<String> risky;
+
+    @Value("${fraud.rules.location.whitelist-values:}")
+    private Set<String> whitelist;
+
+    @Value("${fraud.rules.velocity.windowMinutes:15}")
+    private int windowMinutes;
+
+    @Value("${fraud.rules.velocity.maxCount:5}")
+    private int maxCount;
+
+    @Value("${fraud.rules.config.file:}")
+    private String file;
+
+    @Value("${fraud.rules.config.history:10}")
+    private int historySize;
+
+    /** Modification time of the file version last read (applied or rejected). */
+    private long fileStamp = Long.MIN_VALUE;
+
+    @Autowired
+    public RuleConfigStore() {
+    }
+
+    /** Store starting from {@code initial}, without a file; mainly for tests. */
+    public RuleConfigStore(RuleConfig initial, int historySize) {
+        this.historySize = historySize;
+        this.file = "";
+        current.set(initial);
+    }
+
+    @PostConstruct
+    void init() {
+        RuleConfig startup = new RuleConfig(1, highAmountEnabled, highAmountThreshold, locationEnabled, risky,
+                whitelist, windowMinutes, maxCount, "properties", Instant.now());
+        List<String> problems = startup.problems();
+        if (!problems.isEmpty())
+            throw new IllegalStateException("Invalid rule configuration: " + String.join("; ", problems));
+        current.set(startup);
+        reloadIfChanged();
+    }
+
+    /** Snapshot in force; never null once started. */
+    public RuleConfig current() {
+        return current.get();
+    }
+
+    /**
+     * Validate {@code changes} (property key → value) against the current
+     * version and publish the result.
+     *
+     * @throws IllegalArgumentException when any change is invalid; nothing is applied
+     */
+    public synchronized RuleConfig apply(Map<String, String> changes, String source) {
+        RuleConfig before = current.get();
+        RuleConfig next = before.with(changes, before.version() + 1, source);
+        publish(before, next);
+        return next;
+    }
+
+    /**
+     * Restore the version the current one replaced. The restored settings get
+     * a new version number so the change is visible to anyone comparing
+     * versions.
+     *
+     * @throws IllegalStateException when there is nothing to roll back to
+     */
+    public synchronized RuleConfig rollback() {
+        RuleConfig previous = history.pollFirst();
+        if (previous == null)
+            throw new IllegalStateException("No earlier rule configuration to roll back to");
+        RuleConfig before = current.get();
+        RuleConfig restored = new RuleConfig(before.version() + 1, previous.highAmountEnabled(),
+                previous.highAmountThreshold(), previous.locationEnabled(), previous.riskyLocations(),
+                previous.whitelistLocations(), previous.velocityWindowMinutes(), previous.velocityMaxCount(),
+                "rollback to v" + previous.version(), Instant.now());
+        current.set(restored);
+        log.info("Rule configuration rolled back: v{} -> v{} ({})", before.version(), restored.version(),
+                restored.settings());
+        return restored;
+    }
+
+    /** Replaced versions, newest first. */
+    public synchronized List<RuleConfig> history() {
+        return new ArrayList<>(history);
+    }
+
+    /** Apply {@code fraud.rules.config.file} when its modification time has changed. */
+    @Scheduled(fixedDelayString = "${fraud.rules.config.poll-ms:5000}")
+    public void reloadIfChanged() {
+        if (file == null || file.isBlank())
+            return;
+        Path path = Path.of(file);
+        try {
+            if (!Files.exists(path))
+                return;
+            long stamp = Files.getLastModifiedTime(path).toMillis();
+            if (stamp == fileStamp)
+                return;
+            fileStamp = stamp;
+            Properties props = new Properties();
+            try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                props.load(in);
+            }
+            Map<String, String> changes = new LinkedHashMap<>();
+            props.stringPropertyNames().forEach(k -> changes.put(k, props.getProperty(k)));
+            if (differs(changes))
+                apply(changes, "file:" + path);
+        } catch (IOException | IllegalArgumentException e) {
+            // keep serving the current version; the file is retried once it changes again
+            log.error("Rule configuration file {} rejected: {}", path, e.getMessage());
+        }
+    }
+
+    private synchronized void publish(RuleConfig before, RuleConfig next) {
+        current.set(next);
+        history.addFirst(before);
+        while (history.size() > historySize)
+            history.removeLast();
+        log.info("Rule configuration v{} -> v{} from {}: {}", before.version(), next.version(), next.source(),
+                next.settings());
+    }
+
+    /** True when applying {@code changes} would change any setting (unknown keys count as a change). */
+    private boolean differs(Map<String, String> changes) {
+        RuleConfig now = current.get();
+        try {
+            return !now.with(changes, now.version(), now.source()).settings().equals(now.settings());
+        } catch (IllegalArgumentException e) {
+            return true; // let apply report it
+        }
+    }
+}
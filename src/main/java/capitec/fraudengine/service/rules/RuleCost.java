@@ -0,0 +1,11 @@
+
+package capitec.fraudengine.service.rules;
+
+/**
+ * Cost class of a {@link FraudRule}. The rule engine runs all in-memory rules
+ * before any rule that needs I/O (database, network).
+ */
+public enum RuleCost {
+    IN_MEMORY,
+    IO
+}
@@ -0,0 +1,237 @@
+
+package capitec.fraudengine.service.rules;
+
+import capitec.fraudengine.iso.IsoMetrics;
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.service.profile.PanProfileCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compiled rule pipeline.
+ * <p>
+ * Rules are compiled once into an array ordered by {@link RuleCost} (in-memory
+ * before I/O). Within a cost class the order adapts to what has been observed:
+ * every {@code reorder-every} evaluations rules are re-ranked by hit rate per
+ * nanosecond, so the rules most likely to decide a transaction cheaply run
+ * first.
+ * <p>
+ * In {@link Mode#FULL_EXPLAIN} every rule runs and all hits are reported. In
+ * {@link Mode#DECLINE_ON_FIRST_HIT} the remaining I/O rules are skipped once
+ * any rule has hit; in-memory rules still run so the explanation stays useful.
+ * <p>
+ * Each evaluation hands the rules one {@link EvaluationContext}: derived
+ * features and the card's profile are computed at most once and shared, and
+ * the current {@link RuleConfig} snapshot is read once so every rule of a
+ * transaction sees the same settings, however they are changed meanwhile. With
+ * {@code deadline-ms} set, I/O rules still queued when the deadline passes are
+ * skipped; in-memory rules always run.
+ */
+@Slf4j
+@Component
+public class RuleEngine {
+
+    public enum Mode {
+        FULL_EXPLAIN,
+        DECLINE_ON_FIRST_HIT
+    }
+
+    /** Outcome of one evaluation: names of the rules that hit, in run order. */
+    public record Result(List<String> hits, int skipped) {
+        public boolean flagged() {
+            return !hits.isEmpty();
+        }
+    }
+
+    /** Point-in-time view of one rule's measured contribution. */
+    public record RuleStats(String rule, RuleCost cost, long evaluations, long hits, long errors,
+            long skipped, double avgNanos) {
+    }
+
+    private final Mode mode;
+    private final long reorderEvery;
+    private final AtomicLong evaluations = new AtomicLong();
+    private final Timer rulesTimer;
+    private final PanProfileCache profiles;
+    private final RuleConfigStore config;
+    private final Counter deadlineExceeded;
+
+    /** Per-evaluation budget for {@link #evaluate(TransactionEntity)}; 0 for none. */
+    @Value("${fraud.engine.deadline-ms:0}")
+    private long deadlineMillis;
+
+    /** Current run order; replaced wholesale when re-ranked. */
+    private volatile CompiledRule[] pipeline;
+
+    public RuleEngine(List<FraudRule> rules) {
+        this(rules, "full-explain", 0);
+    }
+
+    public RuleEngine(List<FraudRule> rules, String mode, long reorderEvery) {
+        this(rules, mode, reorderEvery, null);
+    }
+
+    public RuleEngine(List<FraudRule> rules, String mode, long reorderEvery, @Nullable MeterRegistry registry) {
+        this(rules, mode, reorderEvery, registry, null, null);
+    }
+
+    @Autowired
+    public RuleEngine(List<FraudRule> rules,
+            @Value("${fraud.engine.mode:full-explain}") String mode,
+            @Value("${fraud.engine.reorder-every:10000}") long reorderEvery,
+            @Nullable MeterRegistry registry,
+            @Nullable PanProfileCache profiles,
+            @Nullable RuleConfigStore config) {
+        this.profiles = profiles;
+        this.config = config;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase().replace('-', '_'));
+        this.reorderEvery = reorderEvery;
+        MeterRegistry meters = registry != null ? registry : new CompositeMeterRegistry();
+        this.rulesTimer = IsoMetrics.stage(meters, "rules");
+        this.deadlineExceeded = Counter.builder("fraud.rules.deadline.exceeded")
+                .description("Evaluations that skipped I/O rules because the deadline had passed")
+                .register(meters);
+
+        CompiledRule[] compiled = new CompiledRule[rules.size()];
+        for (int i = 0; i < compiled.length; i++)
+            compiled[i] = new CompiledRule(rules.get(i), i, meters);
+        // stable: keeps injection order inside a cost class until stats exist
+        Arrays.sort(compiled, Comparator.comparing((CompiledRule r) -> r.cost).thenComparingInt(r -> r.declaredIndex));
+        this.pipeline = compiled;
+    }
+
+    public Result evaluate(TransactionEntity tx) {
+        return evaluate(tx, TimeUnit.MILLISECONDS.toNanos(deadlineMillis));
+    }
+
+    /** Evaluate with an explicit budget from now; {@code <= 0} for no deadline. */
+    public Result evaluate(TransactionEntity tx, long budgetNanos) {
+        EvaluationContext ctx = new EvaluationContext(tx, profiles,
+                config != null ? config.current() : null, budgetNanos);
+        CompiledRule[] rules = pipeline;
+        List<String> hits = new ArrayList<>(2);
+        int skipped = 0;
+        boolean late = false;
+        long evalStart = System.nanoTime();
+
+        for (CompiledRule r : rules) {
+            if (r.cost == RuleCost.IO) {
+                boolean decided = mode == Mode.DECLINE_ON_FIRST_HIT && !hits.isEmpty();
+                if (!decided && ctx.expired())
+                    late = true;
+                if (decided || late) {
+                    r.skipped.increment();
+                    skipped++;
+                    continue;
+                }
+            }
+
+            boolean hit = false;
+            long start = System.nanoTime();
+            try {
+                hit = r.rule.evaluate(ctx);
+            } catch (Exception e) {
+                r.errors.increment();
+                log.error("Rule {} failed on tx: {}", r.name, tx, e);
+            }
+            long elapsed = System.nanoTime() - start;
+            r.nanos.add(elapsed);
+            r.evaluations.increment();
+            r.timer.record(elapsed, TimeUnit.NANOSECONDS);
+
+            if (hit) {
+                r.hits.increment();
+                r.hitCounter.increment();
+                hits.add(r.name);
+            }
+        }
+        rulesTimer.record(System.nanoTime() - evalStart, TimeUnit.NANOSECONDS);
+        if (late) {
+            deadlineExceeded.increment();
+            log.debug("Rule deadline passed, {} I/O rules skipped for pan={}", skipped, tx.getPan());
+        }
+
+        if (reorderEvery > 0 && evaluations.incrementAndGet() % reorderEvery == 0) {
+            rerank();
+        }
+        return new Result(hits, skipped);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /** Rules in their current run order with measured stats. */
+    public List<RuleStats> stats() {
+        List<RuleStats> out = new ArrayList<>();
+        for (CompiledRule r : pipeline) {
+            long n = r.evaluations.sum();
+            out.add(new RuleStats(r.name, r.cost, n, r.hits.sum(), r.errors.sum(), r.skipped.sum(),
+                    n == 0 ? 0 : (double) r.nanos.sum() / n));
+        }
+        return out;
+    }
+
+    /**
+     * Re-rank within each cost class by estimated hit probability per
+     * nanosecond (Laplace-smoothed so unseen rules are not starved).
+     */
+    void rerank() {
+        CompiledRule[] next = pipeline.clone();
+        Arrays.sort(next, Comparator.comparing((CompiledRule r) -> r.cost)
+                .thenComparing(Comparator.comparingDouble(CompiledRule::yield).reversed())
+                .thenComparingInt(r -> r.declaredIndex));
+        pipeline = next;
+    }
+
+    private static final class CompiledRule {
+        final FraudRule rule;
+        final String name;
+        final RuleCost cost;
+        final int declaredIndex;
+        final LongAdder evaluations = new LongAdder();
+        final LongAdder hits = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final Timer timer;
+        final Counter hitCounter;
+
+        CompiledRule(FraudRule rule, int declaredIndex, MeterRegistry registry) {
+            this.rule = rule;
+            this.name = rule.getName();
+            this.cost = rule.cost();
+            this.declaredIndex = declaredIndex;
+            this.timer = Timer.builder("fraud.rule.evaluation")
+                    .description("Time to evaluate one rule")
+                    .tag("rule", name)
+                    .register(registry);
+            this.hitCounter = Counter.builder("fraud.rule.hits")
+                    .description("Transactions the rule flagged")
+                    .tag("rule", name)
+                    .register(registry);
+        }
+
+        double yield() {
+            long n = evaluations.sum();
+            double hitRate = (hits.sum() + 1.0) / (n + 2.0);
+            double avgNanos = n == 0 ? 1.0 : Math.max(1.0, (double) nanos.sum() / n);
+            return hitRate / avgNanos;
+        }
+    }
+}
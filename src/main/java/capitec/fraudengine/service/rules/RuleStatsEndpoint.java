@@ -0,0 +1,29 @@
+
+package capitec.fraudengine.service.rules;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** {@code /actuator/rules}: current rule run order with per-rule hit rate and latency. */
+@Component
+@Endpoint(id = "rules")
+public class RuleStatsEndpoint {
+
+    private final RuleEngine engine;
+
+    public RuleStatsEndpoint(RuleEngine engine) {
+        this.engine = engine;
+    }
+
+    @ReadOperation
+    public Map<String, Object> rules() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("mode", engine.getMode());
+        body.put("rules", engine.stats());
+        return body;
+    }
+}
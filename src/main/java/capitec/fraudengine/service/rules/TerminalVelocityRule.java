@@ -0,0 +1,29 @@
+
+package capitec.fraudengine.service.rules;
+
+import capitec.fraudengine.service.aggregate.AggregateStore;
+import capitec.fraudengine.service.aggregate.Dimension;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/** Many cards or transactions through one terminal (DE41), e.g. a compromised or skimmed POS device. */
+@Component
+public class TerminalVelocityRule extends AggregateVelocityRule {
+
+    public TerminalVelocityRule(@Nullable AggregateStore store,
+            @Value("${fraud.rules.aggregate.terminal.enabled:false}") boolean enabled,
+            @Value("${fraud.rules.aggregate.terminal.window-minutes:10}") int windowMinutes,
+            @Value("${fraud.rules.aggregate.terminal.max-count:0}") long maxCount,
+            @Value("${fraud.rules.aggregate.terminal.max-distinct-pans:20}") long maxDistinctPans,
+            @Value("${fraud.rules.aggregate.terminal.max-amount:0}") BigDecimal maxAmount) {
+        super(store, Dimension.TERMINAL, enabled, windowMinutes, maxCount, maxDistinctPans, maxAmount);
+    }
+
+    @Override
+    public String getName() {
+        return "TERMINAL_VELOCITY";
+    }
+}
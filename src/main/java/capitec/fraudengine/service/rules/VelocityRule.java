@@ -3,7 +3,10 @@ package capitec.fraudengine.service.rules;
 
 import capitec.fraudengine.model.TransactionEntity;
 import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.velocity.VelocityCounters;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 import java.time.OffsetDateTime;
@@ -14,10 +17,20 @@ public class VelocityRule implements FraudRule {
 
     private final TransactionRepository repo;
 
+    /** In-memory or shared counters; when absent the rule counts in the DB. */
+    private final VelocityCounters store;
+
     public VelocityRule(TransactionRepository repo) {
+        this(repo, null);
+    }
+
+    @Autowired
+    public VelocityRule(TransactionRepository repo, @Nullable VelocityCounters store) {
         this.repo = repo;
+        this.store = store;
     }
 
+    // Startup values; the RuleConfig snapshot on the context takes precedence
     @Value("${fraud.rules.velocity.windowMinutes:15}")
     private int windowMinutes;
 
@@ -26,16 +39,56 @@ public class VelocityRule implements FraudRule {
 
     @Override
     public boolean isFraudulent(TransactionEntity tx) {
+        return evaluate(EvaluationContext.of(tx));
+    }
+
+    /**
+     * With in-JVM counters, counts through the cached card profile (which reads
+     * them, once per evaluation) when it covers the window, else from the
+     * counters. Without counters, or with shared ones, the profile is skipped:
+     * it only sees the transactions this instance processed. The DB is used
+     * when there are no counters or they cannot answer; a DB count is not
+     * started once the evaluation deadline has passed.
+     */
+    @Override
+    public boolean evaluate(EvaluationContext ctx) {
+        TransactionEntity tx = ctx.transaction();
         if (tx.getPan() == null || tx.getTimestamp() == null) {
             return false; // insufficient data
         }
 
-        OffsetDateTime to = tx.getTimestamp();
-        OffsetDateTime from = to.minus(windowMinutes, ChronoUnit.MINUTES);
+        RuleConfig config = ctx.config();
+        int window = config != null ? config.velocityWindowMinutes() : windowMinutes;
+        int max = config != null ? config.velocityMaxCount() : maxCount;
 
-        long recent = repo.countByPanAndTimestampBetween(tx.getPan(), from, to);
+        long recent = store == null || store.remote() ? -1 : ctx.recentCount(window);
+        if (recent < 0) {
+            OffsetDateTime to = tx.getTimestamp();
+            OffsetDateTime from = to.minus(window, ChronoUnit.MINUTES);
+            if (usesStore(window)) {
+                recent = store.count(tx.getPan(), from, to);
+            }
+            if (recent < 0) {
+                if (ctx.expired())
+                    return false;
+                recent = repo.countByPanAndTimestampBetween(tx.getPan(), from, to);
+            }
+        }
+
+        return recent >= max;
+    }
+
+    /**
+     * Classified with the startup window; a wider window applied later may
+     * count in the DB. Shared counters are I/O like the DB.
+     */
+    @Override
+    public RuleCost cost() {
+        return usesStore(windowMinutes) && !store.remote() ? RuleCost.IN_MEMORY : RuleCost.IO;
+    }
 
-        return recent >= maxCount;
+    private boolean usesStore(int window) {
+        return store != null && window <= store.getHorizonMinutes();
     }
 
     @Override
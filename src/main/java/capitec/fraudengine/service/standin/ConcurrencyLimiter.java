@@ -0,0 +1,61 @@
+
+package capitec.fraudengine.service.standin;
+
+/**
+ * AIMD limit on authorizations in progress.
+ * <p>
+ * Each completed authorization reports how long it took. A sample over
+ * {@code targetNanos} (or a failure) means work is queueing behind something,
+ * usually database connections, and the limit is cut by {@code backoff}; a
+ * fast sample while the limit is at least half used grows it by
+ * {@code 1/limit}, i.e. about one per limit's worth of completions. Requests
+ * arriving while the limit is reached are refused rather than queued.
+ */
+public final class ConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetNanos;
+    private final double backoff;
+
+    private double limit;
+    private int inFlight;
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetNanos, double backoff) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit)
+            throw new IllegalArgumentException("limits must satisfy 1 <= min <= initial <= max");
+        if (backoff <= 0 || backoff >= 1)
+            throw new IllegalArgumentException("backoff must be between 0 and 1");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetNanos = targetNanos;
+        this.backoff = backoff;
+        this.limit = initialLimit;
+    }
+
+    /** Take a slot; false when the limit is reached. */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit)
+            return false;
+        inFlight++;
+        return true;
+    }
+
+    /** Return a slot taken by {@link #tryAcquire()}, with how long the work took. */
+    public synchronized void release(long elapsedNanos, boolean succeeded) {
+        boolean busy = inFlight * 2 >= limit;
+        inFlight--;
+        if (!succeeded || elapsedNanos > targetNanos)
+            limit = Math.max(minLimit, limit * backoff);
+        else if (busy)
+            limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+}
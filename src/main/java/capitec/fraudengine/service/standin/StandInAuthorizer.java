@@ -0,0 +1,212 @@
+
+package capitec.fraudengine.service.standin;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.service.FraudDetectionService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Opt-in latency budget for ISO authorizations.
+ * <p>
+ * Rules and persistence run on a virtual thread while the connection waits at
+ * most {@code budget-ms}. If the rules have not decided by then, the request
+ * is answered with the stand-in response code and the work carries on in the
+ * background; the row is saved with the stand-in code it was answered with
+ * and {@code STAND-IN TIMEOUT} in DE44, next to the rules' own verdict in
+ * {@code flagged}. If the rules did decide and only the save is late, the
+ * real decision is answered and the save finishes in the background.
+ * <p>
+ * A {@link ConcurrencyLimiter} caps authorizations in progress, including
+ * ones still running after their stand-in answer. When it is full the request
+ * is not evaluated at all: it is answered with the stand-in code straight
+ * away and recorded as {@code STAND-IN SHED}. During a database stall the
+ * limit shrinks, so the backlog stays bounded and tail latency stays near the
+ * budget instead of growing with every queued request.
+ * <p>
+ * Shed rows are saved one at a time from a queue of {@code shed-queue} rows,
+ * so a stalled database holds one shed save, not one per shed request. When
+ * the queue is full the row is not saved and
+ * {@code fraud.standin.shed.unrecorded} is incremented.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "fraud.standin.enabled", havingValue = "true")
+public class StandInAuthorizer {
+
+    /** What to answer: DE39 and, when not null, DE44. */
+    public record Decision(String responseCode, String de44, boolean standIn) {
+        public static Decision of(TransactionEntity tx) {
+            String rc = tx.isFlagged() ? "05" : "00";
+            return new Decision(rc, tx.isFlagged() ? tx.getDe44AdditionalResponseData() : null, false);
+        }
+    }
+
+    private final FraudDetectionService fraudService;
+    private final ConcurrencyLimiter limiter;
+    private final long budgetNanos;
+    private final String standInCode;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ThreadPoolExecutor shedSaves;
+
+    private final Counter timeouts;
+    private final Counter shed;
+    private final Counter lateSaves;
+    private final Counter unrecorded;
+
+    public StandInAuthorizer(FraudDetectionService fraudService,
+            MeterRegistry registry,
+            @Value("${fraud.standin.budget-ms:150}") long budgetMs,
+            @Value("${fraud.standin.response-code:00}") String standInCode,
+            @Value("${fraud.standin.limiter.initial:32}") int initialLimit,
+            @Value("${fraud.standin.limiter.min:4}") int minLimit,
+            @Value("${fraud.standin.limiter.max:256}") int maxLimit,
+            @Value("${fraud.standin.limiter.latency-target-ms:75}") long latencyTargetMs,
+            @Value("${fraud.standin.limiter.backoff:0.9}") double backoff,
+            @Value("${fraud.standin.shed-queue:1000}") int shedQueue) {
+        if (budgetMs < 1)
+            throw new IllegalArgumentException("fraud.standin.budget-ms must be >= 1");
+        if (standInCode == null || standInCode.length() != 2)
+            throw new IllegalArgumentException("fraud.standin.response-code must be a 2-character DE39 code");
+        this.fraudService = fraudService;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        this.standInCode = standInCode;
+        this.limiter = new ConcurrencyLimiter(initialLimit, minLimit, maxLimit,
+                TimeUnit.MILLISECONDS.toNanos(latencyTargetMs), backoff);
+        this.shedSaves = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(shedQueue), Thread.ofVirtual().name("standin-shed-save").factory());
+
+        Gauge.builder("fraud.standin.limit", limiter, ConcurrencyLimiter::limit)
+                .description("Authorizations allowed in progress")
+                .register(registry);
+        Gauge.builder("fraud.standin.in.flight", limiter, ConcurrencyLimiter::inFlight)
+                .description("Authorizations in progress, including ones answered by stand-in")
+                .register(registry);
+        this.timeouts = stand(registry, "timeout");
+        this.shed = stand(registry, "shed");
+        this.lateSaves = Counter.builder("fraud.standin.late.saves")
+                .description("Decisions answered before their row was saved")
+                .register(registry);
+        this.unrecorded = Counter.builder("fraud.standin.shed.unrecorded")
+                .description("Shed requests not saved because the shed save queue was full")
+                .register(registry);
+        log.info("Stand-in enabled (budget={}ms, response-code={}, limit={}..{})", budgetMs, standInCode,
+                minLimit, maxLimit);
+    }
+
+    private static Counter stand(MeterRegistry registry, String reason) {
+        return Counter.builder("fraud.standin.decisions")
+                .description("Requests answered with the stand-in response code")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // let background saves finish; they are what keeps the records complete
+        executor.shutdown();
+        shedSaves.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS) || !shedSaves.awaitTermination(5, TimeUnit.SECONDS))
+                log.warn("Stand-in shutdown with authorizations still running");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Decide {@code tx} within the budget, or answer with the stand-in code. */
+    public Decision authorize(TransactionEntity tx) {
+        if (!limiter.tryAcquire()) {
+            shed.increment();
+            markStandIn(tx, "SHED");
+            try {
+                shedSaves.execute(() -> recordLate(tx));
+            } catch (RejectedExecutionException e) {
+                unrecorded.increment();
+                log.warn("Shed row for pan={} stan={} not saved: shed save queue full", tx.getPan(), tx.getStan());
+            }
+            return new Decision(standInCode, null, true);
+        }
+
+        long start = System.nanoTime();
+        // whoever sets this first owns the answer: the caller (stand-in) or the rules
+        AtomicBoolean answered = new AtomicBoolean();
+        Future<?> work = executor.submit(() -> {
+            boolean ok = false;
+            try {
+                fraudService.process(tx, budgetNanos, decided -> {
+                    if (!answered.compareAndSet(false, true))
+                        markStandIn(decided, "TIMEOUT");
+                });
+                ok = true;
+            } catch (RuntimeException e) {
+                if (answered.get())
+                    log.error("Authorization for pan={} stan={} failed after it was answered: {}", tx.getPan(),
+                            tx.getStan(), e.getMessage());
+                throw e;
+            } finally {
+                limiter.release(System.nanoTime() - start, ok);
+            }
+        });
+
+        try {
+            work.get(budgetNanos, TimeUnit.NANOSECONDS);
+            return Decision.of(tx);
+        } catch (TimeoutException e) {
+            return late(tx, answered);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return late(tx, answered);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re)
+                throw re;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Decision late(TransactionEntity tx, AtomicBoolean answered) {
+        if (answered.compareAndSet(false, true)) {
+            timeouts.increment();
+            return new Decision(standInCode, null, true);
+        }
+        // the rules decided in time; only the save is still running
+        lateSaves.increment();
+        return Decision.of(tx);
+    }
+
+    private void markStandIn(TransactionEntity tx, String reason) {
+        tx.setResponseCode(standInCode);
+        String de44 = tx.getDe44AdditionalResponseData();
+        tx.setDe44AdditionalResponseData(
+                "STAND-IN " + reason + (de44 == null || de44.isBlank() ? "" : " " + de44));
+    }
+
+    private void recordLate(TransactionEntity tx) {
+        try {
+            fraudService.record(tx);
+        } catch (RuntimeException e) {
+            log.error("Stand-in row for pan={} stan={} not saved: {}", tx.getPan(), tx.getStan(), e.getMessage());
+        }
+    }
+
+    public ConcurrencyLimiter limiter() {
+        return limiter;
+    }
+}
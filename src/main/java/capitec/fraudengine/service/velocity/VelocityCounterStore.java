@@ -0,0 +1,189 @@
+
+package capitec.fraudengine.service.velocity;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.TransactionObserver;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory per-PAN sliding-window transaction counters.
+ * <p>
+ * Each PAN owns a small ring of time buckets ({@code bucket-seconds} wide)
+ * covering {@code horizon-minutes}. Recording and counting touch only that
+ * ring, so the cost of a velocity check is independent of how active the card
+ * is. Counts are bucket-granular: the oldest bucket of a window is included in
+ * full, so a count may over-report by at most one bucket's worth of activity.
+ * <p>
+ * The store is warmed from the {@code transactions} table at startup and PANs
+ * that have not been touched for {@code idle-minutes} are evicted periodically.
+ * With {@code mode=cluster} this bean is replaced by
+ * {@code ClusterVelocityCounters}, which keeps the PANs a node owns in a
+ * standalone instance.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${fraud.rules.velocity.store.enabled:true} and '${fraud.rules.velocity.store.mode:local}' == 'local'")
+public class VelocityCounterStore implements VelocityCounters, TransactionObserver {
+
+    private final TransactionRepository repo;
+    private final ConcurrentHashMap<String, PanWindow> windows = new ConcurrentHashMap<>();
+
+    @Value("${fraud.rules.velocity.store.bucket-seconds:60}")
+    private int bucketSeconds;
+
+    @Value("${fraud.rules.velocity.store.horizon-minutes:${fraud.rules.velocity.windowMinutes:15}}")
+    private int horizonMinutes;
+
+    @Value("${fraud.rules.velocity.store.idle-minutes:${fraud.rules.velocity.store.horizon-minutes:${fraud.rules.velocity.windowMinutes:15}}}")
+    private int idleMinutes;
+
+    @Value("${fraud.rules.velocity.store.warm-up:true}")
+    private boolean warmUp;
+
+    private int bucketCount;
+
+    @Autowired
+    public VelocityCounterStore(TransactionRepository repo) {
+        this.repo = repo;
+    }
+
+    /** Standalone store (no warm-up source), mainly for tests. */
+    public VelocityCounterStore(int bucketSeconds, int horizonMinutes, int idleMinutes) {
+        this.repo = null;
+        this.bucketSeconds = bucketSeconds;
+        this.horizonMinutes = horizonMinutes;
+        this.idleMinutes = idleMinutes;
+        this.warmUp = false;
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        if (bucketSeconds <= 0 || horizonMinutes <= 0) {
+            throw new IllegalStateException("velocity store bucket-seconds and horizon-minutes must be > 0");
+        }
+        // +1 so a window that does not start on a bucket boundary is still covered
+        bucketCount = (int) Math.ceil(horizonMinutes * 60.0 / bucketSeconds) + 1;
+
+        if (warmUp && repo != null) {
+            warmUpFromRepository();
+        }
+    }
+
+    @Override
+    public void onProcessed(TransactionEntity tx) {
+        record(tx.getPan(), tx.getTimestamp());
+    }
+
+    @Override
+    public void record(String pan, OffsetDateTime timestamp) {
+        if (pan == null || timestamp == null)
+            return;
+        long bucket = bucketOf(timestamp);
+        windows.computeIfAbsent(pan, k -> new PanWindow(bucketCount)).add(bucket, System.currentTimeMillis());
+    }
+
+    /** Bucket-granular, see class docs; never -1. */
+    @Override
+    public long count(String pan, OffsetDateTime from, OffsetDateTime to) {
+        if (pan == null || from == null || to == null)
+            return 0;
+        PanWindow w = windows.get(pan);
+        if (w == null)
+            return 0;
+        return w.sum(bucketOf(from), bucketOf(to));
+    }
+
+    @Override
+    public int getHorizonMinutes() {
+        return horizonMinutes;
+    }
+
+    public int size() {
+        return windows.size();
+    }
+
+    /** Drop PANs that have not been recorded for {@code idle-minutes}. */
+    @Scheduled(fixedDelayString = "${fraud.rules.velocity.store.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleMinutes);
+        int before = windows.size();
+        windows.values().removeIf(w -> w.lastTouchedMillis <= cutoff);
+        int evicted = before - windows.size();
+        if (evicted > 0) {
+            log.debug("Velocity store evicted {} idle PANs ({} remaining)", evicted, windows.size());
+        }
+    }
+
+    private void warmUpFromRepository() {
+        OffsetDateTime since = OffsetDateTime.now(ZoneOffset.UTC).minusMinutes(horizonMinutes);
+        try {
+            var recent = repo.findPanActivitySince(since);
+            for (TransactionRepository.PanActivity a : recent) {
+                record(a.getPan(), a.getTimestamp());
+            }
+            log.info("Velocity store warmed up with {} transactions for {} PANs since {}",
+                    recent.size(), windows.size(), since);
+        } catch (Exception e) {
+            // Counting restarts from zero; the rule degrades to "new traffic only" until the window fills
+            log.warn("Velocity store warm-up failed, starting empty: {}", e.getMessage());
+        }
+    }
+
+    private long bucketOf(OffsetDateTime ts) {
+        return Math.floorDiv(ts.toEpochSecond(), bucketSeconds);
+    }
+
+    /**
+     * Ring of time buckets for one PAN. Slot i holds the count for the bucket
+     * whose index maps to i; a slot is reset when a newer bucket claims it.
+     * Also backs the recent counts of a cached PAN profile.
+     */
+    public static final class PanWindow {
+        private final long[] bucketIds;
+        private final int[] counts;
+        private volatile long lastTouchedMillis;
+
+        public PanWindow(int size) {
+            this.bucketIds = new long[size];
+            this.counts = new int[size];
+            Arrays.fill(bucketIds, Long.MIN_VALUE);
+        }
+
+        public synchronized void add(long bucket, long nowMillis) {
+            int slot = (int) Math.floorMod(bucket, (long) bucketIds.length);
+            long held = bucketIds[slot];
+            if (held == bucket) {
+                counts[slot]++;
+            } else if (held < bucket) {
+                bucketIds[slot] = bucket;
+                counts[slot] = 1;
+            }
+            // else: older than the ring can represent, nothing to count it against
+            lastTouchedMillis = nowMillis;
+        }
+
+        public synchronized long sum(long fromBucket, long toBucket) {
+            long total = 0;
+            for (int i = 0; i < bucketIds.length; i++) {
+                long b = bucketIds[i];
+                if (b >= fromBucket && b <= toBucket)
+                    total += counts[i];
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+
+package capitec.fraudengine.service.velocity;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Sliding-window transaction counts per PAN, as read by the velocity rule.
+ * {@link VelocityCounterStore} keeps them in this JVM;
+ * {@code ClusterVelocityCounters} shares them between instances.
+ */
+public interface VelocityCounters {
+
+    /** Count one transaction for the PAN at the given event time. */
+    void record(String pan, OffsetDateTime timestamp);
+
+    /**
+     * Number of recorded transactions for the PAN with event time in
+     * [from, to], or -1 when the counters cannot answer right now (the
+     * caller then counts elsewhere).
+     */
+    long count(String pan, OffsetDateTime from, OffsetDateTime to);
+
+    /** Largest window (in minutes) that can be answered exactly. */
+    int getHorizonMinutes();
+
+    /** True when a count may cross the network, so it is not free to call after a deadline. */
+    default boolean remote() {
+        return false;
+    }
+}
@@ -0,0 +1,46 @@
+
+package capitec.fraudengine.service.velocity.cluster;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/** One instance of the velocity cluster: its id and the address its peer port listens on. */
+public record ClusterNode(String id, String host, int port) {
+
+    public InetSocketAddress address() {
+        return new InetSocketAddress(host, port);
+    }
+
+    /**
+     * Nodes from {@code id@host:port} entries separated by commas, e.g.
+     * {@code app1@fraudengine-app-1:7400,app2@fraudengine-app-2:7400}.
+     *
+     * @throws IllegalArgumentException naming the first malformed entry or a repeated id
+     */
+    public static List<ClusterNode> parseList(String spec) {
+        List<ClusterNode> nodes = new ArrayList<>();
+        if (spec == null || spec.isBlank())
+            return nodes;
+        for (String raw : spec.split(",")) {
+            String entry = raw.trim();
+            if (entry.isEmpty())
+                continue;
+            int at = entry.indexOf('@');
+            int colon = entry.lastIndexOf(':');
+            if (at < 1 || colon < at + 2 || colon == entry.length() - 1)
+                throw new IllegalArgumentException("cluster node must be id@host:port: " + entry);
+            int port;
+            try {
+                port = Integer.parseInt(entry.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("cluster node port is not a number: " + entry);
+            }
+            String id = entry.substring(0, at);
+            if (nodes.stream().anyMatch(n -> n.id().equals(id)))
+                throw new IllegalArgumentException("cluster node id repeated: " + id);
+            nodes.add(new ClusterNode(id, entry.substring(at + 1, colon), port));
+        }
+        return nodes;
+    }
+}
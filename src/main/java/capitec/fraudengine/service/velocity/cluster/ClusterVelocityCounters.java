@@ -0,0 +1,254 @@
+
+package capitec.fraudengine.service.velocity.cluster;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.TransactionObserver;
+import capitec.fraudengine.service.velocity.VelocityCounterStore;
+import capitec.fraudengine.service.velocity.VelocityCounters;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Velocity counters shared by several instances.
+ * <p>
+ * PANs are spread over the nodes listed in {@code nodes} with a
+ * {@link ConsistentHashRing}; each PAN is kept by its owner and
+ * {@code replicas - 1} following nodes, in a local
+ * {@link VelocityCounterStore}. A node records every transaction it processes
+ * with all of the PAN's keepers (its own store directly, peers over the
+ * {@link CounterPeerServer} protocol, without waiting) and counts from the
+ * first keeper that answers, itself if it is one. So every instance sees the
+ * same counts whichever of them the switch routes a card to, and no count
+ * reaches the database while a keeper is up. When none is, {@link #count}
+ * returns -1 and the velocity rule counts in the database.
+ * <p>
+ * Replication is asynchronous: a count may miss a transaction recorded on
+ * another node a few milliseconds earlier. When a peer reports that records
+ * for this node were lost (it was unreachable, or a queue overflowed), this
+ * node stops answering counts for {@code horizon-minutes}, after which every
+ * lost record has aged out of the window; meanwhile its PANs are counted by
+ * another keeper or in the database. Membership is static; all nodes must be
+ * configured with the same list. At startup a node warms its share of PANs
+ * from the {@code transactions} table.
+ * <p>
+ * The peer port is bound to this node's host from {@code nodes}. It is not
+ * authenticated and carries PANs in the clear, see {@link CounterPeerServer}.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${fraud.rules.velocity.store.enabled:true} and '${fraud.rules.velocity.store.mode:local}' == 'cluster'")
+public class ClusterVelocityCounters implements VelocityCounters, TransactionObserver {
+
+    private final String self;
+    private final int replicas;
+    private final ConsistentHashRing ring;
+    private final VelocityCounterStore local;
+    private final VelocityCounters kept = new Kept();
+    private final CounterPeerServer server;
+    private final Map<String, CounterPeerClient> peers = new LinkedHashMap<>();
+    private final TransactionRepository repo;
+    private final Counter unavailable;
+    private final Counter resyncs;
+    /** Until then records for this node may be missing and its counts are not used. */
+    private volatile long incompleteUntilMillis;
+
+    @Autowired
+    public ClusterVelocityCounters(@Nullable TransactionRepository repo, MeterRegistry registry,
+            @Value("${fraud.rules.velocity.cluster.node-id}") String nodeId,
+            @Value("${fraud.rules.velocity.cluster.nodes}") String nodes,
+            @Value("${fraud.rules.velocity.cluster.replicas:2}") int replicas,
+            @Value("${fraud.rules.velocity.cluster.timeout-ms:50}") int timeoutMillis,
+            @Value("${fraud.rules.velocity.cluster.retry-ms:5000}") long retryMillis,
+            @Value("${fraud.rules.velocity.cluster.queue-capacity:65536}") int queueCapacity,
+            @Value("${fraud.rules.velocity.store.bucket-seconds:60}") int bucketSeconds,
+            @Value("${fraud.rules.velocity.store.horizon-minutes:${fraud.rules.velocity.windowMinutes:15}}") int horizonMinutes,
+            @Value("${fraud.rules.velocity.store.idle-minutes:${fraud.rules.velocity.store.horizon-minutes:${fraud.rules.velocity.windowMinutes:15}}}") int idleMinutes) {
+        this(nodeId, ClusterNode.parseList(nodes), replicas, timeoutMillis, retryMillis, queueCapacity,
+                new VelocityCounterStore(bucketSeconds, horizonMinutes, idleMinutes), repo, registry);
+    }
+
+    /** Node without warm-up or a registry; several of these on loopback ports form a test cluster. */
+    public ClusterVelocityCounters(String nodeId, List<ClusterNode> nodes, int replicas, int timeoutMillis,
+            long retryMillis, VelocityCounterStore local) {
+        this(nodeId, nodes, replicas, timeoutMillis, retryMillis, 65536, local, null, new CompositeMeterRegistry());
+    }
+
+    private ClusterVelocityCounters(String nodeId, List<ClusterNode> nodes, int replicas, int timeoutMillis,
+            long retryMillis, int queueCapacity, VelocityCounterStore local, @Nullable TransactionRepository repo,
+            MeterRegistry registry) {
+        ClusterNode me = nodes.stream().filter(n -> n.id().equals(nodeId)).findFirst()
+                .orElseThrow(() -> new IllegalStateException("velocity cluster node-id " + nodeId
+                        + " is not in the node list"));
+        if (replicas < 1)
+            throw new IllegalStateException("velocity cluster replicas must be >= 1");
+        this.self = nodeId;
+        this.replicas = replicas;
+        this.ring = new ConsistentHashRing(nodes.stream().map(ClusterNode::id).toList(),
+                ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        this.local = local;
+        this.repo = repo;
+        this.server = new CounterPeerServer(new InetSocketAddress(me.host(), me.port()), kept, this::resync);
+        for (ClusterNode n : nodes) {
+            if (n.id().equals(nodeId))
+                continue;
+            CounterPeerClient peer = new CounterPeerClient(n, timeoutMillis, retryMillis, queueCapacity);
+            peers.put(n.id(), peer);
+            FunctionCounter.builder("fraud.velocity.cluster.records.dropped", peer, CounterPeerClient::dropped)
+                    .description("Records not delivered to a peer that was down or backlogged")
+                    .tag("peer", n.id())
+                    .register(registry);
+        }
+        this.unavailable = Counter.builder("fraud.velocity.cluster.counts.unavailable")
+                .description("Counts no keeper of the PAN answered; the rule fell back to the database")
+                .register(registry);
+        this.resyncs = Counter.builder("fraud.velocity.cluster.resyncs")
+                .description("Times a peer reported records for this node as lost")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("velocity cluster peer port could not be opened", e);
+        }
+        if (repo != null)
+            warmUpFromRepository();
+    }
+
+    @PreDestroy
+    public void stop() {
+        server.close();
+        peers.values().forEach(CounterPeerClient::close);
+    }
+
+    @Override
+    public void onProcessed(TransactionEntity tx) {
+        record(tx.getPan(), tx.getTimestamp());
+    }
+
+    @Override
+    public void record(String pan, OffsetDateTime timestamp) {
+        if (pan == null || timestamp == null)
+            return;
+        for (String keeper : ring.owners(pan, replicas)) {
+            if (keeper.equals(self))
+                local.record(pan, timestamp);
+            else
+                peers.get(keeper).record(pan, timestamp.toEpochSecond());
+        }
+    }
+
+    @Override
+    public long count(String pan, OffsetDateTime from, OffsetDateTime to) {
+        if (pan == null || from == null || to == null)
+            return 0;
+        List<String> keepers = ring.owners(pan, replicas);
+        if (keepers.contains(self) && complete())
+            return local.count(pan, from, to);
+        for (String keeper : keepers) {
+            if (keeper.equals(self))
+                continue;
+            long n = peers.get(keeper).count(pan, from.toEpochSecond(), to.toEpochSecond());
+            if (n >= 0)
+                return n;
+        }
+        unavailable.increment();
+        return -1;
+    }
+
+    @Override
+    public int getHorizonMinutes() {
+        return local.getHorizonMinutes();
+    }
+
+    @Override
+    public boolean remote() {
+        return true;
+    }
+
+    /** Bound peer port. */
+    public int port() {
+        return server.port();
+    }
+
+    /** PANs kept on this node. */
+    public int size() {
+        return local.size();
+    }
+
+    @Scheduled(fixedDelayString = "${fraud.rules.velocity.store.evict-interval-ms:60000}")
+    public void evictIdle() {
+        local.evictIdle();
+    }
+
+    private boolean complete() {
+        return System.currentTimeMillis() >= incompleteUntilMillis;
+    }
+
+    private void resync() {
+        resyncs.increment();
+        incompleteUntilMillis = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(local.getHorizonMinutes());
+        log.warn("Velocity cluster node {} missed records from a peer; not answering counts for {} min",
+                self, local.getHorizonMinutes());
+    }
+
+    /** The local store as served to peers: no answer while records may be missing. */
+    private final class Kept implements VelocityCounters {
+
+        @Override
+        public void record(String pan, OffsetDateTime timestamp) {
+            local.record(pan, timestamp);
+        }
+
+        @Override
+        public long count(String pan, OffsetDateTime from, OffsetDateTime to) {
+            return complete() ? local.count(pan, from, to) : -1;
+        }
+
+        @Override
+        public int getHorizonMinutes() {
+            return local.getHorizonMinutes();
+        }
+    }
+
+    private void warmUpFromRepository() {
+        OffsetDateTime since = OffsetDateTime.now(ZoneOffset.UTC).minusMinutes(local.getHorizonMinutes());
+        try {
+            int kept = 0;
+            for (TransactionRepository.PanActivity a : repo.findPanActivitySince(since)) {
+                if (a.getPan() != null && ring.owners(a.getPan(), replicas).contains(self)) {
+                    local.record(a.getPan(), a.getTimestamp());
+                    kept++;
+                }
+            }
+            log.info("Velocity cluster node {} warmed up with {} transactions for {} PANs since {}",
+                    self, kept, local.size(), since);
+        } catch (Exception e) {
+            log.warn("Velocity cluster warm-up failed, starting empty: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+
+package capitec.fraudengine.service.velocity.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns each PAN to nodes on a hash ring. Every node is placed at
+ * {@code virtualNodes} points; a PAN belongs to the node at the first point
+ * clockwise from its hash, and its replicas to the next distinct nodes. Adding
+ * or removing a node only moves the PANs next to that node's points.
+ * Immutable; a lookup is one binary search over a sorted {@code long[]}.
+ */
+final class ConsistentHashRing {
+
+    static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final long[] points;
+    private final String[] owners;
+    private final int nodeCount;
+
+    ConsistentHashRing(Collection<String> nodeIds, int virtualNodes) {
+        if (nodeIds.isEmpty())
+            throw new IllegalArgumentException("ring needs at least one node");
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String id : nodeIds) {
+            for (int i = 0; i < virtualNodes; i++)
+                ring.putIfAbsent(hash(id + "#" + i), id);
+        }
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, String> e : ring.entrySet()) {
+            points[i] = e.getKey();
+            owners[i++] = e.getValue();
+        }
+        this.nodeCount = nodeIds.size();
+    }
+
+    /** The node owning {@code key} followed by up to {@code n - 1} replicas, all distinct. */
+    List<String> owners(String key, int n) {
+        int wanted = Math.min(n, nodeCount);
+        List<String> result = new ArrayList<>(wanted);
+        int i = firstPointFrom(hash(key));
+        for (int step = 0; step < points.length && result.size() < wanted; step++) {
+            String id = owners[(i + step) % points.length];
+            if (!result.contains(id))
+                result.add(id);
+        }
+        return result;
+    }
+
+    private int firstPointFrom(long h) {
+        int lo = 0;
+        int hi = points.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (points[mid] < h)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return lo == points.length ? 0 : lo;
+    }
+
+    /** 64-bit FNV-1a with a murmur finalizer so nearby ids spread over the ring. */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
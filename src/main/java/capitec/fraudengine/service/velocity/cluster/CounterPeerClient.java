@@ -0,0 +1,225 @@
+
+package capitec.fraudengine.service.velocity.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connections from this node to one peer.
+ * <p>
+ * Records are queued and written by one virtual thread over a dedicated
+ * connection, in batches that the peer acknowledges: recording never waits
+ * for the peer. Counts borrow a connection from a small idle pool (one request
+ * in flight per connection) and wait at most {@code timeoutMillis}; a slow
+ * answer only fails that count.
+ * <p>
+ * When the peer cannot be reached, or a batch goes unacknowledged, it is
+ * marked down for {@code retryMillis}: counts return -1 straight away and
+ * records for it are dropped. Records are also dropped when the queue is full.
+ * Either way the next thing sent once the peer is back is a RESYNC, telling it
+ * that its counts are incomplete, so it stops answering from them instead of
+ * drifting from the other keepers.
+ */
+@Slf4j
+final class CounterPeerClient implements Closeable {
+
+    private static final int BATCH = 256;
+
+    private record PendingRecord(String pan, long epochSecond) {
+    }
+
+    private record Connection(Socket socket, DataInputStream in, DataOutputStream out) implements Closeable {
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+    }
+
+    private final ClusterNode node;
+    private final int timeoutMillis;
+    private final long retryMillis;
+    private final BlockingQueue<PendingRecord> records;
+    private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+    private final LongAdder dropped = new LongAdder();
+    /** Records were lost since the last RESYNC reached the peer. */
+    private final AtomicBoolean missed = new AtomicBoolean();
+    private final Thread sender;
+    private volatile long downUntil;
+    private volatile boolean closed;
+
+    CounterPeerClient(ClusterNode node, int timeoutMillis, long retryMillis, int queueCapacity) {
+        this.node = node;
+        this.timeoutMillis = timeoutMillis;
+        this.retryMillis = retryMillis;
+        this.records = new ArrayBlockingQueue<>(queueCapacity);
+        this.sender = Thread.ofVirtual().name("velocity-peer-send-" + node.id()).start(this::sendLoop);
+    }
+
+    /** Queue a record for the peer; false (and counted as dropped) when the peer is down or backlogged. */
+    boolean record(String pan, long epochSecond) {
+        if (!available() || !records.offer(new PendingRecord(pan, epochSecond))) {
+            drop(1);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The peer's count, or -1 when it is down or does not answer in time. A
+     * pooled connection that fails is retried once on a new one, since the
+     * peer may simply have restarted. Only a failed connect marks the peer
+     * down.
+     */
+    long count(String pan, long fromSecond, long toSecond) {
+        if (!available())
+            return -1;
+        Connection pooled = idle.poll();
+        if (pooled != null) {
+            try {
+                return count(pooled, pan, fromSecond, toSecond);
+            } catch (IOException e) {
+                pooled.close();
+            }
+        }
+        Connection c;
+        try {
+            c = connect(timeoutMillis);
+        } catch (IOException e) {
+            markDown(e);
+            return -1;
+        }
+        try {
+            return count(c, pan, fromSecond, toSecond);
+        } catch (IOException e) {
+            c.close();
+            return -1;
+        }
+    }
+
+    private long count(Connection c, String pan, long fromSecond, long toSecond) throws IOException {
+        c.out().write(CounterPeerServer.COUNT);
+        c.out().writeUTF(pan);
+        c.out().writeLong(fromSecond);
+        c.out().writeLong(toSecond);
+        c.out().flush();
+        long n = c.in().readLong();
+        idle.offer(c);
+        return n;
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    private void drop(int n) {
+        dropped.add(n);
+        missed.set(true);
+    }
+
+    private boolean available() {
+        return !closed && System.currentTimeMillis() >= downUntil;
+    }
+
+    private void markDown(IOException e) {
+        if (System.currentTimeMillis() >= downUntil)
+            log.warn("Velocity peer {} unavailable for {} ms: {}", node.id(), retryMillis, e.getMessage());
+        downUntil = System.currentTimeMillis() + retryMillis;
+        Connection c;
+        while ((c = idle.poll()) != null)
+            c.close();
+    }
+
+    private void sendLoop() {
+        List<PendingRecord> batch = new ArrayList<>(BATCH);
+        Connection c = null;
+        while (!closed) {
+            try {
+                PendingRecord first = records.poll(retryMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    records.drainTo(batch, BATCH - 1);
+                }
+                if (System.currentTimeMillis() < downUntil) {
+                    drop(batch.size()); // queued before the peer went down
+                    continue;
+                }
+                if (batch.isEmpty() && !missed.get())
+                    continue;
+                if (c == null) // an ack may wait out a pause on the peer; only silence for retryMillis is a failure
+                    c = connect((int) Math.max(timeoutMillis, retryMillis));
+                if (missed.getAndSet(false))
+                    c.out().write(CounterPeerServer.RESYNC);
+                for (PendingRecord r : batch) {
+                    c.out().write(CounterPeerServer.RECORD);
+                    c.out().writeUTF(r.pan());
+                    c.out().writeLong(r.epochSecond());
+                }
+                c.out().write(CounterPeerServer.FLUSH);
+                c.out().flush();
+                long applied = c.in().readLong();
+                if (applied != batch.size())
+                    throw new IOException("peer acknowledged " + applied + " of " + batch.size() + " records");
+            } catch (IOException e) {
+                // the peer may have applied part of the batch; a RESYNC covers either case
+                if (c != null)
+                    c.close();
+                c = null;
+                drop(batch.size());
+                markDown(e);
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        if (c != null)
+            c.close();
+    }
+
+    private Connection connect(int readTimeoutMillis) throws IOException {
+        Socket s = new Socket();
+        try {
+            s.connect(node.address(), timeoutMillis);
+            s.setSoTimeout(readTimeoutMillis);
+            s.setTcpNoDelay(true);
+            return new Connection(s, new DataInputStream(new BufferedInputStream(s.getInputStream())),
+                    new DataOutputStream(new BufferedOutputStream(s.getOutputStream())));
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        sender.interrupt();
+        Connection c;
+        while ((c = idle.poll()) != null)
+            c.close();
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
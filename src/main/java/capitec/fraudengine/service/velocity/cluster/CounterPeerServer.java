@@ -0,0 +1,162 @@
+
+package capitec.fraudengine.service.velocity.cluster;
+
+import capitec.fraudengine.service.velocity.VelocityCounters;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Peer port of a cluster node. Each connection carries a stream of frames
+ * starting with an opcode:
+ *
+ * <pre>
+ *   RECORD  0x01  pan (UTF)  epochSecond (long)           no reply
+ *   COUNT   0x02  pan (UTF)  fromSecond (long) toSecond (long)   reply: count (long)
+ *   FLUSH   0x03                                          reply: RECORDs since the last FLUSH (long)
+ *   RESYNC  0x04                                          no reply; records for this node were lost
+ * </pre>
+ *
+ * Records are applied to the node's local counters; counts are answered from
+ * them. One virtual thread per connection.
+ * <p>
+ * The protocol is neither authenticated nor encrypted and carries PANs in the
+ * clear. The port is bound to the node's configured host only, and must be
+ * reachable from the other nodes and nothing else (firewall or private network
+ * segment).
+ */
+@Slf4j
+final class CounterPeerServer implements Closeable {
+
+    static final int RECORD = 0x01;
+    static final int COUNT = 0x02;
+    static final int FLUSH = 0x03;
+    static final int RESYNC = 0x04;
+
+    private final InetSocketAddress bindAddress;
+    private final VelocityCounters counters;
+    private final Runnable resync;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private ServerSocket server;
+    private volatile boolean closed;
+
+    /**
+     * @param resync called when a peer reports that records for this node were
+     *               lost
+     */
+    CounterPeerServer(InetSocketAddress bindAddress, VelocityCounters counters, Runnable resync) {
+        this.bindAddress = bindAddress;
+        this.counters = counters;
+        this.resync = resync;
+    }
+
+    void start() throws IOException {
+        server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(bindAddress);
+        Thread.ofPlatform().daemon().name("velocity-peer-accept").start(this::acceptLoop);
+        log.info("Velocity cluster peer port listening on {}", server.getLocalSocketAddress());
+    }
+
+    /** Bound port; differs from the configured one when that was 0. */
+    int port() {
+        return server.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket s = server.accept();
+                connections.add(s);
+                // close() may return while accept() is still completing; a
+                // stopped node must not answer counts from what it kept
+                if (closed) {
+                    s.close();
+                    connections.remove(s);
+                    return;
+                }
+                s.setTcpNoDelay(true);
+                Thread.ofVirtual().name("velocity-peer-conn").start(() -> serve(s));
+            } catch (IOException e) {
+                if (!closed)
+                    log.warn("Velocity cluster accept failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket s) {
+        try (s;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            long received = 0;
+            while (true) {
+                int op = in.read();
+                if (op < 0)
+                    return;
+                switch (op) {
+                    case RECORD -> {
+                        counters.record(in.readUTF(), toTime(in.readLong()));
+                        received++;
+                    }
+                    case COUNT -> {
+                        String pan = in.readUTF();
+                        long from = in.readLong();
+                        long to = in.readLong();
+                        out.writeLong(counters.count(pan, toTime(from), toTime(to)));
+                        out.flush();
+                    }
+                    case FLUSH -> {
+                        out.writeLong(received);
+                        out.flush();
+                        received = 0;
+                    }
+                    case RESYNC -> resync.run();
+                    default -> throw new IOException("unknown opcode " + op);
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // peer went away
+        } catch (IOException e) {
+            log.warn("Velocity cluster connection from {} dropped: {}", s.getRemoteSocketAddress(), e.getMessage());
+        } finally {
+            connections.remove(s);
+        }
+    }
+
+    static OffsetDateTime toTime(long epochSecond) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneOffset.UTC);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            if (server != null)
+                server.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+        for (Socket s : connections) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package capitec.fraudengine.config;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.persistence.RoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * The three pools wired by DataSourceRoutingConfig, all on one H2 database:
+ * checks which pool a repository call actually borrows from.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+        "fraud.datasource.routing.enabled=true"
+})
+@ActiveProfiles("test")
+class DataSourceRoutingConfigTest {
+
+    private static final String PAN = "4111111111111111";
+
+    @MockitoSpyBean(name = "authWriteDataSource")
+    HikariDataSource authWrite;
+
+    @MockitoSpyBean(name = "authReadDataSource")
+    HikariDataSource authRead;
+
+    @MockitoSpyBean(name = "reportingDataSource")
+    HikariDataSource reporting;
+
+    @Autowired
+    TransactionRepository repo;
+
+    @BeforeEach
+    void warmUp() {
+        repo.count(); // the lazy proxy reads connection defaults on its first borrow
+        clearInvocations(authWrite, authRead, reporting);
+    }
+
+    @Test
+    void poolsAreNamedForTheirRoute() {
+        assertEquals("fraud-auth-write", authWrite.getPoolName());
+        assertEquals("fraud-auth-read", authRead.getPoolName());
+        assertEquals("fraud-reporting", reporting.getPoolName());
+    }
+
+    @Test
+    void readOnlyRepositoryCallBorrowsFromTheAuthReadPool() throws SQLException {
+        repo.findPanHistorySince(PAN, OffsetDateTime.now().minusMinutes(5));
+
+        verify(authRead).getConnection();
+        verify(authWrite, never()).getConnection();
+        verify(reporting, never()).getConnection();
+    }
+
+    @Test
+    void reportingScopeBorrowsFromTheReportingPool() throws SQLException {
+        OffsetDateTime now = OffsetDateTime.now();
+        RoutingDataSource.reporting(() -> repo.findByPanAndTimestampBetweenOrderByTimestampDesc(PAN,
+                now.minusDays(1), now));
+
+        verify(reporting).getConnection();
+        verify(authRead, never()).getConnection();
+        verify(authWrite, never()).getConnection();
+    }
+
+    @Test
+    void writesBorrowFromTheAuthWritePool() throws SQLException {
+        repo.save(TransactionEntity.builder()
+                .pan(PAN)
+                .amount(new BigDecimal("10"))
+                .currency("ZAR")
+                .timestamp(OffsetDateTime.now())
+                .build());
+
+        verify(authWrite, atLeastOnce()).getConnection();
+        verify(authRead, never()).getConnection();
+        verify(reporting, never()).getConnection();
+    }
+}
@@ -0,0 +1,113 @@
+package capitec.fraudengine.config;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.FraudDetectionService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.DockerClientFactory;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Partitioning DDL against PostgreSQL (Testcontainers); skipped without
+ * Docker. Schema update errors fail the context, so a constraint Postgres
+ * rejects on the partitioned table fails the test.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:tc:postgresql:16-alpine:///frauddb",
+        "spring.datasource.driver-class-name=org.testcontainers.jdbc.ContainerDatabaseDriver",
+        "spring.datasource.username=test",
+        "spring.datasource.password=test",
+        "spring.jpa.hibernate.ddl-auto=update",
+        "spring.jpa.properties.hibernate.hbm2ddl.halt_on_error=true",
+        "fraud.persistence.partitioning.enabled=true",
+        "fraud.persistence.partitioning.premake=2",
+        "iso8583.listener.enabled=false"
+})
+@EnabledIf("dockerAvailable")
+class TransactionPartitionManagerIT {
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Autowired
+    TransactionPartitionManager manager;
+    @Autowired
+    TransactionRepository repo;
+    @Autowired
+    FraudDetectionService fraudService;
+    @Autowired
+    JdbcTemplate jdbc;
+
+    static boolean dockerAvailable() {
+        return DockerClientFactory.instance().isDockerAvailable();
+    }
+
+    private static LocalDate today() {
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+
+    private static TransactionEntity tx(LocalDate day) {
+        return TransactionEntity.builder()
+                .pan("4111111111111111")
+                .amount(new BigDecimal("10.00"))
+                .currency("ZAR")
+                .timestamp(day.atTime(12, 0).atOffset(ZoneOffset.UTC))
+                .de3ProcessingCode("000000")
+                .build();
+    }
+
+    private boolean exists(String table) {
+        return jdbc.queryForObject("select to_regclass(?) is not null", Boolean.class, table);
+    }
+
+    private long rows(String table) {
+        return jdbc.queryForObject("select count(*) from " + table, Long.class);
+    }
+
+    @Test
+    void partitionedTableTakesTransactionsWithDetail() {
+        assertEquals("p", jdbc.queryForObject(
+                "select relkind::text from pg_class where oid = 'transactions'::regclass", String.class));
+        assertTrue(exists("transactions_p" + DAY.format(today())));
+
+        Long id = repo.save(tx(today())).getId();
+
+        assertEquals("000000", fraudService.getTransactionDetail(id).orElseThrow().getDe3ProcessingCode());
+    }
+
+    @Test
+    void movesRowsOutOfTheDefaultPartitionWhenTheirPeriodIsCreated() {
+        LocalDate later = today().plusDays(30);
+        Long id = repo.save(tx(later)).getId();
+        assertEquals(1, rows("transactions_default"));
+
+        manager.createFuturePartitions(later.minusDays(1));
+
+        assertEquals(0, rows("transactions_default"));
+        assertEquals(1, rows("transactions_p" + DAY.format(later)));
+        assertTrue(repo.findById(id).isPresent());
+    }
+
+    @Test
+    void oneFailedPartitionDoesNotStopTheOthers() {
+        LocalDate start = today().plusDays(60);
+        // overlaps the period the manager wants for start + 1
+        jdbc.execute("create table transactions_manual partition of transactions for values from ('"
+                + start.plusDays(1) + " 06:00:00+00') to ('" + start.plusDays(2) + " 00:00:00+00')");
+
+        manager.createFuturePartitions(start);
+
+        assertTrue(exists("transactions_p" + DAY.format(start)));
+        assertFalse(exists("transactions_p" + DAY.format(start.plusDays(1))));
+        assertTrue(exists("transactions_p" + DAY.format(start.plusDays(2))));
+    }
+}
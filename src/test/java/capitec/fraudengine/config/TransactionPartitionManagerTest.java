@@ -0,0 +1,26 @@
+package capitec.fraudengine.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionPartitionManagerTest {
+
+    @Test
+    void parsesUpperBoundOfRangePartition() {
+        assertEquals(OffsetDateTime.parse("2026-10-19T00:00:00Z"),
+                TransactionPartitionManager.upperBound(
+                        "FOR VALUES FROM ('2026-10-18 00:00:00+00') TO ('2026-10-19 00:00:00+00')"));
+        // session time zone other than UTC
+        assertTrue(OffsetDateTime.parse("2026-10-19T00:00:00Z").isEqual(
+                TransactionPartitionManager.upperBound("FOR VALUES FROM (MINVALUE) TO ('2026-10-19 02:00:00+02')")));
+    }
+
+    @Test
+    void defaultPartitionHasNoUpperBound() {
+        assertNull(TransactionPartitionManager.upperBound("DEFAULT"));
+        assertNull(TransactionPartitionManager.upperBound(null));
+    }
+}
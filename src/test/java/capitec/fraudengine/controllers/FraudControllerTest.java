@@ -2,7 +2,9 @@
 package capitec.fraudengine.controllers;
 
 import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.model.dto.BatchDecision;
 import capitec.fraudengine.service.FraudDetectionService;
+import capitec.fraudengine.service.batch.BatchScoringService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -12,12 +14,18 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -31,6 +39,9 @@ class FraudControllerTest {
     @MockBean
     private FraudDetectionService fraudDetectionService;
 
+    @MockitoBean
+    private BatchScoringService batchScoringService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -69,7 +80,7 @@ class FraudControllerTest {
     @Test
     void getFraudFlagsReturnsList() throws Exception {
         Mockito.when(fraudDetectionService.getFlagged())
-                .thenReturn(List.of(
+                .thenReturn(new FraudDetectionService.FlaggedPage(List.of(
                         TransactionEntity.builder()
                                 .id(2L)
                                 .pan("4111111111111111")
@@ -80,12 +91,107 @@ class FraudControllerTest {
                                 .flagged(true)
                                 .responseCode("05")
                                 .timestamp(OffsetDateTime.parse("2026-01-10T09:00:00Z")) // ✅ OffsetDateTime
-                                .build()));
+                                .build()), null));
 
         mockMvc.perform(get("/api/fraud-flags"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().doesNotExist("X-Total-Truncated"))
                 .andExpect(jsonPath("$[0].pan").value("4111111111111111"))
                 .andExpect(jsonPath("$[0].flagged").value(true));
     }
+
+    @Test
+    void getFraudFlagsSignalsTruncationWithANextLink() throws Exception {
+        TransactionEntity flagged = TransactionEntity.builder()
+                .id(9L)
+                .pan("4111111111111111")
+                .amount(new BigDecimal("1500"))
+                .currency("ZAR")
+                .flagged(true)
+                .timestamp(OffsetDateTime.parse("2026-01-10T09:00:00Z"))
+                .build();
+        Mockito.when(fraudDetectionService.getFlagged())
+                .thenReturn(new FraudDetectionService.FlaggedPage(List.of(flagged), 9L));
+
+        mockMvc.perform(get("/api/fraud-flags"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Total-Truncated", "true"))
+                .andExpect(header().string("Link", "</api/fraud-flags/page?cursor=9&limit=1>; rel=\"next\""))
+                .andExpect(jsonPath("$[0].id").value(9));
+    }
+
+    @Test
+    void getFraudFlagsPageReturnsItemsAndCursor() throws Exception {
+        TransactionEntity flagged = TransactionEntity.builder()
+                .id(7L)
+                .pan("4111111111111111")
+                .amount(new BigDecimal("1500"))
+                .currency("ZAR")
+                .flagged(true)
+                .de44AdditionalResponseData("[\"HIGH_AMOUNT\"]")
+                .timestamp(OffsetDateTime.parse("2026-01-10T09:00:00Z"))
+                .build();
+        Mockito.when(fraudDetectionService.getFlaggedPage(5L, null, null, "HIGH_AMOUNT", 1))
+                .thenReturn(new FraudDetectionService.FlaggedPage(List.of(flagged), 7L));
+
+        mockMvc.perform(get("/api/fraud-flags/page")
+                .param("cursor", "5")
+                .param("rule", "HIGH_AMOUNT")
+                .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].id").value(7))
+                .andExpect(jsonPath("$.nextCursor").value(7));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void postBatchStreamsOneDecisionPerItemInOrder() throws Exception {
+        Mockito.when(batchScoringService.score(Mockito.any(), Mockito.any()))
+                .thenAnswer(invocation -> {
+                    Iterator<BatchScoringService.Item> items = invocation.getArgument(0);
+                    Consumer<BatchDecision> sink = invocation.getArgument(1);
+                    long i = 0;
+                    while (items.hasNext()) {
+                        BatchScoringService.Item item = items.next();
+                        if (item.tx() == null) {
+                            sink.accept(BatchDecision.error(i++, null, item.error()));
+                        } else {
+                            item.tx().setResponseCode("00");
+                            sink.accept(BatchDecision.of(i++, item.tx()));
+                        }
+                    }
+                    return i;
+                });
+
+        String ndjson = """
+                {"pan":"4111","amount":10,"currency":"ZAR","location":"X","category":"POS","timestamp":"2026-01-10T09:00:00Z","rrn":"A1"}
+                {"amount":10,"currency":"ZAR","location":"X","category":"POS","timestamp":"2026-01-10T09:00:00Z"}
+                """;
+
+        MvcResult started = mockMvc.perform(post("/api/transactions/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(ndjson))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"rrn\":\"A1\""));
+        assertTrue(lines[1].contains("\"index\":1"));
+        assertTrue(lines[1].contains("pan: pan is required"));
+    }
+
+    @Test
+    void streamingEndpointsRunWithTheConfiguredAsyncTimeout() throws Exception {
+        MvcResult started = mockMvc.perform(get("/api/fraud-flags/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertEquals(Duration.ofMinutes(30).toMillis(), started.getRequest().getAsyncContext().getTimeout());
+        mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+    }
 }
@@ -0,0 +1,100 @@
+package capitec.fraudengine.iso;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlatIsoCodecTest {
+
+    private final Iso87AsciiBBitmapCustomPackager packager = new Iso87AsciiBBitmapCustomPackager();
+    private final FlatIsoCodec codec = FlatIsoCodec.forPackager(packager);
+
+    private ISOMsg request() throws Exception {
+        ISOMsg m = new ISOMsg();
+        m.setPackager(packager);
+        m.setMTI("0200");
+        m.set(2, "4111111111111111");
+        m.set(3, "000000");
+        m.set(4, "000000012550");
+        m.set(11, "123456");
+        m.set(18, "5411");
+        m.set(22, "051");
+        m.set(25, "00");
+        m.set(32, "123456");
+        m.set(35, "4111111111111111=28121010000012300000");
+        m.set(37, "601812345678");
+        m.set(41, "TERM01");
+        m.set(42, "MERCHANT0000001");
+        m.set(43, "CAPITEC TEST STORE     CAPE TOWN    WCZA");
+        m.set(49, "710");
+        m.set(56, "0100123456");
+        m.set(127, "PRIVATE");
+        return m;
+    }
+
+    @Test
+    void decodesTheSameValuesAsJpos() throws Exception {
+        byte[] raw = request().pack();
+        ISOMsg jpos = new ISOMsg();
+        packager.unpack(jpos, raw);
+
+        // offset inside a larger buffer, as a slice of a pooled buffer would be
+        ByteBuffer buf = ByteBuffer.allocateDirect(raw.length + 5);
+        buf.position(3);
+        buf.put(raw);
+        buf.position(3).limit(3 + raw.length);
+        FlatIsoMessage flat = codec.decode(buf);
+
+        assertEquals(jpos.getMTI(), flat.getMTI());
+        assertEquals(jpos.getMaxField(), flat.getMaxField());
+        for (int f = 2; f <= 128; f++) {
+            assertEquals(jpos.hasField(f), flat.hasField(f), "DE" + f);
+            assertEquals(jpos.getString(f), flat.getString(f), "DE" + f);
+        }
+    }
+
+    @Test
+    void encodesTheResponseByPatchingTheRequest() throws Exception {
+        byte[] raw = request().pack();
+
+        FlatIsoMessage flat = codec.decode(ByteBuffer.wrap(raw));
+        flat.setResponseMTI();
+        flat.set(39, "05");
+        flat.set(44, "[\"HIGH_AMOUNT\"]");
+        flat.unset(56);
+        flat.unset(127);
+        byte[] patched = codec.encode(flat);
+
+        ISOMsg expected = new ISOMsg();
+        expected.setPackager(packager);
+        expected.unpack(raw);
+        expected.setResponseMTI();
+        expected.set(39, "05");
+        expected.set(44, "[\"HIGH_AMOUNT\"]");
+        expected.unset(56);
+        expected.unset(127);
+
+        // ISOMsg.pack() recalculates the bitmap; packager.pack() would keep the request's
+        assertEquals(ISOUtil.hexString(expected.pack()), ISOUtil.hexString(patched));
+        // only DE127 was above 64, so the secondary bitmap is gone
+        assertEquals(0, patched[4] & 0x80);
+    }
+
+    @Test
+    void rejectsTruncatedFramesAndOverlongEdits() throws Exception {
+        byte[] raw = request().pack();
+        byte[] truncated = new byte[raw.length - 10];
+        System.arraycopy(raw, 0, truncated, 0, truncated.length);
+        assertThrows(ISOException.class, () -> codec.decode(ByteBuffer.wrap(truncated)));
+
+        FlatIsoMessage flat = codec.decode(ByteBuffer.wrap(raw));
+        flat.set(44, "X".repeat(26)); // DE44 is LLVAR 25
+        assertThrows(ISOException.class, () -> codec.encode(flat));
+        assertEquals("X".repeat(26), flat.toISOMsg(packager).getString(44));
+    }
+}
@@ -0,0 +1,55 @@
+package capitec.fraudengine.iso;
+
+import capitec.fraudengine.model.TransactionEntity;
+import org.jpos.iso.ISOMsg;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IsoFieldMappingTest {
+
+    @Test
+    void mapsPresentFieldsAndDerivedValues() throws Exception {
+        ISOMsg m = new ISOMsg();
+        m.setMTI("0200");
+        m.set(2, "4111111111111111");
+        m.set(4, "000000012550");
+        m.set(7, "0118123045");
+        m.set(11, "123456");
+        m.set(41, "TERM0001");
+        m.set(43, "SOUTH-AFRICA");
+        m.set(49, "710");
+        m.set(127, "PRIVATE");
+
+        TransactionEntity tx = IsoFieldMapping.toEntity(m);
+
+        assertEquals("0200", tx.getMti());
+        assertEquals("4111111111111111", tx.getPan());
+        assertEquals(new BigDecimal("125.50"), tx.getAmount());
+        assertEquals("0118123045", tx.getDe7TransmissionDateTime());
+        assertEquals(1, tx.getTimestamp().getMonthValue());
+        assertEquals(18, tx.getTimestamp().getDayOfMonth());
+        assertEquals("123456", tx.getStan());
+        assertEquals("TERM0001", tx.getTerminalId());
+        assertEquals("SOUTH-AFRICA", tx.getLocation());
+        assertEquals("ZAR", tx.getCurrency());
+        assertEquals("PRIVATE", tx.getDe127AdditionalDataPrivate());
+        assertNull(tx.getRrn());
+        assertFalse(tx.isFlagged());
+    }
+
+    @Test
+    void fallsBackToTrack2PanAndZeroAmount() throws Exception {
+        ISOMsg m = new ISOMsg();
+        m.setMTI("0200");
+        m.set(35, "4111111111111111=28121010000012300000");
+
+        TransactionEntity tx = IsoFieldMapping.toEntity(m);
+
+        assertEquals("4111111111111111", tx.getPan());
+        assertEquals(BigDecimal.ZERO, tx.getAmount());
+        assertNotNull(tx.getTimestamp());
+    }
+}
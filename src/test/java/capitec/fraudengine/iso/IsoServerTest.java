@@ -0,0 +1,145 @@
+package capitec.fraudengine.iso;
+
+import org.awaitility.Awaitility;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.jpos.iso.channel.PostChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IsoServerTest {
+
+    private final ISOPackager packager = new Iso87AsciiBBitmapCustomPackager();
+    private IsoMessageHandler handler;
+    private IsoServer server;
+    private int port;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        handler = mock(IsoMessageHandler.class);
+        when(handler.handle(any(ISOMsg.class))).thenAnswer(inv -> {
+            ISOMsg m = (ISOMsg) ((ISOMsg) inv.getArgument(0)).clone();
+            m.setResponseMTI();
+            m.set(39, "00");
+            return m;
+        });
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null)
+            server.shutdown();
+    }
+
+    private PostChannel connect() throws IOException {
+        PostChannel client = new PostChannel("127.0.0.1", port, packager);
+        client.setTimeout(5000);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).ignoreExceptions().until(() -> {
+            client.connect();
+            return client.isConnected();
+        });
+        return client;
+    }
+
+    private ISOMsg request(String stan) throws Exception {
+        ISOMsg m = new ISOMsg();
+        m.setMTI("0200");
+        m.set(4, "000000012550");
+        m.set(11, stan);
+        m.set(41, "TERM0001");
+        return m;
+    }
+
+    @Test
+    void answersAPostChannelClientWithFramedResponses() throws Exception {
+        server = new IsoServer(port, packager, handler);
+        server.start();
+
+        PostChannel client = connect();
+        try {
+            for (String stan : new String[] { "000001", "000002" }) {
+                client.send(request(stan));
+                ISOMsg resp = client.receive();
+                assertEquals("0210", resp.getMTI());
+                assertEquals("00", resp.getString(39));
+                assertEquals(stan, resp.getString(11));
+            }
+        } finally {
+            client.disconnect();
+        }
+    }
+
+    @Test
+    void pipelinesRequestsWithinTheInFlightLimitAndDrainsOnClose() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(handler.handle(any(ISOMsg.class))).thenAnswer(inv -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                ISOMsg m = (ISOMsg) ((ISOMsg) inv.getArgument(0)).clone();
+                // later STANs finish first, so responses go back out of order
+                Thread.sleep(120 - 10L * Integer.parseInt(m.getString(11)));
+                m.setResponseMTI();
+                m.set(39, "00");
+                return m;
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+        server = new IsoServer(port, packager, handler, IsoServer.Mode.VIRTUAL, 3);
+        server.start();
+        connect().disconnect(); // wait until listening
+
+        Set<String> sent = new HashSet<>();
+        try (Socket s = new Socket("127.0.0.1", port)) {
+            s.setSoTimeout(5000);
+            OutputStream out = s.getOutputStream();
+            for (int i = 1; i <= 8; i++) {
+                String stan = String.format("%06d", i);
+                ISOMsg m = request(stan);
+                m.setPackager(packager);
+                byte[] body = m.pack();
+                out.write(body.length >> 8);
+                out.write(body.length);
+                out.write(body);
+                sent.add(stan);
+            }
+            out.flush();
+            s.shutdownOutput(); // the server sees EOF while requests are still in flight
+
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            Set<String> answered = new HashSet<>();
+            for (int i = 0; i < 8; i++) {
+                byte[] body = new byte[in.readUnsignedShort()];
+                in.readFully(body);
+                ISOMsg resp = new ISOMsg();
+                resp.setPackager(packager);
+                resp.unpack(body);
+                assertEquals("0210", resp.getMTI());
+                answered.add(resp.getString(11));
+            }
+            assertEquals(sent, answered);
+            assertEquals(-1, in.read()); // closed once drained
+        }
+        assertTrue(peak.get() <= 3, "peak in flight " + peak.get());
+        assertTrue(peak.get() > 1, "requests were not pipelined");
+    }
+}
@@ -0,0 +1,95 @@
+package capitec.fraudengine.iso;
+
+import org.jpos.iso.ISOMsg;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IsoTracerTest {
+
+    private final List<String> lines = new ArrayList<>();
+
+    private IsoTracer tracer(double sampleRate, Set<String> terminals, int bufferSize) {
+        return new IsoTracer(true, sampleRate, terminals, Set.of(), true, bufferSize, lines::add);
+    }
+
+    private static ISOMsg request(String terminal) throws Exception {
+        ISOMsg m = new ISOMsg();
+        m.setMTI("0200");
+        m.set(2, "4111111111111111");
+        m.set(4, "000000012550");
+        m.set(35, "4111111111111111=25121010000000000000");
+        m.set(41, terminal);
+        m.set(52, "0123456789ABCDEF");
+        return m;
+    }
+
+    @Test
+    void writesMaskedJsonLine() throws Exception {
+        IsoTracer tracer = tracer(1.0, Set.of(), 16);
+
+        assertTrue(tracer.traceRequest(request("TERM0001"), "/10.0.0.1:5000"));
+        tracer.drain();
+
+        assertEquals(1, lines.size());
+        String line = lines.get(0);
+        assertTrue(line.contains("\"event\":\"request\""), line);
+        assertTrue(line.contains("\"mti\":\"0200\""), line);
+        assertTrue(line.contains("\"2\":\"411111******1111\""), line);
+        assertTrue(line.contains("\"35\":\"411111******1111=<redacted>\""), line);
+        assertTrue(line.contains("\"52\":\"<redacted len=16>\""), line);
+        assertFalse(line.contains("4111111111111111"), line);
+    }
+
+    @Test
+    void filtersBySamplingAndTerminal() throws Exception {
+        IsoTracer none = tracer(0.0, Set.of(), 16);
+        assertFalse(none.traceRequest(request("TERM0001"), null));
+
+        IsoTracer filtered = tracer(1.0, Set.of("TERM0002"), 16);
+        assertFalse(filtered.traceRequest(request("TERM0001"), null));
+        assertTrue(filtered.traceRequest(request("TERM0002"), null));
+
+        IsoTracer off = IsoTracer.disabled();
+        assertFalse(off.traceRequest(request("TERM0001"), null));
+    }
+
+    @Test
+    void dropsWhenBufferIsFull() throws Exception {
+        IsoTracer tracer = tracer(1.0, Set.of(), 2);
+
+        for (int i = 0; i < 5; i++)
+            tracer.traceRequest(request("TERM0001"), null);
+        tracer.drain();
+
+        assertEquals(2, lines.size());
+        assertEquals(3L, tracer.status().get("dropped"));
+    }
+
+    @Test
+    void diagnosesArmedFramesFieldByField() throws Exception {
+        Iso87AsciiBBitmapCustomPackager packager = new Iso87AsciiBBitmapCustomPackager();
+        ISOMsg m = request("TERM0001");
+        m.unset(52); // binary in this packager
+        m.setPackager(packager);
+        byte[] raw = m.pack();
+
+        IsoTracer tracer = new IsoTracer(false, 1.0, Set.of(), Set.of(), true, 16, lines::add);
+        assertFalse(tracer.takeDiagnostic());
+        tracer.diagnoseNext(1);
+        assertTrue(tracer.takeDiagnostic());
+        assertFalse(tracer.takeDiagnostic());
+
+        tracer.diagnose(raw, packager, null, "requested");
+        tracer.drain();
+
+        String line = lines.get(0);
+        assertTrue(line.contains("\"event\":\"diagnostic\""), line);
+        assertTrue(line.contains("DE41: TERM0001"), line);
+        assertFalse(line.contains("4111111111111111"), line);
+    }
+}
@@ -0,0 +1,109 @@
+package capitec.fraudengine.iso;
+
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class NettyIsoServerTest {
+
+    private final ISOPackager packager = new Iso87AsciiBBitmapCustomPackager();
+    private IsoMessageHandler handler;
+    private NettyIsoServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        handler = mock(IsoMessageHandler.class);
+        when(handler.handle(any(ISOMsg.class))).thenAnswer(inv -> {
+            ISOMsg m = inv.getArgument(0);
+            m.setResponseMTI();
+            m.set(39, "00");
+            return m;
+        });
+        server = new NettyIsoServer(0, packager, handler, 1, 2, 16, 4, IsoMetrics.noop(), IsoTracer.disabled());
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.shutdown();
+    }
+
+    private byte[] frame(String stan) throws Exception {
+        ISOMsg m = new ISOMsg();
+        m.setPackager(packager);
+        m.setMTI("0200");
+        m.set(4, "000000012550");
+        m.set(11, stan);
+        m.set(41, "TERM0001");
+        byte[] body = m.pack();
+        byte[] framed = new byte[body.length + 2];
+        framed[0] = (byte) (body.length >> 8);
+        framed[1] = (byte) body.length;
+        System.arraycopy(body, 0, framed, 2, body.length);
+        return framed;
+    }
+
+    private ISOMsg read(DataInputStream in) throws Exception {
+        byte[] body = new byte[in.readUnsignedShort()];
+        in.readFully(body);
+        ISOMsg m = new ISOMsg();
+        m.setPackager(packager);
+        m.unpack(body);
+        return m;
+    }
+
+    @Test
+    void answersFramesSplitAndCoalescedOnTheWire() throws Exception {
+        byte[] first = frame("000001");
+        byte[] second = frame("000002");
+        byte[] third = frame("000003");
+
+        try (Socket s = new Socket("127.0.0.1", server.getPort())) {
+            s.setSoTimeout(5000);
+            OutputStream out = s.getOutputStream();
+            // first frame split across writes, the other two in one write
+            out.write(first, 0, 1);
+            out.flush();
+            out.write(first, 1, first.length - 1);
+            byte[] both = new byte[second.length + third.length];
+            System.arraycopy(second, 0, both, 0, second.length);
+            System.arraycopy(third, 0, both, second.length, third.length);
+            out.write(both);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            Set<String> stans = new HashSet<>();
+            for (int i = 0; i < 3; i++) {
+                ISOMsg resp = read(in);
+                assertEquals("0210", resp.getMTI());
+                assertEquals("00", resp.getString(39));
+                stans.add(resp.getString(11));
+            }
+            assertEquals(Set.of("000001", "000002", "000003"), stans);
+        }
+        verify(handler, times(3)).handle(any(ISOMsg.class));
+    }
+
+    @Test
+    void closesConnectionOnUnparseableFrame() throws Exception {
+        try (Socket s = new Socket("127.0.0.1", server.getPort())) {
+            s.setSoTimeout(5000);
+            s.getOutputStream().write(new byte[] { 0, 3, '0', '2', '0' });
+            s.getOutputStream().flush();
+            assertEquals(-1, s.getInputStream().read());
+        }
+        verifyNoInteractions(handler);
+    }
+}
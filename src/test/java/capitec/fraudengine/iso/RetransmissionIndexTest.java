@@ -0,0 +1,122 @@
+package capitec.fraudengine.iso;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.service.standin.StandInAuthorizer.Decision;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetransmissionIndexTest {
+
+    private static final Decision DECLINE = new Decision("05", "[\"HIGH_AMOUNT\"]", false);
+    private static final Decision APPROVE = new Decision("00", null, false);
+
+    private static TransactionEntity request(String mti, String stan) {
+        return TransactionEntity.builder()
+                .mti(mti)
+                .rrn("601812345678")
+                .stan(stan)
+                .terminalId("TERM0001")
+                .de7TransmissionDateTime("0118123045")
+                .build();
+    }
+
+    @Test
+    void repeatIsAnsweredWithTheFirstDecisionWithoutDecidingAgain() {
+        RetransmissionIndex index = RetransmissionIndex.of(60, 1000, 100);
+        AtomicInteger decided = new AtomicInteger();
+
+        assertEquals(DECLINE, index.decide(request("0200", "000001"), () -> {
+            decided.incrementAndGet();
+            return DECLINE;
+        }));
+        assertEquals(DECLINE, index.decide(request("0200", "000001"), () -> {
+            decided.incrementAndGet();
+            return APPROVE;
+        }));
+        assertEquals(DECLINE, index.decide(request("0201", "000001"), () -> APPROVE));
+        assertEquals(1, decided.get());
+    }
+
+    @Test
+    void differentStanOrMessageClassIsNotARepeat() {
+        RetransmissionIndex index = RetransmissionIndex.of(60, 1000, 100);
+        index.decide(request("0200", "000001"), () -> DECLINE);
+
+        assertEquals(APPROVE, index.decide(request("0200", "000002"), () -> APPROVE));
+        assertEquals(APPROVE, index.decide(request("0400", "000001"), () -> APPROVE));
+    }
+
+    @Test
+    void requestWithoutRrnOrStanIsAlwaysDecided() {
+        RetransmissionIndex index = RetransmissionIndex.of(60, 1000, 100);
+        TransactionEntity bare = TransactionEntity.builder().mti("0200").build();
+        index.decide(bare, () -> DECLINE);
+
+        assertEquals(APPROVE, index.decide(TransactionEntity.builder().mti("0200").build(), () -> APPROVE));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void failedFirstRequestIsForgotten() {
+        RetransmissionIndex index = RetransmissionIndex.of(60, 1000, 100);
+
+        assertThrows(IllegalStateException.class, () -> index.decide(request("0200", "000001"), () -> {
+            throw new IllegalStateException("db down");
+        }));
+        assertEquals(APPROVE, index.decide(request("0200", "000001"), () -> APPROVE));
+    }
+
+    @Test
+    void repeatWaitsForTheFirstRequestStillInFlight() throws Exception {
+        RetransmissionIndex index = RetransmissionIndex.of(60, 1000, 5000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Decision> first = CompletableFuture.supplyAsync(() ->
+                index.decide(request("0200", "000001"), () -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return DECLINE;
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Decision> repeat = CompletableFuture.supplyAsync(() ->
+                index.decide(request("0200", "000001"), () -> APPROVE));
+        release.countDown();
+
+        assertEquals(DECLINE, first.get(5, TimeUnit.SECONDS));
+        assertEquals(DECLINE, repeat.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void repeatGetsUnavailableWhenTheFirstRequestIsTooSlow() throws Exception {
+        RetransmissionIndex index = RetransmissionIndex.of(60, 1000, 20);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> index.decide(request("0200", "000001"), () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return DECLINE;
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        try {
+            assertEquals(RetransmissionIndex.UNAVAILABLE, index.decide(request("0200", "000001"), () -> APPROVE));
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -6,11 +6,14 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -23,6 +26,9 @@ class TransactionRepositoryTest {
         @Autowired
         TransactionRepository repo;
 
+        @Autowired
+        TestEntityManager em;
+
         @Test
         void savesAndFindsFlaggedTransactions() {
                 TransactionEntity t1 = TransactionEntity.builder()
@@ -39,4 +45,106 @@ class TransactionRepositoryTest {
                 List<TransactionEntity> flagged = repo.findByFlaggedTrue();
                 assertThat(flagged).hasSize(1);
         }
+
+        @Test
+        void assignsSequenceIdsToBatchInserts() {
+                List<TransactionEntity> rows = new java.util.ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                        rows.add(TransactionEntity.builder()
+                                        .pan("4111111111111111")
+                                        .amount(new BigDecimal("10"))
+                                        .currency("ZAR")
+                                        .timestamp(OffsetDateTime.now())
+                                        .build());
+                }
+
+                List<TransactionEntity> saved = repo.saveAll(rows);
+
+                assertThat(saved).extracting(TransactionEntity::getId).doesNotContainNull().doesNotHaveDuplicates();
+                assertThat(repo.count()).isEqualTo(3);
+        }
+
+        @Test
+        void storesColdDataElementsInDetailRecord() {
+                TransactionEntity tx = TransactionEntity.builder()
+                                .pan("4111111111111111")
+                                .amount(new BigDecimal("10"))
+                                .currency("ZAR")
+                                .timestamp(OffsetDateTime.now())
+                                .de3ProcessingCode("000000")
+                                .de127AdditionalDataPrivate("PRIVATE")
+                                .build();
+
+                Long id = repo.saveAndFlush(tx).getId();
+                em.clear();
+
+                TransactionEntity hot = repo.findById(id).orElseThrow();
+                assertThat(hot.getDe3ProcessingCode()).isEqualTo("000000");
+                assertThat(hot.getDe127AdditionalDataPrivate()).isNull();
+
+                TransactionEntity full = hot.withDetail();
+                assertThat(full.getDe127AdditionalDataPrivate()).isEqualTo("PRIVATE");
+                assertThat(full.getDe35Track2Data()).isNull();
+        }
+
+        @Test
+        void skipsDetailRecordWhenNoColdDataElements() {
+                TransactionEntity tx = repo.saveAndFlush(TransactionEntity.builder()
+                                .pan("4111111111111111")
+                                .amount(new BigDecimal("10"))
+                                .currency("ZAR")
+                                .timestamp(OffsetDateTime.now())
+                                .build());
+
+                assertThat(tx.getDetail()).isNull();
+        }
+
+        @Test
+        void keepsCommonDataElementsOnTheRowWithoutADetailRecord() {
+                TransactionEntity tx = repo.saveAndFlush(TransactionEntity.builder()
+                                .pan("4111111111111111")
+                                .amount(new BigDecimal("10"))
+                                .currency("ZAR")
+                                .timestamp(OffsetDateTime.now())
+                                .de3ProcessingCode("000000")
+                                .de7TransmissionDateTime("0118101530")
+                                .de22PosEntryMode("051")
+                                .de32AcquiringInstIdCode("123456")
+                                .build());
+                em.clear();
+
+                assertThat(tx.getDetail()).isNull();
+                TransactionEntity read = repo.findById(tx.getId()).orElseThrow();
+                assertThat(read.getDe7TransmissionDateTime()).isEqualTo("0118101530");
+                assertThat(read.getDe22PosEntryMode()).isEqualTo("051");
+        }
+
+        @Test
+        void pagesFlaggedByIdCursorAndRule() {
+                OffsetDateTime now = OffsetDateTime.now();
+                for (String rules : List.of("[\"HIGH_AMOUNT\"]", "[\"VELOCITY_ACCOUNT\"]", "[\"HIGH_AMOUNT\",\"LOCATION_RISK\"]")) {
+                        repo.save(TransactionEntity.builder()
+                                        .pan("4111111111111111")
+                                        .amount(new BigDecimal("10"))
+                                        .currency("ZAR")
+                                        .timestamp(now)
+                                        .flagged(true)
+                                        .de44AdditionalResponseData(rules)
+                                        .build());
+                }
+                OffsetDateTime from = now.minusMinutes(1);
+                OffsetDateTime to = now.plusMinutes(1);
+
+                List<TransactionEntity> first = repo.findFlaggedAfter(0L, from, to, "%\"HIGH\\_AMOUNT\"%", Limit.of(1));
+                assertThat(first).hasSize(1);
+
+                List<TransactionEntity> rest = repo.findFlaggedAfter(first.get(0).getId(), from, to,
+                                "%\"HIGH\\_AMOUNT\"%", Limit.of(10));
+                assertThat(rest).hasSize(1);
+                assertThat(rest.get(0).getDe44AdditionalResponseData()).contains("LOCATION_RISK");
+
+                try (Stream<TransactionEntity> all = repo.streamFlagged(from, to, "%")) {
+                        assertThat(all.count()).isEqualTo(3);
+                }
+        }
 }
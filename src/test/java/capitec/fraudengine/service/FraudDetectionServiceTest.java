@@ -1,16 +1,19 @@
 
 package capitec.fraudengine.service;
 
+import capitec.fraudengine.TestUtil;
 import capitec.fraudengine.model.TransactionEntity;
 import capitec.fraudengine.repository.TransactionRepository;
 import capitec.fraudengine.service.rules.FraudRule;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Limit;
 
 import java.math.BigDecimal;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 class FraudDetectionServiceTest {
@@ -94,4 +97,57 @@ class FraudDetectionServiceTest {
         assertFalse(saved.isFlagged());
         assertEquals("00", saved.getResponseCode()); // approved
     }
+
+    @Test
+    void processBatchEvaluatesEveryRowAndSavesThemTogether() {
+        TransactionRepository repo = mock(TransactionRepository.class);
+
+        FraudRule bigAmount = new FraudRule() {
+            @Override
+            public boolean isFraudulent(TransactionEntity tx) {
+                return tx.getAmount().compareTo(new BigDecimal("1000")) > 0;
+            }
+
+            @Override
+            public String getName() {
+                return "BIG";
+            }
+        };
+
+        FraudDetectionService service = new FraudDetectionService(repo, List.of(bigAmount));
+        List<TransactionEntity> seen = new java.util.ArrayList<>();
+        service.setObservers(List.of(seen::add));
+
+        TransactionEntity small = TransactionEntity.builder().pan("4111").amount(new BigDecimal("10")).currency("ZAR").build();
+        TransactionEntity big = TransactionEntity.builder().pan("4111").amount(new BigDecimal("5000")).currency("ZAR").build();
+
+        service.processBatch(List.of(small, big));
+
+        verify(repo).saveAll(List.of(small, big));
+        verify(repo, never()).save(any());
+        assertEquals("00", small.getResponseCode());
+        assertEquals("05", big.getResponseCode());
+        assertEquals("[\"BIG\"]", big.getDe44AdditionalResponseData());
+        assertEquals(List.of(small, big), seen);
+    }
+
+    @Test
+    void getFlaggedSetsACursorOnlyWhenRowsWereLeftOut() {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        FraudDetectionService service = new FraudDetectionService(repo, List.<FraudRule>of());
+        TestUtil.inject(service, "maxFlagResults", 2);
+        TransactionEntity a = TransactionEntity.builder().id(1L).flagged(true).build();
+        TransactionEntity b = TransactionEntity.builder().id(2L).flagged(true).build();
+        TransactionEntity c = TransactionEntity.builder().id(3L).flagged(true).build();
+
+        when(repo.findFlaggedAfter(eq(0L), any(), any(), eq("%"), eq(Limit.of(3)))).thenReturn(List.of(a, b));
+        FraudDetectionService.FlaggedPage all = service.getFlagged();
+        assertEquals(List.of(a, b), all.items());
+        assertNull(all.nextCursor());
+
+        when(repo.findFlaggedAfter(eq(0L), any(), any(), eq("%"), eq(Limit.of(3)))).thenReturn(List.of(a, b, c));
+        FraudDetectionService.FlaggedPage truncated = service.getFlagged();
+        assertEquals(List.of(a, b), truncated.items());
+        assertEquals(2L, truncated.nextCursor());
+    }
 }
@@ -0,0 +1,80 @@
+package capitec.fraudengine.service.aggregate;
+
+import capitec.fraudengine.model.TransactionEntity;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregateStoreTest {
+
+    private static final OffsetDateTime NOW = OffsetDateTime.parse("2026-01-10T09:30:00Z");
+
+    private static TransactionEntity tx(String pan, String terminal, String merchant, String amount,
+            OffsetDateTime ts) {
+        return TransactionEntity.builder()
+                .pan(pan)
+                .terminalId(terminal)
+                .merchantId(merchant)
+                .de32AcquiringInstIdCode("123456")
+                .amount(new BigDecimal(amount))
+                .timestamp(ts)
+                .build();
+    }
+
+    @Test
+    void aggregatesCountAmountAndCardsPerDimensionInsideTheWindow() {
+        AggregateStore store = new AggregateStore(60, 30, 30, 6);
+
+        store.onProcessed(tx("4111", "T1", "M1", "10.00", NOW.minusMinutes(20))); // outside 15 minutes
+        store.onProcessed(tx("4111", "T1", "M1", "25.50", NOW.minusMinutes(5)));
+        store.onProcessed(tx("5222", "T1", "M1", "4.50", NOW));
+        store.onProcessed(tx("5222", "T2 ", "M1", "1.00", NOW));
+
+        AggregateStore.Stats t1 = store.stats(Dimension.TERMINAL, "T1", NOW, 15);
+        assertEquals(2, t1.count());
+        assertEquals(new BigDecimal("30.00"), t1.amount());
+        assertEquals(2, t1.distinctPans());
+
+        assertEquals(1, store.stats(Dimension.TERMINAL, "T2", NOW, 15).count());
+        assertEquals(3, store.stats(Dimension.MERCHANT, "M1", NOW, 15).count());
+        assertEquals(4, store.stats(Dimension.ACQUIRER, "123456", NOW, 30).count());
+        assertSame(AggregateStore.Stats.EMPTY, store.stats(Dimension.TERMINAL, "T9", NOW, 15));
+        assertEquals(2, store.size(Dimension.TERMINAL));
+    }
+
+    @Test
+    void distinctCardEstimateStaysCloseForABusyTerminal() {
+        AggregateStore store = new AggregateStore(60, 30, 30, 6);
+        for (int i = 0; i < 5000; i++) {
+            String pan = "4111" + String.format("%012d", i % 400);
+            store.onProcessed(tx(pan, "T1", "M1", "1.00", NOW.minusSeconds(i % 600)));
+        }
+
+        AggregateStore.Stats stats = store.stats(Dimension.TERMINAL, "T1", NOW, 15);
+        assertEquals(5000, stats.count());
+        assertEquals(400, stats.distinctPans(), 400 * 0.3);
+    }
+
+    @Test
+    void smallDistinctCountsAreExact() {
+        AggregateStore store = new AggregateStore(60, 30, 30, 6);
+        for (int i = 0; i < 3; i++)
+            store.onProcessed(tx("4111", "T1", "M1", "1.00", NOW));
+
+        assertEquals(1, store.stats(Dimension.TERMINAL, "T1", NOW, 15).distinctPans());
+    }
+
+    @Test
+    void evictsKeysNotRecordedForIdleMinutes() {
+        AggregateStore store = new AggregateStore(60, 30, 0, 6);
+        store.onProcessed(tx("4111", "T1", "M1", "1.00", NOW));
+
+        store.evictIdle();
+
+        assertEquals(0, store.size(Dimension.TERMINAL));
+        assertEquals(0, store.size(Dimension.MERCHANT));
+    }
+}
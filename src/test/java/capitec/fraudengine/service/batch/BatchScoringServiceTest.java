@@ -0,0 +1,108 @@
+package capitec.fraudengine.service.batch;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.model.dto.BatchDecision;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.FraudDetectionService;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BatchScoringServiceTest {
+
+    private static TransactionEntity tx(String pan, int n) {
+        return TransactionEntity.builder().pan(pan).rrn(pan + "-" + n).amount(new BigDecimal(n)).build();
+    }
+
+    @Test
+    void scoresInParallelButKeepsInputOrderAndPerPanOrder() {
+        FraudDetectionService fraud = mock(FraudDetectionService.class);
+        TransactionRepository repo = mock(TransactionRepository.class);
+        Map<String, List<String>> seenPerPan = Collections.synchronizedMap(new HashMap<>());
+        doAnswer(inv -> {
+            TransactionEntity t = inv.getArgument(0);
+            seenPerPan.computeIfAbsent(t.getPan(), k -> Collections.synchronizedList(new ArrayList<>())).add(t.getRrn());
+            t.setFlagged(t.getAmount().intValue() % 2 == 0);
+            t.setResponseCode(t.isFlagged() ? "05" : "00");
+            return null;
+        }).when(fraud).score(any());
+        BatchScoringService service = new BatchScoringService(fraud, repo, mock(PlatformTransactionManager.class), 4, 7);
+
+        List<BatchScoringService.Item> items = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            if (i == 12)
+                items.add(BatchScoringService.Item.invalid("pan: pan is required"));
+            else
+                items.add(BatchScoringService.Item.of(tx("P" + (i % 5), i)));
+        }
+        List<BatchDecision> out = new ArrayList<>();
+        long read = service.score(items.iterator(), out::add);
+
+        assertEquals(30, read);
+        assertEquals(30, out.size());
+        for (int i = 0; i < 30; i++) {
+            BatchDecision d = out.get(i);
+            assertEquals(i, d.index());
+            if (i == 12) {
+                assertEquals("pan: pan is required", d.error());
+            } else {
+                assertEquals("P" + (i % 5) + "-" + i, d.rrn());
+                assertEquals(i % 2 == 0 ? "05" : "00", d.responseCode());
+            }
+        }
+        List<String> p0 = Stream.of(0, 5, 10, 15, 20, 25).map(i -> "P0-" + i).toList();
+        assertEquals(p0, seenPerPan.get("P0"));
+        verify(repo, times(9)).saveAll(anyList()); // 5 chunks of 7; a card repeats within 4 of them
+        service.shutdown();
+    }
+
+    @Test
+    void reportsEveryItemOfAChunkThatCouldNotBeSaved() {
+        FraudDetectionService fraud = mock(FraudDetectionService.class);
+        TransactionRepository repo = mock(TransactionRepository.class);
+        when(repo.saveAll(anyList())).thenThrow(new IllegalStateException("db down"));
+        BatchScoringService service = new BatchScoringService(fraud, repo, mock(PlatformTransactionManager.class), 2, 10);
+
+        List<BatchDecision> out = new ArrayList<>();
+        service.score(List.of(BatchScoringService.Item.of(tx("P1", 1)), BatchScoringService.Item.of(tx("P2", 2)))
+                .iterator(), out::add);
+
+        assertEquals(2, out.size());
+        assertEquals("not saved: db down", out.get(1).error());
+        assertEquals("P2-2", out.get(1).rrn());
+        verify(fraud, never()).committed(any());
+        service.shutdown();
+    }
+
+    @Test
+    void observersSeeARowOnlyAfterItsStepCommitsAndBeforeTheCardsNextRow() {
+        FraudDetectionService fraud = mock(FraudDetectionService.class);
+        TransactionRepository repo = mock(TransactionRepository.class);
+        BatchScoringService service = new BatchScoringService(fraud, repo, mock(PlatformTransactionManager.class), 2, 10);
+        TransactionEntity first = tx("P1", 1);
+        TransactionEntity other = tx("P2", 2);
+        TransactionEntity second = tx("P1", 3);
+
+        service.score(Stream.of(first, other, second).map(BatchScoringService.Item::of).iterator(), d -> { });
+
+        InOrder order = inOrder(fraud, repo);
+        order.verify(repo).saveAll(List.of(first, other));
+        order.verify(fraud).committed(first);
+        order.verify(fraud).score(second);
+        order.verify(repo).saveAll(List.of(second));
+        order.verify(fraud).committed(second);
+        service.shutdown();
+    }
+}
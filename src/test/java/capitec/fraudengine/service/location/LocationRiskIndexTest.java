@@ -0,0 +1,84 @@
+package capitec.fraudengine.service.location;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocationRiskIndexTest {
+
+    private static final String CAPE_TOWN = "CAPITEC TEST STORE     CAPE TOWN    WCZA";
+
+    private static CardAcceptorLocation de43(String name, String city, String country) {
+        return CardAcceptorLocation.parse(String.format("%-23s%-13s%-2s%-2s", name, city, "XX", country));
+    }
+
+    @Test
+    void parsesFixedLayoutAndKeepsFreeTextAsName() {
+        CardAcceptorLocation loc = CardAcceptorLocation.parse(CAPE_TOWN);
+        assertEquals("CAPITEC TEST STORE", loc.name());
+        assertEquals("CAPE TOWN", loc.city());
+        assertEquals("WC", loc.region());
+        assertEquals("ZA", loc.country());
+
+        CardAcceptorLocation free = CardAcceptorLocation.parse(" risky-country ");
+        assertEquals("RISKY-COUNTRY", free.name());
+        assertNull(free.city());
+        assertNull(free.country());
+    }
+
+    @Test
+    void tierIsTheHighestOfCountryCityAndMerchant() {
+        LocationRiskIndex index = LocationRiskIndex.of(List.of(
+                "# kind,value,tier",
+                "country,KP,HIGH",
+                "country,NG,LOW",
+                "city,NG/LAGOS,MEDIUM",
+                "city,*/CASINO CITY,MEDIUM",
+                "merchant,LUCKY,LOW",
+                "merchant,LUCKY CASINO,HIGH"));
+
+        assertEquals(RiskTier.HIGH, index.tier(de43("SHOP", "PYONGYANG", "KP")));
+        assertEquals(RiskTier.MEDIUM, index.tier(de43("SHOP", "LAGOS", "NG")));
+        assertEquals(RiskTier.LOW, index.tier(de43("SHOP", "ABUJA", "NG")));
+        assertEquals(RiskTier.MEDIUM, index.tier(de43("SHOP", "CASINO CITY", "ZA")));
+        assertEquals(RiskTier.HIGH, index.tier(de43("LUCKY CASINO 42", "DURBAN", "ZA")));
+        assertEquals(RiskTier.LOW, index.tier(de43("LUCKY STAR", "DURBAN", "ZA")));
+        assertEquals(RiskTier.NONE, index.tier(de43("LUCK", "DURBAN", "ZA")));
+        assertEquals(RiskTier.NONE, index.tier(CardAcceptorLocation.parse(CAPE_TOWN)));
+        assertEquals(RiskTier.NONE, index.tier(CardAcceptorLocation.parse(null)));
+        assertEquals(6, index.size());
+    }
+
+    @Test
+    void longestPrefixWinsAmongManyMerchants() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++)
+            lines.add("merchant,STORE " + i + ",LOW");
+        lines.add("merchant,STORE 123,HIGH");
+        lines.add("merchant,STORE 12,MEDIUM");
+        LocationRiskIndex index = LocationRiskIndex.of(lines);
+
+        // "STORE 1234" matches STORE 1, STORE 12, STORE 123 and STORE 1234; the longest decides
+        assertEquals(RiskTier.LOW, index.tier(de43("STORE 1234", "DURBAN", "ZA")));
+        assertEquals(RiskTier.HIGH, index.tier(de43("STORE 123X", "DURBAN", "ZA")));
+        assertEquals(RiskTier.MEDIUM, index.tier(de43("STORE 12X", "DURBAN", "ZA")));
+        assertEquals(RiskTier.NONE, index.tier(de43("STORE X", "DURBAN", "ZA")));
+    }
+
+    @Test
+    void rejectsMalformedLinesWithTheirNumber(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("risk.csv");
+        Files.writeString(file, "country,KP,HIGH\ncity,LAGOS,HIGH\n");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> LocationRiskIndex.load(file));
+        assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> LocationRiskIndex.of(List.of("country,KP,SEVERE")));
+        assertThrows(IllegalArgumentException.class, () -> LocationRiskIndex.of(List.of("country,KPX,HIGH")));
+    }
+}
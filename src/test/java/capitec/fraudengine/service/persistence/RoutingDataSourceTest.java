@@ -0,0 +1,62 @@
+package capitec.fraudengine.service.persistence;
+
+import capitec.fraudengine.service.persistence.RoutingDataSource.Route;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RoutingDataSourceTest {
+
+    @AfterEach
+    void clearTransactionState() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    void picksThePoolFromTheReportingScopeAndTheReadOnlyFlag() {
+        assertEquals(Route.AUTH_WRITE, RoutingDataSource.currentRoute());
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertEquals(Route.AUTH_READ, RoutingDataSource.currentRoute());
+
+        // reporting wins over the read-only flag, also when nested
+        assertEquals(Route.REPORTING, RoutingDataSource.reporting(RoutingDataSource::currentRoute));
+        assertEquals(Route.REPORTING, RoutingDataSource.reporting(
+                () -> RoutingDataSource.reporting(RoutingDataSource::currentRoute)));
+
+        assertEquals(Route.AUTH_READ, RoutingDataSource.currentRoute());
+    }
+
+    @Test
+    void borrowsFromTheSelectedPool() throws SQLException {
+        DataSource write = mock(DataSource.class);
+        DataSource read = mock(DataSource.class);
+        DataSource reporting = mock(DataSource.class);
+        Connection reportingConnection = mock(Connection.class);
+        when(reporting.getConnection()).thenReturn(reportingConnection);
+        RoutingDataSource routing = new RoutingDataSource();
+        routing.setTargetDataSources(Map.of(Route.AUTH_WRITE, write, Route.AUTH_READ, read,
+                Route.REPORTING, reporting));
+        routing.afterPropertiesSet();
+
+        RoutingDataSource.reporting(() -> {
+            try {
+                assertSame(reportingConnection, routing.getConnection());
+            } catch (SQLException e) {
+                fail(e);
+            }
+        });
+        routing.getConnection();
+
+        verify(write).getConnection();
+        verifyNoInteractions(read);
+    }
+}
@@ -0,0 +1,189 @@
+
+package capitec.fraudengine.service.persistence;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class WriteBehindQueueTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+    private WriteBehindQueue queue(TransactionRepository repo, Path spill, int capacity) {
+        return new WriteBehindQueue(repo, mock(PlatformTransactionManager.class), mapper,
+                new SimpleMeterRegistry(), capacity, 100, 10, 5, spill.toString(), false, 2);
+    }
+
+    private static TransactionEntity tx(String pan) {
+        return TransactionEntity.builder()
+                .pan(pan)
+                .amount(new BigDecimal("10.00"))
+                .currency("ZAR")
+                .timestamp(OffsetDateTime.parse("2026-01-10T09:00:00Z"))
+                .build();
+    }
+
+    @Test
+    void flushesQueuedRowsInBackgroundAndDropsCommittedSegments() throws Exception {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        Path spill = dir.resolve("wb.ndjson");
+        WriteBehindQueue wb = queue(repo, spill, 100);
+        wb.start();
+        try {
+            for (int i = 0; i < 7; i++)
+                assertTrue(wb.offer(tx("4111" + i)));
+
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+                verify(repo, atLeastOnce()).saveAll(anyList());
+                assertEquals(0, wb.depth());
+                assertEquals("4 0", Files.readString(dir.resolve("wb.ndjson.checkpoint")));
+                // 7 rows over segments of 2: only the segment holding the last row is kept
+                for (int n = 1; n <= 3; n++)
+                    assertFalse(Files.exists(dir.resolve("wb.ndjson." + n)));
+                assertTrue(Files.exists(dir.resolve("wb.ndjson.4")));
+            });
+        } finally {
+            wb.stop();
+        }
+    }
+
+    @Test
+    void queuesASnapshotOfTheOfferedRow() throws Exception {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        WriteBehindQueue wb = queue(repo, dir.resolve("wb.ndjson"), 100);
+        wb.start();
+        try {
+            TransactionEntity tx = tx("4111");
+            assertTrue(wb.offer(tx));
+            tx.setPan("5222");
+
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+                    verify(repo).saveAll(argThat((List<TransactionEntity> rows) -> rows.size() == 1
+                            && "4111".equals(rows.get(0).getPan()))));
+            assertNull(tx.getId());
+        } finally {
+            wb.stop();
+        }
+    }
+
+    @Test
+    void deadLettersRowsTheDatabaseRejectsAndSavesTheRest() throws Exception {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        List<String> saved = new CopyOnWriteArrayList<>();
+        when(repo.saveAll(anyList())).thenAnswer(inv -> {
+            List<TransactionEntity> rows = inv.getArgument(0);
+            if (rows.stream().anyMatch(t -> "0000".equals(t.getPan())))
+                throw new IllegalStateException("constraint violation");
+            rows.forEach(t -> saved.add(t.getPan()));
+            return rows;
+        });
+        Path spill = dir.resolve("wb.ndjson");
+        WriteBehindQueue wb = queue(repo, spill, 100);
+        wb.start();
+        try {
+            assertTrue(wb.offer(tx("4111")));
+            assertTrue(wb.offer(tx("0000")));
+            assertTrue(wb.offer(tx("5222")));
+
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+                assertTrue(saved.containsAll(List.of("4111", "5222")));
+                assertEquals(1, Files.readAllLines(dir.resolve("wb.ndjson.dead")).size());
+                assertTrue(Files.readString(dir.resolve("wb.ndjson.dead")).contains("\"0000\""));
+            });
+            assertFalse(saved.contains("0000"));
+        } finally {
+            wb.stop();
+        }
+    }
+
+    @Test
+    void replaysJournalLeftByPreviousRun() throws Exception {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        Path spill = dir.resolve("wb.ndjson");
+        Files.writeString(spill, mapper.writeValueAsString(tx("4111")) + "\n{torn");
+
+        WriteBehindQueue wb = queue(repo, spill, 100);
+        wb.start();
+        try {
+            verify(repo).saveAll(argThat((List<TransactionEntity> rows) -> rows.size() == 1
+                    && "4111".equals(rows.get(0).getPan())));
+            assertFalse(Files.exists(spill));
+        } finally {
+            wb.stop();
+        }
+    }
+
+    @Test
+    void replayDeadLettersRowsTheDatabaseRejects() throws Exception {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        List<String> saved = new CopyOnWriteArrayList<>();
+        when(repo.saveAll(anyList())).thenAnswer(inv -> {
+            List<TransactionEntity> rows = inv.getArgument(0);
+            if (rows.stream().anyMatch(t -> "0000".equals(t.getPan())))
+                throw new IllegalStateException("constraint violation");
+            rows.forEach(t -> saved.add(t.getPan()));
+            return rows;
+        });
+        Path spill = dir.resolve("wb.ndjson");
+        Files.writeString(dir.resolve("wb.ndjson.1"), mapper.writeValueAsString(tx("4111")) + "\n"
+                + mapper.writeValueAsString(tx("0000")) + "\n" + mapper.writeValueAsString(tx("5222")) + "\n");
+
+        WriteBehindQueue wb = queue(repo, spill, 100);
+        wb.start();
+        try {
+            assertEquals(List.of("4111", "5222"), saved);
+            assertTrue(Files.readString(dir.resolve("wb.ndjson.dead")).contains("\"0000\""));
+            assertFalse(Files.exists(dir.resolve("wb.ndjson.1")));
+        } finally {
+            wb.stop();
+        }
+    }
+
+    @Test
+    void replaySkipsRowsUpToTheCheckpoint() throws Exception {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        Path spill = dir.resolve("wb.ndjson");
+        Files.writeString(dir.resolve("wb.ndjson.3"), mapper.writeValueAsString(tx("4111")) + "\n");
+        Files.writeString(dir.resolve("wb.ndjson.4"), mapper.writeValueAsString(tx("5222")) + "\n"
+                + mapper.writeValueAsString(tx("6333")) + "\n");
+        Files.writeString(dir.resolve("wb.ndjson.checkpoint"), "4 0");
+
+        WriteBehindQueue wb = queue(repo, spill, 100);
+        wb.start();
+        try {
+            verify(repo).saveAll(argThat((List<TransactionEntity> rows) -> rows.size() == 1
+                    && "6333".equals(rows.get(0).getPan())));
+            verifyNoMoreInteractions(repo);
+            assertFalse(Files.exists(dir.resolve("wb.ndjson.3")));
+            assertFalse(Files.exists(dir.resolve("wb.ndjson.4")));
+        } finally {
+            wb.stop();
+        }
+    }
+
+    @Test
+    void refusesWhenNotRunning() {
+        WriteBehindQueue wb = queue(mock(TransactionRepository.class), dir.resolve("wb.ndjson"), 1);
+        assertFalse(wb.offer(tx("4111")));
+    }
+}
@@ -0,0 +1,166 @@
+package capitec.fraudengine.service.profile;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.velocity.VelocityCounterStore;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PanProfileCacheTest {
+
+    private static TransactionRepository.PanHistory row(OffsetDateTime ts, String amount, String location) {
+        return row(null, ts, amount, location);
+    }
+
+    private static TransactionRepository.PanHistory row(Long id, OffsetDateTime ts, String amount, String location) {
+        return new TransactionRepository.PanHistory() {
+            public Long getId() {
+                return id;
+            }
+
+            public OffsetDateTime getTimestamp() {
+                return ts;
+            }
+
+            public BigDecimal getAmount() {
+                return new BigDecimal(amount);
+            }
+
+            public String getLocation() {
+                return location;
+            }
+
+            public String getTerminalId() {
+                return "TERM01";
+            }
+        };
+    }
+
+    @Test
+    void loadsOnceFromHistoryThenUpdatesInMemory() {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        when(repo.findPanHistorySince(eq("4111"), any())).thenReturn(List.of(
+                row(now.minusMinutes(2), "300.00", "CAPE TOWN"),
+                row(now.minusMinutes(5), "100.00", "DURBAN")));
+        PanProfileCache cache = new PanProfileCache(repo, 100, 60, 60, 15);
+
+        PanProfile p = cache.get("4111");
+        assertEquals(now.minusMinutes(2), p.getLastSeen());
+        assertEquals("CAPE TOWN", p.getLastLocation());
+        assertEquals(2, p.getAmountCount());
+        assertEquals(200.0, p.getAmountMean(), 1e-9);
+        assertEquals(2, p.count(now.minusMinutes(15), now));
+
+        cache.onProcessed(TransactionEntity.builder().pan("4111").timestamp(now)
+                .amount(new BigDecimal("500.00")).location("JOHANNESBURG").terminalId("TERM02").build());
+
+        assertSame(p, cache.get("4111"));
+        assertEquals(now, p.getLastSeen());
+        assertEquals("TERM02", p.getLastTerminalId());
+        assertEquals(new BigDecimal("500.00"), p.getAmountMax());
+        assertEquals(300.0, p.getAmountMean(), 1e-9);
+        assertEquals(200.0, p.getAmountStdDev(), 1e-9);
+        assertEquals(3, p.count(now.minusMinutes(15), now));
+        verify(repo, times(1)).findPanHistorySince(eq("4111"), any());
+    }
+
+    @Test
+    void usesNewestRowWhenNothingIsInsideTheHorizon() {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        OffsetDateTime lastWeek = OffsetDateTime.now(ZoneOffset.UTC).minusDays(7);
+        when(repo.findPanHistorySince(anyString(), any())).thenReturn(List.of());
+        when(repo.findTop1ByPanOrderByTimestampDesc("4111")).thenReturn(Optional.of(
+                TransactionEntity.builder().pan("4111").timestamp(lastWeek).location("DURBAN").build()));
+        PanProfileCache cache = new PanProfileCache(repo, 100, 60, 60, 15);
+
+        PanProfile p = cache.get("4111");
+        assertEquals(lastWeek, p.getLastSeen());
+        assertEquals("DURBAN", p.getLastLocation());
+        assertEquals(0, p.getAmountCount());
+        assertEquals(0, p.count(lastWeek.minusMinutes(15), lastWeek));
+    }
+
+    @Test
+    void ignoresUncachedPansAndFailedLoads() {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        when(repo.findPanHistorySince(anyString(), any())).thenThrow(new IllegalStateException("db down"));
+        PanProfileCache cache = new PanProfileCache(repo, 100, 60, 60, 15);
+
+        cache.onProcessed(TransactionEntity.builder().pan("4111").timestamp(OffsetDateTime.now()).build());
+        assertEquals(0, cache.size());
+        assertNull(cache.get("4111"));
+        assertNull(cache.get(null));
+    }
+
+    @Test
+    void readsCountsFromLocalVelocityCountersInsteadOfKeepingItsOwn() {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        when(repo.findPanHistorySince(eq("4111"), any())).thenReturn(List.of(
+                row(2L, now.minusMinutes(2), "300.00", "CAPE TOWN"),
+                row(1L, now.minusMinutes(5), "100.00", "DURBAN")));
+        VelocityCounterStore counters = new VelocityCounterStore(60, 30, 30);
+        counters.record("4111", now.minusMinutes(20));
+        counters.record("4111", now.minusMinutes(5));
+        counters.record("4111", now.minusMinutes(2));
+        PanProfileCache cache = new PanProfileCache(repo, counters, 100, 60, 60, 15);
+
+        PanProfile p = cache.get("4111");
+        assertEquals(30, cache.getHorizonMinutes());
+        assertEquals(3, p.count(now.minusMinutes(30), now));
+
+        TransactionEntity tx = TransactionEntity.builder().id(3L).pan("4111").timestamp(now)
+                .amount(new BigDecimal("500.00")).build();
+        counters.onProcessed(tx);
+        cache.onProcessed(tx);
+
+        assertEquals(4, p.count(now.minusMinutes(30), now));
+        assertEquals(3, p.getAmountCount());
+    }
+
+    @Test
+    void foldsTransactionsProcessedDuringALoadInOnce() throws Exception {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        CountDownLatch querying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(repo.findPanHistorySince(eq("4111"), any())).thenAnswer(inv -> {
+            querying.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(row(1L, now.minusMinutes(2), "100.00", "DURBAN"));
+        });
+        PanProfileCache cache = new PanProfileCache(repo, 100, 60, 60, 15);
+
+        CompletableFuture<PanProfile> loaded = CompletableFuture.supplyAsync(() -> cache.get("4111"));
+        assertTrue(querying.await(5, TimeUnit.SECONDS));
+        // row 1 committed before the load read it, row 2 after
+        cache.onProcessed(TransactionEntity.builder().id(1L).pan("4111").timestamp(now.minusMinutes(2))
+                .amount(new BigDecimal("100.00")).location("DURBAN").build());
+        cache.onProcessed(TransactionEntity.builder().id(2L).pan("4111").timestamp(now)
+                .amount(new BigDecimal("300.00")).location("CAPE TOWN").build());
+        release.countDown();
+
+        PanProfile p = loaded.get(5, TimeUnit.SECONDS);
+        assertEquals(2, p.getAmountCount());
+        assertEquals(200.0, p.getAmountMean(), 1e-9);
+        assertEquals(2, p.count(now.minusMinutes(15), now));
+        assertEquals("CAPE TOWN", p.getLastLocation());
+
+        cache.onProcessed(TransactionEntity.builder().id(3L).pan("4111").timestamp(now)
+                .amount(new BigDecimal("200.00")).build());
+        assertEquals(3, p.getAmountCount());
+    }
+}
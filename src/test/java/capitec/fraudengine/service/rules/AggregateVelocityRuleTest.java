@@ -0,0 +1,59 @@
+package capitec.fraudengine.service.rules;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.service.aggregate.AggregateStore;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregateVelocityRuleTest {
+
+    private static final OffsetDateTime NOW = OffsetDateTime.parse("2026-01-10T09:30:00Z");
+
+    private static TransactionEntity tx(String pan, String amount) {
+        return TransactionEntity.builder()
+                .pan(pan)
+                .terminalId("T1")
+                .merchantId("M1")
+                .amount(new BigDecimal(amount))
+                .timestamp(NOW)
+                .build();
+    }
+
+    @Test
+    void flagsATerminalOnceItHasSeenTooManyCards() {
+        AggregateStore store = new AggregateStore(60, 30, 30, 6);
+        TerminalVelocityRule rule = new TerminalVelocityRule(store, true, 10, 0, 3, BigDecimal.ZERO);
+
+        store.onProcessed(tx("4111", "1.00"));
+        store.onProcessed(tx("4111", "1.00"));
+        store.onProcessed(tx("5222", "1.00"));
+        assertFalse(rule.isFraudulent(tx("6333", "1.00")));
+
+        store.onProcessed(tx("6333", "1.00"));
+        assertTrue(rule.isFraudulent(tx("7444", "1.00")));
+    }
+
+    @Test
+    void flagsAMerchantWhenThisAmountTakesTheTotalOverTheLimit() {
+        AggregateStore store = new AggregateStore(60, 30, 30, 6);
+        MerchantVelocityRule rule = new MerchantVelocityRule(store, true, 30, 0, 0, new BigDecimal("100.00"));
+
+        store.onProcessed(tx("4111", "60.00"));
+        assertFalse(rule.isFraudulent(tx("5222", "40.00")));
+        assertTrue(rule.isFraudulent(tx("5222", "40.01")));
+    }
+
+    @Test
+    void neverHitsWhenDisabledOrWithoutAStore() {
+        AggregateStore store = new AggregateStore(60, 30, 30, 6);
+        store.onProcessed(tx("4111", "1.00"));
+
+        assertFalse(new TerminalVelocityRule(store, false, 10, 1, 0, BigDecimal.ZERO).isFraudulent(tx("4111", "1.00")));
+        assertFalse(new TerminalVelocityRule(null, true, 10, 1, 0, BigDecimal.ZERO).isFraudulent(tx("4111", "1.00")));
+        assertTrue(new TerminalVelocityRule(store, true, 10, 1, 0, BigDecimal.ZERO).isFraudulent(tx("4111", "1.00")));
+    }
+}
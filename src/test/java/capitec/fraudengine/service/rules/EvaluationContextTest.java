@@ -0,0 +1,74 @@
+package capitec.fraudengine.service.rules;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.profile.PanProfileCache;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class EvaluationContextTest {
+
+    @Test
+    void computesEachFeatureOncePerEvaluation() {
+        AtomicInteger computed = new AtomicInteger();
+        EvaluationContext.Feature<String> nullFeature = EvaluationContext.Feature.of("nothing", c -> {
+            computed.incrementAndGet();
+            return null;
+        });
+        EvaluationContext ctx = EvaluationContext.of(TransactionEntity.builder()
+                .amount(new BigDecimal("1234.5"))
+                .location("  cape town ")
+                .build());
+
+        assertEquals(123450L, ctx.amountMinor());
+        assertNull(EvaluationContext.of(TransactionEntity.builder()
+                .amount(new BigDecimal("1000.004")).build()).amountMinor());
+        assertNull(EvaluationContext.of(TransactionEntity.builder()
+                .amount(new BigDecimal("1e30")).build()).amountMinor());
+        assertEquals("CAPE TOWN", ctx.normalizedLocation());
+        assertNull(ctx.get(nullFeature));
+        assertNull(ctx.get(nullFeature));
+        assertEquals(1, computed.get());
+    }
+
+    @Test
+    void sharesOneProfileLoadAndCountAcrossRules() {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        when(repo.findPanHistorySince(anyString(), any())).thenReturn(List.of());
+        PanProfileCache profiles = new PanProfileCache(repo, 100, 60, 60, 15);
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        EvaluationContext ctx = new EvaluationContext(
+                TransactionEntity.builder().pan("4111").timestamp(now).build(), profiles);
+
+        assertEquals(0, ctx.recentCount(5));
+        assertEquals(0, ctx.recentCount(5));
+        assertSame(ctx.profile(), ctx.profile());
+        assertEquals(-1, ctx.recentCount(30)); // beyond the cache horizon
+        verify(repo, times(1)).findPanHistorySince(eq("4111"), any());
+    }
+
+    @Test
+    void doesNotLoadProfilesOnceExpired() throws Exception {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        PanProfileCache profiles = new PanProfileCache(repo, 100, 60, 60, 15);
+        EvaluationContext ctx = new EvaluationContext(
+                TransactionEntity.builder().pan("4111").timestamp(OffsetDateTime.now()).build(), profiles, 1);
+
+        Thread.sleep(1);
+        assertTrue(ctx.expired());
+        assertTrue(ctx.remainingNanos() <= 0);
+        assertNull(ctx.profile());
+        verifyNoInteractions(repo);
+
+        assertFalse(EvaluationContext.of(TransactionEntity.builder().build()).expired());
+    }
+}
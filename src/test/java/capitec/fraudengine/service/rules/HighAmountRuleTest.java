@@ -48,4 +48,33 @@ class HighAmountRuleTest {
 
         assertFalse(rule.isFraudulent(TransactionEntity.builder().currency("ZAR").build()));
     }
+
+    @Test
+    void comparesInCentsAndFollowsThresholdChanges() {
+        HighAmountRule rule = new HighAmountRule();
+        TestUtil.inject(rule, "enabled", true);
+        TestUtil.inject(rule, "threshold", new BigDecimal("1000"));
+
+        EvaluationContext ctx = EvaluationContext.of(TransactionEntity.builder()
+                .amount(new BigDecimal("1000.01"))
+                .build());
+        assertTrue(rule.evaluate(ctx));
+
+        TestUtil.inject(rule, "threshold", new BigDecimal("1000.01"));
+        assertFalse(rule.evaluate(ctx));
+    }
+
+    @Test
+    void comparesFractionsOfACentAndHugeAmountsWithoutRounding() {
+        HighAmountRule rule = new HighAmountRule();
+        TestUtil.inject(rule, "enabled", true);
+        TestUtil.inject(rule, "threshold", new BigDecimal("1000"));
+
+        assertTrue(rule.isFraudulent(TransactionEntity.builder().amount(new BigDecimal("1000.004")).build()));
+        assertFalse(rule.isFraudulent(TransactionEntity.builder().amount(new BigDecimal("999.999")).build()));
+        assertTrue(rule.isFraudulent(TransactionEntity.builder().amount(new BigDecimal("1e30")).build()));
+
+        TestUtil.inject(rule, "threshold", new BigDecimal("1e30"));
+        assertFalse(rule.isFraudulent(TransactionEntity.builder().amount(new BigDecimal("5000")).build()));
+    }
 }
@@ -3,8 +3,11 @@ package capitec.fraudengine.service.rules;
 
 import capitec.fraudengine.TestUtil;
 import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.service.location.LocationRiskIndex;
+import capitec.fraudengine.service.location.RiskTier;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -39,4 +42,47 @@ class LocationRuleTest {
         TestUtil.inject(rule, "enabled", false);
         assertFalse(rule.isFraudulent(TransactionEntity.builder().location("RISKY-COUNTRY").build()));
     }
+
+    @Test
+    void comparesTheNormalizedLocation() {
+        LocationRule rule = new LocationRule();
+        TestUtil.inject(rule, "enabled", true);
+        TestUtil.inject(rule, "risky", Set.of("RISKY-COUNTRY"));
+        TestUtil.inject(rule, "whitelist", Set.of());
+
+        assertTrue(rule.isFraudulent(TransactionEntity.builder().location("  risky-country  ").build()));
+    }
+
+    @Test
+    void normalizesTheConfiguredLocationsAtStartup() throws Exception {
+        LocationRule rule = new LocationRule();
+        TestUtil.inject(rule, "enabled", true);
+        TestUtil.inject(rule, "risky", Set.of("Iran", " risky-country ", "south-africa"));
+        TestUtil.inject(rule, "whitelist", Set.of("South-Africa", " "));
+        rule.loadIndex();
+
+        assertTrue(rule.isFraudulent(TransactionEntity.builder().location(" iran ").build()));
+        assertTrue(rule.isFraudulent(TransactionEntity.builder().location("RISKY-COUNTRY").build()));
+        assertFalse(rule.isFraudulent(TransactionEntity.builder().location("SOUTH-AFRICA").build()));
+    }
+
+    @Test
+    void flagsLocationsAtOrAboveTheMinimumTierUnlessWhitelisted() {
+        LocationRule rule = new LocationRule();
+        TestUtil.inject(rule, "enabled", true);
+        TestUtil.inject(rule, "risky", Set.of());
+        TestUtil.inject(rule, "whitelist", Set.of("LUCKY CASINO           DURBAN       KZZA"));
+        TestUtil.inject(rule, "index", LocationRiskIndex.of(List.of("country,KP,HIGH", "merchant,LUCKY,MEDIUM")));
+
+        TransactionEntity kp = TransactionEntity.builder().location("SHOP                   PYONGYANG    XXKP").build();
+        TransactionEntity lucky = TransactionEntity.builder().location("LUCKY STAR             DURBAN       KZZA").build();
+        assertTrue(rule.isFraudulent(kp));
+        assertEquals(RiskTier.MEDIUM, rule.riskTier(EvaluationContext.of(lucky)));
+        assertFalse(rule.isFraudulent(lucky));
+
+        TestUtil.inject(rule, "minTier", RiskTier.MEDIUM);
+        assertTrue(rule.isFraudulent(lucky));
+        assertFalse(rule.isFraudulent(TransactionEntity.builder()
+                .location("LUCKY CASINO           DURBAN       KZZA").build()));
+    }
 }
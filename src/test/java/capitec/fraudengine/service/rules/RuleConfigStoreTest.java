@@ -0,0 +1,85 @@
+package capitec.fraudengine.service.rules;
+
+import capitec.fraudengine.TestUtil;
+import capitec.fraudengine.model.TransactionEntity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleConfigStoreTest {
+
+    private static RuleConfig initial() {
+        return new RuleConfig(1, true, new BigDecimal("1000"), true, Set.of("UNKNOWN"), Set.of(), 15, 5,
+                "test", Instant.now());
+    }
+
+    @Test
+    void appliesValidatedChangesAndRollsBack() {
+        RuleConfigStore store = new RuleConfigStore(initial(), 10);
+
+        RuleConfig v2 = store.apply(Map.of(
+                RuleConfig.HIGH_AMOUNT_THRESHOLD, "500",
+                RuleConfig.LOCATION_RISKY, " risky-country ,unknown"), "test");
+        assertEquals(2, v2.version());
+        assertEquals(new BigDecimal("500"), store.current().highAmountThreshold());
+        assertEquals(Set.of("RISKY-COUNTRY", "UNKNOWN"), store.current().riskyLocations());
+        assertEquals(5, store.current().velocityMaxCount());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> store.apply(Map.of(
+                RuleConfig.VELOCITY_MAX_COUNT, "0",
+                "fraud.rules.velocity.typo", "1"), "test"));
+        assertTrue(e.getMessage().contains("maxCount must be >= 1"));
+        assertTrue(e.getMessage().contains("unknown key"));
+        assertSame(v2, store.current());
+
+        RuleConfig v3 = store.rollback();
+        assertEquals(3, v3.version());
+        assertEquals(new BigDecimal("1000"), v3.highAmountThreshold());
+        assertThrows(IllegalStateException.class, store::rollback);
+    }
+
+    @Test
+    void reloadsTheFileWhenItChanges(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("rules.properties");
+        Files.writeString(file, RuleConfig.VELOCITY_MAX_COUNT + "=3\n");
+        RuleConfigStore store = new RuleConfigStore(initial(), 10);
+        TestUtil.inject(store, "file", file.toString());
+
+        store.reloadIfChanged();
+        assertEquals(3, store.current().velocityMaxCount());
+        store.reloadIfChanged();
+        assertEquals(2, store.current().version());
+
+        Files.writeString(file, RuleConfig.VELOCITY_MAX_COUNT + "=oops\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        store.reloadIfChanged();
+        assertEquals(3, store.current().velocityMaxCount());
+        assertEquals(List.of(1L), store.history().stream().map(RuleConfig::version).toList());
+    }
+
+    @Test
+    void engineHandsEveryRuleTheSnapshotInForce() {
+        HighAmountRule rule = new HighAmountRule();
+        TestUtil.inject(rule, "enabled", true);
+        TestUtil.inject(rule, "threshold", new BigDecimal("1000"));
+        RuleConfigStore store = new RuleConfigStore(initial(), 10);
+        RuleEngine engine = new RuleEngine(List.of(rule), "full-explain", 0, null, null, store);
+        TransactionEntity tx = TransactionEntity.builder().amount(new BigDecimal("750")).build();
+
+        assertFalse(engine.evaluate(tx).flagged());
+        store.apply(Map.of(RuleConfig.HIGH_AMOUNT_THRESHOLD, "500"), "test");
+        assertTrue(engine.evaluate(tx).flagged());
+        store.apply(Map.of(RuleConfig.HIGH_AMOUNT_ENABLED, "false"), "test");
+        assertFalse(engine.evaluate(tx).flagged());
+    }
+}
@@ -0,0 +1,143 @@
+package capitec.fraudengine.service.rules;
+
+import capitec.fraudengine.model.TransactionEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleEngineTest {
+
+    private static FraudRule rule(String name, RuleCost cost, boolean result, AtomicInteger calls) {
+        return new FraudRule() {
+            @Override
+            public boolean isFraudulent(TransactionEntity tx) {
+                calls.incrementAndGet();
+                return result;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public RuleCost cost() {
+                return cost;
+            }
+        };
+    }
+
+    @Test
+    void runsInMemoryRulesBeforeIoRules_andExplainsAllHits() {
+        AtomicInteger ioCalls = new AtomicInteger();
+        AtomicInteger memCalls = new AtomicInteger();
+        RuleEngine engine = new RuleEngine(List.of(
+                rule("IO_HIT", RuleCost.IO, true, ioCalls),
+                rule("MEM_HIT", RuleCost.IN_MEMORY, true, memCalls)));
+
+        RuleEngine.Result result = engine.evaluate(TransactionEntity.builder().build());
+
+        assertEquals(List.of("MEM_HIT", "IO_HIT"), result.hits());
+        assertEquals(0, result.skipped());
+        assertEquals(1, ioCalls.get());
+        assertEquals("MEM_HIT", engine.stats().get(0).rule());
+    }
+
+    @Test
+    void declineOnFirstHitSkipsIoRulesAfterAHit() {
+        AtomicInteger ioCalls = new AtomicInteger();
+        AtomicInteger memCalls = new AtomicInteger();
+        RuleEngine engine = new RuleEngine(List.of(
+                rule("IO", RuleCost.IO, true, ioCalls),
+                rule("MEM_HIT", RuleCost.IN_MEMORY, true, memCalls),
+                rule("MEM_MISS", RuleCost.IN_MEMORY, false, memCalls)),
+                "decline-on-first-hit", 0);
+
+        RuleEngine.Result result = engine.evaluate(TransactionEntity.builder().build());
+
+        assertEquals(List.of("MEM_HIT"), result.hits());
+        assertEquals(1, result.skipped());
+        assertEquals(0, ioCalls.get());
+        assertEquals(2, memCalls.get());
+    }
+
+    @Test
+    void failingRuleCountsAsNoHit() {
+        FraudRule boom = new FraudRule() {
+            @Override
+            public boolean isFraudulent(TransactionEntity tx) {
+                throw new IllegalStateException("boom");
+            }
+
+            @Override
+            public String getName() {
+                return "BOOM";
+            }
+        };
+        RuleEngine engine = new RuleEngine(List.of(boom));
+
+        assertFalse(engine.evaluate(TransactionEntity.builder().build()).flagged());
+        assertEquals(1, engine.stats().get(0).errors());
+    }
+
+    @Test
+    void rerankMovesFrequentHittersForwardWithinCostClass() {
+        AtomicInteger calls = new AtomicInteger();
+        RuleEngine engine = new RuleEngine(List.of(
+                rule("NEVER", RuleCost.IN_MEMORY, false, calls),
+                rule("ALWAYS", RuleCost.IN_MEMORY, true, calls),
+                rule("IO", RuleCost.IO, true, calls)),
+                "full-explain", 500);
+
+        for (int i = 0; i < 500; i++)
+            engine.evaluate(TransactionEntity.builder().build());
+
+        List<RuleEngine.RuleStats> stats = engine.stats();
+        assertEquals("ALWAYS", stats.get(0).rule());
+        assertEquals("IO", stats.get(2).rule());
+        assertEquals(500, stats.get(0).hits());
+    }
+
+    @Test
+    void recordsPerRuleTimersAndHitCounters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AtomicInteger calls = new AtomicInteger();
+        RuleEngine engine = new RuleEngine(List.of(
+                rule("HIT", RuleCost.IN_MEMORY, true, calls),
+                rule("MISS", RuleCost.IN_MEMORY, false, calls)),
+                "full-explain", 0, registry);
+
+        engine.evaluate(TransactionEntity.builder().build());
+        engine.evaluate(TransactionEntity.builder().build());
+
+        assertEquals(2, registry.get("fraud.rule.evaluation").tag("rule", "MISS").timer().count());
+        assertEquals(2.0, registry.get("fraud.rule.hits").tag("rule", "HIT").counter().count());
+        assertEquals(0.0, registry.get("fraud.rule.hits").tag("rule", "MISS").counter().count());
+        assertEquals(2, registry.get("fraud.stage").tag("stage", "rules").timer().count());
+    }
+
+    @Test
+    void skipsIoRulesOnceTheDeadlineHasPassed() {
+        AtomicInteger ioCalls = new AtomicInteger();
+        AtomicInteger memCalls = new AtomicInteger();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RuleEngine engine = new RuleEngine(List.of(
+                rule("IO", RuleCost.IO, true, ioCalls),
+                rule("MEM", RuleCost.IN_MEMORY, false, memCalls)),
+                "full-explain", 0, registry);
+
+        RuleEngine.Result result = engine.evaluate(TransactionEntity.builder().build(), 1);
+
+        assertFalse(result.flagged());
+        assertEquals(1, result.skipped());
+        assertEquals(0, ioCalls.get());
+        assertEquals(1, memCalls.get());
+        assertEquals(1.0, registry.get("fraud.rules.deadline.exceeded").counter().count());
+
+        assertTrue(engine.evaluate(TransactionEntity.builder().build()).flagged());
+    }
+}
@@ -4,9 +4,14 @@ package capitec.fraudengine.service.rules;
 import capitec.fraudengine.TestUtil;
 import capitec.fraudengine.model.TransactionEntity;
 import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.profile.PanProfileCache;
+import capitec.fraudengine.service.velocity.VelocityCounterStore;
+import capitec.fraudengine.service.velocity.VelocityCounters;
 import org.junit.jupiter.api.Test;
 
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -41,4 +46,94 @@ class VelocityRuleTest {
         assertFalse(rule.isFraudulent(TransactionEntity.builder().pan(null).timestamp(OffsetDateTime.now()).build()));
         assertFalse(rule.isFraudulent(TransactionEntity.builder().pan("4111").timestamp(null).build()));
     }
+
+    @Test
+    void usesInMemoryStoreInsteadOfRepository() {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        VelocityCounterStore store = new VelocityCounterStore(60, 15, 15);
+        VelocityRule rule = new VelocityRule(repo, store);
+        TestUtil.inject(rule, "windowMinutes", 5);
+        TestUtil.inject(rule, "maxCount", 2);
+
+        OffsetDateTime now = OffsetDateTime.now();
+        TransactionEntity tx = TransactionEntity.builder()
+                .pan("4111111111111111")
+                .timestamp(now)
+                .build();
+
+        store.record("4111111111111111", now.minusMinutes(1));
+        assertFalse(rule.isFraudulent(tx));
+
+        store.record("4111111111111111", now);
+        assertTrue(rule.isFraudulent(tx));
+
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    void countsInTheRepositoryWhenSharedCountersCannotAnswer() {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        VelocityCounters counters = mock(VelocityCounters.class);
+        when(counters.getHorizonMinutes()).thenReturn(15);
+        when(counters.remote()).thenReturn(true);
+        when(counters.count(anyString(), any(), any())).thenReturn(-1L);
+        when(repo.countByPanAndTimestampBetween(anyString(), any(), any())).thenReturn(4L);
+        VelocityRule rule = new VelocityRule(repo, counters);
+        TestUtil.inject(rule, "windowMinutes", 5);
+        TestUtil.inject(rule, "maxCount", 3);
+
+        assertTrue(rule.isFraudulent(TransactionEntity.builder()
+                .pan("4111111111111111")
+                .timestamp(OffsetDateTime.now())
+                .build()));
+        assertEquals(RuleCost.IO, rule.cost());
+    }
+
+    @Test
+    void countsThroughTheCachedProfileWhenItCoversTheWindow() {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        when(repo.findPanHistorySince(anyString(), any())).thenReturn(List.of());
+        VelocityCounterStore store = new VelocityCounterStore(60, 15, 15);
+        PanProfileCache profiles = new PanProfileCache(repo, store, 100, 60, 60, 15);
+        VelocityRule rule = new VelocityRule(repo, store);
+        TestUtil.inject(rule, "windowMinutes", 5);
+        TestUtil.inject(rule, "maxCount", 2);
+
+        TransactionEntity tx = TransactionEntity.builder()
+                .pan("4111111111111111")
+                .timestamp(now)
+                .build();
+
+        store.record("4111111111111111", now.minusMinutes(1));
+        assertFalse(rule.evaluate(new EvaluationContext(tx, profiles)));
+
+        store.onProcessed(tx);
+        profiles.onProcessed(tx);
+        assertTrue(rule.evaluate(new EvaluationContext(tx, profiles)));
+
+        verify(repo, never()).countByPanAndTimestampBetween(anyString(), any(), any());
+    }
+
+    @Test
+    void countsInTheRepositoryWithoutCountersEvenWithACachedProfile() {
+        TransactionRepository repo = mock(TransactionRepository.class);
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        when(repo.findPanHistorySince(anyString(), any())).thenReturn(List.of());
+        when(repo.countByPanAndTimestampBetween(anyString(), any(), any())).thenReturn(2L);
+        PanProfileCache profiles = new PanProfileCache(repo, 100, 60, 60, 15);
+        VelocityRule rule = new VelocityRule(repo);
+        TestUtil.inject(rule, "windowMinutes", 5);
+        TestUtil.inject(rule, "maxCount", 2);
+
+        TransactionEntity tx = TransactionEntity.builder()
+                .pan("4111111111111111")
+                .timestamp(now)
+                .build();
+        // this node's profile has seen nothing; other instances have
+        profiles.get("4111111111111111");
+
+        assertTrue(rule.evaluate(new EvaluationContext(tx, profiles)));
+        verify(repo).countByPanAndTimestampBetween(eq("4111111111111111"), any(), any());
+    }
 }
@@ -0,0 +1,69 @@
+package capitec.fraudengine.service.standin;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+
+    private static final long TARGET = 50_000_000L;
+
+    @Test
+    void refusesOnceLimitIsReached() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, TARGET, 0.5);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.release(1_000_000L, true);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.inFlight());
+    }
+
+    @Test
+    void slowOrFailedSamplesCutTheLimitDownToMin() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 2, 10, TARGET, 0.5);
+
+        limiter.tryAcquire();
+        limiter.release(TARGET + 1, true);
+        assertEquals(4, limiter.limit());
+
+        limiter.tryAcquire();
+        limiter.release(1_000_000L, false);
+        assertEquals(2, limiter.limit());
+
+        limiter.tryAcquire();
+        limiter.release(TARGET * 10, true);
+        assertEquals(2, limiter.limit());
+    }
+
+    @Test
+    void fastSamplesUnderLoadGrowTheLimitAdditively() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 3, TARGET, 0.5);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.tryAcquire();
+            limiter.tryAcquire();
+            limiter.release(1_000_000L, true);
+            limiter.release(1_000_000L, true);
+        }
+        assertEquals(3, limiter.limit());
+    }
+
+    @Test
+    void idleSamplesDoNotGrowTheLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 100, TARGET, 0.5);
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.release(1_000_000L, true);
+        }
+        assertEquals(8, limiter.limit());
+    }
+
+    @Test
+    void rejectsInconsistentLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimiter(1, 2, 10, TARGET, 0.5));
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimiter(4, 2, 10, TARGET, 1.0));
+    }
+}
@@ -0,0 +1,149 @@
+package capitec.fraudengine.service.standin;
+
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.service.FraudDetectionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class StandInAuthorizerTest {
+
+    private final FraudDetectionService fraudService = mock(FraudDetectionService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private StandInAuthorizer authorizer;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (authorizer != null)
+            authorizer.shutdown();
+    }
+
+    private StandInAuthorizer authorizer(int limit) {
+        return authorizer(limit, 100);
+    }
+
+    private StandInAuthorizer authorizer(int limit, int shedQueue) {
+        authorizer = new StandInAuthorizer(fraudService, registry, 50, "01", limit, 1, limit, 1000, 0.5, shedQueue);
+        return authorizer;
+    }
+
+    private static TransactionEntity tx() {
+        return TransactionEntity.builder().pan("4111111111111111").stan("000001")
+                .amount(new BigDecimal("2500.00")).build();
+    }
+
+    /** process() that decides (flagged), runs the hook, then saves; {@code blockBefore} picks which part stalls. */
+    @SuppressWarnings("unchecked")
+    private void processStallingBeforeDecision(boolean blockBefore) {
+        when(fraudService.process(any(), anyLong(), any())).thenAnswer(inv -> {
+            TransactionEntity t = inv.getArgument(0);
+            if (blockBefore)
+                release.await();
+            t.setFlagged(true);
+            t.setResponseCode("05");
+            t.setDe44AdditionalResponseData("[\"HIGH_AMOUNT\"]");
+            ((Consumer<TransactionEntity>) inv.getArgument(2)).accept(t);
+            if (!blockBefore)
+                release.await();
+            return t;
+        });
+    }
+
+    @Test
+    void answersTheRulesDecisionWithinBudget() {
+        when(fraudService.process(any(), anyLong(), any())).thenAnswer(inv -> {
+            TransactionEntity t = inv.getArgument(0);
+            t.setFlagged(true);
+            t.setDe44AdditionalResponseData("[\"HIGH_AMOUNT\"]");
+            return t;
+        });
+
+        StandInAuthorizer.Decision d = authorizer(4).authorize(tx());
+
+        assertEquals("05", d.responseCode());
+        assertEquals("[\"HIGH_AMOUNT\"]", d.de44());
+        assertFalse(d.standIn());
+    }
+
+    @Test
+    void slowRulesAreAnsweredByStandInAndTheRowRecordsIt() {
+        processStallingBeforeDecision(true);
+        TransactionEntity tx = tx();
+
+        StandInAuthorizer.Decision d = authorizer(4).authorize(tx);
+
+        assertEquals("01", d.responseCode());
+        assertNull(d.de44());
+        assertTrue(d.standIn());
+
+        release.countDown();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+            assertEquals("01", tx.getResponseCode());
+            assertEquals("STAND-IN TIMEOUT [\"HIGH_AMOUNT\"]", tx.getDe44AdditionalResponseData());
+        });
+        assertTrue(tx.isFlagged());
+    }
+
+    @Test
+    void slowSaveStillAnswersTheRulesDecision() {
+        processStallingBeforeDecision(false);
+        TransactionEntity tx = tx();
+
+        StandInAuthorizer.Decision d = authorizer(4).authorize(tx);
+
+        assertEquals("05", d.responseCode());
+        assertFalse(d.standIn());
+        assertEquals("05", tx.getResponseCode());
+    }
+
+    @Test
+    void shedsWithoutEvaluatingWhenTheLimitIsFull() {
+        processStallingBeforeDecision(true);
+        StandInAuthorizer a = authorizer(1);
+        a.authorize(tx()); // stalls in the background, holding the only slot
+
+        TransactionEntity shed = tx();
+        StandInAuthorizer.Decision d = a.authorize(shed);
+
+        assertEquals("01", d.responseCode());
+        assertTrue(d.standIn());
+        verify(fraudService, timeout(5000)).record(shed);
+        assertEquals("STAND-IN SHED", shed.getDe44AdditionalResponseData());
+        verify(fraudService, times(1)).process(any(), anyLong(), any());
+    }
+
+    @Test
+    void shedSavesStayBoundedWhileTheDatabaseStalls() throws Exception {
+        processStallingBeforeDecision(true);
+        CountDownLatch saveStarted = new CountDownLatch(1);
+        doAnswer(inv -> {
+            saveStarted.countDown();
+            release.await();
+            return inv.getArgument(0);
+        }).when(fraudService).record(any());
+        StandInAuthorizer a = authorizer(1, 2);
+        a.authorize(tx()); // holds the only slot
+
+        a.authorize(tx());
+        assertTrue(saveStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 9; i++)
+            assertTrue(a.authorize(tx()).standIn());
+
+        // one save stalled, two queued, the rest not recorded
+        verify(fraudService, times(1)).record(any());
+        assertEquals(7, registry.counter("fraud.standin.shed.unrecorded").count());
+    }
+}
@@ -0,0 +1,52 @@
+
+package capitec.fraudengine.service.velocity;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VelocityCounterStoreTest {
+
+    @Test
+    void countsTransactionsInsideTheWindowOnly() {
+        VelocityCounterStore store = new VelocityCounterStore(60, 15, 15);
+        OffsetDateTime now = OffsetDateTime.parse("2026-01-10T09:30:00Z");
+
+        store.record("4111", now.minusMinutes(20)); // outside a 15 minute window
+        store.record("4111", now.minusMinutes(10));
+        store.record("4111", now.minusMinutes(1));
+        store.record("4111", now);
+        store.record("5222", now);
+
+        assertEquals(3, store.count("4111", now.minusMinutes(15), now));
+        assertEquals(1, store.count("5222", now.minusMinutes(15), now));
+        assertEquals(0, store.count("6333", now.minusMinutes(15), now));
+    }
+
+    @Test
+    void reusesBucketsOnceTheyFallOutOfTheHorizon() {
+        VelocityCounterStore store = new VelocityCounterStore(60, 5, 5);
+        OffsetDateTime t0 = OffsetDateTime.parse("2026-01-10T09:00:00Z");
+
+        for (int i = 0; i < 4; i++)
+            store.record("4111", t0);
+
+        OffsetDateTime later = t0.plusHours(1);
+        store.record("4111", later);
+
+        assertEquals(1, store.count("4111", later.minusMinutes(5), later));
+        assertEquals(0, store.count("4111", t0.minusMinutes(5), t0));
+    }
+
+    @Test
+    void evictsIdlePans() {
+        VelocityCounterStore store = new VelocityCounterStore(60, 5, 0);
+        store.record("4111", OffsetDateTime.now());
+        assertEquals(1, store.size());
+
+        store.evictIdle();
+        assertEquals(0, store.size());
+    }
+}
@@ -0,0 +1,170 @@
+package capitec.fraudengine.service.velocity.cluster;
+
+import capitec.fraudengine.TestUtil;
+import capitec.fraudengine.model.TransactionEntity;
+import capitec.fraudengine.repository.TransactionRepository;
+import capitec.fraudengine.service.profile.PanProfileCache;
+import capitec.fraudengine.service.rules.EvaluationContext;
+import capitec.fraudengine.service.rules.VelocityRule;
+import capitec.fraudengine.service.velocity.VelocityCounterStore;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/** Three nodes in one JVM on loopback ports, as a local multi-node cluster. */
+class ClusterVelocityCountersTest {
+
+    private static final OffsetDateTime NOW = OffsetDateTime.parse("2026-01-10T09:30:00Z");
+
+    private final List<ClusterVelocityCounters> nodes = new ArrayList<>();
+
+    @AfterEach
+    void stopNodes() {
+        nodes.forEach(ClusterVelocityCounters::stop);
+    }
+
+    private List<ClusterNode> startCluster(int size, int replicas) throws IOException {
+        return startCluster(size, replicas, 60_000);
+    }
+
+    private List<ClusterNode> startCluster(int size, int replicas, long retryMillis) throws IOException {
+        List<ClusterNode> members = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+            members.add(new ClusterNode("node" + i, "127.0.0.1", freePort()));
+        for (ClusterNode m : members)
+            nodes.add(startNode(m.id(), members, replicas, retryMillis));
+        return members;
+    }
+
+    private static ClusterVelocityCounters startNode(String id, List<ClusterNode> members, int replicas,
+            long retryMillis) {
+        ClusterVelocityCounters node = new ClusterVelocityCounters(id, members, replicas, 200, retryMillis,
+                new VelocityCounterStore(60, 15, 15));
+        node.start();
+        return node;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    @Test
+    void everyNodeSeesTheSameCountsWhicheverNodeRecorded() throws IOException {
+        startCluster(3, 1);
+        for (int i = 0; i < 60; i++)
+            nodes.get(i % 3).record("4111" + (i % 20), NOW.minusMinutes(1));
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+            for (ClusterVelocityCounters node : nodes) {
+                for (int p = 0; p < 20; p++)
+                    assertEquals(3, node.count("4111" + p, NOW.minusMinutes(15), NOW));
+            }
+        });
+        // each PAN is kept by exactly one node
+        assertEquals(20, nodes.stream().mapToInt(ClusterVelocityCounters::size).sum());
+    }
+
+    @Test
+    void answersFromAReplicaWhenTheOwnerIsDown() throws IOException {
+        List<ClusterNode> members = startCluster(3, 2);
+        ConsistentHashRing ring = new ConsistentHashRing(members.stream().map(ClusterNode::id).toList(), 128);
+        // a PAN kept by node1 and node2 only, so node0 has to ask over the network
+        String pan = null;
+        for (int i = 0; pan == null; i++) {
+            List<String> keepers = ring.owners("5222" + i, 2);
+            if (keepers.equals(List.of("node1", "node2")))
+                pan = "5222" + i;
+        }
+        String card = pan;
+        for (int i = 0; i < 4; i++)
+            nodes.get(0).record(card, NOW);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> nodes.get(2).count(card, NOW.minusMinutes(15), NOW) == 4);
+
+        nodes.get(1).stop();
+
+        assertEquals(4, nodes.get(0).count(card, NOW.minusMinutes(15), NOW));
+    }
+
+    @Test
+    void returnsMinusOneWhenNoKeeperAnswers() throws IOException {
+        List<ClusterNode> members = startCluster(2, 1);
+        ConsistentHashRing ring = new ConsistentHashRing(members.stream().map(ClusterNode::id).toList(), 128);
+        String pan = null;
+        for (int i = 0; pan == null; i++) {
+            if (ring.owners("6333" + i, 1).equals(List.of("node1")))
+                pan = "6333" + i;
+        }
+
+        nodes.get(1).stop();
+
+        assertEquals(-1, nodes.get(0).count(pan, NOW.minusMinutes(15), NOW));
+    }
+
+    @Test
+    void aNodeThatMissedRecordsLetsAnotherKeeperAnswer() throws IOException {
+        List<ClusterNode> members = startCluster(2, 2, 100);
+        String pan = "4111111111111111";
+        for (int i = 0; i < 3; i++)
+            nodes.get(0).record(pan, NOW);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> nodes.get(1).count(pan, NOW.minusMinutes(15), NOW) == 3);
+
+        nodes.get(1).stop();
+        for (int i = 0; i < 2; i++)
+            nodes.get(0).record(pan, NOW);
+        // back on the same port with nothing kept: node0 tells it what it missed
+        ClusterVelocityCounters restarted = startNode("node1", members, 2, 100);
+        nodes.add(restarted);
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> restarted.count(pan, NOW.minusMinutes(15), NOW) == 5);
+        assertEquals(5, nodes.get(0).count(pan, NOW.minusMinutes(15), NOW));
+    }
+
+    @Test
+    void velocityRuleSeesTransactionsProcessedByOtherNodes() throws IOException {
+        startCluster(2, 1);
+        TransactionRepository repo = mock(TransactionRepository.class);
+        when(repo.findPanHistorySince(anyString(), any())).thenReturn(List.of());
+        List<PanProfileCache> profiles = new ArrayList<>();
+        List<VelocityRule> rules = new ArrayList<>();
+        for (ClusterVelocityCounters node : nodes) {
+            profiles.add(new PanProfileCache(repo, 100, 60, 60, 15));
+            VelocityRule rule = new VelocityRule(repo, node);
+            TestUtil.inject(rule, "windowMinutes", 15);
+            TestUtil.inject(rule, "maxCount", 4);
+            rules.add(rule);
+        }
+
+        // the switch alternates the card between the two instances
+        String pan = "4111111111111111";
+        for (int i = 0; i < 4; i++) {
+            TransactionEntity tx = TransactionEntity.builder().pan(pan).timestamp(NOW.minusMinutes(4 - i)).build();
+            profiles.get(i % 2).get(pan);
+            profiles.get(i % 2).onProcessed(tx);
+            nodes.get(i % 2).onProcessed(tx);
+        }
+
+        TransactionEntity next = TransactionEntity.builder().pan(pan).timestamp(NOW).build();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+            for (int n = 0; n < 2; n++)
+                assertTrue(rules.get(n).evaluate(new EvaluationContext(next, profiles.get(n))));
+        });
+        verify(repo, never()).countByPanAndTimestampBetween(anyString(), any(), any());
+    }
+}
@@ -0,0 +1,41 @@
+package capitec.fraudengine.service.velocity.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    @Test
+    void spreadsPansEvenlyAndNamesDistinctReplicas() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < 30_000; i++)
+            owned.merge(ring.owners("4111" + i, 1).get(0), 1, Integer::sum);
+
+        owned.values().forEach(n -> assertEquals(10_000, n, 1_500));
+        List<String> keepers = ring.owners("4111111111111111", 5);
+        assertEquals(3, keepers.size());
+        assertEquals(3, keepers.stream().distinct().count());
+    }
+
+    @Test
+    void addingANodeOnlyMovesPansToIt() {
+        ConsistentHashRing three = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing four = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+        int moved = 0;
+        for (int i = 0; i < 30_000; i++) {
+            String before = three.owners("4111" + i, 1).get(0);
+            String after = four.owners("4111" + i, 1).get(0);
+            if (!before.equals(after)) {
+                assertEquals("d", after);
+                moved++;
+            }
+        }
+        assertEquals(7_500, moved, 1_500);
+    }
+}